@@ -10,6 +10,7 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
 import no.ntnu.idatx2001.g11.exceptions.NoUserException;
+import no.ntnu.idatx2001.g11.usersaves.SaveWatcher;
 
 
 /**
@@ -21,6 +22,9 @@ public class App extends Application {
 
     private final DataManager dataManager = DataManager.getInstance();
     private final ExceptionCommunicator exceptionCommunicator = ExceptionCommunicator.getInstance();
+
+    // Watches for changes other programs make to the save slots, null if it couldn't start
+    private SaveWatcher saveWatcher = null;
     
     /**
      * JavaFX generated function to load an FXML layout.
@@ -32,13 +36,28 @@ public class App extends Application {
         scene = new Scene(loadFxml("User Select Screen"), 600, 400);
         stage.setScene(scene);
 
+        try {
+            saveWatcher = new SaveWatcher(dataManager::refreshUserInBackground);
+        } catch (IOException ioe) {
+            //Changes from other programs are still loaded the next time a user is loaded.
+        }
+
         stage.setOnCloseRequest(new EventHandler<WindowEvent>() {
             @Override
             public void handle(WindowEvent arg0) {
+                if (saveWatcher != null) {
+                    try {
+                        saveWatcher.close();
+                    } catch (IOException ioe) {
+                        //The watcher's thread stops with the program anyway.
+                    }
+                }
                 if (dataManager.getCurrentUser() != null) {
                     try {
                         dataManager.forceSave();
-                        System.out.println("Saved the user!");
+                        if (dataManager.shutdownSaves()) {
+                            System.out.println("Saved the user!");
+                        }
                     } catch (NoUserException e) {
                         exceptionCommunicator.throwErrorDialogue(
                             "Failed to save",
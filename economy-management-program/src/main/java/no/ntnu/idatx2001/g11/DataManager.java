@@ -1,15 +1,31 @@
 package no.ntnu.idatx2001.g11;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.NoSuchFileException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import javafx.application.Platform;
 import javafx.scene.chart.XYChart;
+import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
 import no.ntnu.idatx2001.g11.exceptions.NoUserException;
+import no.ntnu.idatx2001.g11.generics.Money;
 import no.ntnu.idatx2001.g11.generics.Transaction;
 import no.ntnu.idatx2001.g11.generics.User;
 import no.ntnu.idatx2001.g11.logic.RegressedGraph;
+import no.ntnu.idatx2001.g11.usersaves.SaveCatalog;
+import no.ntnu.idatx2001.g11.usersaves.SaveDamage;
+import no.ntnu.idatx2001.g11.usersaves.SaveExecutor;
 import no.ntnu.idatx2001.g11.usersaves.SaveManager;
+import no.ntnu.idatx2001.g11.usersaves.SaveWatcher;
+import no.ntnu.idatx2001.g11.usersaves.TransactionJournal;
+import no.ntnu.idatx2001.g11.usersaves.UserBytes;
 
 /**
  * Class responsible for communicating data between the front-end and the back-end.
@@ -21,10 +37,16 @@ public class DataManager {
     private static DataManager instance = null;
     private List<Transaction> transactionList;
 
-    private int currentSlot = 0;
-    private User currentUser = null;
-    private int saveIntervalCounter = 0;
-    private static final int SAVE_INTERVAL_MAX = 5;
+    //Read by the save watcher's thread, to find out if a changed slot is the current user's
+    private volatile int currentSlot = 0;
+    private volatile User currentUser = null;
+    private int journalRecordCount = 0;
+    private static final int JOURNAL_COMPACT_THRESHOLD = 256;
+    private static final Duration SAVE_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+    private Runnable onUserRefreshed = null;
+    private SaveDamage loadDamage = null;
+
+    private final SaveExecutor saveExecutor = new SaveExecutor();
 
     private DataManager() {}
 
@@ -41,107 +63,388 @@ public class DataManager {
         return instance;
     }
 
+    /**
+     * Sets the current user. Only the transactions that can be listed without loading
+     * a segment are listed, older years stored in history segments are added to the list
+     * once they're loaded. Transactions of indexed saves are read a page at a time as listed.
+     *
+     * @param slot the slot of the user
+     * @param user the user
+     */
     private void setUser(int slot, User user) {
         currentSlot = slot;
         currentUser = user;
-        transactionList = user.getTransactionHistory().getTransactions();
+        transactionList = user.getTransactionHistory().getListedTransactions();
     }
 
     /**
      * Called by the front-end when a save slot has been
      * selected by the user. Should trigger loading a
      * save from the given slot.
+     * The slot is only held shared while it's loaded,
+     * and exclusively while its journal is replayed, since a stale journal is reset.
+     * If another program saved the slot in between, the user is loaded again.
      *
-     * @param slot the slot to load from (0 to 2)
+     * @param slot the slot to load from
      * @throws NoUserException if the user does not exist
+     * @throws UncheckedIOException if the user's save data could not be read
      */
     public void loadUserFromSlot(int slot) throws NoUserException {
+        flushSaves();
+        while (!readUser(slot).getAsBoolean()) {
+            //The slot was loaded again in the background meanwhile, so it's read once more.
+        }
+    }
+
+    /**
+     * Loads a user from a save slot, without making it the current user.
+     * Can be called on any thread, since the current user isn't changed.
+     * Records appended to the journal before the loaded user is set as the current user
+     * are read & applied to it when it's set, since it doesn't have them.
+     *
+     * @param slot the slot to load from
+     * @return sets the loaded user as the current user when called,
+     *     and returns if it was set. It's not set if the slot was loaded again since.
+     * @throws NoUserException if the user does not exist
+     * @throws UncheckedIOException if the user's save data could not be read
+     * @see TransactionJournal#use(User, int)
+     */
+    private BooleanSupplier readUser(int slot) throws NoUserException {
         try {
-            setUser(slot, SaveManager.loadUserBytes(slot).makeUser());
+            UserBytes userBytes;
+            User user;
+            int replayedRecords;
+            do {
+                //Indexed saves stay paged, so their transactions are read a block at a time.
+                userBytes = SaveManager.readUserBytes(slot, true);
+                user = userBytes.makeUser();
+                replayedRecords = TransactionJournal.replayJournal(user, slot, userBytes);
+            } while (replayedRecords < 0);
+            SaveDamage damage = userBytes.getDamage();
+            User loadedUser = user;
+            int loadedRecords = replayedRecords;
+            return () -> {
+                int missedChanges = TransactionJournal.use(loadedUser, slot);
+                if (missedChanges < 0) {
+                    return false;
+                }
+                loadDamage = damage;
+                journalRecordCount = loadedRecords;
+                setUser(slot, loadedUser);
+                sortTransactionList();
+                if (missedChanges > 0) {
+                    //Appended after the journal was replayed, for the user that was replaced.
+                    refreshUser(slot);
+                }
+                return true;
+            };
         } catch (NoSuchFileException nsfe) {
             throw new NoUserException();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Gets the damage found in the save data of the user loaded last.
+     *
+     * @return the damage found, or null if the save data was intact
+     * @see SaveManager#loadUserBytes(int)
+     */
+    public SaveDamage getLoadDamage() {
+        return loadDamage;
+    }
+
+    /**
+     * Called by the save watcher when a save slot was changed, possibly by another program.
+     * If it's the current user's slot, the changes are read on the calling thread,
+     * and only applied to the current user on the JavaFX application thread,
+     * so the JavaFX application thread never reads the journal, or waits for a save.
+     *
+     * @param slot the slot that changed, or {@link SaveWatcher#ANY_SLOT}
+     * @see #refreshUser(int)
+     */
+    public void refreshUserInBackground(int slot) {
+        BooleanSupplier refresh = readUserChanges(slot);
+        if (refresh != null) {
+            Platform.runLater(refresh::getAsBoolean);
         }
     }
 
+    /**
+     * Called by the front-end when a save slot was changed, possibly by another program.
+     * If it's the current user's slot, the changes are loaded into the current user.
+     * Transactions another program added to the journal are replayed on top of the user,
+     * and if another program saved the slot, the user is loaded from the slot again.
+     * Reads the changes on the calling thread, which must be the JavaFX application thread.
+     *
+     * @param slot the slot that changed, or {@link SaveWatcher#ANY_SLOT}
+     * @return if the current user changed
+     * @see #refreshUserInBackground(int)
+     */
+    public boolean refreshUser(int slot) {
+        BooleanSupplier refresh = readUserChanges(slot);
+        return refresh != null && refresh.getAsBoolean();
+    }
+
+    /**
+     * Reads the changes made to a save slot, if it's the current user's slot.
+     * Records another program added to the journal are read & decoded,
+     * and if another program saved the slot, the user is loaded from the slot again.
+     * Can be called on any thread, since the current user isn't changed.
+     * Used by {@link #refreshUserInBackground(int)}, which applies the changes later.
+     * Changes read for a user that has been replaced by the time they're applied
+     * are already in the user that replaced it, or are read for it later.
+     *
+     * @param slot the slot that changed, or {@link SaveWatcher#ANY_SLOT}
+     * @return applies the changes to the current user when called,
+     *     and returns if the current user changed.
+     *     Null if the slot isn't the current user's
+     * @see TransactionJournal#readChanges(int)
+     */
+    public BooleanSupplier readUserChanges(int slot) {
+        int userSlot = currentSlot;
+        if (currentUser == null || (slot != userSlot && slot != SaveWatcher.ANY_SLOT)) {
+            return null;
+        }
+        try {
+            TransactionJournal.JournalChanges changes = TransactionJournal.readChanges(userSlot);
+            BooleanSupplier reload = changes.isReloadNeeded() ? readUser(userSlot) : null;
+            return () -> {
+                if (currentSlot != userSlot) {
+                    return false;
+                }
+                if (reload != null) {
+                    if (!reload.getAsBoolean()) {
+                        return false;
+                    }
+                } else {
+                    //Only applied if read for the current user, see TransactionJournal#use
+                    int appliedRecords = TransactionJournal.applyChanges(changes, currentUser);
+                    if (appliedRecords <= 0) {
+                        return false;
+                    }
+                    journalRecordCount += appliedRecords;
+                    sortTransactionList();
+                }
+                if (onUserRefreshed != null) {
+                    onUserRefreshed.run();
+                }
+                return true;
+            };
+        } catch (IOException | UncheckedIOException e) {
+            return () -> {
+                ExceptionCommunicator.getInstance().throwErrorDialogue(
+                    "Failed to load",
+                    "Failed to load the changes made to the user by another program.");
+                return false;
+            };
+        } catch (NoUserException nue) {
+            return () -> false;
+        }
+    }
+
+    /**
+     * Sets what to do when the current user is refreshed with changes from another program.
+     *
+     * @param onUserRefreshed run after the current user is refreshed, or null to do nothing
+     * @see #refreshUser(int)
+     */
+    public void setOnUserRefreshed(Runnable onUserRefreshed) {
+        this.onUserRefreshed = onUserRefreshed;
+    }
+
     /**
      * Called by the front-end when the user has
      * submitted a valid username when creating
      * a new user. Should create a new save file
      * for that user.
+     * The save file is written in the background.
      *
-     * @param slot the slot to load from (0 to 2)
+     * @param slot the slot to load from
      * @param username submitted username
-     * @param startingFunds submitted starting funds
+     * @param startingFunds submitted starting funds, in minor units (see {@link Money})
      */
-    public void createFromUsername(int slot, String username, double startingFunds) {
+    public void createFromUsername(int slot, String username, long startingFunds) {
         setUser(slot, new User(username, startingFunds));
-        SaveManager.saveUser(currentUser, slot);
+        saveInBackground();
     }
 
     /**
      * Forces the program to save the data of the current user.
+     * This writes a full snapshot of the user, and compacts the user's transaction journal.
+     * The snapshot is taken straight away, but written in the background,
+     * so this never waits for the save file to be written.
+     * If saving fails, an error dialogue is shown.
      *
+     * @return a future that completes once the user is saved
      * @throws NoUserException if the user does not exist
+     * @see SaveExecutor#submit(User, int)
      */
-    public void forceSave() throws NoUserException {
+    public CompletableFuture<Void> forceSave() throws NoUserException {
         if (currentUser != null) {
-            SaveManager.saveUser(currentUser, currentSlot);
+            return saveInBackground();
         } else {
             throw new NoUserException();
         }
     }
 
     /**
-     * Counts a saveable action. When called 5 times, saves the user's data.
+     * Submits the current user to be saved in the background.
+     *
+     * @return a future that completes once the user is saved
      */
-    private void saveAfterInterval() {
-        saveIntervalCounter = saveIntervalCounter++ % SAVE_INTERVAL_MAX;
-        if (saveIntervalCounter == 0) {
+    private CompletableFuture<Void> saveInBackground() {
+        journalRecordCount = 0;
+        CompletableFuture<Void> saved = saveExecutor.submit(currentUser, currentSlot);
+        saved.exceptionally(e -> {
+            Platform.runLater(() -> ExceptionCommunicator.getInstance().throwErrorDialogue(
+                "Error saving user",
+                "The program failed to save your data."
+            ));
+            return null;
+        });
+        return saved;
+    }
+
+    /**
+     * Waits for every save written in the background to finish.
+     * Waits for at most 5 seconds, so a stuck save can't freeze the program.
+     * Changes that aren't saved yet are still in the transaction journal.
+     *
+     * @return if every save finished in time
+     */
+    public boolean flushSaves() {
+        return saveExecutor.flush(SAVE_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Waits for every save written in the background to finish, and stops taking new saves.
+     * Called when the program closes.
+     * Waits for at most 5 seconds, like {@link #flushSaves()}.
+     *
+     * @return if every save finished in time
+     */
+    public boolean shutdownSaves() {
+        return saveExecutor.shutdown(SAVE_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Counts a journaled action. When the journal has grown large enough,
+     * the user's data is saved as a new snapshot, which compacts the journal.
+     */
+    private void compactAfterInterval() {
+        journalRecordCount++;
+        if (journalRecordCount >= JOURNAL_COMPACT_THRESHOLD) {
             forceSave();
         }
     }
 
+    /**
+     * Sorts the loaded transactions by date.
+     * Transactions in pages are already sorted, since they were saved sorted.
+     */
+    private void sortTransactionList() {
+        currentUser.getTransactionHistory().getLoadedTransactions()
+                .sort((Transaction a, Transaction b) -> {
+                    return a.getDate().compareTo(b.getDate());
+                });
+    }
+
     /**
      * Attempts to submit a new transaction to the current user's data.
+     * The transaction is inserted where its date belongs,
+     * so the loaded transactions stay sorted by date without sorting them again.
+     * The user's history stores a copy of the transaction,
+     * so the stored transaction is returned, to list or remove later.
      *
      * @param transaction the transaction to be saved
+     * @return the transaction stored in the current user's history
      * @throws NoUserException if the user does not exist
+     * @see no.ntnu.idatx2001.g11.generics.TransactionHistory#addTransaction(Transaction)
      */
-    public void submitNewTransaction(Transaction transaction) throws NoUserException {
+    public Transaction submitNewTransaction(Transaction transaction) throws NoUserException {
+        Transaction stored;
         if (currentUser != null) {
-            currentUser.getTransactionHistory().addTransaction(transaction);
+            stored = currentUser.getTransactionHistory().addTransactionInDateOrder(transaction);
+            TransactionJournal.appendAddition(stored, currentSlot);
+        } else {
+            throw new NoUserException();
+        }
+        compactAfterInterval();
+        return stored;
+    }
 
-            transactionList.sort((Transaction a, Transaction b) -> {
-                return a.getDate().compareTo(b.getDate());
-            });
+    /**
+     * Attempts to remove a transaction from the current user's data.
+     *
+     * @param transaction the transaction to be removed
+     * @throws NoUserException if the user does not exist
+     */
+    public void removeTransaction(Transaction transaction) throws NoUserException {
+        if (currentUser != null) {
+            currentUser.getTransactionHistory().removeTransaction(transaction);
+            TransactionJournal.appendRemoval(transaction, currentSlot);
         } else {
             throw new NoUserException();
         }
-        saveAfterInterval();
+        compactAfterInterval();
+    }
+
+    /**
+     * Renames a category of the current user, and with it every transaction of the category.
+     * The rename is appended to the journal, like any other change,
+     * so neither every transaction of the category is loaded, nor the user saved.
+     *
+     * @param name the current name of the category
+     * @param newName the new name of the category
+     * @throws NoUserException if the user does not exist
+     * @throws IllegalArgumentException if the user has no category with the name,
+     *     or the new name is blank or already one of the user's categories
+     * @see no.ntnu.idatx2001.g11.generics.TransactionHistory#renameCategory(String, String)
+     * @see TransactionJournal#appendRename(String, String, int)
+     */
+    public void renameCategory(String name, String newName) throws NoUserException {
+        if (currentUser == null) {
+            throw new NoUserException();
+        }
+        currentUser.getTransactionHistory().renameCategory(name, newName);
+        TransactionJournal.appendRename(name, newName, currentSlot);
+        compactAfterInterval();
     }
 
     /**
      * Used by the user-select front-end to display the names
      * associated with the individual save files.
+     * The names are found through the {@link SaveCatalog},
+     * so no save file is read, no matter how many users there are.
+     * The current user's name is used for its own slot,
+     * since it may still be saving in the background.
      *
-     * @return an array of 3 strings, representing the usernames
-     *     of the users, in order of the slot (entry [0] should
-     *     be for save slot 1, etc.). If a slot is empty, the name
-     *     should be "Empty".
-     */
-    public String[] fetchUserNames() {
-        String[] userNames = new String[3];
-        for (int i = 0; i < 3; i++) {
-            try {
-                userNames[i] = SaveManager.loadUserBytes(i)
-                        .getString("username", "(No username)");
-            } catch (NoSuchFileException nsfe) {
-                userNames[i] = "";
-            }
-        }
+     * @param query the start of the usernames to find, ignoring case.
+     *     An empty query finds every user.
+     * @return the username of every user found, by slot, in alphabetical order
+     * @see SaveCatalog#search(String)
+     */
+    public Map<Integer, String> fetchUserNames(String query) {
+        Map<Integer, String> userNames = new LinkedHashMap<>();
+        SaveCatalog.search(query).forEach((slot, summary) -> userNames.put(
+                slot, slot == currentSlot && currentUser != null
+                        ? currentUser.getUsername() : summary.getUsername()));
         return userNames;
     }
 
+    /**
+     * Gets the save slot a new user should be created in.
+     *
+     * @return the lowest slot that doesn't have a user
+     * @see SaveCatalog#nextFreeSlot()
+     */
+    public int getNewUserSlot() {
+        flushSaves();
+        return SaveCatalog.nextFreeSlot();
+    }
+
     /**
      * Returns a list of all outgoing purchases (transactions with a negative amount).
      *
@@ -205,7 +508,9 @@ public class DataManager {
     public XYChart.Series<String, Float> getGraphFromData() {
         XYChart.Series<String, Float> series = new XYChart.Series<>();
 
-        double currentMoney = currentUser.getStartingFunds();
+        //Years that aren't loaded are older than the ones listed, so they count from the start.
+        long currentMoney = currentUser.getStartingFunds()
+                + currentUser.getTransactionHistory().getUnlistedSum();
 
         Iterator<Transaction> transactions = transactionList.iterator();
 
@@ -217,7 +522,7 @@ public class DataManager {
             XYChart.Data<String, Float> data =
                 new XYChart.Data<String, Float>(
                     transaction.getDate().toString(),
-                    (float) currentMoney);
+                    (float) Money.toUnits(currentMoney));
 
             series.getData().add(data);
         }
@@ -227,7 +532,8 @@ public class DataManager {
         Transaction finalTransaction = transactionList.get(transactionList.size() - 1);
         for (int i = 0; i < RegressedGraph.DEFAULT_RANGE; i++) {
             LocalDate extrapolatedDate = finalTransaction.getDate().plusDays(i + 1);
-            float extrapolatedAmount = (float) graphModel.extrapolate(extrapolatedDate);
+            float extrapolatedAmount =
+                (float) (graphModel.extrapolate(extrapolatedDate) / Money.MINOR_UNITS);
             XYChart.Data<String, Float> data =
                 new XYChart.Data<String, Float>(extrapolatedDate.toString(), extrapolatedAmount);
 
@@ -1,15 +1,81 @@
 package no.ntnu.idatx2001.g11;
 
+import java.util.Locale;
+import java.util.Map;
+import no.ntnu.idatx2001.g11.usersaves.SaveFormat;
+import no.ntnu.idatx2001.g11.usersaves.SaveManager;
+import no.ntnu.idatx2001.g11.usersaves.SaveMigrator;
+
 /**
  * Main class. Used to launch the program.
  */
 public class Main {
+    /**
+     * Launch argument that migrates every save file instead of launching the program.
+     */
+    public static final String MIGRATE_ARGUMENT = "--migrate";
+
+    private static final String USAGE = "Usage: " + MIGRATE_ARGUMENT
+            + " [--format=ROWS|COLUMNS|SEGMENTS|INDEXED|CHECKED] [--compressed] [--threads=N]";
+
     /**
      * Main function.
+     * Launched with {@value #MIGRATE_ARGUMENT}, every save file is migrated
+     * to the save format given by the other arguments, without opening any window.
      *
      * @param args launch arguments
      */
     public static void main(String[] args) {
-        no.ntnu.idatx2001.g11.App.initApp();
+        if (args.length > 0 && MIGRATE_ARGUMENT.equals(args[0])) {
+            System.exit(migrate(args));
+        } else {
+            no.ntnu.idatx2001.g11.App.initApp();
+        }
+    }
+
+    /**
+     * Migrates every save file to the save format given by the launch arguments,
+     * and prints what was done.
+     *
+     * @param args launch arguments, starting with {@value #MIGRATE_ARGUMENT}
+     * @return the exit code, 0 if every save file is in the given save format
+     * @see SaveMigrator
+     */
+    private static int migrate(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("--format=")) {
+                    SaveManager.setSaveFormat(SaveFormat.valueOf(
+                            args[i].substring("--format=".length()).toUpperCase(Locale.ROOT)));
+                } else if (args[i].equals("--compressed")) {
+                    SaveManager.setCompressed(true);
+                } else if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring("--threads=".length()));
+                } else {
+                    System.err.println(USAGE);
+                    return 2;
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (threads < 1) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        long start = System.nanoTime();
+        SaveMigrator.Report report = SaveMigrator.migrateAll(threads);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        for (Map.Entry<Integer, Exception> failure : report.getFailed().entrySet()) {
+            System.err.println("Failed to migrate save slot " + failure.getKey()
+                    + ": " + failure.getValue());
+        }
+        System.out.println("Migrated " + report.getMigrated().size() + " save files in "
+                + elapsedMillis + " ms. " + report.getAlreadyCurrent()
+                + " were already migrated, " + report.getFailed().size() + " failed.");
+        return report.getFailed().isEmpty() ? 0 : 1;
     }
 }
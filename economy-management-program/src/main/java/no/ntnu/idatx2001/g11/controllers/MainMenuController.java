@@ -3,6 +3,7 @@ package no.ntnu.idatx2001.g11.controllers;
 import java.io.IOException;
 import java.net.URL;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
 import javafx.collections.FXCollections;
@@ -15,11 +16,14 @@ import javafx.scene.chart.XYChart.Series;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Spinner;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
@@ -30,7 +34,9 @@ import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
 import no.ntnu.idatx2001.g11.controllers.ui.PurchaseListing;
 import no.ntnu.idatx2001.g11.enums.TimeType;
 import no.ntnu.idatx2001.g11.exceptions.NoUserException;
+import no.ntnu.idatx2001.g11.generics.Money;
 import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.User;
 import no.ntnu.idatx2001.g11.logic.InputValidationUtil;
 
 /**
@@ -57,6 +63,7 @@ public class MainMenuController implements Initializable {
 
     /**
      * Array of additional categories to be used in the "Other" dropdown.
+     * The dropdown also lists every other category the user has used.
      */ 
     public static final String[] ADDITIONAL_CATEGORY_TYPES = new String[]{
         "Rent", "Electricity", "Water",
@@ -115,6 +122,11 @@ public class MainMenuController implements Initializable {
             .getResource("Images/iconBack.png").toExternalForm());
 
         initializeTransactionList();
+        //Changes another program made to the user are listed as soon as they're loaded.
+        dataManager.setOnUserRefreshed(() -> {
+            initializeTransactionList();
+            initializeCategorySelection();
+        });
 
         createTransactionRecurringType.getItems().setAll(
             FXCollections.observableArrayList(TimeType.values()));
@@ -124,8 +136,65 @@ public class MainMenuController implements Initializable {
         quickSelectionButtons = new Button[]
             {quickSelect1, quickSelect2, quickSelect3, quickSelect4};
 
+        initializeCategorySelection();
+
+        MenuItem renameCategoryItem = new MenuItem("Rename category");
+        renameCategoryItem.setOnAction(this::onRenameCategory);
+        additionalCategorySelection.setContextMenu(new ContextMenu(renameCategoryItem));
+    }
+
+    /**
+     * Lists the additional categories in the "Other" dropdown,
+     * followed by every category in the user's category registry
+     * that isn't a quick-select or additional category.
+     */
+    private void initializeCategorySelection() {
+        List<String> categories = new ArrayList<>(List.of(ADDITIONAL_CATEGORY_TYPES));
+        User user = dataManager.getCurrentUser();
+        if (user != null) {
+            for (String category : user.getTransactionHistory().getCategories().getNames()) {
+                if (!categories.contains(category)
+                        && !List.of(QUICK_CATEGORY_TYPES).contains(category)) {
+                    categories.add(category);
+                }
+            }
+        }
         additionalCategorySelection.getItems().setAll(
-            FXCollections.observableArrayList(ADDITIONAL_CATEGORY_TYPES));
+            FXCollections.observableArrayList(categories));
+    }
+
+    /**
+     * Event triggered when choosing "Rename category" in the context menu of the "Other" dropdown.
+     * Asks for a new name for the selected category, and renames it for the current user.
+     * Only the user's own categories can be renamed, not the additional categories.
+     *
+     * @param e event parameter
+     */
+    private void onRenameCategory(Event e) {
+        String category = additionalCategorySelection.getValue();
+        if (category == null || List.of(ADDITIONAL_CATEGORY_TYPES).contains(category)) {
+            exceptionCommunicator.throwErrorDialogue("Could not rename category",
+                "Select one of your own categories in the drop-down to rename it");
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog(category);
+        dialog.setHeaderText("Rename the category \"" + category + "\"");
+        dialog.showAndWait().ifPresent(newName -> {
+            try {
+                dataManager.renameCategory(category, newName.trim());
+            } catch (NoUserException exception) {
+                exceptionCommunicator.throwErrorDialogue("Could not save data",
+                    "Could not rename the category as the associated user was not found");
+                return;
+            } catch (IllegalArgumentException exception) {
+                exceptionCommunicator.throwErrorDialogue("Could not rename category",
+                    "The new name must not be empty, or the name of another category");
+                return;
+            }
+            initializeTransactionList();
+            initializeCategorySelection();
+            additionalCategorySelection.setValue(newName.trim());
+        });
     }
 
     /**
@@ -141,14 +210,19 @@ public class MainMenuController implements Initializable {
         transactionList.getChildren().add(listItem);
         
         trashButton.setOnMouseClicked(e -> {
-            List<Transaction> transactions = dataManager.getTransactionList();
-            transactions.remove(transaction);
+            try {
+                dataManager.removeTransaction(transaction);
+            } catch (NoUserException exception) {
+                exceptionCommunicator.throwErrorDialogue("Could not save data",
+                    "Could not remove the transaction as the associated user was not found");
+            }
             transactionList.getChildren().remove(listItem);
         });
     }
 
     /**
-     * Initializes the transaction list when first loading the FXML file.
+     * Initializes the transaction list when first loading the FXML file,
+     * and lists the transactions again when the user is refreshed.
      */
     private void initializeTransactionList() {
         List<Transaction> transactions = dataManager.getTransactionList();
@@ -286,7 +360,7 @@ public class MainMenuController implements Initializable {
             try {
                 int incomeMultiplier = 
                     createTransactionIncomeCheckbox.isSelected() ? 1 : -1;
-                float price = Float.valueOf(inputPrice) * incomeMultiplier;
+                long price = Money.parse(inputPrice) * incomeMultiplier;
                 Transaction transaction = new Transaction(
                     inputName, 
                     category, 
@@ -294,7 +368,8 @@ public class MainMenuController implements Initializable {
                     createTransactionProductTime.getValue());
                     
                 try {
-                    dataManager.submitNewTransaction(transaction);
+                    //The user's history stores a copy, so the stored transaction is listed.
+                    transaction = dataManager.submitNewTransaction(transaction);
                 } catch (NoUserException exception) {
                     exceptionCommunicator.throwErrorDialogue("Could not save data", 
                         "Could not save the transaction as the associated user was not found");
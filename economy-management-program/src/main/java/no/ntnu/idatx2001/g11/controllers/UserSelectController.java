@@ -1,36 +1,33 @@
 package no.ntnu.idatx2001.g11.controllers;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.ResourceBundle;
 import javafx.event.Event;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.scene.Node;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.AnchorPane;
-import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import no.ntnu.idatx2001.g11.App;
 import no.ntnu.idatx2001.g11.DataManager;
 import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
 import no.ntnu.idatx2001.g11.exceptions.NoUserException;
+import no.ntnu.idatx2001.g11.generics.Money;
 import no.ntnu.idatx2001.g11.logic.InputValidationUtil;
+import no.ntnu.idatx2001.g11.usersaves.SaveDamage;
 
 /**
  * The controller for selecting a user.
  */
 public class UserSelectController implements Initializable {
 
-    /**
-     * Default string for user slots without a registered user.
-     */
-    public static final String NO_USER_STRING = "New user";
-
     /**
      * Describing string for the name entry field. Used for error handling.
      */ 
@@ -45,19 +42,15 @@ public class UserSelectController implements Initializable {
     private DataManager dataManager = DataManager.getInstance();
     private ExceptionCommunicator exceptionCommunicator = ExceptionCommunicator.getInstance();
 
-    // Storage for whether a slot exists.
-    private boolean[] slotExists;
-
     // The currently selected slot, used with user creation
     int selectedUserCreationSlot = -1;
 
-    // User slot labels
-    private VBox[] userSlot;
-    @FXML VBox userPanel1;
-    @FXML VBox userPanel2;
-    @FXML VBox userPanel3;
+    // The username of every listed user, by slot
+    private Map<Integer, String> listedUserNames = Map.of();
+    @FXML TextField userSearchEntry;
+    @FXML ListView<Integer> userList;
 
-    @FXML HBox userSelectScreen;
+    @FXML VBox userSelectScreen;
     @FXML VBox userCreateScreen;
 
     @FXML TextField userCreateNameEntry;
@@ -75,165 +68,97 @@ public class UserSelectController implements Initializable {
      * Handles initialization of the scene.
      */
     public void initialization() {
-        userSlot = new VBox[] {
-            userPanel1,
-            userPanel2,
-            userPanel3
-        };
-
-        slotExists = new boolean[3];
-
-        String[] userNames = dataManager.fetchUserNames();
-        
-        
-        for (int i = 0; i <= 2; i++) {
-            boolean exists = !userNames[i].isEmpty();
-
-            if (exists) {
-                VBox slot = userSlot[i];
-                Label slotLabel = getLabelFromUserSlot(slot);
-                if (slotLabel != null) {
-                    slotLabel.setText(userNames[i]);
-                    setDisabledClassOfSlot(slot, false);
-                } else {
-                    slot.setDisable(true);
-                }
-            } else {
-                VBox slot = userSlot[i];
-                Label slotLabel = getLabelFromUserSlot(slot);
-                if (slotLabel != null) {
-                    slotLabel.setText(NO_USER_STRING);
-                    setDisabledClassOfSlot(slot, true);
-                } else {
-                    slot.setDisable(true);
-                }
+        userList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(Integer slot, boolean empty) {
+                super.updateItem(slot, empty);
+                setText(empty || slot == null ? null : listedUserNames.get(slot));
             }
-
-            slotExists[i] = exists;
-        }
+        });
+        userSearchEntry.textProperty().addListener(
+                (observable, oldQuery, newQuery) -> listUsers(newQuery));
+        listUsers("");
     }
 
     /**
-     * Gets a label from a user slot UI element.
+     * Lists every user with a username that starts with a query.
      *
-     * @param inputVBox the user slot UI element
-     * @return the user slot's label UI element
+     * @param query the start of the usernames to list, ignoring case
      */
-    private Label getLabelFromUserSlot(VBox inputVBox) {
-        Label foundLabel = null;
-
-        Iterator<Node> childIterator = inputVBox.getChildren().iterator();
-        AnchorPane spottedPane = null;
-
-        while (childIterator.hasNext() && spottedPane == null) {
-            Node current = childIterator.next();
-
-            if (current instanceof AnchorPane) {
-                spottedPane = (AnchorPane) current;
-            }
-        }
-
-        if (spottedPane != null && spottedPane.getChildren().get(0) instanceof Label) {
-            foundLabel = (Label) spottedPane.getChildren().get(0);
-        }
-
-        return foundLabel;
-    }
-
-    /**
-     * Sets the disabled class of a slot, making it appear "empty" in the UI.
-     *
-     * @param slot slot to change
-     * @param disabled state to set
-     */
-    private void setDisabledClassOfSlot(VBox slot, boolean disabled) {
-        if (disabled) {
-            slot.getStyleClass().add("disabled-container");
-        } else {
-            boolean hasDisabled = false;
-            Iterator<String> iterableStyleClasses = slot.getStyleClass().iterator();
-
-            while (iterableStyleClasses.hasNext() && !hasDisabled) {
-                String current = iterableStyleClasses.next();
-
-                if (current.equals("disabled-container")) {
-                    hasDisabled = true;
-                    slot.getStyleClass().remove(current);
-                }
-            }
-        }
+    private void listUsers(String query) {
+        listedUserNames = dataManager.fetchUserNames(query);
+        userList.getItems().setAll(listedUserNames.keySet());
     }
 
     /**
-     * Handles when the user clicks a user portrait.
+     * Handles when the user clicks a listed user.
      *
-     * @param userSlot the clicked slot.
+     * @param userSlot the slot of the clicked user.
      */
     private void onUserSelect(int userSlot) {
-        if (userSlot < 0 || userSlot > 2) {
+        if (!listedUserNames.containsKey(userSlot)) {
             exceptionCommunicator.throwErrorDialogue(
                 "Invalid selection", "Could not find the selected user slot");
             return;
         }
 
-        boolean exists = slotExists[userSlot];
-
-        if (exists) {
-            try {
-                dataManager.loadUserFromSlot(userSlot);
-                App.setRoot("Main - Purchases Screen");
-            } catch (NoUserException noUserException) {
+        try {
+            dataManager.loadUserFromSlot(userSlot);
+            App.setRoot("Main - Purchases Screen");
+            SaveDamage damage = dataManager.getLoadDamage();
+            if (damage != null) {
                 exceptionCommunicator.throwErrorDialogue(
-                    "Error loading user",
-                    "Could not load the user. Either it does not exist, or data is corrupted");
-            } catch (IOException ioException) {
-                exceptionCommunicator.throwErrorDialogue(
-                    "Error navigating app",
-                    "Failed to load the main application scene");
-            } 
-            
-        } else {
-            createNewUser(userSlot);
+                    "Damaged save data",
+                    damage.getDamagedRecords() + " transactions were damaged. "
+                        + damage.getRecoveredRecords() + " were recovered from backups, and "
+                        + damage.getLostRecords() + " could not be recovered.");
+            }
+        } catch (NoUserException noUserException) {
+            exceptionCommunicator.throwErrorDialogue(
+                "Error loading user",
+                "Could not load the user. Either it does not exist, or data is corrupted");
+        } catch (UncheckedIOException uncheckedIoException) {
+            exceptionCommunicator.throwErrorDialogue(
+                "Error loading user",
+                "Could not read the user's save data.");
+        } catch (IOException ioException) {
+            exceptionCommunicator.throwErrorDialogue(
+                "Error navigating app",
+                "Failed to load the main application scene");
         }
     }
 
     /**
-     * Event triggered when the user presses the first slot.
+     * Event triggered when the user clicks the list of users.
+     * Selects the clicked user, if a user was clicked.
      *
      * @param e event parameter
      */
     @FXML
-    public void userSelect1(MouseEvent e) {
-        onUserSelect(0);
+    public void userListClicked(MouseEvent e) {
+        Integer slot = userList.getSelectionModel().getSelectedItem();
+        if (slot != null) {
+            onUserSelect(slot);
+        }
     }
 
     /**
-     * Event triggered when the user presses the second slot.
+     * Event triggered when the user presses the new user button.
      *
      * @param e event parameter
      */
     @FXML
-    public void userSelect2(MouseEvent e) {
-        onUserSelect(1);
+    public void newUserClicked(Event e) {
+        createNewUser(dataManager.getNewUserSlot());
     }
 
-    /**
-     * Event triggered when the user presses the third slot.
-     *
-     * @param e event parameter
-     */
-    @FXML
-    public void userSelect3(MouseEvent e) {
-        onUserSelect(2);
-    }
-    
     /**
      * Changes the screen to show user creation inputs.
      *
-     * @param slot the slot in which the user clicks to trigger this
+     * @param slot the slot to create the new user in
      */
     private void createNewUser(int slot) {
-        if (slot < 0 || slot > 2) {
+        if (slot < 0) {
             return;
         }
 
@@ -273,9 +198,17 @@ public class UserSelectController implements Initializable {
             return;
         }
 
+        //The input is only checked for digits and dots, so it can still be too large, or "1.2.3"
+        long funds;
+        try {
+            funds = Money.parse(inputFunds);
+        } catch (NumberFormatException exception) {
+            setErrorLabel("Could not interpret the starting funds");
+            return;
+        }
+
         if (selectedUserCreationSlot != -1) {
-            dataManager.createFromUsername(selectedUserCreationSlot, inputName, Double.parseDouble(inputFunds));
-            slotExists[selectedUserCreationSlot] = true;
+            dataManager.createFromUsername(selectedUserCreationSlot, inputName, funds);
 
             try {
                 dataManager.loadUserFromSlot(selectedUserCreationSlot);
@@ -284,6 +217,10 @@ public class UserSelectController implements Initializable {
                 exceptionCommunicator.throwErrorDialogue(
                     "Error loading user",
                     "Could not load the user. Either it does not exist, or data is corrupted");
+            } catch (UncheckedIOException exception) {
+                exceptionCommunicator.throwErrorDialogue(
+                    "Error loading user",
+                    "Could not read the user's save data.");
             } catch (IOException exception) {
                 exceptionCommunicator.throwErrorDialogue(
                     "Error navigating app",
@@ -10,6 +10,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import no.ntnu.idatx2001.g11.App;
+import no.ntnu.idatx2001.g11.generics.Money;
 import no.ntnu.idatx2001.g11.generics.Transaction;
 
 /**
@@ -32,7 +33,7 @@ public class PurchaseListing extends HBox {
     public PurchaseListing(Transaction transaction) {
         this.setPrefHeight(34);
 
-        Label costLabel = new Label(String.format("%.2f kr", transaction.getAmount()));
+        Label costLabel = new Label(Money.format(transaction.getAmount()));
         costLabel.getStyleClass().add("table-price");
         costLabel.setPrefWidth(128);
         costLabel.setMaxWidth(128);
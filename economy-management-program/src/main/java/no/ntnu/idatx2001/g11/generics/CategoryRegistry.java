@@ -0,0 +1,150 @@
+package no.ntnu.idatx2001.g11.generics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     The categories of a transaction history, each given a dense int id,
+ *     in the order the categories were first used.
+ * </p><p>
+ *     Stored transactions only keep the id of their category, so every category name
+ *     is only held once, and transactions can be grouped by category
+ *     by indexing an array with the id, instead of hashing the name of every transaction.
+ *     Renaming a category only changes the name of its id,
+ *     so every transaction of the category is renamed at once.
+ * </p><p>
+ *     The registry isn't saved on its own. Saves store the category name of every transaction,
+ *     and the registry is rebuilt from them when loading,
+ *     so a category without any transactions is gone once the history is loaded again.
+ *     Only categories of loaded transactions are registered.
+ *     Renames of categories in segments & pages that aren't loaded yet are kept by the
+ *     {@link TransactionHistory}, which registers their transactions under the new name
+ *     once they're loaded.
+ *     Renames are stored in the {@code TransactionJournal}, like any other change.
+ * </p>
+ *
+ * @see TransactionStore
+ */
+public final class CategoryRegistry {
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+
+    /**
+     * Constructor, for a registry without any categories.
+     */
+    public CategoryRegistry() {
+        names = new ArrayList<>();
+        ids = new HashMap<>();
+    }
+
+    /**
+     * Makes a copy of the registry, that doesn't change when this registry does.
+     * Every category keeps its id in the copy.
+     *
+     * @return a copy of the registry.
+     */
+    public CategoryRegistry copy() {
+        CategoryRegistry copy = new CategoryRegistry();
+        copy.names.addAll(names);
+        copy.ids.putAll(ids);
+        return copy;
+    }
+
+    /**
+     * Gets the id of a category, registering the category if it's new.
+     *
+     * @param name The name of the category.
+     * @return The id of the category.
+     * @throws IllegalArgumentException if the name is null
+     */
+    public int register(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("\"name\" cannot be null");
+        }
+        return ids.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Gets the id of a category, without registering it.
+     *
+     * @param name The name of the category.
+     * @return The id of the category, or -1 if the category isn't registered.
+     */
+    public int getId(String name) {
+        return ids.getOrDefault(name, -1);
+    }
+
+    /**
+     * Gets the name of a category.
+     *
+     * @param id The id of the category.
+     * @return The name of the category.
+     * @throws IndexOutOfBoundsException if no category has the id
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Gets the amount of registered categories.
+     * Every id from 0 up to, but not including, this amount belongs to a category.
+     *
+     * @return The amount of registered categories.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Gets the name of every registered category, ordered by id.
+     *
+     * @return The name of every registered category.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Renames a category, keeping its id.
+     * Only used through {@link TransactionHistory#renameCategory(String, String)},
+     * which renames the transactions that aren't loaded yet.
+     *
+     * @param name The current name of the category.
+     * @param newName The new name of the category.
+     * @throws IllegalArgumentException if the category isn't registered,
+     *     or the new name is blank or already a registered category
+     */
+    void rename(String name, String newName) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("No category is named \"" + name + "\"");
+        }
+        checkNewName(newName);
+        ids.remove(name);
+        ids.put(newName, id);
+        names.set(id, newName);
+    }
+
+    /**
+     * Checks that a category can be renamed to a name.
+     *
+     * @param newName The new name of the category.
+     * @throws IllegalArgumentException if the new name is blank or already a registered category
+     */
+    void checkNewName(String newName) {
+        if (newName == null || newName.isBlank()) {
+            throw new IllegalArgumentException("String \"newName\" cannot be null or blank");
+        }
+        if (ids.containsKey(newName)) {
+            throw new IllegalArgumentException(
+                    "A category is already named \"" + newName + "\"");
+        }
+    }
+}
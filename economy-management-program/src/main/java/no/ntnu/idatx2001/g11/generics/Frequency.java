@@ -1,9 +1,10 @@
 package no.ntnu.idatx2001.g11.generics;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import no.ntnu.idatx2001.g11.enums.TimeType;
 import no.ntnu.idatx2001.g11.usersaves.Savable;
+import no.ntnu.idatx2001.g11.usersaves.StringDictionary;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 
 /**
  * Used to represent a recurring transaction.
@@ -58,31 +59,48 @@ public class Frequency implements Savable {
     }
 
     /**
-     * Converts the frequency into an array of bytes.<br/><br/>
+     * Writes the frequency into a buffer.<br/><br/>
      * The bytes are stored as follows:<br/>
      * <ul>
-     *     <li><b>Byte 0 - 1:</b> The frequency's amount, as a short.</li>
-     *     <li><b>Byte 2:</b> The length of the frequency type.</li>
-     *     <li><b>Byte 3 - {@code n}:</b> The frequency type, encoded to bytes using UTF-8.</li>
+     *     <li>The frequency's amount, as a zigzag-encoded varint.</li>
+     *     <li>The frequency type, as a string reference.</li>
      * </ul>
+     * Varints are documented in {@link Varint},
+     * and string references are documented in {@link StringDictionary}.
+     * Without a dictionary, the frequency type is stored in full.
      *
-     * @return The frequency, converted to an array of bytes.
+     * @param buffer The buffer to write the frequency into.
      */
     @Override
-    public byte[] asBytes() {
-        byte[] timeTypeBytes = timeType.toString().getBytes(StandardCharsets.UTF_8);
+    public void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, StringDictionary.EMPTY);
+    }
 
-        byte[] byteArray = new byte[byteLength()];
-        byte[] amountBytes = ByteBuffer.allocate(2).putShort(amount).array();
-        System.arraycopy(amountBytes, 0, byteArray, 0, amountBytes.length);
-        byteArray[2] = (byte) timeTypeBytes.length;
-        System.arraycopy(timeTypeBytes, 0, byteArray, 3, timeTypeBytes.length);
-        return byteArray;
+    /**
+     * Writes the frequency into a buffer, referencing strings in a dictionary.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)}.
+     *
+     * @param buffer The buffer to write the frequency into.
+     * @param dictionary The dictionary to reference strings in.
+     */
+    public void writeTo(ByteBuffer buffer, StringDictionary dictionary) {
+        Varint.writeSigned(buffer, amount);
+        dictionary.writeReference(buffer, timeType.toString());
     }
 
     @Override
     public int byteLength() {
-        return 3 + timeType.toString().getBytes(StandardCharsets.UTF_8).length;
+        return byteLength(StringDictionary.EMPTY);
+    }
+
+    /**
+     * Gets the length of this frequency's byte form, when referencing strings in a dictionary.
+     *
+     * @param dictionary The dictionary to reference strings in.
+     * @return The length of this frequency's byte form.
+     */
+    public int byteLength(StringDictionary dictionary) {
+        return Varint.signedLength(amount) + dictionary.referenceLength(timeType.toString());
     }
 
     @Override
@@ -0,0 +1,103 @@
+package no.ntnu.idatx2001.g11.generics;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ *     Amounts of money, stored exactly as a long of minor units (øre),
+ *     where 100 minor units make 1 kr.
+ * </p><p>
+ *     Every amount in the program is stored in minor units, so adding up any amount of
+ *     transactions gives the exact total, instead of drifting like floats do.
+ *     Amounts are only turned into kroner when they're parsed from, or shown to the user.
+ * </p>
+ */
+public final class Money {
+    /**
+     * The amount of minor units in 1 kr.
+     */
+    public static final int MINOR_UNITS = 100;
+
+    private Money() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Parses an amount of kroner, with at most 2 decimals, into minor units.
+     * The amount is parsed exactly, so "0.10" is always 10 minor units.
+     *
+     * @param input The amount to parse, like "12", "12.5" or "-12.50".
+     *              Either a period or a comma can be used as the decimal separator.
+     * @return The amount, in minor units.
+     * @throws NumberFormatException if the input is not an amount of kroner,
+     *                               has more than 2 decimals, or is too large
+     */
+    public static long parse(String input) {
+        if (input == null) {
+            throw new NumberFormatException("\"input\" cannot be null");
+        }
+        String amount = input.strip().replace(',', '.');
+        boolean negative = amount.startsWith("-");
+        if (negative || amount.startsWith("+")) {
+            amount = amount.substring(1);
+        }
+        int separator = amount.indexOf('.');
+        String units = separator == -1 ? amount : amount.substring(0, separator);
+        String decimals = separator == -1 ? "" : amount.substring(separator + 1);
+        if (units.isEmpty() && decimals.isEmpty() || decimals.length() > 2
+                || !isDigits(units) || !isDigits(decimals)) {
+            throw new NumberFormatException("Not an amount of kroner: \"" + input + "\"");
+        }
+        try {
+            long minorUnits = Math.addExact(
+                    Math.multiplyExact(units.isEmpty() ? 0 : Long.parseLong(units), MINOR_UNITS),
+                    decimals.isEmpty() ? 0 : Long.parseLong((decimals + "0").substring(0, 2)));
+            return negative ? -minorUnits : minorUnits;
+        } catch (ArithmeticException ae) {
+            throw new NumberFormatException("Amount is too large: \"" + input + "\"");
+        }
+    }
+
+    /**
+     * Formats an amount of minor units as kroner, with 2 decimals.
+     *
+     * @param minorUnits The amount, in minor units.
+     * @return The amount in kroner, like "-12.50 kr".
+     */
+    public static String format(long minorUnits) {
+        String sign = minorUnits < 0 ? "-" : "";
+        long abs = Math.abs(minorUnits);
+        return String.format(Locale.ROOT, "%s%d.%02d kr",
+                sign, abs / MINOR_UNITS, abs % MINOR_UNITS);
+    }
+
+    /**
+     * Converts an amount of kroner into minor units, rounding to the closest minor unit.
+     * Used for amounts stored as floating point numbers by older save versions.
+     *
+     * @param units The amount, in kroner.
+     * @return The amount, in minor units.
+     */
+    public static long toMinorUnits(double units) {
+        return Math.round(units * MINOR_UNITS);
+    }
+
+    /**
+     * Converts an amount of minor units into kroner, for showing in graphs.
+     *
+     * @param minorUnits The amount, in minor units.
+     * @return The amount, in kroner.
+     */
+    public static double toUnits(long minorUnits) {
+        return (double) minorUnits / MINOR_UNITS;
+    }
+
+    private static boolean isDigits(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) < '0' || string.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
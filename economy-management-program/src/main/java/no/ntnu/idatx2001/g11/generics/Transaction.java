@@ -1,9 +1,10 @@
 package no.ntnu.idatx2001.g11.generics;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import no.ntnu.idatx2001.g11.usersaves.Savable;
+import no.ntnu.idatx2001.g11.usersaves.StringDictionary;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 
 /**
  * (replacing the RecurringTransaction and Data classes)
@@ -19,7 +20,7 @@ public class Transaction implements Savable {
 
     private String category;
     private String name;
-    private float amount;
+    private long amount;
     private LocalDate date;
     private Frequency frequency;
     private String currency;
@@ -30,8 +31,8 @@ public class Transaction implements Savable {
      *
      * @param name     the name of the transaction; must not be null or empty
      * @param category the category of the transaction; must not be null or empty
-     * @param amount   the amount of the transaction; if negative,
-     *                 the transaction will be regarded as income
+     * @param amount   the amount of the transaction, in minor units (see {@link Money});
+     *                 if negative, the transaction will be regarded as an expense
      * @param date     the date of the transaction; must not be null
      * @throws IllegalArgumentException if the name or category is null or empty,
      *                                  or if the date is null
@@ -40,7 +41,7 @@ public class Transaction implements Savable {
     public Transaction(
             String name,
             String category,
-            float amount,
+            long amount,
             LocalDate date
     ) {
         if (name == null || name.isBlank()) {
@@ -66,8 +67,8 @@ public class Transaction implements Savable {
      *
      * @param name      the name of the transaction
      * @param category  the category of the transaction
-     * @param amount    the amount of the transaction.
-     *                  If negative, the transaction will be regarded as income.
+     * @param amount    the amount of the transaction, in minor units (see {@link Money}).
+     *                  If negative, the transaction will be regarded as an expense.
      * @param date      the date of the transaction
      * @param frequency the frequency of the transaction (in days)
      * @throws IllegalArgumentException if the category is null or empty,
@@ -77,7 +78,7 @@ public class Transaction implements Savable {
     public Transaction(
             String name,
             String category,
-            float amount,
+            long amount,
             LocalDate date,
             Frequency frequency
     ) {
@@ -140,30 +141,30 @@ public class Transaction implements Savable {
     }
 
     /**
-     * Gets the cost/income of this transaction.
+     * Gets the cost/income of this transaction, in minor units (see {@link Money}).
      *
      * @return the cost/income of this transaction.
      */
-    public float getAmount() {
+    public long getAmount() {
         return amount;
     }
 
     /**
-     * Sets the cost/income of this transaction.
+     * Sets the cost/income of this transaction, in minor units (see {@link Money}).
      *
      * @param amount the cost/income to set.
      */
-    public void setAmount(float amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
     /**
-     * Gets the absolute value of this transaction.
+     * Gets the absolute value of this transaction, in minor units (see {@link Money}).
      *
      * @return the absolute value of this transaction.
      */
-    public float getAbsAmount() {
-        return Math.abs(amount);
+    public long getAbsAmount() {
+        return Math.abs(getAmount());
     }
 
     /**
@@ -172,7 +173,7 @@ public class Transaction implements Savable {
      * @return true if the transaction is income.
      */
     public boolean isIncome() {
-        return amount >= 0;
+        return getAmount() >= 0;
     }
 
     /**
@@ -181,7 +182,7 @@ public class Transaction implements Savable {
      * @return true if the transaction is recurring
      */
     public boolean isRecurring() {
-        return frequency != null;
+        return getFrequency() != null;
     }
 
     /**
@@ -239,77 +240,84 @@ public class Transaction implements Savable {
     }
 
     /**
-     * Converts the transaction into an array of bytes.<br/><br/>
+     * Makes a copy of this transaction, that doesn't change when this transaction does.
+     *
+     * @return a copy of this transaction.
+     */
+    public Transaction copy() {
+        Transaction copy = new Transaction(
+                getName(), getCategory(), getAmount(), getDate(), getFrequency());
+        copy.setCurrency(getCurrency());
+        copy.setTags(getTags() == null ? null : getTags().clone());
+        return copy;
+    }
+
+    /**
+     * Writes the transaction into a buffer.<br/><br/>
      * The bytes are stored as follows:<br/>
      * <ul>
-     *     <li><b>Byte 0 - 1:</b> The year of the purchase date, as a short.</li>
-     *     <li><b>Byte 2:</b> The month of the purchase date.</li>
-     *     <li><b>Byte 3:</b> The day of the purchase date.</li>
-     *     <li><b>Byte 4 - 7:</b> The purchase amount, as a float.</li>
-     *     <li><b>Byte 8:</b> The amount of bytes used to store the category.</li>
-     *     <li><b>Byte 9 - {@code n}:</b> The category, encoded to bytes using {@code UTF-8}.</li>
-     *     <li><b>Byte {@code n}+1:</b> The amount of bytes used to store the transaction name.</li>
-     *     <li><b>Byte {@code n}+2 - {@code m}:</b>
-     *     The transaction name, encoded to bytes using {@code UTF-8}.</li>
-     *     <li><b>Byte {@code m}+1:</b> If the transaction has a frequency</li>
-     *     <li><b>Byte {@code m}+2 - {@code l}:</b> The transaction frequency,
-     *     encoded to bytes as documented in {@link Frequency#asBytes()}.</li>
+     *     <li>The purchase date, as a zigzag-encoded varint of days since 1970-01-01.</li>
+     *     <li>The purchase amount in minor units, as a zigzag-encoded varint.</li>
+     *     <li>The category, as a string reference.</li>
+     *     <li>The transaction name, as a string reference.</li>
+     *     <li>One byte, for if the transaction has a frequency</li>
+     *     <li>The transaction frequency, if it has one,
+     *     encoded to bytes as documented in {@link Frequency#writeTo(ByteBuffer)}.</li>
      * </ul>
+     * Varints are documented in {@link Varint},
+     * and string references are documented in {@link StringDictionary}.
+     * Without a dictionary, every string is stored in full.
      *
-     * @return The data, converted to an array of bytes.
-     * @see Frequency#asBytes()
+     * @param buffer The buffer to write the transaction into.
+     * @see Frequency#writeTo(ByteBuffer)
      */
-
     @Override
-    public byte[] asBytes() {
-        byte[] byteArray = new byte[byteLength()];
-
-        byte[] yearBytes = ByteBuffer
-                .allocate(2)
-                .putShort((short) date.getYear())
-                .array();
-        System.arraycopy(yearBytes, 0, byteArray, 0, yearBytes.length);
-
-        byteArray[2] = (byte) date.getMonthValue();
-
-        byteArray[3] = (byte) date.getDayOfMonth();
-
-        byte[] amountBytes = ByteBuffer.allocate(4).putFloat(amount).array();
-        System.arraycopy(amountBytes, 0, byteArray, 4, amountBytes.length);
-
-        byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
-        byteArray[8] = (byte) categoryBytes.length;
-        System.arraycopy(categoryBytes, 0, byteArray, 9, categoryBytes.length);
-        int byteIndex = 9 + categoryBytes.length;
+    public void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, StringDictionary.EMPTY);
+    }
 
-        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
-        byteArray[byteIndex] = (byte) nameBytes.length;
-        byteIndex++;
-        System.arraycopy(nameBytes, 0, byteArray, byteIndex, nameBytes.length);
-        byteIndex += nameBytes.length;
+    /**
+     * Writes the transaction into a buffer, referencing strings in a dictionary.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)}.
+     *
+     * @param buffer The buffer to write the transaction into.
+     *               Must have at least {@link #byteLength(StringDictionary)} bytes remaining.
+     * @param dictionary The dictionary to reference strings in.
+     */
+    public void writeTo(ByteBuffer buffer, StringDictionary dictionary) {
+        Frequency frequency = getFrequency();
+        Varint.writeSigned(buffer, getDate().toEpochDay());
+        Varint.writeSigned(buffer, getAmount());
+        dictionary.writeReference(buffer, getCategory());
+        dictionary.writeReference(buffer, getName());
 
         if (frequency != null) {
-            byteArray[byteIndex] = 1;
-            byteIndex++;
-            System.arraycopy(
-                    frequency.asBytes(),
-                    0,
-                    byteArray,
-                    byteIndex,
-                    frequency.byteLength()
-            );
+            buffer.put((byte) 1);
+            frequency.writeTo(buffer, dictionary);
         } else {
-            byteArray[byteIndex] = 0;
+            buffer.put((byte) 0);
         }
-        return byteArray;
     }
 
     @Override
     public int byteLength() {
-        return (11
-                + category.getBytes(StandardCharsets.UTF_8).length
-                + name.getBytes(StandardCharsets.UTF_8).length
-                + (frequency != null ? frequency.byteLength() : 0));
+        return byteLength(StringDictionary.EMPTY);
+    }
+
+    /**
+     * Gets the length of this transaction's byte form, when referencing strings in a dictionary.
+     *
+     * @param dictionary The dictionary to reference strings in.
+     * @return The length of this transaction's byte form.
+     */
+    public int byteLength(StringDictionary dictionary) {
+        Frequency frequency = getFrequency();
+        return (1
+                + Varint.signedLength(getDate().toEpochDay())
+                + Varint.signedLength(getAmount())
+                + dictionary.referenceLength(getCategory())
+                + dictionary.referenceLength(getName())
+                + (frequency != null ? frequency.byteLength(dictionary) : 0));
     }
 
     /**
@@ -326,14 +334,16 @@ public class Transaction implements Savable {
         if (obj == null) {
             return false;
         }
-        if (getClass() != obj.getClass()) {
+        //Transactions read from a TransactionStore are views, but equal to other transactions.
+        if (!(obj instanceof Transaction)) {
             return false;
         }
         Transaction transaction = (Transaction) obj;
-        return (name.equals(transaction.getName())
-                && category.equals(transaction.getCategory())
-                && amount == transaction.getAmount()
-                && date.equals(transaction.getDate())
+        Frequency frequency = getFrequency();
+        return (getName().equals(transaction.getName())
+                && getCategory().equals(transaction.getCategory())
+                && getAmount() == transaction.getAmount()
+                && getDate().equals(transaction.getDate())
                 && (
                 frequency != null
                         ? frequency.equals(transaction.getFrequency())
@@ -348,11 +358,11 @@ public class Transaction implements Savable {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 31 * hash + name.hashCode();
-        hash = 31 * hash + category.hashCode();
-        hash = 31 * hash + Float.hashCode(amount);
-        hash = 31 * hash + date.hashCode();
-        hash = 31 * hash + (frequency != null ? frequency.hashCode() : 0);
+        hash = 31 * hash + getName().hashCode();
+        hash = 31 * hash + getCategory().hashCode();
+        hash = 31 * hash + Long.hashCode(getAmount());
+        hash = 31 * hash + getDate().hashCode();
+        hash = 31 * hash + (getFrequency() != null ? getFrequency().hashCode() : 0);
         return hash;
     }
 
@@ -367,7 +377,7 @@ public class Transaction implements Savable {
     public String toString() {
         return "Name:\n  " + getName()
                 + "\nCategory:\n  " + getCategory()
-                + "\nAmount:\n  " + getAmount()
+                + "\nAmount:\n  " + Money.format(getAmount())
                 + "\nDate:\n  " + getDate()
                 + "\nIncome?\n  " + isIncome()
                 + "\nRecurring?\n  " + isRecurring()
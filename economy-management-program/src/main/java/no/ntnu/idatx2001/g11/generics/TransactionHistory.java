@@ -1,55 +1,538 @@
 package no.ntnu.idatx2001.g11.generics;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 import no.ntnu.idatx2001.g11.exceptions.TransactionNotFoundException;
+import no.ntnu.idatx2001.g11.usersaves.CheckedRecords;
+import no.ntnu.idatx2001.g11.usersaves.HistorySegment;
 import no.ntnu.idatx2001.g11.usersaves.Savable;
+import no.ntnu.idatx2001.g11.usersaves.SaveWriter;
+import no.ntnu.idatx2001.g11.usersaves.StringDictionary;
+import no.ntnu.idatx2001.g11.usersaves.TransactionIndex;
+import no.ntnu.idatx2001.g11.usersaves.TransactionPages;
+import no.ntnu.idatx2001.g11.usersaves.Utf8;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 
 /**
  * Holds the entire transaction history for a single user,
- * and has the ability to save it as binary.
+ * and has the ability to save it as binary.<br/>
+ * Older years of the history may be kept in {@link HistorySegment}s that aren't loaded yet.
+ * These are loaded when a method needs the transactions in them,
+ * and methods that only need sums or counts use the totals stored with each segment.
+ * The totals of every segment and page that isn't loaded are kept summed up,
+ * as are those of the loaded transactions,
+ * so sums & counts are read without looping over any transaction or segment.<br/>
+ * A history can also be backed by the {@link TransactionPages} of an indexed save,
+ * where transactions are read a block at a time by {@link #get(int)} & date ranges,
+ * and everything else loads the pages in full.<br/>
+ * Loaded transactions are kept in a {@link TransactionStore}, as columns of primitive arrays,
+ * so sums & totals are computed without making a single transaction.<br/>
+ * The categories of the history are kept in a {@link CategoryRegistry},
+ * which gives every category an int id.
+ * Renaming a category never loads a segment or page.
+ * The new name of a category that was renamed after its segments & pages were stored
+ * is kept instead, and given to their transactions as they're read.
  */
 public class TransactionHistory implements Savable {
-    private final List<Transaction> transactionList;
+    private final TransactionStore transactionList;
+    private final TreeMap<Integer, HistorySegment> unloadedSegments;
+    private final Map<Integer, HistorySegment> loadedSegments;
+    //Transactions before every loaded transaction, that are read a block at a time
+    private TransactionPages pages;
+    //The totals of every segment and page that isn't loaded yet
+    private long unloadedIncome;
+    private long unloadedExpenses;
+    private int unloadedCount;
+    //The current name of every renamed category, by its name in unloaded segments & pages
+    private final Map<String, String> unloadedRenames;
 
     /**
      * Constructor.
      */
     public TransactionHistory() {
-        transactionList = new ArrayList<>();
+        this(new TransactionStore());
+    }
+
+    /**
+     * Makes a transaction history of the transactions in a store.
+     *
+     * @param transactionList The store of the transactions in the history.
+     */
+    private TransactionHistory(TransactionStore transactionList) {
+        this.transactionList = transactionList;
+        unloadedSegments = new TreeMap<>();
+        loadedSegments = new HashMap<>();
+        unloadedRenames = new HashMap<>();
+        pages = null;
+    }
+
+    /**
+     * Makes a transaction history backed by the pages of an indexed save.
+     * Transactions added later on come after every transaction in the pages.
+     *
+     * @param pages The pages of the transactions in the history.
+     */
+    public TransactionHistory(TransactionPages pages) {
+        this();
+        if (pages == null) {
+            throw new IllegalArgumentException("\"pages\" cannot be null");
+        }
+        this.pages = pages;
+        addUnloaded(pages.getIncome(), pages.getExpenses(), pages.size(), 1);
+    }
+
+    /**
+     * Adds the totals of a segment or pages to the totals of everything that isn't loaded,
+     * or takes them away.
+     *
+     * @param income The total income of the segment or pages.
+     * @param expenses The total expenses of the segment or pages.
+     * @param count The amount of transactions in the segment or pages.
+     * @param sign 1 to add the totals, or -1 to take them away.
+     */
+    private void addUnloaded(long income, long expenses, int count, int sign) {
+        unloadedIncome += sign * income;
+        unloadedExpenses += sign * expenses;
+        unloadedCount += sign * count;
     }
 
     /**
      * Gets transactions stored in this object.
+     * Every segment and page that isn't loaded yet is loaded first.
      *
      * @return transactions stored in this object.
+     * @throws UncheckedIOException if a segment or page could not be loaded
      */
     public List<Transaction> getTransactions() {
+        loadAll();
         return transactionList;
     }
 
+    /**
+     * Gets the transactions that are loaded, without loading any segment or page.
+     * Segments & pages that are loaded later on are added to the same list.
+     *
+     * @return the loaded transactions stored in this object.
+     */
+    public List<Transaction> getLoadedTransactions() {
+        return transactionList;
+    }
+
+    /**
+     * Gets the transactions that can be listed without loading any segment:
+     * the transactions in the pages that aren't loaded yet, followed by the loaded transactions.
+     * Transactions of the pages are read a block at a time as they're listed,
+     * so the pages are never loaded in full.
+     * The list is a view, so it follows the history as it changes.
+     * Transactions can be added & removed past the pages.
+     *
+     * @return the transactions that can be listed without loading any segment.
+     * @throws UncheckedIOException if a page could not be read while listing it
+     */
+    public List<Transaction> getListedTransactions() {
+        return new AbstractList<>() {
+            @Override
+            public Transaction get(int index) {
+                int pageCount = getPageCount();
+                return index < pageCount ? withCurrentCategory(pages.get(index))
+                        : transactionList.get(index - pageCount);
+            }
+
+            @Override
+            public int size() {
+                return getPageCount() + transactionList.size();
+            }
+
+            @Override
+            public void add(int index, Transaction transaction) {
+                transactionList.add(index - getPageCount(), transaction);
+            }
+
+            @Override
+            public Transaction remove(int index) {
+                return transactionList.remove(index - getPageCount());
+            }
+        };
+    }
+
+    /**
+     * Gets the amount of transactions in the pages that aren't loaded yet.
+     *
+     * @return The amount of transactions in the pages, or 0 if there are none.
+     */
+    private int getPageCount() {
+        return pages != null ? pages.size() : 0;
+    }
+
+    /**
+     * Gives a transaction read from a segment or page the current name of its category,
+     * if the category was renamed after the segment or page was stored.
+     * Renamed transactions are copied, since pages may keep the transactions they read.
+     *
+     * @param transaction The transaction read from a segment or page.
+     * @return The transaction, or a copy of it with the current name of its category.
+     */
+    private Transaction withCurrentCategory(Transaction transaction) {
+        String category = unloadedRenames.get(transaction.getCategory());
+        if (category == null) {
+            return transaction;
+        }
+        Transaction renamed = transaction.copy();
+        renamed.setCategory(category);
+        return renamed;
+    }
+
+    /**
+     * Gives every transaction read from a segment or page the current name of its category,
+     * as documented in {@link #withCurrentCategory(Transaction)}.
+     *
+     * @param transactions The transactions read from a segment or page.
+     * @return The transactions, with the current name of their category.
+     */
+    private List<Transaction> withCurrentCategories(List<Transaction> transactions) {
+        if (unloadedRenames.isEmpty()) {
+            return transactions;
+        }
+        List<Transaction> renamed = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            renamed.add(withCurrentCategory(transaction));
+        }
+        return renamed;
+    }
+
+    /**
+     * Forgets the renames of categories in segments & pages once every one of them is loaded,
+     * since no transaction is left with the name it was stored with.
+     */
+    private void forgetRenamesIfLoaded() {
+        if (pages == null && unloadedSegments.isEmpty()) {
+            unloadedRenames.clear();
+        }
+    }
+
+    /**
+     * Adds a segment of the transaction history, which is loaded once it's needed.
+     * Used when loading users, where older years are stored in segments of their own.
+     *
+     * @param segment The segment to add.
+     * @throws IllegalArgumentException if the history already has a segment of the same year
+     */
+    public void addSegment(HistorySegment segment) {
+        if (segment == null) {
+            throw new IllegalArgumentException("\"segment\" cannot be null");
+        }
+        if (unloadedSegments.containsKey(segment.getYear())
+                || loadedSegments.containsKey(segment.getYear())) {
+            throw new IllegalArgumentException(
+                    "History already has a segment of year " + segment.getYear());
+        }
+        unloadedSegments.put(segment.getYear(), segment);
+        addUnloaded(segment.getIncome(), segment.getExpenses(),
+                segment.getTransactionCount(), 1);
+    }
+
+    /**
+     * Gets every segment that isn't loaded yet, ordered by year.
+     *
+     * @return every segment that isn't loaded yet.
+     */
+    public Collection<HistorySegment> getUnloadedSegments() {
+        return Collections.unmodifiableCollection(unloadedSegments.values());
+    }
+
+    /**
+     * Gets every segment of the transaction history, both loaded and not, ordered by year.
+     *
+     * @return every segment of the transaction history.
+     */
+    public List<HistorySegment> getSegments() {
+        List<HistorySegment> segments = new ArrayList<>(loadedSegments.values());
+        segments.addAll(unloadedSegments.values());
+        segments.sort(Comparator.comparingInt(HistorySegment::getYear));
+        return segments;
+    }
+
+    /**
+     * Gets the segment a year of transactions was loaded from.
+     *
+     * @param year The year to get the segment of.
+     * @return The segment the year was loaded from,
+     *     or null if the year wasn't loaded from a segment.
+     */
+    public HistorySegment getLoadedSegment(int year) {
+        return loadedSegments.get(year);
+    }
+
+    /**
+     * Loads the segment of a year, if it isn't loaded yet.
+     * The transactions in the segment are inserted before every loaded transaction
+     * of a later year, so a history sorted by date stays sorted.
+     *
+     * @param year The year to load.
+     * @throws UncheckedIOException if the segment could not be loaded
+     */
+    private void loadSegment(int year) {
+        HistorySegment segment = unloadedSegments.get(year);
+        if (segment == null) {
+            return;
+        }
+        List<Transaction> transactions;
+        try {
+            transactions = segment.load();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        int index = 0;
+        long nextYear = LocalDate.of(year + 1, 1, 1).toEpochDay();
+        while (index < transactionList.size() && transactionList.getEpochDay(index) < nextYear) {
+            index++;
+        }
+        transactionList.addAll(index, withCurrentCategories(transactions));
+        unloadedSegments.remove(year);
+        loadedSegments.put(year, segment);
+        addUnloaded(segment.getIncome(), segment.getExpenses(),
+                segment.getTransactionCount(), -1);
+        forgetRenamesIfLoaded();
+    }
+
+    /**
+     * Loads every segment and page that isn't loaded yet.
+     *
+     * @throws UncheckedIOException if a segment or page could not be loaded
+     */
+    private void loadAll() {
+        if (pages != null) {
+            transactionList.addAll(0, withCurrentCategories(pages.readAll()));
+            addUnloaded(pages.getIncome(), pages.getExpenses(), pages.size(), -1);
+            pages = null;
+        }
+        while (!unloadedSegments.isEmpty()) {
+            loadSegment(unloadedSegments.firstKey());
+        }
+        forgetRenamesIfLoaded();
+    }
+
+    /**
+     * Gets a transaction by its index in {@link #getTransactions()}.
+     * If the history is backed by pages, only the page of the transaction is read.
+     *
+     * @param index The index of the transaction.
+     * @return The transaction at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws UncheckedIOException if a segment or page could not be loaded
+     */
+    public Transaction get(int index) {
+        if (pages != null && unloadedSegments.isEmpty()) {
+            return index < pages.size() ? withCurrentCategory(pages.get(index))
+                    : transactionList.get(index - pages.size());
+        }
+        return getTransactions().get(index);
+    }
+
+    /**
+     * Gets the amount of transactions in the transaction history,
+     * including those in segments and pages that aren't loaded yet.
+     *
+     * @return The amount of transactions in the transaction history.
+     */
+    public int size() {
+        return transactionList.size() + unloadedCount;
+    }
+
+    /**
+     * Gets the date of the earliest transaction in the transaction history.
+     * Only segments that could have an earlier transaction than those loaded are loaded,
+     * and pages are never loaded.
+     *
+     * @return The date of the earliest transaction, or null if the history is empty.
+     * @throws UncheckedIOException if a segment could not be loaded
+     */
+    public LocalDate getEarliestDate() {
+        while (true) {
+            LocalDate earliestDate = pages != null ? pages.getEarliestDate() : null;
+            LocalDate earliestLoadedDate = transactionList.getEarliestDate();
+            if (earliestDate == null
+                    || earliestLoadedDate != null && earliestLoadedDate.isBefore(earliestDate)) {
+                earliestDate = earliestLoadedDate;
+            }
+            if (unloadedSegments.isEmpty() || earliestDate != null
+                    && unloadedSegments.firstKey() > earliestDate.getYear()) {
+                return earliestDate;
+            }
+            loadSegment(unloadedSegments.firstKey());
+        }
+    }
+
+    /**
+     * Gets the date of the latest transaction in the transaction history.
+     * Only segments that could have a later transaction than those loaded are loaded,
+     * and pages are never loaded.
+     *
+     * @return The date of the latest transaction, or null if the history is empty.
+     * @throws UncheckedIOException if a segment could not be loaded
+     */
+    public LocalDate getLatestDate() {
+        while (true) {
+            LocalDate latestDate = pages != null ? pages.getLatestDate() : null;
+            LocalDate latestLoadedDate = transactionList.getLatestDate();
+            if (latestDate == null
+                    || latestLoadedDate != null && latestLoadedDate.isAfter(latestDate)) {
+                latestDate = latestLoadedDate;
+            }
+            if (unloadedSegments.isEmpty()
+                    || latestDate != null && unloadedSegments.lastKey() < latestDate.getYear()) {
+                return latestDate;
+            }
+            loadSegment(unloadedSegments.lastKey());
+        }
+    }
+
+    /**
+     * Gets the sum of every transaction in segments and pages that aren't loaded yet,
+     * in minor units (see {@link Money}).
+     *
+     * @return The sum of every transaction that isn't loaded.
+     */
+    public long getUnloadedSum() {
+        return unloadedIncome - unloadedExpenses;
+    }
+
+    /**
+     * Gets the sum of every transaction in segments that aren't loaded yet,
+     * in minor units (see {@link Money}).
+     * Unlike {@link #getUnloadedSum()}, transactions in pages aren't counted,
+     * since they're listed by {@link #getListedTransactions()}.
+     *
+     * @return The sum of every transaction that isn't listed.
+     */
+    public long getUnlistedSum() {
+        long sum = getUnloadedSum();
+        if (pages != null) {
+            sum -= pages.getIncome() - pages.getExpenses();
+        }
+        return sum;
+    }
+
+    /**
+     * Makes a copy of the transaction history, with a copy of every transaction in it.
+     * Changing the original history or its transactions doesn't change the copy.
+     * Segments & pages that aren't loaded are shared, since they never change.
+     * The loaded transactions are only copied once either history changes them,
+     * as documented in {@link TransactionStore#copy()}.
+     *
+     * @return a copy of the transaction history.
+     */
+    public TransactionHistory copy() {
+        TransactionHistory copy = new TransactionHistory(transactionList.copy());
+        copy.pages = pages;
+        copy.unloadedSegments.putAll(unloadedSegments);
+        copy.loadedSegments.putAll(loadedSegments);
+        copy.unloadedIncome = unloadedIncome;
+        copy.unloadedExpenses = unloadedExpenses;
+        copy.unloadedCount = unloadedCount;
+        copy.unloadedRenames.putAll(unloadedRenames);
+        return copy;
+    }
+
     /**
      * Returns a sub-set of the transaction history,
      * containing only transactions within a specified time frame.
+     * Transactions read from pages come first,
+     * followed by the loaded transactions within the range, ordered by date.
      *
      * @param startDate the start date of the range (Inclusive).
      * @param endDate   the end date of the range (Exclusive).
-     * @return A {@link TransactionHistory} containing only
+     * @return A {@link TransactionHistory} containing copies of only
      *         transactions within the specified date range.
+     *         Only the segments of years within the range are loaded,
+     *         and only the pages that can have transactions within the range are read.
+     * @throws UncheckedIOException if a segment or page could not be loaded
+     * @see #viewTransactionsInRange(LocalDate, LocalDate)
      */
     public TransactionHistory getTransactionsInRange(LocalDate startDate, LocalDate endDate) {
         TransactionHistory transactionsInRange = new TransactionHistory();
-        for (Transaction transaction : transactionList) {
-            if (!transaction.getDate().isBefore(startDate)
-                    && transaction.getDate().isBefore(endDate)) {
-                transactionsInRange.addTransaction(transaction);
+        transactionsInRange.transactionList.addAll(viewTransactionsInRange(startDate, endDate));
+        return transactionsInRange;
+    }
+
+    /**
+     * Gets the transactions within a specified time frame, as views instead of copies.
+     * Transactions read from pages come first,
+     * followed by the loaded transactions within the range, ordered by date.
+     * The loaded transactions are found by binary search in the date order of the history,
+     * so only those within the range are read.<br/>
+     * The list can't be changed, and shouldn't be used after a transaction is added or removed,
+     * or changes its date.
+     *
+     * @param startDate the start date of the range (Inclusive).
+     * @param endDate   the end date of the range (Exclusive).
+     * @return The transactions within the specified date range.
+     *         Only the segments of years within the range are loaded,
+     *         and only the pages that can have transactions within the range are read.
+     * @throws UncheckedIOException if a segment or page could not be loaded
+     */
+    public List<Transaction> viewTransactionsInRange(LocalDate startDate, LocalDate endDate) {
+        loadSegmentsInRange(startDate, endDate);
+        List<Transaction> loadedInRange = transactionList.getInRange(
+                startDate.toEpochDay(), endDate.toEpochDay());
+        if (pages == null) {
+            return loadedInRange;
+        }
+        List<Transaction> inRange = new ArrayList<>(
+                withCurrentCategories(pages.getInRange(startDate, endDate)));
+        inRange.addAll(loadedInRange);
+        return Collections.unmodifiableList(inRange);
+    }
+
+    /**
+     * Gets the sum of every transaction within a specified time frame,
+     * in minor units (see {@link Money}).
+     * Loaded transactions are summed without making a single transaction.
+     *
+     * @param startDate the start date of the range (Inclusive).
+     * @param endDate   the end date of the range (Exclusive).
+     * @return The sum of every transaction within the specified date range.
+     * @throws UncheckedIOException if a segment or page could not be loaded
+     */
+    public long getSumInRange(LocalDate startDate, LocalDate endDate) {
+        loadSegmentsInRange(startDate, endDate);
+        long sum = transactionList.getSumInRange(startDate.toEpochDay(), endDate.toEpochDay());
+        if (pages != null) {
+            for (Transaction transaction : pages.getInRange(startDate, endDate)) {
+                sum += transaction.getAmount();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Loads the segments of every year within a time frame, if they aren't loaded yet.
+     *
+     * @param startDate the start date of the range (Inclusive).
+     * @param endDate   the end date of the range (Exclusive).
+     * @throws UncheckedIOException if a segment could not be loaded
+     */
+    private void loadSegmentsInRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate.getYear() <= endDate.getYear()) {
+            for (Integer year : new ArrayList<>(unloadedSegments
+                    .subMap(startDate.getYear(), true, endDate.getYear(), true).keySet())) {
+                loadSegment(year);
             }
         }
-        return transactionsInRange;
     }
 
     /**
@@ -64,7 +547,7 @@ public class TransactionHistory implements Savable {
         HashMap<String, TransactionHistory> transactionsByType = new HashMap<>();
         transactionsByType.put("Income", new TransactionHistory());
         transactionsByType.put("Expenses", new TransactionHistory());
-        transactionList.forEach(transaction -> transactionsByType.get(
+        getTransactions().forEach(transaction -> transactionsByType.get(
                 transaction.isIncome() ? "Income" : "Expenses").addTransaction(transaction));
         return transactionsByType;
     }
@@ -72,6 +555,8 @@ public class TransactionHistory implements Savable {
     /**
      * Returns a map containing all transactions, grouped by transaction category.
      * The values are all sub-sets of the transactions contained within the transaction history.
+     * Transactions are grouped by the id of their category,
+     * so no category name is hashed more than once.
      * <br/>
      * The map's keys will all be categories for existing transactions.<br/>
      * <b>NB: If there is no transaction of a specific category in the transaction history,
@@ -80,26 +565,132 @@ public class TransactionHistory implements Savable {
      * @return The map of expenses grouped by category.
      */
     public Map<String, TransactionHistory> getTransactionsByCategory() {
+        loadAll();
+        CategoryRegistry categories = transactionList.getCategories();
+        TransactionHistory[] histories = new TransactionHistory[categories.size()];
+        for (int i = 0; i < transactionList.size(); i++) {
+            int categoryId = transactionList.getCategoryId(i);
+            if (histories[categoryId] == null) {
+                histories[categoryId] = new TransactionHistory();
+            }
+            histories[categoryId].transactionList.add(transactionList.get(i));
+        }
         HashMap<String, TransactionHistory> transactionsByCategory = new HashMap<>();
-        for (Transaction transaction : transactionList) {
-            String category = transaction.getCategory();
-            transactionsByCategory.computeIfAbsent(category, c -> new TransactionHistory());
-            transactionsByCategory.get(category).addTransaction(transaction);
+        for (int categoryId = 0; categoryId < histories.length; categoryId++) {
+            if (histories[categoryId] != null) {
+                transactionsByCategory.put(categories.getName(categoryId), histories[categoryId]);
+            }
         }
         return transactionsByCategory;
     }
 
+    /**
+     * Gets the registry of the categories in the transaction history.
+     * Categories of segments and pages that aren't loaded yet are registered once loaded.
+     *
+     * @return The registry of the categories in the transaction history.
+     */
+    public CategoryRegistry getCategories() {
+        return transactionList.getCategories();
+    }
+
+    /**
+     * Renames a category, and with it every transaction of the category.
+     * Only the name of the category's id is changed, no matter how many transactions it has,
+     * and no segment or page is loaded.
+     * Transactions that aren't loaded yet are given the new name once they're read,
+     * as documented in {@link #getUnloadedRenames()}.<br/>
+     * While anything isn't loaded, a category that isn't registered may still be in a segment
+     * or page, so it can be renamed all the same.
+     * Its transactions are registered under the new name once they're loaded.
+     *
+     * @param name The current name of the category.
+     * @param newName The new name of the category.
+     * @throws IllegalArgumentException if the category isn't registered, and everything is loaded,
+     *     or the new name is blank or already a registered category
+     */
+    public void renameCategory(String name, String newName) {
+        CategoryRegistry categories = transactionList.getCategories();
+        boolean unloaded = pages != null || !unloadedSegments.isEmpty();
+        if (categories.getId(name) >= 0 || !unloaded) {
+            categories.rename(name, newName);
+        } else {
+            categories.checkNewName(newName);
+        }
+        if (unloaded) {
+            //Categories already renamed follow along, and stored names renamed before keep theirs.
+            unloadedRenames.replaceAll((storedName, category) ->
+                    category.equals(name) ? newName : category);
+            unloadedRenames.putIfAbsent(name, newName);
+            //Renamed back to the name it was stored with.
+            unloadedRenames.entrySet().removeIf(rename ->
+                    rename.getKey().equals(rename.getValue()));
+        }
+    }
+
+    /**
+     * Gets the current name of every category renamed after the segments & pages
+     * that aren't loaded yet were stored, by the name the category has in them.
+     * Once every segment & page is loaded, no rename is kept.
+     *
+     * @return The current name of every renamed category, by the name it was stored with.
+     */
+    public Map<String, String> getUnloadedRenames() {
+        return Collections.unmodifiableMap(unloadedRenames);
+    }
+
+    /**
+     * Adds the rename of a category in segments & pages that aren't loaded yet.
+     * Used when loading users, where the renames are stored along with the segments.
+     *
+     * @param storedName The name the category is stored with in the segments & pages.
+     * @param name The current name of the category.
+     * @throws IllegalArgumentException if either name is null
+     */
+    public void addUnloadedRename(String storedName, String name) {
+        if (storedName == null || name == null) {
+            throw new IllegalArgumentException("\"storedName\" and \"name\" cannot be null");
+        }
+        unloadedRenames.put(storedName, name);
+    }
+
     /**
      * Adds a transaction to the transaction history.
-     * Will throw a {@code DuplicateTransactionException} if the transaction already exists.
+     * Will throw a {@code DuplicateTransactionException} if the transaction already exists.<br/>
+     * The history stores a copy of the transaction's fields, not the transaction itself,
+     * so changing the transaction afterwards doesn't change the history.
+     * Changes should be made through the stored transaction that's returned instead.
      *
      * @param transaction The transaction to add.
+     * @return The stored transaction, which changes the history when it's changed.
+     * @see TransactionStore
      */
-    public void addTransaction(Transaction transaction) {
+    public Transaction addTransaction(Transaction transaction) {
         if (transaction == null) {
             throw new IllegalArgumentException("\"transaction\" cannot be null");
         }
+        loadSegment(transaction.getDate().getYear());
         transactionList.add(transaction);
+        return transactionList.get(transactionList.size() - 1);
+    }
+
+    /**
+     * Adds a transaction to the transaction history, after every loaded transaction
+     * on or before its date, and before every loaded transaction after it.
+     * The position is found by binary search in the date order of the loaded transactions,
+     * so loaded transactions that are in date order stay in date order, without sorting them.
+     * Like {@link #addTransaction(Transaction)}, a copy of the transaction's fields is stored.
+     *
+     * @param transaction The transaction to add.
+     * @return The stored transaction, which changes the history when it's changed.
+     * @see TransactionStore#addInDateOrder(Transaction)
+     */
+    public Transaction addTransactionInDateOrder(Transaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("\"transaction\" cannot be null");
+        }
+        loadSegment(transaction.getDate().getYear());
+        return transactionList.get(transactionList.addInDateOrder(transaction));
     }
 
     /**
@@ -112,6 +703,10 @@ public class TransactionHistory implements Savable {
         if (transaction == null) {
             throw new IllegalArgumentException("\"transaction\" cannot be null");
         }
+        loadSegment(transaction.getDate().getYear());
+        if (pages != null && !transactionList.contains(transaction)) {
+            loadAll();
+        }
         if (!transactionList.remove(transaction)) {
             throw new TransactionNotFoundException(transaction);
         }
@@ -119,92 +714,333 @@ public class TransactionHistory implements Savable {
 
     /**
      * Gets the sum of every income/expense in the transaction history.
-     * Numbers are converted to {@code double} before summing, to prevent loss of precision.
+     * Amounts are summed exactly, as longs of minor units (see {@link Money}),
+     * and the sums are kept up to date as transactions change.
      *
      * @param getIncome If this method should return the total income.
      *                  Returns total expenses otherwise.
      * @return The sum of every income/expense.
      */
-    private double getTransactionTotal(boolean getIncome) {
-        return transactionList
-                .stream()
-                .filter(transaction -> transaction.isIncome() == getIncome)
-                .mapToDouble(Transaction::getAbsAmount)
-                .sum();
+    private long getTransactionTotal(boolean getIncome) {
+        return (getIncome ? unloadedIncome : unloadedExpenses)
+                + transactionList.getTotal(getIncome);
     }
 
     /**
-     * Gets the sum of every income in the transaction history.
-     * Numbers are converted to {@code double} before summing, to prevent loss of precision.
+     * Gets the sum of every income in the transaction history, in minor units.
      *
      * @return The sum of every income.
      */
-    public double getTotalIncome() {
+    public long getTotalIncome() {
         return getTransactionTotal(true);
     }
 
     /**
-     * Gets the sum of every expense in the transaction history.
-     * Numbers are converted to {@code double} before summing, to prevent loss of precision.
+     * Gets the sum of every expense in the transaction history, in minor units.
      *
      * @return The sum of every expense.
      */
-    public double getTotalExpenses() {
+    public long getTotalExpenses() {
         return getTransactionTotal(false);
     }
 
     /**
-     * Gets the sum of every transaction in the transaction history.
-     * Numbers are converted to {@code double} before summing, to prevent loss of precision.
+     * Gets the sum of every transaction in the transaction history, in minor units.
+     * Amounts are summed exactly, as longs of minor units (see {@link Money}).
      *
      * @return The sum of every transaction.
      */
-    public double getSum() {
-        return transactionList
-                .stream()
-                .mapToDouble(transaction -> (double) transaction.getAmount())
-                .sum();
+    public long getSum() {
+        return getUnloadedSum() + transactionList.getSum();
     }
 
     /**
-     * Converts the transaction history into an array of bytes.<br/><br/>
+     * Writes the transaction history into a buffer.<br/><br/>
      * The bytes are stored as follows:<br/>
      * <ul>
-     *     <li><b>Byte 0 - 1:</b> The amount of transactions in the history, as a short.</li>
-     *     <li><b>Byte 2 - n:</b> A transaction, encoded to bytes as documented in
-     *     {@link Transaction#asBytes()}.</li>
-     *     <li><b>Byte n+1 - m:</b> Another transaction, encoded to bytes.</li>
+     *     <li>A dictionary of repeated strings, encoded to bytes as documented in
+     *     {@link StringDictionary#writeTo(ByteBuffer)}.</li>
+     *     <li>The amount of transactions in the history, as a varint.</li>
+     *     <li>A transaction, encoded to bytes as documented in
+     *     {@link Transaction#writeTo(ByteBuffer)}, referencing strings in the dictionary.</li>
+     *     <li>Another transaction, encoded to bytes.</li>
      * </ul>
      * This is repeated for every transaction in the transaction history.
+     * Varints are documented in {@link Varint}.
+     *
+     * @param buffer The buffer to write the transaction history into.
+     * @see Transaction#writeTo(ByteBuffer)
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        loadAll();
+        StringDictionary dictionary = StringDictionary.ofTransactions(transactionList);
+        dictionary.writeTo(buffer);
+        Varint.write(buffer, transactionList.size());
+        for (Transaction transaction : transactionList) {
+            transaction.writeTo(buffer, dictionary);
+        }
+    }
+
+    /**
+     * Writes the transaction history through a save writer, one transaction at a time.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)}.
      *
-     * @return The transaction history, converted to an array of bytes.
-     * @see Transaction#asBytes()
+     * @param writer The save writer to write the transaction history through.
+     * @throws IOException if the bytes could not be written
      */
     @Override
-    public byte[] asBytes() {
-        byte[] byteArray = new byte[byteLength()];
+    public void writeTo(SaveWriter writer) throws IOException {
+        loadAll();
+        writeRowsTo(writer, StringDictionary.ofTransactions(transactionList));
+    }
+
+    /**
+     * Writes the transaction history through a save writer, one transaction at a time,
+     * as documented in {@link #writeTo(ByteBuffer)}.
+     *
+     * @param writer The save writer to write the transaction history through.
+     * @param dictionary The dictionary of the transaction history.
+     * @throws IOException if the bytes could not be written
+     */
+    private void writeRowsTo(SaveWriter writer, StringDictionary dictionary) throws IOException {
+        dictionary.writeTo(writer);
+        int count = transactionList.size();
+        Varint.write(writer.reserve(Varint.length(count)), count);
+        for (Transaction transaction : transactionList) {
+            transaction.writeTo(writer.reserve(transaction.byteLength(dictionary)), dictionary);
+        }
+    }
+
+    /**
+     * Writes the transaction history through a save writer, one column at a time.<br/><br/>
+     * Instead of storing every transaction after each other,
+     * every field is stored for every transaction after each other,
+     * so similar values are next to each other,
+     * and fields that aren't needed can be skipped as a whole.
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li>A dictionary of repeated strings, encoded to bytes as documented in
+     *     {@link StringDictionary#writeTo(ByteBuffer)}.</li>
+     *     <li>The amount of transactions in the history, as a varint.</li>
+     *     <li>The dates column: Every purchase date, as a zigzag-encoded varint of days
+     *     since the previous purchase date.
+     *     The first purchase date is stored as days since 1970-01-01.</li>
+     *     <li>The amounts column: Every purchase amount, as a zigzag-encoded varint of
+     *     minor units since the previous purchase amount.
+     *     The first purchase amount is stored as minor units since 0.</li>
+     *     <li>The categories column: Every category, as a string reference.</li>
+     *     <li>The names column: Every transaction name, as a string reference.</li>
+     *     <li>The frequencies column: For every transaction, one byte for if it has a frequency,
+     *     followed by the frequency if it has one,
+     *     encoded to bytes as documented in {@link Frequency#writeTo(ByteBuffer)}.</li>
+     * </ul>
+     * Every column starts with the amount of bytes used to store the rest of the column,
+     * as a varint.
+     * Varints are documented in {@link Varint},
+     * and string references are documented in {@link StringDictionary}.
+     *
+     * @param writer The save writer to write the transaction history through.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeColumnsTo(SaveWriter writer) throws IOException {
+        loadAll();
+        StringDictionary dictionary = StringDictionary.ofTransactions(transactionList);
+        dictionary.writeTo(writer);
+        int count = transactionList.size();
+        Varint.write(writer.reserve(Varint.length(count)), count);
+
+        long datesLength = 0;
+        long previousDay = 0;
+        for (int i = 0; i < count; i++) {
+            long day = transactionList.getEpochDay(i);
+            datesLength += Varint.signedLength(day - previousDay);
+            previousDay = day;
+        }
+        writeColumnLength(writer, datesLength);
+        previousDay = 0;
+        for (int i = 0; i < count; i++) {
+            long day = transactionList.getEpochDay(i);
+            Varint.writeSigned(writer.reserve(Varint.signedLength(day - previousDay)),
+                    day - previousDay);
+            previousDay = day;
+        }
+
+        long amountsLength = 0;
+        long previousAmount = 0;
+        for (int i = 0; i < count; i++) {
+            long amount = transactionList.getAmount(i);
+            amountsLength += Varint.signedLength(amount - previousAmount);
+            previousAmount = amount;
+        }
+        writeColumnLength(writer, amountsLength);
+        previousAmount = 0;
+        for (int i = 0; i < count; i++) {
+            long amount = transactionList.getAmount(i);
+            Varint.writeSigned(writer.reserve(Varint.signedLength(amount - previousAmount)),
+                    amount - previousAmount);
+            previousAmount = amount;
+        }
+
+        writeStringColumn(writer, dictionary, Transaction::getCategory);
+        writeStringColumn(writer, dictionary, Transaction::getName);
+
+        long frequenciesLength = count;
+        for (Transaction transaction : transactionList) {
+            if (transaction.getFrequency() != null) {
+                frequenciesLength += transaction.getFrequency().byteLength(dictionary);
+            }
+        }
+        writeColumnLength(writer, frequenciesLength);
+        for (Transaction transaction : transactionList) {
+            Frequency frequency = transaction.getFrequency();
+            if (frequency != null) {
+                ByteBuffer buffer = writer.reserve(1 + frequency.byteLength(dictionary));
+                buffer.put((byte) 1);
+                frequency.writeTo(buffer, dictionary);
+            } else {
+                writer.reserve(1).put((byte) 0);
+            }
+        }
+    }
 
-        byte[] transactionAmountBytes = ByteBuffer
-                .allocate(2)
-                .putShort((short) transactionList.size())
-                .array();
-        System.arraycopy(transactionAmountBytes, 0, byteArray, 0,
-                transactionAmountBytes.length);
+    /**
+     * Writes the transaction history through a save writer,
+     * with older years stored in segment files of their own.<br/><br/>
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li>The amount of segments, as a varint.</li>
+     *     <li>A segment, encoded to bytes as documented in
+     *     {@link HistorySegment#writeTo(ByteBuffer)}.</li>
+     *     <li>Another segment, encoded to bytes.</li>
+     *     <li>The amount of categories renamed after the segments that aren't loaded
+     *     were stored, as a varint.</li>
+     *     <li>The name a renamed category is stored with in the segments,
+     *     followed by its current name, each as a varint length
+     *     followed by the name encoded to bytes using UTF-8.</li>
+     *     <li>Another renamed category, encoded to bytes.</li>
+     *     <li>Every transaction of a year without a segment,
+     *     encoded to bytes as documented in {@link #writeTo(ByteBuffer)}.</li>
+     * </ul>
+     * Renamed categories are stored instead of rewriting the segments that aren't loaded,
+     * as documented in {@link #getUnloadedRenames()}.
+     *
+     * @param writer The save writer to write the transaction history through.
+     * @param segments The segments to refer to. Every segment that isn't loaded
+     *                 must be one of them, and the segments must be in order of year.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeSegmentsTo(SaveWriter writer, List<HistorySegment> segments)
+            throws IOException {
+        Set<Integer> segmentYears = new HashSet<>();
+        Varint.write(writer.reserve(Varint.length(segments.size())), segments.size());
+        for (HistorySegment segment : segments) {
+            segmentYears.add(segment.getYear());
+            segment.writeTo(writer.reserve(segment.byteLength()));
+        }
+        Varint.write(writer.reserve(Varint.length(unloadedRenames.size())),
+                unloadedRenames.size());
+        for (Map.Entry<String, String> rename : unloadedRenames.entrySet()) {
+            writeName(writer, rename.getKey());
+            writeName(writer, rename.getValue());
+        }
+        TransactionHistory recentHistory = new TransactionHistory();
+        for (Transaction transaction : transactionList) {
+            if (!segmentYears.contains(transaction.getDate().getYear())) {
+                recentHistory.transactionList.add(transaction);
+            }
+        }
+        recentHistory.writeTo(writer);
+    }
+
+    /**
+     * Writes the transaction history through a save writer, followed by an index,
+     * so blocks of transactions can be read on their own.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * followed by the index, stored as documented in
+     * {@link TransactionIndex#writeTo(ByteBuffer)}.
+     *
+     * @param writer The save writer to write the transaction history through.
+     * @throws IOException if the bytes could not be written
+     * @see TransactionPages
+     */
+    public void writeIndexedTo(SaveWriter writer) throws IOException {
+        loadAll();
+        StringDictionary dictionary = StringDictionary.ofTransactions(transactionList);
+        writeRowsTo(writer, dictionary);
+        TransactionIndex index = TransactionIndex.of(transactionList, dictionary);
+        index.writeTo(writer.reserve(index.byteLength()));
+    }
 
-        int byteOffset = 2;
+    /**
+     * Writes the transaction history through a save writer, with every transaction
+     * stored as a checked record, so a damaged transaction can be skipped on its own.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * except that the dictionary is followed by its checksum, as documented in
+     * {@link StringDictionary#checksum()}, and every transaction is framed as documented in
+     * {@link CheckedRecords}.
+     *
+     * @param writer The save writer to write the transaction history through.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeCheckedTo(SaveWriter writer) throws IOException {
+        loadAll();
+        StringDictionary dictionary = StringDictionary.ofTransactions(transactionList);
+        dictionary.writeTo(writer);
+        writer.reserve(4).putInt(dictionary.checksum());
+        int count = transactionList.size();
+        Varint.write(writer.reserve(Varint.length(count)), count);
         for (Transaction transaction : transactionList) {
-            byte[] transactionBytes = transaction.asBytes();
-            System.arraycopy(transactionBytes, 0, byteArray, byteOffset,
-                    transactionBytes.length);
-            byteOffset += transactionBytes.length;
+            int recordLength = transaction.byteLength(dictionary);
+            ByteBuffer buffer = writer.reserve(CheckedRecords.byteLength(recordLength));
+            int recordStart = CheckedRecords.startRecord(buffer, recordLength);
+            transaction.writeTo(buffer, dictionary);
+            CheckedRecords.endRecord(buffer, recordStart);
         }
+    }
 
-        return byteArray;
+    private static void writeName(SaveWriter writer, String name) throws IOException {
+        int nameLength = Utf8.length(name);
+        ByteBuffer buffer = writer.reserve(Varint.length(nameLength) + nameLength);
+        Varint.write(buffer, nameLength);
+        Utf8.write(buffer, name);
+    }
+
+    private static void writeColumnLength(SaveWriter writer, long columnLength)
+            throws IOException {
+        Varint.write(writer.reserve(Varint.length(columnLength)), columnLength);
+    }
+
+    /**
+     * Writes a column of string references through a save writer.
+     *
+     * @param writer The save writer to write the column through.
+     * @param dictionary The dictionary to reference strings in.
+     * @param field Gets the string of the column from a transaction.
+     * @throws IOException if the bytes could not be written
+     */
+    private void writeStringColumn(SaveWriter writer, StringDictionary dictionary,
+                                   Function<Transaction, String> field) throws IOException {
+        long columnLength = 0;
+        for (Transaction transaction : transactionList) {
+            columnLength += dictionary.referenceLength(field.apply(transaction));
+        }
+        writeColumnLength(writer, columnLength);
+        for (Transaction transaction : transactionList) {
+            String string = field.apply(transaction);
+            dictionary.writeReference(writer.reserve(dictionary.referenceLength(string)), string);
+        }
     }
 
     @Override
     public int byteLength() {
-        return 2 + transactionList.stream().mapToInt(Transaction::byteLength).sum();
+        loadAll();
+        StringDictionary dictionary = StringDictionary.ofTransactions(transactionList);
+        int length = dictionary.byteLength() + Varint.length(transactionList.size());
+        for (Transaction transaction : transactionList) {
+            length += transaction.byteLength(dictionary);
+        }
+        return length;
     }
 
     @Override
@@ -219,13 +1055,13 @@ public class TransactionHistory implements Savable {
             return false;
         }
         TransactionHistory transactionHistory = (TransactionHistory) obj;
-        return transactionList.equals(transactionHistory.getTransactions());
+        return getTransactions().equals(transactionHistory.getTransactions());
     }
 
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 31 * hash + transactionList.hashCode();
+        hash = 31 * hash + getTransactions().hashCode();
         return hash;
     }
 
@@ -0,0 +1,1075 @@
+package no.ntnu.idatx2001.g11.generics;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ *     Stores transactions as columns of primitive arrays, one array for every field,
+ *     instead of as a list of transaction objects.
+ * </p><p>
+ *     Dates are stored as days since 1970-01-01, names as references into a pool of strings,
+ *     so equal strings are only stored once, and categories as their id in the store's
+ *     {@link CategoryRegistry}.
+ *     Frequencies, currencies & tags are only given an array once a transaction has one.
+ *     A stored transaction takes a handful of ints, where a transaction object takes
+ *     the object itself, a date, and often strings of its own.
+ *     Amounts are stored as longs of minor units (see {@link Money}), so sums are exact.
+ *     The total income & expenses are kept up to date as transactions are added, removed
+ *     or change their amount, so sums are read without looping over any amount.
+ * </p><p>
+ *     The store also keeps the index of every transaction ordered by date,
+ *     updated as transactions are added, removed or change their date,
+ *     so the transactions within a date range are found by binary search,
+ *     and the earliest & latest dates are read without looping over every date.
+ * </p><p>
+ *     Transactions are only made when they're read, as views of their stored fields.
+ *     A view reads its fields from the store, and each of its setters only writes its own field,
+ *     so any number of views of the same transaction can be changed without undoing each other.
+ *     Transactions added to the store are copied, so changing them afterwards doesn't.
+ * </p><p>
+ *     Copies of the store share its arrays, until either of them is changed,
+ *     which first copies the arrays it still shares.
+ *     So copying the store doesn't depend on how many transactions it has,
+ *     and the arrays are copied at most once however many times it's copied in between changes.
+ * </p>
+ *
+ * @see TransactionHistory
+ */
+public final class TransactionStore extends AbstractList<Transaction> implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] ids;
+    private int[] epochDays;
+    private long[] amounts;
+    private int[] categoryIds;
+    private int[] nameIds;
+    //Only made once a transaction has a frequency, currency or tags.
+    //Tags are never changed in place, so copying the array of tags copies the tags
+    private Frequency[] frequencies;
+    private String[] currencies;
+    private String[][] tags;
+    //The index of every transaction, ordered by date, then by index
+    private int[] dateOrder;
+    private int dateOrderSize;
+    //Counts every change of the date order, so date ranges can tell they're outdated
+    private int dateOrderVersion;
+    //Kept up to date by every change of an amount
+    private long totalIncome;
+    private long totalExpenses;
+
+    private final CategoryRegistry categories;
+    //Every name referenced, and the reference of every name
+    private List<String> strings;
+    private Map<String, Integer> stringIds;
+    private int nextId;
+    //If the arrays, strings & references may be shared with a copy, and must be copied to change
+    private boolean shared;
+
+    /**
+     * Constructor, for an empty store with a registry of its own.
+     */
+    public TransactionStore() {
+        this(new CategoryRegistry());
+    }
+
+    /**
+     * Constructor, for an empty store that registers categories in a registry.
+     *
+     * @param categories The registry of the categories of the stored transactions.
+     */
+    public TransactionStore(CategoryRegistry categories) {
+        if (categories == null) {
+            throw new IllegalArgumentException("\"categories\" cannot be null");
+        }
+        this.categories = categories;
+        ids = new int[INITIAL_CAPACITY];
+        epochDays = new int[INITIAL_CAPACITY];
+        amounts = new long[INITIAL_CAPACITY];
+        categoryIds = new int[INITIAL_CAPACITY];
+        nameIds = new int[INITIAL_CAPACITY];
+        dateOrder = new int[INITIAL_CAPACITY];
+        strings = new ArrayList<>();
+        stringIds = new HashMap<>();
+    }
+
+    /**
+     * Makes a copy of the store, that doesn't change when this store does.
+     * Only the categories are copied straight away.
+     * The copy shares every array with this store, and the one that's changed first copies them,
+     * so the copy can be handed to another thread, as long as only that thread uses it.
+     *
+     * @return a copy of the store.
+     */
+    public TransactionStore copy() {
+        TransactionStore copy = new TransactionStore(categories.copy());
+        copy.size = size;
+        copy.ids = ids;
+        copy.epochDays = epochDays;
+        copy.amounts = amounts;
+        copy.categoryIds = categoryIds;
+        copy.nameIds = nameIds;
+        copy.dateOrder = dateOrder;
+        copy.dateOrderSize = dateOrderSize;
+        copy.totalIncome = totalIncome;
+        copy.totalExpenses = totalExpenses;
+        copy.frequencies = frequencies;
+        copy.currencies = currencies;
+        copy.tags = tags;
+        copy.strings = strings;
+        copy.stringIds = stringIds;
+        copy.nextId = nextId;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Copies the arrays, strings & references that may be shared with a copy of the store,
+     * so they can be changed. Called before anything is changed.
+     */
+    private void unshare() {
+        if (!shared) {
+            return;
+        }
+        ids = ids.clone();
+        epochDays = epochDays.clone();
+        amounts = amounts.clone();
+        categoryIds = categoryIds.clone();
+        nameIds = nameIds.clone();
+        dateOrder = dateOrder.clone();
+        frequencies = frequencies == null ? null : frequencies.clone();
+        currencies = currencies == null ? null : currencies.clone();
+        tags = tags == null ? null : tags.clone();
+        strings = new ArrayList<>(strings);
+        stringIds = new HashMap<>(stringIds);
+        shared = false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a view of a stored transaction.
+     * Changing the view changes the stored transaction.
+     *
+     * @param index The index of the transaction.
+     * @return A view of the transaction at the index.
+     */
+    @Override
+    public Transaction get(int index) {
+        checkIndex(index, size);
+        return new View(this, index);
+    }
+
+    @Override
+    public Transaction set(int index, Transaction transaction) {
+        checkIndex(index, size);
+        checkStorable(transaction);
+        Transaction previous = get(index).copy();
+        unshare();
+        rewrite(index, transaction);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Transaction transaction) {
+        checkIndex(index, size + 1);
+        checkStorable(transaction);
+        unshare();
+        ensureCapacity(size + 1);
+        shift(index, index + 1, size - index);
+        shiftDateOrder(index, 1);
+        size++;
+        ids[index] = nextId++;
+        write(index, transaction);
+        addToTotals(index, 1);
+        insertDateOrder(index, index + 1);
+        modCount++;
+    }
+
+    /**
+     * Adds a transaction right before the first stored transaction that's dated after it,
+     * found by binary search in the date order, so a store in date order stays in date order.
+     * Transactions on the same date as it stay before it, like a stable sort would keep them.
+     *
+     * @param transaction The transaction to add.
+     * @return The index the transaction was added at.
+     */
+    public int addInDateOrder(Transaction transaction) {
+        checkStorable(transaction);
+        int position = firstOnOrAfter(transaction.getDate().toEpochDay() + 1);
+        int index = position < dateOrderSize ? dateOrder[position] : size;
+        add(index, transaction);
+        return index;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Transaction> transactions) {
+        checkIndex(index, size + 1);
+        //Copied first, in case the transactions are views of this store.
+        Transaction[] added = transactions.toArray(new Transaction[0]);
+        for (Transaction transaction : added) {
+            checkStorable(transaction);
+        }
+        int count = added.length;
+        unshare();
+        ensureCapacity(size + count);
+        shift(index, index + count, size - index);
+        shiftDateOrder(index, count);
+        size += count;
+        for (int i = 0; i < count; i++) {
+            ids[index + i] = nextId++;
+            write(index + i, added[i]);
+            addToTotals(index + i, 1);
+        }
+        insertDateOrder(index, index + count);
+        modCount++;
+        return count > 0;
+    }
+
+    @Override
+    public Transaction remove(int index) {
+        checkIndex(index, size);
+        Transaction removed = get(index).copy();
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        unshare();
+        for (int i = fromIndex; i < toIndex; i++) {
+            addToTotals(i, -1);
+        }
+        shift(toIndex, fromIndex, size - toIndex);
+        removeDateOrder(fromIndex, toIndex);
+        int newSize = size - (toIndex - fromIndex);
+        clearReferences(newSize, size);
+        size = newSize;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size);
+    }
+
+    /**
+     * Finds a transaction.
+     * A view of a transaction in this store is found by its id,
+     * usually without looking past the index it was last seen at.
+     * Any other transaction is found by comparing its fields to the stored fields,
+     * without making a view of any stored transaction.
+     *
+     * @param object The transaction to find.
+     * @return The index of the viewed transaction, or of the first equal transaction.
+     *     -1 if it's not stored.
+     */
+    @Override
+    public int indexOf(Object object) {
+        if (object instanceof View && ((View) object).store == this) {
+            View view = (View) object;
+            return view.isStored() ? view.index : -1;
+        }
+        if (!(object instanceof Transaction)) {
+            return -1;
+        }
+        Transaction transaction = (Transaction) object;
+        int categoryId = categories.getId(transaction.getCategory());
+        Integer nameId = stringIds.get(transaction.getName());
+        if (categoryId < 0 || nameId == null || transaction.getDate() == null) {
+            return -1;
+        }
+        long epochDay = transaction.getDate().toEpochDay();
+        for (int i = 0; i < size; i++) {
+            if (epochDays[i] == epochDay && amounts[i] == transaction.getAmount()
+                    && categoryIds[i] == categoryId && nameIds[i] == nameId
+                    && Objects.equals(getFrequency(i), transaction.getFrequency())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        int index = indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+        removeRange(index, index + 1);
+        return true;
+    }
+
+    /**
+     * Sorts the stored transactions, moving every field of each transaction together.
+     * Views keep viewing the same transactions.
+     *
+     * @param comparator How to order the transactions.
+     */
+    @Override
+    public void sort(Comparator<? super Transaction> comparator) {
+        Integer[] order = new Integer[size];
+        Transaction[] views = new Transaction[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            views[i] = get(i);
+        }
+        Arrays.sort(order, (a, b) -> comparator.compare(views[a], views[b]));
+        unshare();
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = order[i];
+        }
+        ids = permute(ids, permutation);
+        epochDays = permute(epochDays, permutation);
+        amounts = permute(amounts, permutation);
+        categoryIds = permute(categoryIds, permutation);
+        nameIds = permute(nameIds, permutation);
+        frequencies = permute(frequencies, permutation);
+        currencies = permute(currencies, permutation);
+        tags = permute(tags, permutation);
+        dateOrderSize = 0;
+        insertDateOrder(0, size);
+        modCount++;
+    }
+
+    /**
+     * Gets the date of a stored transaction.
+     *
+     * @param index The index of the transaction.
+     * @return The date, as days since 1970-01-01.
+     */
+    public int getEpochDay(int index) {
+        checkIndex(index, size);
+        return epochDays[index];
+    }
+
+    /**
+     * Gets the amount of a stored transaction, in minor units (see {@link Money}).
+     *
+     * @param index The index of the transaction.
+     * @return The amount of the transaction.
+     */
+    public long getAmount(int index) {
+        checkIndex(index, size);
+        return amounts[index];
+    }
+
+    /**
+     * Gets the category of a stored transaction.
+     *
+     * @param index The index of the transaction.
+     * @return The category of the transaction.
+     */
+    public String getCategory(int index) {
+        checkIndex(index, size);
+        return categories.getName(categoryIds[index]);
+    }
+
+    /**
+     * Gets the id of the category of a stored transaction.
+     *
+     * @param index The index of the transaction.
+     * @return The id of the category in {@link #getCategories()}.
+     */
+    public int getCategoryId(int index) {
+        checkIndex(index, size);
+        return categoryIds[index];
+    }
+
+    /**
+     * Gets the registry of the categories of the stored transactions.
+     *
+     * @return The registry of the categories.
+     */
+    public CategoryRegistry getCategories() {
+        return categories;
+    }
+
+    /**
+     * Gets the sum of every stored transaction, in minor units (see {@link Money}).
+     * The sum is kept up to date as transactions change, so no amount is summed.
+     *
+     * @return The sum of every transaction.
+     */
+    public long getSum() {
+        return totalIncome - totalExpenses;
+    }
+
+    /**
+     * Gets the sum of every stored income or expense.
+     * Expenses are summed as positive numbers.
+     * The sums are kept up to date as transactions change, so no amount is summed.
+     *
+     * @param income If incomes should be summed. Sums expenses otherwise.
+     * @return The sum of every income or expense, in minor units (see {@link Money}).
+     * @see Transaction#isIncome()
+     */
+    public long getTotal(boolean income) {
+        return income ? totalIncome : totalExpenses;
+    }
+
+    /**
+     * Gets the date of the earliest stored transaction, from the start of the date order.
+     *
+     * @return The date of the earliest transaction, or null if the store is empty.
+     */
+    public LocalDate getEarliestDate() {
+        if (size == 0) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(epochDays[dateOrder[0]]);
+    }
+
+    /**
+     * Gets the date of the latest stored transaction, from the end of the date order.
+     *
+     * @return The date of the latest transaction, or null if the store is empty.
+     */
+    public LocalDate getLatestDate() {
+        if (size == 0) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(epochDays[dateOrder[size - 1]]);
+    }
+
+    /**
+     * Gets a view of every stored transaction within a date range, ordered by date.
+     * Transactions of the same date are in the order of the store.
+     * The range is found by binary search, so only the transactions within it are read.<br/>
+     * The view can't be changed, and is outdated once a transaction is added or removed,
+     * or changes its date, after which it throws {@link ConcurrentModificationException}.
+     *
+     * @param startDay The start of the range, as days since 1970-01-01 (Inclusive).
+     * @param endDay The end of the range, as days since 1970-01-01 (Exclusive).
+     * @return A view of every transaction within the range.
+     */
+    public List<Transaction> getInRange(long startDay, long endDay) {
+        int from = firstOnOrAfter(startDay);
+        return new DateRange(this, from, Math.max(from, firstOnOrAfter(endDay)));
+    }
+
+    /**
+     * Gets the sum of every stored transaction within a date range,
+     * in minor units (see {@link Money}), without making any transaction.
+     *
+     * @param startDay The start of the range, as days since 1970-01-01 (Inclusive).
+     * @param endDay The end of the range, as days since 1970-01-01 (Exclusive).
+     * @return The sum of every transaction within the range.
+     */
+    public long getSumInRange(long startDay, long endDay) {
+        long sum = 0;
+        for (int i = firstOnOrAfter(startDay), end = firstOnOrAfter(endDay); i < end; i++) {
+            sum += amounts[dateOrder[i]];
+        }
+        return sum;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length "
+                    + length);
+        }
+    }
+
+    /**
+     * Gets the reference of a name, adding it to the pool of strings if it's new.
+     *
+     * @param string The string to get the reference of.
+     * @return The reference of the string.
+     */
+    private int referenceOf(String string) {
+        return stringIds.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private Frequency getFrequency(int index) {
+        return frequencies == null ? null : frequencies[index];
+    }
+
+    /**
+     * Checks that a transaction can be stored.
+     *
+     * @param transaction The transaction to check.
+     * @throws IllegalArgumentException if the transaction is missing a name, category or date,
+     *     or its date is out of range
+     */
+    private static void checkStorable(Transaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("\"transaction\" cannot be null");
+        }
+        if (transaction.getName() == null || transaction.getCategory() == null
+                || transaction.getDate() == null) {
+            throw new IllegalArgumentException(
+                    "Transaction must have a name, a category and a date to be stored");
+        }
+        toStoredEpochDay(transaction.getDate());
+    }
+
+    /**
+     * Gets a date as it's stored.
+     *
+     * @param date The date.
+     * @return The date, as days since 1970-01-01.
+     * @throws IllegalArgumentException if the date is null, or out of range
+     */
+    private static int toStoredEpochDay(LocalDate date) {
+        long epochDay = requireField(date).toEpochDay();
+        if (epochDay < Integer.MIN_VALUE || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Transaction date is out of range");
+        }
+        return (int) epochDay;
+    }
+
+    /**
+     * Checks that a field every stored transaction must have is set.
+     *
+     * @param field The field to check.
+     * @param <T> The type of the field.
+     * @return The field.
+     * @throws IllegalArgumentException if the field is null
+     */
+    private static <T> T requireField(T field) {
+        if (field == null) {
+            throw new IllegalArgumentException(
+                    "Transaction must have a name, a category and a date to be stored");
+        }
+        return field;
+    }
+
+    /**
+     * Stores every field of a transaction at an index, keeping the id already stored there.
+     *
+     * @param index The index to store the transaction at.
+     * @param transaction The transaction to store, checked by {@link #checkStorable(Transaction)}.
+     */
+    private void write(int index, Transaction transaction) {
+        epochDays[index] = (int) transaction.getDate().toEpochDay();
+        amounts[index] = transaction.getAmount();
+        categoryIds[index] = categories.register(transaction.getCategory());
+        nameIds[index] = referenceOf(transaction.getName());
+        writeFrequency(index, transaction.getFrequency());
+        writeCurrency(index, transaction.getCurrency());
+        writeTags(index, transaction.getTags());
+    }
+
+    private void writeFrequency(int index, Frequency frequency) {
+        unshare();
+        if (frequency != null && frequencies == null) {
+            frequencies = new Frequency[ids.length];
+        }
+        if (frequencies != null) {
+            frequencies[index] = frequency;
+        }
+    }
+
+    private void writeCurrency(int index, String currency) {
+        unshare();
+        if (currency != null && currencies == null) {
+            currencies = new String[ids.length];
+        }
+        if (currencies != null) {
+            currencies[index] = currency;
+        }
+    }
+
+    private void writeTags(int index, String[] transactionTags) {
+        unshare();
+        if (transactionTags != null && tags == null) {
+            tags = new String[ids.length][];
+        }
+        if (tags != null) {
+            tags[index] = transactionTags;
+        }
+    }
+
+    /**
+     * Stores every field of a transaction at an index that's already stored,
+     * moving it within the date order if its date changed.
+     *
+     * @param index The index to store the transaction at.
+     * @param transaction The transaction to store, checked by {@link #checkStorable(Transaction)}.
+     */
+    private void rewrite(int index, Transaction transaction) {
+        writeEpochDay(index, (int) transaction.getDate().toEpochDay());
+        addToTotals(index, -1);
+        write(index, transaction);
+        addToTotals(index, 1);
+    }
+
+    /**
+     * Changes the date of a stored transaction, moving it within the date order.
+     *
+     * @param index The index of the transaction.
+     * @param epochDay The new date, as days since 1970-01-01.
+     */
+    private void writeEpochDay(int index, int epochDay) {
+        if (epochDays[index] == epochDay) {
+            return;
+        }
+        unshare();
+        int position = dateRank(epochDays[index], index);
+        System.arraycopy(dateOrder, position + 1, dateOrder, position,
+                dateOrderSize - position - 1);
+        dateOrderSize--;
+        epochDays[index] = epochDay;
+        insertDateOrder(index, index + 1);
+    }
+
+    /**
+     * Changes the amount of a stored transaction, keeping the totals up to date.
+     *
+     * @param index The index of the transaction.
+     * @param amount The new amount, in minor units (see {@link Money}).
+     */
+    private void writeAmount(int index, long amount) {
+        unshare();
+        addToTotals(index, -1);
+        amounts[index] = amount;
+        addToTotals(index, 1);
+    }
+
+    /**
+     * Adds the amount of a stored transaction to the total income or expenses,
+     * or takes it away from them.
+     *
+     * @param index The index of the transaction.
+     * @param sign 1 to add the amount, or -1 to take it away.
+     */
+    private void addToTotals(int index, int sign) {
+        long amount = amounts[index];
+        if (amount >= 0) {
+            totalIncome += sign * amount;
+        } else {
+            totalExpenses -= sign * amount;
+        }
+    }
+
+    /**
+     * Gets the position in the date order a transaction is, or would be, at.
+     *
+     * @param epochDay The date of the transaction, as days since 1970-01-01.
+     * @param index The index of the transaction.
+     * @return The amount of transactions before it in the date order.
+     */
+    private int dateRank(long epochDay, int index) {
+        int low = 0;
+        int high = dateOrderSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int other = dateOrder[middle];
+            if (epochDays[other] < epochDay || epochDays[other] == epochDay && other < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the position of the first transaction in the date order on or after a date.
+     *
+     * @param epochDay The date, as days since 1970-01-01.
+     * @return The position of the first transaction on or after the date,
+     *     or the size of the store if there is none.
+     */
+    private int firstOnOrAfter(long epochDay) {
+        return dateRank(epochDay, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Moves every index in the date order from an index onwards,
+     * after transactions were inserted or removed before them.
+     * The order doesn't change, since every moved index is moved by the same amount.
+     *
+     * @param from The first index to move.
+     * @param distance How far to move the indexes.
+     */
+    private void shiftDateOrder(int from, int distance) {
+        if (from >= size) {
+            return;
+        }
+        for (int i = 0; i < dateOrderSize; i++) {
+            if (dateOrder[i] >= from) {
+                dateOrder[i] += distance;
+            }
+        }
+    }
+
+    /**
+     * Inserts a range of stored transactions into the date order.
+     * A single transaction is inserted by binary search,
+     * and more are sorted on their own and merged with the date order in one pass.
+     *
+     * @param from The index of the first transaction to insert.
+     * @param to The index after the last transaction to insert.
+     */
+    private void insertDateOrder(int from, int to) {
+        dateOrderVersion++;
+        if (to - from == 1) {
+            int position = dateRank(epochDays[from], from);
+            System.arraycopy(dateOrder, position, dateOrder, position + 1,
+                    dateOrderSize - position);
+            dateOrder[position] = from;
+            dateOrderSize++;
+            return;
+        }
+        //Ordered by date, then by index, as the date in the upper half and the index in the lower
+        long[] inserted = new long[to - from];
+        for (int i = from; i < to; i++) {
+            inserted[i - from] = dateKey(i);
+        }
+        Arrays.sort(inserted);
+        int[] merged = new int[dateOrder.length];
+        int existing = 0;
+        int next = 0;
+        int position = 0;
+        while (existing < dateOrderSize || next < inserted.length) {
+            if (next == inserted.length || existing < dateOrderSize
+                    && dateKey(dateOrder[existing]) < inserted[next]) {
+                merged[position++] = dateOrder[existing++];
+            } else {
+                merged[position++] = (int) inserted[next++];
+            }
+        }
+        dateOrder = merged;
+        dateOrderSize = position;
+    }
+
+    private long dateKey(int index) {
+        return (long) epochDays[index] << 32 | index;
+    }
+
+    /**
+     * Removes a range of transactions from the date order,
+     * moving the indexes after the range to where the range started.
+     *
+     * @param from The index of the first removed transaction.
+     * @param to The index after the last removed transaction.
+     */
+    private void removeDateOrder(int from, int to) {
+        dateOrderVersion++;
+        int kept = 0;
+        for (int i = 0; i < dateOrderSize; i++) {
+            int index = dateOrder[i];
+            if (index < from) {
+                dateOrder[kept++] = index;
+            } else if (index >= to) {
+                dateOrder[kept++] = index - (to - from);
+            }
+        }
+        dateOrderSize = kept;
+    }
+
+    /**
+     * Finds the index of a stored transaction by its id.
+     *
+     * @param id The id of the transaction.
+     * @param hint Where the transaction was last seen.
+     * @return The index of the transaction, or -1 if it's no longer stored.
+     */
+    private int indexOfId(int id, int hint) {
+        if (hint >= 0 && hint < size && ids[hint] == id) {
+            return hint;
+        }
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+        nameIds = Arrays.copyOf(nameIds, newCapacity);
+        dateOrder = Arrays.copyOf(dateOrder, newCapacity);
+        frequencies = frequencies == null ? null : Arrays.copyOf(frequencies, newCapacity);
+        currencies = currencies == null ? null : Arrays.copyOf(currencies, newCapacity);
+        tags = tags == null ? null : Arrays.copyOf(tags, newCapacity);
+    }
+
+    /**
+     * Moves the fields of a range of transactions within every array.
+     *
+     * @param from Where the range starts.
+     * @param to Where the range is moved to.
+     * @param length The amount of transactions in the range.
+     */
+    private void shift(int from, int to, int length) {
+        System.arraycopy(ids, from, ids, to, length);
+        System.arraycopy(epochDays, from, epochDays, to, length);
+        System.arraycopy(amounts, from, amounts, to, length);
+        System.arraycopy(categoryIds, from, categoryIds, to, length);
+        System.arraycopy(nameIds, from, nameIds, to, length);
+        if (frequencies != null) {
+            System.arraycopy(frequencies, from, frequencies, to, length);
+        }
+        if (currencies != null) {
+            System.arraycopy(currencies, from, currencies, to, length);
+        }
+        if (tags != null) {
+            System.arraycopy(tags, from, tags, to, length);
+        }
+    }
+
+    /**
+     * Clears the object references of removed transactions, so they can be collected.
+     *
+     * @param from The first index to clear.
+     * @param to The index after the last one to clear.
+     */
+    private void clearReferences(int from, int to) {
+        if (frequencies != null) {
+            Arrays.fill(frequencies, from, to, null);
+        }
+        if (currencies != null) {
+            Arrays.fill(currencies, from, to, null);
+        }
+        if (tags != null) {
+            Arrays.fill(tags, from, to, null);
+        }
+    }
+
+    private static int[] permute(int[] array, int[] permutation) {
+        int[] permuted = array.clone();
+        for (int i = 0; i < permutation.length; i++) {
+            permuted[i] = array[permutation[i]];
+        }
+        return permuted;
+    }
+
+    private static long[] permute(long[] array, int[] permutation) {
+        long[] permuted = array.clone();
+        for (int i = 0; i < permutation.length; i++) {
+            permuted[i] = array[permutation[i]];
+        }
+        return permuted;
+    }
+
+    private static <T> T[] permute(T[] array, int[] permutation) {
+        if (array == null) {
+            return null;
+        }
+        T[] permuted = array.clone();
+        for (int i = 0; i < permutation.length; i++) {
+            permuted[i] = array[permutation[i]];
+        }
+        return permuted;
+    }
+
+    /**
+     * A view of the stored transactions within a date range, ordered by date.
+     */
+    private static final class DateRange extends AbstractList<Transaction>
+            implements RandomAccess {
+        private final TransactionStore store;
+        private final int from;
+        private final int to;
+        private final int dateOrderVersion;
+
+        private DateRange(TransactionStore store, int from, int to) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.dateOrderVersion = store.dateOrderVersion;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            checkIndex(index, size());
+            if (store.dateOrderVersion != dateOrderVersion) {
+                throw new ConcurrentModificationException(
+                        "The store was changed after the range was made");
+            }
+            return store.get(store.dateOrder[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * A transaction made from its stored fields.
+     * Every getter reads its field from the store, and every setter only writes its own field,
+     * as long as the transaction is still stored, found by its id.
+     * Once it's removed, the view keeps the fields it last read or set.
+     * The category is read from the registry by its id, so renaming it renames the view too.
+     */
+    private static final class View extends Transaction {
+        private final TransactionStore store;
+        private final int id;
+        private int index;
+
+        private View(TransactionStore store, int index) {
+            super(store.strings.get(store.nameIds[index]),
+                    store.categories.getName(store.categoryIds[index]),
+                    store.amounts[index],
+                    LocalDate.ofEpochDay(store.epochDays[index]),
+                    store.getFrequency(index));
+            super.setCurrency(store.currencies == null ? null : store.currencies[index]);
+            super.setTags(store.tags == null ? null : store.tags[index]);
+            this.store = store;
+            this.id = store.ids[index];
+            this.index = index;
+        }
+
+        /**
+         * Finds the transaction in the store by its id.
+         *
+         * @return If the transaction is still stored.
+         */
+        private boolean isStored() {
+            index = store.indexOfId(id, index);
+            return index >= 0;
+        }
+
+        @Override
+        public LocalDate getDate() {
+            if (isStored() && super.getDate().toEpochDay() != store.epochDays[index]) {
+                super.setDate(LocalDate.ofEpochDay(store.epochDays[index]));
+            }
+            return super.getDate();
+        }
+
+        @Override
+        public void setDate(LocalDate date) {
+            if (isStored()) {
+                store.writeEpochDay(index, toStoredEpochDay(date));
+            }
+            super.setDate(date);
+        }
+
+        @Override
+        public String getCategory() {
+            if (isStored()) {
+                super.setCategory(store.categories.getName(store.categoryIds[index]));
+            }
+            return super.getCategory();
+        }
+
+        @Override
+        public void setCategory(String category) {
+            if (isStored()) {
+                int categoryId = store.categories.register(requireField(category));
+                store.unshare();
+                store.categoryIds[index] = categoryId;
+            }
+            super.setCategory(category);
+        }
+
+        @Override
+        public String getName() {
+            if (isStored()) {
+                super.setName(store.strings.get(store.nameIds[index]));
+            }
+            return super.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            if (isStored()) {
+                requireField(name);
+                store.unshare();
+                store.nameIds[index] = store.referenceOf(name);
+            }
+            super.setName(name);
+        }
+
+        @Override
+        public long getAmount() {
+            if (isStored()) {
+                super.setAmount(store.amounts[index]);
+            }
+            return super.getAmount();
+        }
+
+        @Override
+        public void setAmount(long amount) {
+            if (isStored()) {
+                store.writeAmount(index, amount);
+            }
+            super.setAmount(amount);
+        }
+
+        @Override
+        public Frequency getFrequency() {
+            if (isStored()) {
+                super.setFrequency(store.getFrequency(index));
+            }
+            return super.getFrequency();
+        }
+
+        @Override
+        public void setFrequency(Frequency frequency) {
+            if (isStored()) {
+                store.writeFrequency(index, frequency);
+            }
+            super.setFrequency(frequency);
+        }
+
+        @Override
+        public String getCurrency() {
+            if (isStored()) {
+                super.setCurrency(store.currencies == null ? null : store.currencies[index]);
+            }
+            return super.getCurrency();
+        }
+
+        @Override
+        public void setCurrency(String currency) {
+            if (isStored()) {
+                store.writeCurrency(index, currency);
+            }
+            super.setCurrency(currency);
+        }
+
+        @Override
+        public String[] getTags() {
+            if (isStored()) {
+                super.setTags(store.tags == null ? null : store.tags[index]);
+            }
+            return super.getTags();
+        }
+
+        @Override
+        public void setTags(String[] tags) {
+            if (isStored()) {
+                store.writeTags(index, tags);
+            }
+            super.setTags(tags);
+        }
+    }
+}
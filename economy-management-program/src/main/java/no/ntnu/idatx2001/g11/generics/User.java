@@ -1,8 +1,14 @@
 package no.ntnu.idatx2001.g11.generics;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import no.ntnu.idatx2001.g11.usersaves.CheckedRecords;
+import no.ntnu.idatx2001.g11.usersaves.HistorySegment;
 import no.ntnu.idatx2001.g11.usersaves.Savable;
+import no.ntnu.idatx2001.g11.usersaves.SaveWriter;
+import no.ntnu.idatx2001.g11.usersaves.Utf8;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 
 /**
  * Represents a user of the application.
@@ -10,7 +16,7 @@ import no.ntnu.idatx2001.g11.usersaves.Savable;
  */
 public class User implements Savable {
 
-    private final double startingFunds;
+    private final long startingFunds;
     /**
      * The list of expenses of the user.
      */
@@ -26,7 +32,7 @@ public class User implements Savable {
      *
      * @param username username of this user
      * @deprecated all new users should be initialized with starting funds.
-     * @see User#User(String, double)
+     * @see User#User(String, long)
      */
     public User(String username) {
         this(username, 0);
@@ -36,12 +42,27 @@ public class User implements Savable {
      * Creates a new user with the given username.
      *
      * @param username The username of the user.
-     * @param startingFunds the starting funds of the user.
+     * @param startingFunds the starting funds of the user, in minor units (see {@link Money}).
      */
-    public User(String username, double startingFunds) {
+    public User(String username, long startingFunds) {
+        this(username, startingFunds, new TransactionHistory());
+    }
+
+    /**
+     * Creates a user with the given username and an existing transaction history.
+     * Used when loading users, where the transaction history is read before the user is made.
+     *
+     * @param username The username of the user.
+     * @param startingFunds the starting funds of the user, in minor units (see {@link Money}).
+     * @param transactionHistory the transaction history of the user.
+     */
+    public User(String username, long startingFunds, TransactionHistory transactionHistory) {
+        if (transactionHistory == null) {
+            throw new IllegalArgumentException("\"transactionHistory\" cannot be null");
+        }
         setUsername(username);
         this.startingFunds = startingFunds;
-        this.transactionHistory = new TransactionHistory();
+        this.transactionHistory = transactionHistory;
     }
 
     /**
@@ -68,20 +89,20 @@ public class User implements Savable {
     }
 
     /**
-     * Gets the user's starting funds.
+     * Gets the user's starting funds, in minor units (see {@link Money}).
      *
      * @return the user's starting funds
      */
-    public double getStartingFunds() {
+    public long getStartingFunds() {
         return startingFunds;
     }
     
     /**
-     * Gets the user's current funds.
+     * Gets the user's current funds, in minor units (see {@link Money}).
      *
      * @return the user's current funds
      */
-    public double getCurrentFunds() {
+    public long getCurrentFunds() {
         return startingFunds + transactionHistory.getSum();
     }
 
@@ -95,59 +116,149 @@ public class User implements Savable {
     }
 
     /**
-     * Returns the user's balance (income - expenses).
+     * Makes a copy of the user, with a copy of the user's transaction history.
+     * Changing the original user doesn't change the copy,
+     * so the copy can be saved on another thread.
+     * Transactions are only copied once either user changes them,
+     * so copying is cheap however long the history is.
+     *
+     * @return a copy of the user.
+     */
+    public User copy() {
+        return new User(username, startingFunds, transactionHistory.copy());
+    }
+
+    /**
+     * Returns the user's balance (income - expenses), in minor units (see {@link Money}).
      *
      * @return The balance of the user.
      */
-    public double getBalance() {
+    public long getBalance() {
         return (transactionHistory.getTotalIncome()
                 - transactionHistory.getTotalExpenses());
     }
 
     /**
-     * Converts the user into an array of bytes.<br/><br/>
+     * Writes the user into a buffer.<br/><br/>
      * The bytes are stored as follows:<br/>
      * <ul>
-     *     <li><b>Byte 0 - 7:</b> The user's starting funds.</li>
-     *     <li><b>Byte 8:</b> The amount of bytes used to store the username.</li>
-     *     <li><b>Byte 9 - n:</b> The username, encoded to bytes using UTF-8</li>
-     *     <li><b>n+1 - m:</b> The user's transaction history,
-     *     encoded to bytes as documented in {@link TransactionHistory#asBytes()}.</li>
+     *     <li>The user's starting funds in minor units, as a zigzag-encoded varint.</li>
+     *     <li>The amount of bytes used to store the username, as a varint.</li>
+     *     <li>The username, encoded to bytes using UTF-8</li>
+     *     <li>The user's transaction history,
+     *     encoded to bytes as documented in {@link TransactionHistory#writeTo(ByteBuffer)}.</li>
      * </ul>
+     * Varints are documented in {@link Varint}.
+     *
+     * @param buffer The buffer to write the user into.
+     * @see TransactionHistory#writeTo(ByteBuffer)
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        writeUserFields(buffer);
+        transactionHistory.writeTo(buffer);
+    }
+
+    /**
+     * Writes the user through a save writer.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)}.
      *
-     * @return The user, converted to an array of bytes.
-     * @see TransactionHistory#asBytes()
+     * @param writer The save writer to write the user through.
+     * @throws IOException if the bytes could not be written
      */
     @Override
-    public byte[] asBytes() {
-        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+    public void writeTo(SaveWriter writer) throws IOException {
+        writeUserFields(writer.reserve(userFieldsLength()));
+        transactionHistory.writeTo(writer);
+    }
 
-        byte[] byteArray = new byte[byteLength()];
+    /**
+     * Writes the user through a save writer, with the transaction history stored as columns.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * except for the transaction history, which is stored as documented in
+     * {@link TransactionHistory#writeColumnsTo(SaveWriter)}.
+     *
+     * @param writer The save writer to write the user through.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeColumnsTo(SaveWriter writer) throws IOException {
+        writeUserFields(writer.reserve(userFieldsLength()));
+        transactionHistory.writeColumnsTo(writer);
+    }
 
-        byte[] fundsBytes = ByteBuffer.allocate(8).putDouble(startingFunds).array();
-        System.arraycopy(fundsBytes, 0, byteArray, 0, fundsBytes.length);
+    /**
+     * Writes the user through a save writer, with older years of the transaction history
+     * stored in segment files of their own.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * except for the transaction history, which is stored as documented in
+     * {@link TransactionHistory#writeSegmentsTo(SaveWriter, List)}.
+     *
+     * @param writer The save writer to write the user through.
+     * @param segments The segments of the transaction history to refer to.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeSegmentsTo(SaveWriter writer, List<HistorySegment> segments)
+            throws IOException {
+        writeUserFields(writer.reserve(userFieldsLength()));
+        transactionHistory.writeSegmentsTo(writer, segments);
+    }
 
-        byteArray[8] = (byte) usernameBytes.length;
+    /**
+     * Writes the user through a save writer, with an index of the transaction history,
+     * so blocks of transactions can be read on their own.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * except for the transaction history, which is stored as documented in
+     * {@link TransactionHistory#writeIndexedTo(SaveWriter)}.
+     *
+     * @param writer The save writer to write the user through.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeIndexedTo(SaveWriter writer) throws IOException {
+        writeUserFields(writer.reserve(userFieldsLength()));
+        transactionHistory.writeIndexedTo(writer);
+    }
 
-        System.arraycopy(usernameBytes, 0, byteArray, 9, usernameBytes.length);
+    /**
+     * Writes the user through a save writer, with every transaction stored as a checked record.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)},
+     * except that the fields before the transaction history are followed by their checksum,
+     * as documented in {@link CheckedRecords#userFieldsChecksum(long, String)},
+     * and the transaction history is stored as documented in
+     * {@link TransactionHistory#writeCheckedTo(SaveWriter)}.
+     *
+     * @param writer The save writer to write the user through.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeCheckedTo(SaveWriter writer) throws IOException {
+        writeUserFields(writer.reserve(userFieldsLength()));
+        writer.reserve(4).putInt(CheckedRecords.userFieldsChecksum(startingFunds, username));
+        transactionHistory.writeCheckedTo(writer);
+    }
 
-        byte[] transactionBytes = transactionHistory.asBytes();
-        System.arraycopy(
-                transactionBytes,
-                0,
-                byteArray,
-                9 + usernameBytes.length,
-                transactionBytes.length
-        );
+    /**
+     * Gets the length of every field of the user except the transaction history.
+     *
+     * @return The length of every field except the transaction history, in bytes.
+     */
+    private int userFieldsLength() {
+        int usernameLength = Utf8.length(username);
+        return Varint.signedLength(startingFunds) + Varint.length(usernameLength) + usernameLength;
+    }
 
-        return byteArray;
+    /**
+     * Writes every field of the user except the transaction history into a buffer.
+     *
+     * @param buffer The buffer to write into.
+     */
+    private void writeUserFields(ByteBuffer buffer) {
+        Varint.writeSigned(buffer, startingFunds);
+        Varint.write(buffer, Utf8.length(username));
+        Utf8.write(buffer, username);
     }
 
     @Override
     public int byteLength() {
-        return (9
-                + username.getBytes(StandardCharsets.UTF_8).length
-                + transactionHistory.byteLength());
+        return userFieldsLength() + transactionHistory.byteLength();
     }
 
     /**
@@ -182,14 +293,14 @@ public class User implements Savable {
         int hash = 7;
         hash = 31 * hash + username.hashCode();
         hash = 31 * hash + transactionHistory.hashCode();
-        hash = 31 * hash + Double.hashCode(startingFunds);
+        hash = 31 * hash + Long.hashCode(startingFunds);
         return hash;
     }
 
     @Override
     public String toString() {
         return "Username:\n  " + getUsername()
-                + "\nStarting funds:\n  " + getStartingFunds()
+                + "\nStarting funds:\n  " + Money.format(getStartingFunds())
                 + "\nTransaction history:\n  " + getTransactionHistory()
                 .toString().replace("\n", "\n  ");
     }
@@ -4,7 +4,7 @@ import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.function.ToDoubleFunction;
-import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.TransactionHistory;
 import no.ntnu.idatx2001.g11.generics.User;
 
 /**
@@ -46,12 +46,10 @@ public class RegressedGraph {
             throw new IllegalArgumentException(
                     "long \"regressionRangeDays\" must be greater than 0");
         }
-        LocalDate endDate = user
-                .getTransactionHistory()
-                .getTransactions()
-                .stream()
-                .map(Transaction::getDate)
-                .reduce(LocalDate.now(), (a, b) -> a.isAfter(b) ? a : b);
+        TransactionHistory transactionHistory = user.getTransactionHistory();
+        LocalDate latestDate = transactionHistory.getLatestDate();
+        LocalDate endDate = latestDate != null && latestDate.isAfter(LocalDate.now())
+                ? latestDate : LocalDate.now();
         LocalDate startDate;
         try {
             startDate = endDate.minusDays(regressionRangeDays);
@@ -61,13 +59,8 @@ public class RegressedGraph {
                     + "(This limit increases by 1 every day)");
         }
 
-        double increment = user // a = dy / dx
-                .getTransactionHistory()
-                .getTransactions()
-                .stream()
-                .filter(transaction -> !transaction.getDate().isBefore(startDate))
-                .mapToDouble(transaction -> (double) transaction.getAmount())
-                .sum() / regressionRangeDays;
+        double increment = (double) transactionHistory // a = dy / dx
+                .getSumInRange(startDate, endDate.plusDays(1)) / regressionRangeDays;
         regressedFunction = (localDate -> increment //f(x) = a(x - x0) + y0
                 * (ChronoUnit.DAYS.between(startDate, localDate)
                 - regressionRangeDays)
@@ -78,7 +71,8 @@ public class RegressedGraph {
      * Extrapolates an estimated amount of funds at a given date from the regressed graph.
      *
      * @param date The date to extrapolate data for.
-     * @return The estimated amount of funds the user has at the given date.
+     * @return The estimated amount of funds the user has at the given date, in minor units.
+     * @see no.ntnu.idatx2001.g11.generics.Money
      */
     public double extrapolate(LocalDate date) {
         return regressedFunction.applyAsDouble(date);
@@ -0,0 +1,175 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ *     Compresses everything written to it in fixed-size blocks,
+ *     and writes the compressed blocks to another channel.
+ * </p><p>
+ *     The bytes are stored as follows:<br/>
+ *     <ul>
+ *         <li><b>Byte 0 - 1:</b> The save version of the compressed bytes.</li>
+ *         <li><b>Byte 2 - 5:</b> The maximum amount of bytes in a block, before compression,
+ *         as an int.</li>
+ *         <li>A block: The amount of bytes in the block after compression, as an int,
+ *         the amount of bytes in the block before compression, as an int,
+ *         the CRC32C checksum of the compressed bytes, as an int,
+ *         and the bytes, compressed using {@link Deflater}.</li>
+ *     </ul>
+ *     Blocks are repeated until every byte is written,
+ *     and the last block is followed by 12 zero bytes.
+ *     Each block is compressed on its own, so blocks can be decompressed in parallel,
+ *     and each block has its own checksum, so it can be verified without decompressing it.
+ * </p>
+ *
+ * @see BlockDecompressingChannel
+ */
+public class BlockCompressingChannel implements GatheringByteChannel {
+    /**
+     * The maximum amount of bytes in a block, before compression.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The length of the header in front of every block.
+     */
+    static final int BLOCK_HEADER_LENGTH = 12;
+
+    private final WritableByteChannel target;
+    private final ByteBuffer block;
+    private final Deflater deflater;
+    private final CRC32C checksum;
+    private byte[] compressedBlock;
+    private boolean open;
+
+    /**
+     * Makes a channel that compresses everything written to it.
+     * The save version & block size are written to the target straight away.
+     *
+     * @param target The channel to write compressed blocks to. Is not closed by this channel.
+     * @param saveVersion The save version of the bytes that will be compressed.
+     * @throws IOException if the header could not be written
+     */
+    public BlockCompressingChannel(WritableByteChannel target, String saveVersion)
+            throws IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("\"target\" cannot be null");
+        }
+        this.target = target;
+        this.block = ByteBuffer.allocate(BLOCK_SIZE);
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.checksum = new CRC32C();
+        this.compressedBlock = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+        this.open = true;
+
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.putShort(SaveManager.getVersionBits(saveVersion));
+        header.putInt(BLOCK_SIZE);
+        writeFully(header.flip());
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    /**
+     * Compresses the current block, and writes it to the target.
+     *
+     * @throws IOException if the block could not be written
+     */
+    private void writeBlock() throws IOException {
+        int uncompressedLength = block.position();
+        if (uncompressedLength == 0) {
+            return;
+        }
+        deflater.reset();
+        deflater.setInput(block.array(), 0, uncompressedLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressedBlock.length) {
+                byte[] largerBlock = new byte[compressedBlock.length * 2];
+                System.arraycopy(compressedBlock, 0, largerBlock, 0, compressedLength);
+                compressedBlock = largerBlock;
+            }
+            compressedLength += deflater.deflate(compressedBlock, compressedLength,
+                    compressedBlock.length - compressedLength);
+        }
+        checksum.reset();
+        checksum.update(compressedBlock, 0, compressedLength);
+
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+        header.putInt(compressedLength);
+        header.putInt(uncompressedLength);
+        header.putInt((int) checksum.getValue());
+        writeFully(header.flip());
+        writeFully(ByteBuffer.wrap(compressedBlock, 0, compressedLength));
+        block.clear();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            int chunk = Math.min(src.remaining(), block.remaining());
+            block.put(block.position(), src, src.position(), chunk);
+            block.position(block.position() + chunk);
+            src.position(src.position() + chunk);
+            if (!block.hasRemaining()) {
+                writeBlock();
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            written += write(srcs[i]);
+        }
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Compresses & writes the last block, followed by the end marker.
+     * The target channel is left open.
+     *
+     * @throws IOException if the last block could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            writeBlock();
+            writeFully(ByteBuffer.allocate(BLOCK_HEADER_LENGTH));
+        } finally {
+            deflater.end();
+        }
+    }
+}
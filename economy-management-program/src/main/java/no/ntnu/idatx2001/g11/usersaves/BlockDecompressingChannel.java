@@ -0,0 +1,251 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * <p>
+ *     Reads bytes compressed by a {@link BlockCompressingChannel}.
+ * </p><p>
+ *     Compressed blocks are read ahead of time,
+ *     and decompressed in parallel on the common {@link ForkJoinPool},
+ *     while the bytes of earlier blocks are being read.
+ *     Only a few blocks are read ahead, so memory use doesn't grow with the size of the save.
+ * </p>
+ *
+ * @see BlockCompressingChannel
+ */
+public class BlockDecompressingChannel implements ReadableByteChannel {
+    private static final int BLOCKS_READ_AHEAD =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final ReadableByteChannel source;
+    private final String saveVersion;
+    private final int blockSize;
+    private final Deque<Future<ByteBuffer>> pendingBlocks;
+    private ByteBuffer currentBlock;
+    private boolean sourceEnded;
+    private boolean open;
+
+    /**
+     * Makes a channel that decompresses blocks read from another channel.
+     * The save version & block size are read straight away.
+     *
+     * @param source The channel to read compressed blocks from. Is not closed by this channel.
+     * @throws IOException if the header could not be read
+     */
+    public BlockDecompressingChannel(ReadableByteChannel source) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("\"source\" cannot be null");
+        }
+        this.source = source;
+        ByteBuffer header = readFully(source, 6);
+        this.saveVersion = SaveManager.getVersionString(header.getShort());
+        this.blockSize = header.getInt();
+        if (blockSize <= 0) {
+            throw new ZipException("Compressed save data has an invalid block size");
+        }
+        this.pendingBlocks = new ArrayDeque<>();
+        this.currentBlock = ByteBuffer.allocate(0);
+        this.sourceEnded = false;
+        this.open = true;
+    }
+
+    /**
+     * Verifies every block read from a channel against its checksum, without decompressing it.
+     *
+     * @param source The channel to read compressed blocks from,
+     *               positioned at the start of the compressed bytes.
+     * @return If every block matches its checksum, and the compressed bytes aren't cut short
+     * @throws IOException if the compressed bytes could not be read
+     */
+    public static boolean verify(ReadableByteChannel source) throws IOException {
+        try {
+            ByteBuffer header = readFully(source, 6);
+            header.getShort();
+            int blockSize = header.getInt();
+            CRC32C checksum = new CRC32C();
+            ByteBuffer block;
+            while ((block = readBlock(source, blockSize)) != null) {
+                int expectedChecksum = block.getInt(8);
+                checksum.reset();
+                checksum.update(block.position(BlockCompressingChannel.BLOCK_HEADER_LENGTH));
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (EOFException | ZipException e) {
+            return false;
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel source, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                throw new EOFException("Compressed save data ended unexpectedly");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the next compressed block, including its header.
+     *
+     * @param source The channel to read the block from.
+     * @param blockSize The maximum amount of bytes in a block, before compression.
+     * @return The block, with its header. Will be null if there are no more blocks
+     * @throws ZipException if the header of the block is malformed
+     * @throws IOException if the block could not be read
+     */
+    private static ByteBuffer readBlock(ReadableByteChannel source, int blockSize)
+            throws IOException {
+        ByteBuffer header = readFully(source, BlockCompressingChannel.BLOCK_HEADER_LENGTH);
+        int compressedLength = header.getInt(0);
+        int uncompressedLength = header.getInt(4);
+        if (compressedLength == 0) {
+            return null;
+        }
+        if (compressedLength < 0 || compressedLength > 2 * blockSize + 1024
+                || uncompressedLength <= 0 || uncompressedLength > blockSize) {
+            throw new ZipException("Compressed save data has a malformed block");
+        }
+        ByteBuffer block = ByteBuffer.allocate(
+                BlockCompressingChannel.BLOCK_HEADER_LENGTH + compressedLength);
+        block.put(header);
+        while (block.hasRemaining()) {
+            if (source.read(block) < 0) {
+                throw new EOFException("Compressed save data ended unexpectedly");
+            }
+        }
+        return block.flip();
+    }
+
+    /**
+     * Verifies & decompresses a block.
+     *
+     * @param block The block, with its header.
+     * @return The decompressed bytes.
+     * @throws ZipException if the block doesn't match its checksum, or can't be decompressed
+     */
+    private static ByteBuffer decompress(ByteBuffer block) throws IOException {
+        int uncompressedLength = block.getInt(4);
+        int expectedChecksum = block.getInt(8);
+        byte[] compressed = block.array();
+        int compressedOffset = BlockCompressingChannel.BLOCK_HEADER_LENGTH;
+        int compressedLength = block.limit() - compressedOffset;
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(compressed, compressedOffset, compressedLength);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new ZipException("Compressed save data has a corrupted block");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, compressedOffset, compressedLength);
+            byte[] uncompressed = new byte[uncompressedLength];
+            int inflated = 0;
+            while (inflated < uncompressedLength && !inflater.finished()) {
+                int read = inflater.inflate(uncompressed, inflated, uncompressedLength - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += read;
+            }
+            if (inflated != uncompressedLength) {
+                throw new ZipException("Compressed save data has a block of the wrong length");
+            }
+            return ByteBuffer.wrap(uncompressed);
+        } catch (DataFormatException dfe) {
+            ZipException ze = new ZipException("Compressed save data has a malformed block");
+            ze.initCause(dfe);
+            throw ze;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Gets the save version of the compressed bytes.
+     *
+     * @return The save version of the compressed bytes.
+     */
+    public String getSaveVersion() {
+        return saveVersion;
+    }
+
+    /**
+     * Reads blocks ahead, and starts decompressing them.
+     *
+     * @throws IOException if a block could not be read
+     */
+    private void readAhead() throws IOException {
+        while (!sourceEnded && pendingBlocks.size() < BLOCKS_READ_AHEAD) {
+            ByteBuffer block = readBlock(source, blockSize);
+            if (block == null) {
+                sourceEnded = true;
+            } else {
+                pendingBlocks.add(ForkJoinPool.commonPool().submit(() -> decompress(block)));
+            }
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        while (!currentBlock.hasRemaining()) {
+            readAhead();
+            Future<ByteBuffer> nextBlock = pendingBlocks.poll();
+            if (nextBlock == null) {
+                return -1;
+            }
+            try {
+                currentBlock = nextBlock.get();
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw (IOException) ee.getCause();
+                }
+                throw new IOException("Failed to decompress save data", ee.getCause());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing save data", ie);
+            }
+        }
+        int chunk = Math.min(dst.remaining(), currentBlock.remaining());
+        dst.put(dst.position(), currentBlock, currentBlock.position(), chunk);
+        dst.position(dst.position() + chunk);
+        currentBlock.position(currentBlock.position() + chunk);
+        return chunk;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Stops decompressing any blocks read ahead.
+     * The source channel is left open.
+     */
+    @Override
+    public void close() {
+        open = false;
+        for (Future<ByteBuffer> pendingBlock : pendingBlocks) {
+            pendingBlock.cancel(false);
+        }
+        pendingBlocks.clear();
+    }
+}
@@ -0,0 +1,157 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>
+ *     Frames records with a checksum, so a damaged record is found & skipped on its own,
+ *     instead of making every record after it unreadable.
+ * </p><p>
+ *     A record is stored as follows:
+ *     <ul>
+ *         <li><b>Byte 0 - 3:</b> {@link #SYNC}, which marks the start of every record.</li>
+ *         <li><b>Byte 4 - n:</b> The length of the record, as a varint.</li>
+ *         <li>The record itself.</li>
+ *         <li>The CRC32C checksum of the record itself, as an int.</li>
+ *     </ul>
+ *     If a record's checksum doesn't match, or its length is damaged,
+ *     the reader looks for the next {@link #SYNC} with a record whose checksum matches,
+ *     and carries on from there.
+ *     CRC32C is computed by the processor on most platforms,
+ *     so checking every record is fast enough to do on every load.
+ *     Varints are documented in {@link Varint}.
+ * </p>
+ *
+ * @see SaveFormat#CHECKED
+ */
+public final class CheckedRecords {
+    /**
+     * The bytes every record starts with.
+     */
+    public static final byte[] SYNC = {(byte) 0xC5, 'R', 'E', 'C'};
+
+    /**
+     * The longest a record can be. Longer records are seen as damaged.
+     */
+    public static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private CheckedRecords() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Gets the amount of bytes used to store a record, including its framing.
+     *
+     * @param recordLength The length of the record itself.
+     * @return The amount of bytes used to store the record.
+     */
+    public static int byteLength(int recordLength) {
+        return SYNC.length + Varint.length(recordLength) + recordLength + 4;
+    }
+
+    /**
+     * Writes the start of a record into a buffer.
+     * The record itself is written right after, and the record is ended with
+     * {@link #endRecord(ByteBuffer, int)}.
+     *
+     * @param buffer The buffer to write the record into.
+     * @param recordLength The length of the record itself.
+     * @return Where in the buffer the record itself starts.
+     */
+    public static int startRecord(ByteBuffer buffer, int recordLength) {
+        if (recordLength > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Record is longer than " + MAX_RECORD_LENGTH);
+        }
+        buffer.put(SYNC);
+        Varint.write(buffer, recordLength);
+        return buffer.position();
+    }
+
+    /**
+     * Ends a record written into a buffer, by writing its checksum.
+     *
+     * @param buffer The buffer the record was written into, positioned at the end of it.
+     * @param recordStart Where in the buffer the record itself starts,
+     *                    from {@link #startRecord(ByteBuffer, int)}.
+     */
+    public static void endRecord(ByteBuffer buffer, int recordStart) {
+        buffer.putInt(checksum(buffer, recordStart, buffer.position() - recordStart));
+    }
+
+    /**
+     * Computes the CRC32C checksum of some bytes in a buffer,
+     * without changing the buffer's position.
+     *
+     * @param buffer The buffer with the bytes.
+     * @param offset Where in the buffer the bytes start.
+     * @param length The amount of bytes.
+     * @return The checksum of the bytes.
+     */
+    public static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Computes the checksum of the fields of a user, other than the transaction history,
+     * as they were stored by {@link SaveFormat#CHECKED} saves of version 1.7.0,
+     * with the starting funds stored as a double of kroner.
+     *
+     * @param startingFunds The starting funds of the user, in kroner.
+     * @param username The username of the user.
+     * @return The checksum of the fields.
+     */
+    public static int userFieldsChecksum(double startingFunds, String username) {
+        int usernameLength = Utf8.length(username);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + Varint.length(usernameLength) + usernameLength);
+        buffer.putDouble(startingFunds);
+        Varint.write(buffer, usernameLength);
+        Utf8.write(buffer, username);
+        return checksum(buffer, 0, buffer.position());
+    }
+
+    /**
+     * Computes the checksum of the fields of a user, other than the transaction history,
+     * as they're stored by {@link SaveFormat#CHECKED} saves,
+     * with the starting funds stored as a zigzag-encoded varint of minor units.
+     *
+     * @param startingFunds The starting funds of the user, in minor units.
+     * @param username The username of the user.
+     * @return The checksum of the fields.
+     * @see no.ntnu.idatx2001.g11.generics.Money
+     */
+    public static int userFieldsChecksum(long startingFunds, String username) {
+        int usernameLength = Utf8.length(username);
+        ByteBuffer buffer = ByteBuffer.allocate(Varint.signedLength(startingFunds)
+                + Varint.length(usernameLength) + usernameLength);
+        Varint.writeSigned(buffer, startingFunds);
+        Varint.write(buffer, usernameLength);
+        Utf8.write(buffer, username);
+        return checksum(buffer, 0, buffer.position());
+    }
+
+    /**
+     * Computes the checksum of a dictionary of strings,
+     * as it's encoded to bytes by {@link StringDictionary#writeTo(ByteBuffer)}.
+     *
+     * @param strings The strings of the dictionary, in order.
+     * @return The checksum of the dictionary.
+     */
+    public static int dictionaryChecksum(List<String> strings) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer countBuffer = ByteBuffer.allocate(Varint.length(strings.size()));
+        Varint.write(countBuffer, strings.size());
+        crc.update(countBuffer.flip());
+        for (String string : strings) {
+            int stringLength = Utf8.length(string);
+            ByteBuffer buffer = ByteBuffer.allocate(Varint.length(stringLength) + stringLength);
+            Varint.write(buffer, stringLength);
+            Utf8.write(buffer, string);
+            crc.update(buffer.flip());
+        }
+        return (int) crc.getValue();
+    }
+}
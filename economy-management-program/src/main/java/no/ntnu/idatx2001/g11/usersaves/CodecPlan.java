@@ -0,0 +1,463 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
+
+/**
+ * <p>
+ *     A {@link VersionTemplate}, compiled into a flat list of typed operations.
+ * </p><p>
+ *     Templates describe fields by key and by instruction integer,
+ *     which would have to be looked up and interpreted for every field of every transaction.
+ *     A plan resolves every key to the current field it matches,
+ *     checks that fixed-length fields have the expected length,
+ *     and links every nested template to its own plan, once.
+ *     Plans are cached, so each template of each version is only compiled once.
+ * </p><p>
+ *     Any version with templates in {@link VersionTemplate} automatically gets a plan.
+ * </p>
+ *
+ * @see VersionTemplate
+ * @see SaveDataReader
+ */
+public final class CodecPlan {
+    /**
+     * The operations a plan can be made of.
+     */
+    enum Op {
+        /** Skips a field that doesn't exist in the current version. Argument: The length. */
+        SKIP,
+        /** Skips a string field that doesn't exist in the current version. */
+        SKIP_STRING,
+        /** Skips a varint field that doesn't exist in the current version. */
+        SKIP_VARINT,
+        /** Reads a dictionary of strings, for the string references that follow. */
+        STRING_DICTIONARY,
+        /** Skips the slot summary, everything in it is also stored in full later on. */
+        SLOT_SUMMARY,
+        /** Reads the starting funds, as a double of kroner or a varint of minor units. */
+        STARTING_FUNDS,
+        /** Reads the year of a transaction, as a short. */
+        TRANSACTION_YEAR,
+        /** Reads the month of a transaction, as a byte. */
+        TRANSACTION_MONTH,
+        /** Reads the day of a transaction, as a byte. */
+        TRANSACTION_DAY,
+        /** Reads the date of a transaction, as a varint of days since 1970-01-01. */
+        TRANSACTION_EPOCH_DAY,
+        /** Reads the amount of a transaction, as a float of kroner or a varint of minor units. */
+        TRANSACTION_AMOUNT,
+        /** Reads the amount of a frequency, as a short or a varint. */
+        FREQUENCY_AMOUNT,
+        /** Reads the username. */
+        USERNAME,
+        /** Reads the category of a transaction. */
+        TRANSACTION_CATEGORY,
+        /** Reads the name of a transaction. */
+        TRANSACTION_NAME,
+        /** Reads the type of a frequency. */
+        FREQUENCY_TYPE,
+        /** Applies the nested transaction history plan. */
+        TRANSACTION_HISTORY,
+        /** Applies the nested transaction plan a stored amount of times. */
+        TRANSACTIONS,
+        /** Applies the nested transaction plan a stored amount of times, one column at a time. */
+        TRANSACTION_COLUMNS,
+        /** Applies the nested frequency plan, if the transaction has a frequency. */
+        FREQUENCY,
+        /** Decompresses the rest, and reads it as a save of the version stored with it. */
+        COMPRESSED_SAVE,
+        /** Reads the segments of the transaction history, stored in files of their own. */
+        HISTORY_SEGMENTS,
+        /** Reads the categories renamed after the segments of the transaction history. */
+        CATEGORY_RENAMES,
+        /** Skips the index of the transactions, only used to read blocks on their own. */
+        TRANSACTION_INDEX,
+        /**
+         * Applies the nested transaction plan to every checked record until the end,
+         * skipping damaged records. Argument: The width of the stored amount of records.
+         */
+        CHECKED_TRANSACTIONS,
+        /** Checks the checksum of the starting funds & username. */
+        USER_CHECKSUM,
+        /** Checks the checksum of the dictionary of strings read last. */
+        STRING_DICTIONARY_CHECKSUM
+    }
+
+    /**
+     * The argument of operations where the number, length or count is stored as a varint.
+     * Otherwise, the argument is how many bytes the number, length or count is stored in.
+     */
+    static final int VARINT = -1;
+
+    /**
+     * The argument of string operations where the string is stored as a string reference.
+     *
+     * @see StringDictionary
+     */
+    static final int STRING_REFERENCE = -2;
+
+    private static final Map<String, CodecPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final Op[] ops;
+    private final int[] arguments;
+    private final CodecPlan[] nestedPlans;
+
+    private CodecPlan(Op[] ops, int[] arguments, CodecPlan[] nestedPlans) {
+        this.ops = ops;
+        this.arguments = arguments;
+        this.nestedPlans = nestedPlans;
+    }
+
+    /**
+     * Gets the plan for the specified type and version, compiling it if it isn't cached.
+     *
+     * @param type The type of the plan to get
+     * @param version The version of the plan to get
+     * @return The plan of the specified type and version
+     * @throws UnsupportedVersionException if no template is found of the specified type and version
+     */
+    public static CodecPlan get(String type, String version) {
+        String name = type + "_" + version;
+        CodecPlan plan = PLANS.get(name);
+        if (plan == null) {
+            //Not computeIfAbsent(), compiling a plan recursively gets its nested plans.
+            Map<String, Integer> template;
+            try {
+                template = VersionTemplate.get(type, version);
+            } catch (NoSuchElementException nsee) {
+                throw new UnsupportedVersionException(version);
+            }
+            plan = compile(template, version);
+            PLANS.putIfAbsent(name, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Checks if the specified version has a template of the top level type.
+     *
+     * @param version The version to check
+     * @return If the version is supported
+     */
+    public static boolean isSupported(String version) {
+        try {
+            get(VersionTemplate.TOP_LEVEL, version);
+            return true;
+        } catch (UnsupportedVersionException uve) {
+            return false;
+        }
+    }
+
+    private static void checkLength(String key, int expected, int actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("Data value \"" + key + "\" is not "
+                    + expected + " bytes in length");
+        }
+    }
+
+    /**
+     * Resolves a fixed-length field to its matching operation.
+     *
+     * @param key The template key of the field.
+     * @param length The length of the field.
+     * @return The matching operation.
+     */
+    private static Op getFixedOp(String key, int length) {
+        Op op;
+        switch (key) {
+            case "startingFunds":
+                checkLength(key, 8, length);
+                op = Op.STARTING_FUNDS;
+                break;
+            case "transactionYear":
+                checkLength(key, 2, length);
+                op = Op.TRANSACTION_YEAR;
+                break;
+            case "transactionMonth":
+                checkLength(key, 1, length);
+                op = Op.TRANSACTION_MONTH;
+                break;
+            case "transactionDay":
+                checkLength(key, 1, length);
+                op = Op.TRANSACTION_DAY;
+                break;
+            case "transactionAmount":
+                checkLength(key, 4, length);
+                op = Op.TRANSACTION_AMOUNT;
+                break;
+            case "frequencyAmount":
+                checkLength(key, 2, length);
+                op = Op.FREQUENCY_AMOUNT;
+                break;
+            case "slotSummary":
+                checkLength(key, SlotSummary.LENGTH, length);
+                op = Op.SLOT_SUMMARY;
+                break;
+            default:
+                op = Op.SKIP;
+        }
+        return op;
+    }
+
+    /**
+     * Resolves a string field to its matching operation.
+     *
+     * @param key The template key of the field.
+     * @return The matching operation.
+     */
+    private static Op getStringOp(String key) {
+        Op op;
+        switch (key) {
+            case "username":
+                op = Op.USERNAME;
+                break;
+            case "transactionCategory":
+                op = Op.TRANSACTION_CATEGORY;
+                break;
+            case "transactionName":
+                op = Op.TRANSACTION_NAME;
+                break;
+            case "frequencyType":
+                op = Op.FREQUENCY_TYPE;
+                break;
+            default:
+                op = Op.SKIP_STRING;
+        }
+        return op;
+    }
+
+    /**
+     * Resolves a varint field to its matching operation.
+     *
+     * @param key The template key of the field.
+     * @return The matching operation.
+     */
+    private static Op getVarintOp(String key) {
+        Op op;
+        switch (key) {
+            case "transactionEpochDay":
+                op = Op.TRANSACTION_EPOCH_DAY;
+                break;
+            case "frequencyAmount":
+                op = Op.FREQUENCY_AMOUNT;
+                break;
+            case "startingFunds":
+                op = Op.STARTING_FUNDS;
+                break;
+            case "transactionAmount":
+                op = Op.TRANSACTION_AMOUNT;
+                break;
+            default:
+                op = Op.SKIP_VARINT;
+        }
+        return op;
+    }
+
+    /**
+     * Resolves a checksum field to its matching operation.
+     *
+     * @param key The template key of the field.
+     * @return The matching operation.
+     */
+    private static Op getChecksumOp(String key) {
+        Op op;
+        switch (key) {
+            case "userChecksum":
+                op = Op.USER_CHECKSUM;
+                break;
+            case "stringDictionaryChecksum":
+                op = Op.STRING_DICTIONARY_CHECKSUM;
+                break;
+            default:
+                op = Op.SKIP;
+        }
+        return op;
+    }
+
+    /**
+     * Compiles a template into a plan.
+     *
+     * @param template The template to compile.
+     * @param version The version of the template.
+     * @return The compiled plan.
+     */
+    private static CodecPlan compile(Map<String, Integer> template, String version) {
+        List<Op> ops = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        List<CodecPlan> nestedPlans = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : template.entrySet()) {
+            int instruction = entry.getValue();
+            Op op;
+            int argument = 0;
+            CodecPlan nestedPlan = null;
+            if (instruction >= 0) {
+                op = getFixedOp(entry.getKey(), instruction);
+                argument = instruction;
+            } else if (instruction == -1) {
+                op = getStringOp(entry.getKey());
+                argument = 1;
+            } else if (instruction == -2) {
+                op = Op.TRANSACTION_HISTORY;
+                nestedPlan = get("TRANSACTION_HISTORY", version);
+            } else if (instruction == -3) {
+                op = Op.TRANSACTIONS;
+                argument = 2;
+                nestedPlan = get("TRANSACTION", version);
+            } else if (instruction == -4) {
+                op = Op.FREQUENCY;
+                nestedPlan = get("FREQUENCY", version);
+            } else if (instruction == -5) {
+                op = getStringOp(entry.getKey());
+                argument = VARINT;
+            } else if (instruction == -6) {
+                op = Op.TRANSACTIONS;
+                argument = VARINT;
+                nestedPlan = get("TRANSACTION", version);
+            } else if (instruction == -7) {
+                op = getVarintOp(entry.getKey());
+                argument = VARINT;
+            } else if (instruction == -8) {
+                op = Op.STRING_DICTIONARY;
+            } else if (instruction == -9) {
+                op = getStringOp(entry.getKey());
+                argument = STRING_REFERENCE;
+            } else if (instruction == -10) {
+                op = Op.TRANSACTION_COLUMNS;
+                argument = VARINT;
+                nestedPlan = get("TRANSACTION", version);
+            } else if (instruction == -11) {
+                op = Op.COMPRESSED_SAVE;
+            } else if (instruction == -12) {
+                op = Op.HISTORY_SEGMENTS;
+            } else if (instruction == -16) {
+                op = Op.CATEGORY_RENAMES;
+            } else if (instruction == -13) {
+                op = Op.TRANSACTION_INDEX;
+            } else if (instruction == -14) {
+                op = Op.CHECKED_TRANSACTIONS;
+                argument = VARINT;
+                nestedPlan = get("TRANSACTION", version);
+            } else if (instruction == -15) {
+                op = getChecksumOp(entry.getKey());
+                argument = 4;
+            } else {
+                throw new IllegalStateException("Unknown template instruction " + instruction);
+            }
+            ops.add(op);
+            arguments.add(argument);
+            nestedPlans.add(nestedPlan);
+        }
+        return new CodecPlan(
+                ops.toArray(new Op[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray(),
+                nestedPlans.toArray(new CodecPlan[0])
+        );
+    }
+
+    /**
+     * Checks if this plan starts with a {@link SlotSummary},
+     * meaning the summary can be read without reading the rest of the save.
+     *
+     * @return If this plan starts with a slot summary.
+     */
+    public boolean startsWithSlotSummary() {
+        return ops.length > 0 && ops[0] == Op.SLOT_SUMMARY;
+    }
+
+    /**
+     * Checks if this plan compresses the rest of the save,
+     * meaning it can be verified by checksums alone.
+     *
+     * @return If this plan compresses the rest of the save.
+     * @see BlockDecompressingChannel#verify(java.nio.channels.ReadableByteChannel)
+     */
+    public boolean isBlockCompressed() {
+        for (Op op : ops) {
+            if (op == Op.COMPRESSED_SAVE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if this plan, or any plan nested in it, stores amounts of money as
+     * varints of minor units, rather than as floats or doubles of kroner.
+     * Sums stored along with the transactions, like those of a {@link HistorySegment}
+     * or a {@link TransactionIndex}, are then stored as longs of minor units as well.
+     *
+     * @return If this plan stores amounts of money in minor units.
+     * @see no.ntnu.idatx2001.g11.generics.Money
+     */
+    public boolean storesMinorUnits() {
+        for (int i = 0; i < ops.length; i++) {
+            if ((ops[i] == Op.TRANSACTION_AMOUNT || ops[i] == Op.STARTING_FUNDS)
+                    && arguments[i] == VARINT
+                    || nestedPlans[i] != null && nestedPlans[i].storesMinorUnits()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if this plan ends with a {@link TransactionIndex},
+     * meaning the transactions can be read a block at a time through {@link TransactionPages}.
+     *
+     * @return If this plan has an index of the transactions.
+     */
+    public boolean isIndexed() {
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] == Op.TRANSACTION_INDEX
+                    || nestedPlans[i] != null && nestedPlans[i].isIndexed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the amount of operations in this plan.
+     *
+     * @return The amount of operations in this plan.
+     */
+    int length() {
+        return ops.length;
+    }
+
+    /**
+     * Gets an operation of this plan.
+     *
+     * @param index The index of the operation.
+     * @return The operation at the specified index.
+     */
+    Op op(int index) {
+        return ops[index];
+    }
+
+    /**
+     * Gets the argument of an operation of this plan.
+     *
+     * @param index The index of the operation.
+     * @return The argument of the operation at the specified index.
+     */
+    int argument(int index) {
+        return arguments[index];
+    }
+
+    /**
+     * Gets the nested plan of an operation of this plan.
+     *
+     * @param index The index of the operation.
+     * @return The nested plan of the operation at the specified index.
+     *         Will be {@code null} if the operation has no nested plan.
+     */
+    CodecPlan nestedPlan(int index) {
+        return nestedPlans[index];
+    }
+}
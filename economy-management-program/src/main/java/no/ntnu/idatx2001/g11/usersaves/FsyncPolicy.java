@@ -0,0 +1,24 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * When a save file is forced to disk, using {@link FileChannel#force(boolean)},
+ * before it replaces the old save file.
+ * Saves always replace the old save file in one step, so no matter the policy,
+ * a crash never leaves a half-written save file in place of the old one.
+ * The policy only decides how recent the saves that survive a power loss are.
+ *
+ * @see SaveManager#setFsyncPolicy(FsyncPolicy)
+ */
+public enum FsyncPolicy {
+    /** Every save is forced to disk. The safest, but slowest policy. */
+    ALWAYS,
+    /**
+     * A save is only forced to disk if no save has been forced
+     * for {@link SaveManager#FSYNC_BATCH_INTERVAL}.
+     */
+    BATCHED,
+    /** Saves are never forced to disk, and are written whenever the operating system wants. */
+    NEVER
+}
@@ -1,26 +1,82 @@
 package no.ntnu.idatx2001.g11.usersaves;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.util.Arrays;
-import no.ntnu.idatx2001.g11.enums.TimeType;
+import java.nio.channels.ReadableByteChannel;
 import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
-import no.ntnu.idatx2001.g11.generics.Frequency;
 import no.ntnu.idatx2001.g11.generics.Transaction;
 import no.ntnu.idatx2001.g11.generics.TransactionHistory;
 import no.ntnu.idatx2001.g11.generics.User;
 
 /**
  * Stores the corresponding load methods for every supported save version.
+ * Every version with templates in {@link VersionTemplate} is loaded through its
+ * precompiled {@link CodecPlan}.
  * <br/><br/>
  * Currently supported save versions are:
  * <ul>
+ *     <li>1.13.0 (segmented, with renamed categories)</li>
+ *     <li>1.12.0 (checked)</li>
+ *     <li>1.11.0 (indexed)</li>
+ *     <li>1.10.0 (segmented, without renamed categories)</li>
+ *     <li>1.9.0 (columnar)</li>
+ *     <li>1.8.0</li>
+ *     <li>1.7.0 (checked, amounts as floats)</li>
+ *     <li>1.6.0 (indexed, amounts as floats)</li>
+ *     <li>1.5.0 (segmented, amounts as floats)</li>
+ *     <li>1.4.0 (compressed, wraps a save of any other version)</li>
+ *     <li>1.3.0 (columnar, amounts as floats)</li>
+ *     <li>1.2.0</li>
+ *     <li>1.1.0</li>
+ *     <li>1.0.2</li>
  *     <li>1.0.1</li>
  *     <li>1.0.0</li>
  * </ul>
  */
 public class GetMethods {
+    private GetMethods() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Checks that a version can be loaded.
+     *
+     * @param version The save version to check.
+     * @throws UnsupportedVersionException if the version can't be loaded
+     */
+    private static void checkVersion(String version) {
+        if (!CodecPlan.isSupported(version)) {
+            throw new UnsupportedVersionException(version);
+        }
+    }
+
+    /**
+     * Makes a reader for save data that is fully in memory.
+     *
+     * @param saveBytes The save data to read, without the version bytes.
+     * @param version The save version of the save data.
+     * @return The reader made.
+     * @throws UnsupportedVersionException if an unsupported version is specified
+     */
+    static SaveDataReader getReader(ByteBuffer saveBytes, String version) {
+        checkVersion(version);
+        return new SaveDataReader(version, saveBytes);
+    }
+
+    /**
+     * Makes a reader for save data that is read from a channel.
+     *
+     * @param channel The channel to read from, positioned after the version bytes.
+     * @param version The save version of the save data.
+     * @return The reader made.
+     * @throws UnsupportedVersionException if an unsupported version is specified
+     */
+    static SaveDataReader getReader(ReadableByteChannel channel, String version) {
+        checkVersion(version);
+        return new SaveDataReader(version, channel);
+    }
+
     /**
      * Loads user save data.
      * Interprets and returns loaded save data in accordance to the specified save version.
@@ -28,95 +84,76 @@ public class GetMethods {
      * @param saveBytes The bytes of save data to load the user from.
      * @param version The save version of the save data.
      * @return The loaded user.
-     *         Will be {@code null} if an unsupported version is specified.
+     * @throws UnsupportedVersionException if an unsupported version is specified
      */
     public static User getUser(byte[] saveBytes, String version) {
-        User user;
-        switch (version) {
-            case "1.0.1":
-                user = getUser1Dot0Dot1(saveBytes);
-                break;
-            case "1.0.0":
-                user = getUser1Dot0Dot0(saveBytes);
-                break;
-            default:
-                throw new UnsupportedVersionException(version);
+        try {
+            return getReader(ByteBuffer.wrap(saveBytes), version).readUser();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
         }
-        return user;
     }
 
     /**
-     * Identical to version 1.0.0, only exists as a way to test different versions.
+     * Loads user save data from a buffer, reading every field at its place in the buffer.
+     * The buffer can be a file mapped into memory,
+     * so the save data is never copied as a whole.
+     * Interprets and returns loaded save data in accordance to the specified save version.
      *
-     * @param saveBytes The bytes of save data to get the purchase history from.
-     * @return The loaded purchase history.
+     * @param saveBytes The save data to load the user from, without the version bytes.
+     * @param version The save version of the save data.
+     * @return The loaded user.
+     * @throws IOException if the save data could not be read
+     * @throws UnsupportedVersionException if an unsupported version is specified
      */
-    private static User getUser1Dot0Dot1(byte[] saveBytes) {
-        return getUser1Dot0Dot0(saveBytes);
+    public static User getUser(ByteBuffer saveBytes, String version) throws IOException {
+        return getReader(saveBytes, version).readUser();
     }
 
     /**
-     * Loads the purchase history from an array of bytes.
-     * The purchase history must be of save version 1.0.0.
+     * Loads user save data from a channel.
+     * Interprets and returns loaded save data in accordance to the specified save version.
      *
-     * @param saveBytes The bytes of save data to get the purchase history from.
-     * @return The loaded purchase history.
+     * @param channel The channel to load the user from, positioned after the version bytes.
+     * @param version The save version of the save data.
+     * @return The loaded user.
+     * @throws IOException if the save data could not be read
+     * @throws UnsupportedVersionException if an unsupported version is specified
      */
-    private static User getUser1Dot0Dot0(byte[] saveBytes) {
-        int i = 9 + saveBytes[8]; //Assigns i at the first byte where the transaction history starts.
-        User user = new User(
-                new String(Arrays.copyOfRange(saveBytes, 9, i), StandardCharsets.UTF_8),
-                ByteBuffer.wrap(Arrays.copyOfRange(saveBytes, 0, 8)).getDouble()
-        );
-        TransactionHistory transactionHistory = user.getTransactionHistory();
-        while (i < saveBytes.length) {
-            int transactionLength =
-                    11 + saveBytes[i + 8] + saveBytes[i + 9] + saveBytes[i + 10];
-            byte[] transactionBytes = Arrays.copyOfRange(
-                    saveBytes,
-                    i,
-                    i + transactionLength
-            );
-            i += transactionLength;
+    public static User getUser(ReadableByteChannel channel, String version) throws IOException {
+        return getReader(channel, version).readUser();
+    }
 
-            Transaction transaction = new Transaction(
-                    new String(
-                            Arrays.copyOfRange(
-                                    transactionBytes,
-                                    11 + transactionBytes[8],
-                                    11 + transactionBytes[8] + transactionBytes[9]
-                            ),
-                            StandardCharsets.UTF_8
-                    ),
-                    new String(
-                            Arrays.copyOfRange(transactionBytes, 11, 11 + transactionBytes[8]),
-                            StandardCharsets.UTF_8
-                    ),
-                    ByteBuffer.wrap(Arrays.copyOfRange(transactionBytes, 4, 8)).getFloat(),
-                    LocalDate.of(
-                            ByteBuffer
-                                    .wrap(Arrays.copyOfRange(transactionBytes, 0, 2))
-                                    .getShort(),
-                            transactionBytes[2],
-                            transactionBytes[3]
-                    )
-            );
-            if (transactionBytes[10] != 0) {
-                byte[] freuencyBytes = Arrays.copyOfRange(
-                        transactionBytes,
-                        11 + transactionBytes[8] + transactionBytes[9],
-                        11 + transactionBytes[8] + transactionBytes[9] + transactionBytes[10]
-                );
-                transaction.setFrequency(new Frequency(
-                            ByteBuffer.wrap(Arrays.copyOfRange(freuencyBytes, 0, 2)).getShort(),
-                            TimeType.valueOf(new String(
-                                    Arrays.copyOfRange(freuencyBytes, 3, 3 + freuencyBytes[2])
-                            )))
-                );
-            }
-            transactionHistory.addTransaction(transaction);
-        }
+    /**
+     * Loads a single transaction.
+     * Interprets and returns the transaction in accordance to the specified save version.
+     *
+     * @param transactionBytes The bytes of a single encoded transaction.
+     * @param version The save version of the transaction bytes.
+     * @return The loaded transaction.
+     * @throws IOException if the transaction could not be read
+     * @throws UnsupportedVersionException if an unsupported version is specified
+     */
+    public static Transaction getTransaction(ByteBuffer transactionBytes, String version)
+            throws IOException {
+        checkVersion(version);
+        return new SaveDataReader(version, transactionBytes).readTransaction();
+    }
 
-        return user;
+    /**
+     * Loads a transaction history on its own, like the transaction history of a user.
+     * Interprets and returns the transaction history in accordance to the specified version.
+     *
+     * @param historyBytes The bytes of an encoded transaction history.
+     * @param version The save version of the transaction history bytes.
+     * @return The loaded transaction history.
+     * @throws IOException if the transaction history could not be read
+     * @throws UnsupportedVersionException if an unsupported version is specified
+     * @see HistorySegment
+     */
+    public static TransactionHistory getTransactionHistory(ByteBuffer historyBytes, String version)
+            throws IOException {
+        checkVersion(version);
+        return new SaveDataReader(version, historyBytes).readTransactionHistory();
     }
 }
@@ -0,0 +1,246 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.CRC32C;
+import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
+import no.ntnu.idatx2001.g11.generics.Money;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.TransactionHistory;
+
+/**
+ * <p>
+ *     Every transaction of a single year, stored in its own file next to a save file.
+ *     Saves of the {@link SaveFormat#SEGMENTS} format only store the transactions of
+ *     the current year themselves, and refer to a segment for every older year,
+ *     so older years are only read when they're asked for.
+ * </p><p>
+ *     A segment file is stored as a save version, stored like the version of a save file,
+ *     followed by a transaction history encoded to bytes as documented in
+ *     {@link TransactionHistory#writeTo(ByteBuffer)}.
+ *     Segment files are never changed once written.
+ *     Their names include the checksum of their content,
+ *     so a year that changes is written to a new file,
+ *     and older saves & backups keep referring to the file they were saved with.
+ * </p>
+ *
+ * @see TransactionHistory#addSegment(HistorySegment)
+ */
+public class HistorySegment implements Savable {
+    private final int year;
+    private final int transactionCount;
+    private final long income;
+    private final long expenses;
+    private final int checksum;
+    private final String fileName;
+
+    /**
+     * Makes a reference to a segment file.
+     *
+     * @param year The year of every transaction in the segment.
+     * @param transactionCount The amount of transactions in the segment.
+     * @param income The sum of every income in the segment, in minor units.
+     * @param expenses The sum of every expense in the segment, in minor units.
+     * @param checksum The CRC32C checksum of the segment file.
+     * @param fileName The name of the segment file, in the save directory.
+     */
+    HistorySegment(int year, int transactionCount, long income, long expenses,
+                   int checksum, String fileName) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("String \"fileName\" cannot be null or blank");
+        }
+        this.year = year;
+        this.transactionCount = transactionCount;
+        this.income = income;
+        this.expenses = expenses;
+        this.checksum = checksum;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Gets the start of the name of every segment file of a save slot.
+     *
+     * @param saveSlot The save slot to get the start of the segment file names of.
+     * @return The start of the name of every segment file of the save slot.
+     */
+    static String getFileNamePrefix(int saveSlot) {
+        return Paths.get(SaveManager.getFilepath(saveSlot)).getFileName() + ".";
+    }
+
+    /**
+     * Checks if the segment file was written for a save slot.
+     *
+     * @param saveSlot The save slot to check.
+     * @return If the segment file belongs to the save slot.
+     */
+    boolean belongsTo(int saveSlot) {
+        return fileName.startsWith(getFileNamePrefix(saveSlot))
+                && fileName.endsWith(SaveManager.SEGMENT_EXTENSION);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Writes the transactions of a year to a segment file of a save slot.
+     * If the transactions are the same as in the segment of the slot they were loaded from,
+     * nothing is written, and that segment is used.
+     * Likewise, if a segment file with the same content already exists, it's used as it is.
+     *
+     * @param saveSlot The save slot the segment is for.
+     * @param year The year of every transaction.
+     * @param transactions The transactions to write.
+     * @param loadedFrom The segment the transactions were loaded from, or null.
+     * @param force If the segment file should be forced to disk.
+     * @return A reference to the segment file.
+     * @throws IOException if the segment file could not be written
+     */
+    static HistorySegment write(int saveSlot, int year, List<Transaction> transactions,
+                                HistorySegment loadedFrom, boolean force) throws IOException {
+        TransactionHistory history = new TransactionHistory();
+        for (Transaction transaction : transactions) {
+            history.addTransaction(transaction);
+        }
+        byte[] bytes = ByteBuffer.allocate(2 + history.byteLength())
+                .putShort(SaveManager.getVersionBits(SaveManager.SAVE_VERSION))
+                .put(history.asBytes())
+                .array();
+        int checksum = checksum(bytes);
+        if (loadedFrom != null && loadedFrom.checksum == checksum
+                && loadedFrom.belongsTo(saveSlot) && Files.exists(loadedFrom.getPath())) {
+            return loadedFrom;
+        }
+        String fileName = getFileNamePrefix(saveSlot) + year + "-"
+                + String.format("%08x", checksum) + SaveManager.SEGMENT_EXTENSION;
+        HistorySegment segment = new HistorySegment(year, transactions.size(),
+                history.getTotalIncome(), history.getTotalExpenses(), checksum, fileName);
+        if (!Files.exists(segment.getPath())) {
+            Path temporaryPath = Paths.get(segment.getPath() + SaveManager.TEMPORARY_EXTENSION);
+            try {
+                SaveManager.writeFile(temporaryPath, bytes, force);
+                SaveManager.moveAtomically(temporaryPath, segment.getPath(), force);
+            } catch (IOException ioe) {
+                Files.deleteIfExists(temporaryPath);
+                throw ioe;
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Reads every transaction in the segment file.
+     *
+     * @return The transactions in the segment.
+     * @throws IOException if the segment file could not be read,
+     *     or doesn't match the checksum it was saved with
+     */
+    public List<Transaction> load() throws IOException {
+        byte[] bytes = Files.readAllBytes(getPath());
+        if (checksum(bytes) != checksum) {
+            throw new IOException("Segment file \"" + fileName + "\" is corrupted");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        String version = SaveManager.getVersionString(buffer.getShort());
+        try {
+            return GetMethods.getTransactionHistory(buffer, version).getTransactions();
+        } catch (UnsupportedVersionException uve) {
+            throw new IOException("Segment file \"" + fileName + "\" has an unsupported version",
+                    uve);
+        }
+    }
+
+    /**
+     * Gets the path to the segment file.
+     *
+     * @return The path to the segment file.
+     */
+    public Path getPath() {
+        return Paths.get(SaveManager.SAVE_PATH, fileName);
+    }
+
+    /**
+     * Gets the name of the segment file, in the save directory.
+     *
+     * @return The name of the segment file.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets the year of every transaction in the segment.
+     *
+     * @return The year of the segment.
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Gets the amount of transactions in the segment.
+     *
+     * @return The amount of transactions in the segment.
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Gets the sum of every income in the segment, in minor units (see {@link Money}).
+     *
+     * @return The sum of every income in the segment.
+     */
+    public long getIncome() {
+        return income;
+    }
+
+    /**
+     * Gets the sum of every expense in the segment, in minor units (see {@link Money}).
+     *
+     * @return The sum of every expense in the segment.
+     */
+    public long getExpenses() {
+        return expenses;
+    }
+
+    /**
+     * Writes the reference to the segment into a buffer.<br/><br/>
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li>The year of the segment, as a zigzag-encoded varint.</li>
+     *     <li>The amount of transactions in the segment, as a varint.</li>
+     *     <li>The sum of every income in the segment in minor units, as a long.</li>
+     *     <li>The sum of every expense in the segment in minor units, as a long.</li>
+     *     <li>The CRC32C checksum of the segment file, as an int.</li>
+     *     <li>The length of the name of the segment file, as a varint.</li>
+     *     <li>The name of the segment file, encoded to bytes using UTF-8.</li>
+     * </ul>
+     * Varints are documented in {@link Varint}.
+     *
+     * @param buffer The buffer to write the reference into.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        Varint.writeSigned(buffer, year);
+        Varint.write(buffer, transactionCount);
+        buffer.putLong(income);
+        buffer.putLong(expenses);
+        buffer.putInt(checksum);
+        Varint.write(buffer, Utf8.length(fileName));
+        Utf8.write(buffer, fileName);
+    }
+
+    @Override
+    public int byteLength() {
+        int fileNameLength = Utf8.length(fileName);
+        return Varint.signedLength(year) + Varint.length(transactionCount) + 8 + 8 + 4
+                + Varint.length(fileNameLength) + fileNameLength;
+    }
+}
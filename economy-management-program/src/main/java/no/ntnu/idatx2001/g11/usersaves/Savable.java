@@ -1,15 +1,43 @@
 package no.ntnu.idatx2001.g11.usersaves;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * Interface for any items that can be saved to a file.
  */
 public interface Savable {
+    /**
+     * Writes this object's byte form directly into a buffer.
+     *
+     * @param buffer the buffer to write into.
+     *               Must have at least {@link #byteLength()} bytes remaining.
+     */
+    void writeTo(ByteBuffer buffer);
+
+    /**
+     * Writes this object's byte form through a save writer.
+     * Objects containing many other objects should override this,
+     * writing each contained object separately,
+     * so the save writer never needs room for the entire object at once.
+     *
+     * @param writer the save writer to write through.
+     * @throws IOException if the bytes could not be written
+     */
+    default void writeTo(SaveWriter writer) throws IOException {
+        writeTo(writer.reserve(byteLength()));
+    }
+
     /**
      * Gets this object as bytes that can be saved.
      *
      * @return this object as bytes that can be saved
      */
-    byte[] asBytes();
+    default byte[] asBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(byteLength());
+        writeTo(buffer);
+        return buffer.array();
+    }
 
     /**
      * Gets the length of this object's byte form.
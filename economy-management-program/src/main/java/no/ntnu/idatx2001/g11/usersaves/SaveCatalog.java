@@ -0,0 +1,426 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
+
+/**
+ * <p>
+ *     A catalog of every save slot, with the {@link SlotSummary} of each slot,
+ *     stored in a single file in the save directory.
+ *     Save slots are listed & searched through the catalog,
+ *     so no save file is read to show the save slots, no matter how many there are.
+ * </p><p>
+ *     The catalog is updated every time a save file is written,
+ *     and is kept in memory once read.
+ *     Other programs update the same catalog file, so it's read again whenever
+ *     its size or last modified time has changed since it was last read or written here.
+ *     Updating the catalog holds a {@link SaveLock#file(Path)} on the catalog file
+ *     from reading it to writing it, so updates from other programs are never lost.
+ *     No save slot is locked while the catalog file is held.
+ *     Usernames are also indexed in alphabetical order, ignoring case,
+ *     so searching for the start of a username only goes through the usernames that match.
+ *     If the catalog file is missing or unreadable, it's rebuilt from the summaries
+ *     of the save files in the save directory.
+ *     Like the summaries, the catalog doesn't include changes only stored in the
+ *     {@link TransactionJournal}, and save files that can't be read are left out.
+ * </p><p>
+ *     The catalog is stored as follows:
+ *     <ul>
+ *         <li><b>Byte 0 - 1:</b> The save version of the catalog,
+ *         stored like the version of a save file.</li>
+ *         <li><b>Byte 2 - n:</b> The amount of save slots, as a varint.</li>
+ *         <li>For every save slot, the slot as a varint,
+ *         followed by its summary, encoded to bytes as documented in
+ *         {@link SlotSummary#writeTo(ByteBuffer)}.</li>
+ *     </ul>
+ *     Varints are documented in {@link Varint}.
+ * </p>
+ */
+public final class SaveCatalog {
+    private static final Pattern SAVE_FILE_NAME = Pattern.compile(
+            Pattern.quote(SaveManager.FILE_NAME_BASE) + "(\\d{1,9})"
+                    + Pattern.quote(SaveManager.FILE_EXTENSION));
+
+    // Every summary by slot, and every slot by lower case username. Null until read
+    private static NavigableMap<Integer, SlotSummary> summaries = null;
+    private static NavigableMap<String, NavigableSet<Integer>> usernameIndex = null;
+
+    // The size & last modified time of the catalog file when it was last read or written
+    private static long catalogSize = -1;
+    private static long catalogLastModified = -1;
+
+    private SaveCatalog() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Gets the path to the catalog file.
+     *
+     * @return The path to the catalog file.
+     */
+    public static Path getPath() {
+        return Paths.get(SaveManager.SAVE_PATH, SaveManager.CATALOG_FILE_NAME);
+    }
+
+    /**
+     * Makes sure the catalog in memory is up to date, reading the catalog file
+     * if it's not read yet or was changed by another program,
+     * or rebuilding it if it can't be read.
+     */
+    private static void ensureLoaded() {
+        if (summaries != null && isCurrent()) {
+            return;
+        }
+        summaries = new TreeMap<>();
+        usernameIndex = new TreeMap<>();
+        try {
+            read();
+        } catch (IOException | RuntimeException e) {
+            scanSaveFiles();
+        }
+    }
+
+    /**
+     * Checks if the catalog file is the one that was last read or written here.
+     *
+     * @return If the catalog file hasn't changed since it was last read or written.
+     */
+    private static boolean isCurrent() {
+        long[] stamp = readStamp();
+        return stamp[0] == catalogSize && stamp[1] == catalogLastModified;
+    }
+
+    /**
+     * Reads the size & last modified time of the catalog file.
+     *
+     * @return The size & last modified time in milliseconds, or -1 for both if there's no file.
+     */
+    private static long[] readStamp() {
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(getPath(), BasicFileAttributes.class);
+            return new long[] {attributes.size(), attributes.lastModifiedTime().toMillis()};
+        } catch (IOException ioe) {
+            return new long[] {-1, -1};
+        }
+    }
+
+    /**
+     * Remembers the size & last modified time of the catalog file,
+     * after it's read or written here.
+     *
+     * @param stamp The size & last modified time, from {@link #readStamp()}.
+     */
+    private static void setStamp(long[] stamp) {
+        catalogSize = stamp[0];
+        catalogLastModified = stamp[1];
+    }
+
+    /**
+     * Reads the catalog file into memory.
+     *
+     * @throws NoSuchFileException if there is no catalog file
+     * @throws IOException if the catalog file could not be read, or is malformed
+     */
+    private static void read() throws IOException {
+        //Taken before reading, so a file replaced while reading is read again later on.
+        long[] stamp = readStamp();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(getPath()));
+        try {
+            String version = SaveManager.getVersionString(buffer.getShort());
+            if (!SaveManager.SAVE_VERSION.equals(version)) {
+                throw new IOException("Catalog has an unsupported version");
+            }
+            long slotCount = Varint.read(buffer);
+            for (long i = 0; i < slotCount; i++) {
+                long slot = Varint.read(buffer);
+                if (slot < 0 || slot > Integer.MAX_VALUE) {
+                    throw new IOException("Catalog has an invalid save slot");
+                }
+                put((int) slot, SlotSummary.read(buffer));
+            }
+        } catch (BufferUnderflowException bue) {
+            throw new EOFException("Catalog ended unexpectedly");
+        }
+        setStamp(stamp);
+    }
+
+    /**
+     * Changes the catalog, and writes it to the catalog file.
+     * The catalog file is held from reading it to writing it,
+     * and read again first if another program changed it since it was last read,
+     * so changes from other programs are kept.
+     * If the catalog file can't be locked, it's deleted,
+     * so an outdated catalog is never read.
+     *
+     * @param change The change to make to the catalog in memory.
+     * @param force If the catalog file should be forced to disk.
+     */
+    private static void modify(Runnable change, boolean force) {
+        //Rebuilding reads save files, which is never done while the catalog file is held.
+        ensureLoaded();
+        try (SaveLock lock = SaveLock.file(getPath())) {
+            if (!isCurrent()) {
+                NavigableMap<Integer, SlotSummary> loadedSummaries = summaries;
+                NavigableMap<String, NavigableSet<Integer>> loadedIndex = usernameIndex;
+                summaries = new TreeMap<>();
+                usernameIndex = new TreeMap<>();
+                try {
+                    read();
+                } catch (IOException | RuntimeException e) {
+                    //Unreadable, so it's replaced by the catalog that was loaded.
+                    summaries = loadedSummaries;
+                    usernameIndex = loadedIndex;
+                }
+            }
+            change.run();
+            write(force);
+        } catch (IOException ioe) {
+            change.run();
+            delete();
+        }
+    }
+
+    /**
+     * Rebuilds the catalog from the summaries of every save file in the save directory,
+     * and writes it to the catalog file.
+     * Save files that can't be read are left out.
+     */
+    public static synchronized void rebuild() {
+        if (summaries == null) {
+            summaries = new TreeMap<>();
+            usernameIndex = new TreeMap<>();
+        }
+        scanSaveFiles();
+    }
+
+    /**
+     * Replaces the catalog in memory with the summaries of every save file
+     * in the save directory, and writes it to the catalog file.
+     */
+    private static void scanSaveFiles() {
+        summaries.clear();
+        usernameIndex.clear();
+        for (int slot : findSaveSlots()) {
+            try {
+                put(slot, SaveManager.readSlotSummary(slot));
+            } catch (IOException | UnsupportedVersionException e) {
+                //Unreadable save files can't be listed by their summary.
+            }
+        }
+        write(false);
+    }
+
+    /**
+     * Finds the save slot of every save file in the save directory,
+     * without reading any of them.
+     * If the save directory can't be read in full, the slots that were found are returned.
+     *
+     * @return Every save slot with a save file, in order.
+     */
+    static NavigableSet<Integer> findSaveSlots() {
+        NavigableSet<Integer> slots = new TreeSet<>();
+        Path saveDirectory = Paths.get(SaveManager.SAVE_PATH);
+        if (Files.isDirectory(saveDirectory)) {
+            try (DirectoryStream<Path> saveFiles = Files.newDirectoryStream(saveDirectory,
+                    SaveManager.FILE_NAME_BASE + "*" + SaveManager.FILE_EXTENSION)) {
+                for (Path saveFile : saveFiles) {
+                    Matcher matcher = SAVE_FILE_NAME.matcher(saveFile.getFileName().toString());
+                    if (matcher.matches()) {
+                        slots.add(Integer.parseInt(matcher.group(1)));
+                    }
+                }
+            } catch (IOException ioe) {
+                //Whatever was found is still returned.
+            }
+        }
+        return slots;
+    }
+
+    private static String indexKey(SlotSummary summary) {
+        return summary.getUsername().toLowerCase(Locale.ROOT);
+    }
+
+    private static void put(int slot, SlotSummary summary) {
+        remove(slot);
+        summaries.put(slot, summary);
+        usernameIndex.computeIfAbsent(indexKey(summary), username -> new TreeSet<>()).add(slot);
+    }
+
+    private static void remove(int slot) {
+        SlotSummary removed = summaries.remove(slot);
+        if (removed != null) {
+            NavigableSet<Integer> slots = usernameIndex.get(indexKey(removed));
+            slots.remove(slot);
+            if (slots.isEmpty()) {
+                usernameIndex.remove(indexKey(removed));
+            }
+        }
+    }
+
+    /**
+     * Writes the catalog to the catalog file, holding the catalog file while writing.
+     * If the catalog file can't be written, it's deleted instead,
+     * so an outdated catalog is never read.
+     *
+     * @param force If the catalog file should be forced to disk.
+     */
+    private static void write(boolean force) {
+        int length = 2 + Varint.length(summaries.size());
+        for (int slot : summaries.keySet()) {
+            length += Varint.length(slot) + SlotSummary.LENGTH;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort(SaveManager.getVersionBits(SaveManager.SAVE_VERSION));
+        Varint.write(buffer, summaries.size());
+        for (Map.Entry<Integer, SlotSummary> entry : summaries.entrySet()) {
+            Varint.write(buffer, entry.getKey());
+            entry.getValue().writeTo(buffer);
+        }
+        Path temporaryPath = Paths.get(getPath() + SaveManager.TEMPORARY_EXTENSION);
+        try (SaveLock lock = SaveLock.file(getPath())) {
+            SaveManager.writeFile(temporaryPath, buffer.array(), force);
+            SaveManager.moveAtomically(temporaryPath, getPath(), force);
+            setStamp(readStamp());
+        } catch (IOException ioe) {
+            delete();
+        }
+    }
+
+    /**
+     * Deletes the catalog file, for when it can't be written,
+     * so an outdated catalog is never read.
+     */
+    private static void delete() {
+        try {
+            Files.deleteIfExists(Paths.get(getPath() + SaveManager.TEMPORARY_EXTENSION));
+            Files.deleteIfExists(getPath());
+        } catch (IOException deleteException) {
+            //Nothing more can be done, the catalog is rebuilt if it can't be read.
+        }
+        setStamp(readStamp());
+    }
+
+    /**
+     * Updates the summary of a save slot in the catalog, and writes the catalog file.
+     *
+     * @param slot The save slot that was saved.
+     * @param summary The summary of the save file that was written.
+     * @param force If the catalog file should be forced to disk.
+     */
+    static synchronized void update(int slot, SlotSummary summary, boolean force) {
+        if (summary == null) {
+            throw new IllegalArgumentException("\"summary\" cannot be null");
+        }
+        modify(() -> put(slot, summary), force);
+    }
+
+    /**
+     * Updates the summaries of many save slots in the catalog,
+     * and writes the catalog file once.
+     *
+     * @param updatedSummaries The summary of every save file that was written, by slot.
+     * @param force If the catalog file should be forced to disk.
+     */
+    static synchronized void updateAll(Map<Integer, SlotSummary> updatedSummaries,
+                                       boolean force) {
+        if (updatedSummaries == null) {
+            throw new IllegalArgumentException("\"updatedSummaries\" cannot be null");
+        }
+        modify(() -> updatedSummaries.forEach(SaveCatalog::put), force);
+    }
+
+    /**
+     * Updates the summary of a save slot in the catalog from its save file,
+     * and writes the catalog file.
+     * If the save file can't be read, the slot is removed from the catalog.
+     *
+     * @param slot The save slot to update.
+     * @param force If the catalog file should be forced to disk.
+     */
+    static synchronized void refresh(int slot, boolean force) {
+        SlotSummary summary;
+        try {
+            summary = SaveManager.readSlotSummary(slot);
+        } catch (IOException | UnsupportedVersionException e) {
+            //Unreadable save files can't be listed by their summary.
+            summary = null;
+        }
+        SlotSummary readSummary = summary;
+        modify(() -> {
+            remove(slot);
+            if (readSummary != null) {
+                put(slot, readSummary);
+            }
+        }, force);
+    }
+
+    /**
+     * Gets the summary of every save slot in the catalog.
+     *
+     * @return The summary of every save slot, by slot, in the order of the slots.
+     */
+    public static synchronized Map<Integer, SlotSummary> list() {
+        ensureLoaded();
+        return Collections.unmodifiableMap(new LinkedHashMap<>(summaries));
+    }
+
+    /**
+     * Searches the catalog for every save slot with a username that starts with a query,
+     * ignoring case. Only the usernames that match are gone through.
+     *
+     * @param query The start of the usernames to find. An empty query finds every save slot.
+     * @return The summary of every save slot found, by slot, in the order of the usernames.
+     */
+    public static synchronized Map<Integer, SlotSummary> search(String query) {
+        if (query == null) {
+            throw new IllegalArgumentException("String \"query\" cannot be null");
+        }
+        ensureLoaded();
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        Map<Integer, SlotSummary> found = new LinkedHashMap<>();
+        //Every username that starts with the query is ordered between it and its last extension.
+        for (NavigableSet<Integer> slots : usernameIndex.subMap(
+                lowerCaseQuery, true, lowerCaseQuery + Character.MAX_VALUE, false).values()) {
+            for (int slot : slots) {
+                found.put(slot, summaries.get(slot));
+            }
+        }
+        return Collections.unmodifiableMap(found);
+    }
+
+    /**
+     * Gets the lowest save slot that has no save file, to store a new user in.
+     * Only the save slots that are catalogued are checked for a save file.
+     *
+     * @return The lowest free save slot.
+     */
+    public static synchronized int nextFreeSlot() {
+        ensureLoaded();
+        int slot = 0;
+        while (summaries.containsKey(slot)
+                || Files.exists(Paths.get(SaveManager.getFilepath(slot)))) {
+            slot++;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,80 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     The damage found while loading a save, where every record has a checksum of its own,
+ *     as documented in {@link CheckedRecords}.
+ * </p><p>
+ *     Damaged records are skipped while loading, and every other record is loaded as usual.
+ *     Where records were skipped is kept as gaps, so the records of each gap can be found in
+ *     the backups of the save, between the records on either side of the gap.
+ * </p>
+ *
+ * @see SaveManager#loadUserBytes(int)
+ */
+public class SaveDamage {
+    private final int damagedRecords;
+    private final List<Integer> gaps;
+    private int recoveredRecords;
+
+    /**
+     * Constructor.
+     *
+     * @param damagedRecords The amount of records that were damaged.
+     * @param gaps Where in the loaded list of transactions records were skipped, in order.
+     *             A gap at a position means records are missing before the transaction
+     *             at that position.
+     */
+    SaveDamage(int damagedRecords, List<Integer> gaps) {
+        this.damagedRecords = damagedRecords;
+        this.gaps = Collections.unmodifiableList(gaps);
+    }
+
+    /**
+     * Gets the amount of records that were damaged in the save.
+     *
+     * @return The amount of damaged records.
+     */
+    public int getDamagedRecords() {
+        return damagedRecords;
+    }
+
+    /**
+     * Gets the amount of damaged records that were recovered from backups.
+     *
+     * @return The amount of recovered records.
+     */
+    public int getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * Gets the amount of damaged records that could not be recovered.
+     *
+     * @return The amount of lost records.
+     */
+    public int getLostRecords() {
+        return Math.max(0, damagedRecords - recoveredRecords);
+    }
+
+    /**
+     * Gets where in the loaded list of transactions records were skipped.
+     *
+     * @return The position of every gap, in order.
+     */
+    List<Integer> getGaps() {
+        return gaps;
+    }
+
+    /**
+     * Counts records recovered from a backup.
+     *
+     * @param recoveredRecords The amount of records recovered.
+     */
+    void addRecoveredRecords(int recoveredRecords) {
+        this.recoveredRecords += recoveredRecords;
+    }
+}
@@ -1,228 +1,997 @@
 package no.ntnu.idatx2001.g11.usersaves;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import no.ntnu.idatx2001.g11.enums.TimeType;
+import no.ntnu.idatx2001.g11.generics.Frequency;
+import no.ntnu.idatx2001.g11.generics.Money;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.TransactionHistory;
+import no.ntnu.idatx2001.g11.generics.User;
 
 /**
  * <p>
  *     Reads save data with version control, and converts the data to the current version.
- *     The data will be ordered,
- *     but it might not be in the same order as the current version template.
+ *     The save data is read in a single pass,
+ *     and every transaction is made as soon as its last field has been read.
  * </p><p>
- *     Data is interpreted using a {@link VersionTemplate}.
+ *     Data is interpreted using the {@link CodecPlan} of its version,
+ *     compiled from a {@link VersionTemplate}.
+ *     Fields are matched to the current version by their template key,
+ *     so fields missing from older versions get a default value,
+ *     and fields that no longer exist are skipped.
+ * </p><p>
+ *     The save data can either be fully in memory, or be read from a channel.
+ *     When reading from a channel, only a small buffer of save data is kept in memory at a time.
+ * </p><p>
+ *     Transactions stored as checked records, documented in {@link CheckedRecords},
+ *     are checked one at a time. A damaged record is skipped,
+ *     and reading carries on from the next intact record,
+ *     so the damage is reported through {@link #getDamage()} instead of failing the read.
+ * </p><p>
+ *     Every reader keeps its own position & state, so any amount of readers can read
+ *     at the same time, like the blocks of an indexed save read by {@link TransactionPages}.
  * </p>
  *
+ * @see CodecPlan
  * @see VersionTemplate
  * @see VersionTemplate#CURRENT_VERSION
  */
 public class SaveDataReader {
-    private SaveDataReader() {
-        throw new IllegalStateException("Utility class");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ReadableByteChannel channel;
+    //Grows when a checked record is longer than the buffer
+    private ByteBuffer buffer;
+    private final String saveVersion;
+
+    //Strings referenced by the transactions that follow
+    private String[] stringDictionary = new String[0];
+
+    //User fields. Starting funds stored as a double by older versions are kept for checksums
+    private long startingFunds;
+    private double storedStartingFunds;
+    private boolean startingFundsStoredAsDouble;
+    private String username;
+    private TransactionHistory transactionHistory;
+    private List<HistorySegment> historySegments = new ArrayList<>();
+    //The current name of every category renamed after the segments, by its name in them
+    private Map<String, String> categoryRenames = new LinkedHashMap<>();
+
+    //Checked records that were damaged, and where in the transactions they were skipped
+    private int damagedRecords;
+    private List<Integer> damageGaps = new ArrayList<>();
+
+    //If only the fields before the transactions are read, and the amount of transactions
+    private boolean headerOnly = false;
+    private int transactionCount;
+
+    //Transaction fields, reset for every transaction
+    private int transactionYear;
+    private byte transactionMonth;
+    private byte transactionDay;
+    private long transactionAmount;
+    private String transactionCategory;
+    private String transactionName;
+    private boolean hasFrequency;
+    private short frequencyAmount;
+    private String frequencyType;
+
+    /**
+     * Makes a reader for save data that is fully in memory.
+     *
+     * @param saveVersion The version of the save data.
+     * @param saveBytes The save data, without the version bytes.
+     */
+    public SaveDataReader(String saveVersion, ByteBuffer saveBytes) {
+        this.saveVersion = saveVersion;
+        this.channel = null;
+        this.buffer = saveBytes;
     }
 
-    private static int index;
+    /**
+     * Makes a reader for save data that is read from a channel.
+     *
+     * @param saveVersion The version of the save data.
+     * @param channel The channel to read save data from, positioned after the version bytes.
+     */
+    public SaveDataReader(String saveVersion, ReadableByteChannel channel) {
+        this.saveVersion = saveVersion;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+    }
 
-    private static <T> Map<String, T> addStringToKeys(Map<String, T> map, String stringToAdd) {
-        return map
-                .entrySet()
-                .stream()
-                .collect(Collectors.toMap(
-                        e -> e.getKey() + stringToAdd,
-                        Map.Entry::getValue,
-                        (a, b) -> a,
-                        LinkedHashMap::new
-                ));
+    /**
+     * Makes sure the buffer has a specified amount of bytes remaining,
+     * reading more from the channel if needed.
+     *
+     * @param length The amount of bytes needed. Cannot be larger than the buffer's capacity.
+     * @throws EOFException if the save data ends before the bytes needed
+     * @throws IOException if the save data could not be read
+     */
+    private void require(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        if (channel != null) {
+            buffer.compact();
+            while (buffer.position() < length && channel.read(buffer) >= 0) {
+                //Keep reading until enough bytes are buffered, or the channel is empty.
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < length) {
+            throw new EOFException("Save data ended unexpectedly");
+        }
     }
 
     /**
-     * <p>
-     *     Gets an empty byte map of a specified object type.
-     *     "Empty" in this context means a map where all the values are 0-length byte arrays.
-     * </p><p>
-     *     This byte map will use template version {@link VersionTemplate#CURRENT_VERSION}.
-     * </p>
+     * Makes sure the buffer has a specified amount of bytes remaining, like
+     * {@link #require(int)}, but without failing if the save data ends before that.
+     * The buffer grows if it's too small to hold the bytes.
      *
-     * @param type The object type to get the byte map for
-     * @return An empty byte map
+     * @param length The amount of bytes needed.
+     * @return If the bytes are remaining.
+     * @throws IOException if the save data could not be read
      */
-    private static Map<String, byte[]> getEmptyByteMapOfType(String type) {
-        Map<String, byte[]> byteMap = new LinkedHashMap<>();
-        Map<String, Integer> template = VersionTemplate.get(type, VersionTemplate.CURRENT_VERSION);
-        for (Map.Entry<String, Integer> entry : template.entrySet()) {
-            if (entry.getValue() >= -1) {
-                byteMap.put(entry.getKey(), new byte[0]); //streams don't support null values
-            } else if (entry.getValue() == -2) {
-                byteMap.putAll(getEmptyByteMapOfType("TRANSACTION_HISTORY"));
-            } else if (entry.getValue() == -3) {
-                byteMap.putAll(addStringToKeys(
-                        getEmptyByteMapOfType("TRANSACTION"),
-                        "!transactionIndex")
-                );
-            } else if (entry.getValue() == -4) {
-                byteMap.putAll(getEmptyByteMapOfType("FREQUENCY"));
+    private boolean request(int length) throws IOException {
+        if (length > buffer.capacity() && channel != null) {
+            buffer = ByteBuffer.allocate(length).put(buffer).flip();
+        }
+        try {
+            require(length);
+            return true;
+        } catch (EOFException eofe) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a string of a specified length from the save data.
+     *
+     * @param length The amount of bytes the string is stored in.
+     * @return The string read.
+     * @throws IOException if the save data could not be read
+     */
+    private String readString(int length) throws IOException {
+        if (length <= buffer.capacity()) {
+            require(length);
+            String string;
+            if (buffer.hasArray()) {
+                string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] stringBytes = new byte[length];
+                buffer.get(stringBytes);
+                string = new String(stringBytes, StandardCharsets.UTF_8);
             }
+            return string;
+        }
+        byte[] stringBytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            require(1);
+            int chunk = Math.min(buffer.remaining(), length - read);
+            buffer.get(stringBytes, read, chunk);
+            read += chunk;
         }
-        return byteMap;
+        return new String(stringBytes, StandardCharsets.UTF_8);
     }
 
     /**
-     * Puts save data into a byte map of a specified object type.
+     * Skips over a specified amount of bytes in the save data.
      *
-     * @param type The object type to get the byte map for
-     * @param saveVersion The version of the save data.
-     *                    The returned byte map will also be of this version
-     * @param saveBytes The save data
-     * @return A loaded byte map for the specified version
-     *
-     * @see VersionTemplate
-     */
-    private static Map<String, byte[]> getVersionByteMapOfType(
-            String type, String saveVersion, byte[] saveBytes) {
-        Map<String, byte[]> byteMap = new LinkedHashMap<>();
-        Map<String, Integer> template = VersionTemplate.get(type, saveVersion);
-        for (Map.Entry<String, Integer> entry : template.entrySet()) {
-            if (entry.getValue() >= 0) {
-                int dataLength = entry.getValue();
-                byteMap.put(entry.getKey(),
-                        Arrays.copyOfRange(saveBytes, index, index + dataLength));
-                index += dataLength;
-            } else if (entry.getValue() == -1) {
-                int dataLength = saveBytes[index];
-                index++;
-                byteMap.put(entry.getKey(),
-                        Arrays.copyOfRange(saveBytes, index, index + dataLength));
-                index += dataLength;
-            } else if (entry.getValue() == -2) {
-                byteMap.putAll(getVersionByteMapOfType(
-                        "TRANSACTION_HISTORY", saveVersion, saveBytes));
-            } else if (entry.getValue() == -3) {
-                int repeatAmount = ByteBuffer
-                        .wrap(Arrays.copyOfRange(saveBytes, index, index + 2))
-                        .getShort();
-                index += 2;
-                for (int i = 0; i < repeatAmount; i++) {
-                    byteMap.putAll(addStringToKeys(
-                            getVersionByteMapOfType("TRANSACTION", saveVersion, saveBytes),
-                            "|transactionIndex&" + i
-                    ));
-                }
-            } else if (entry.getValue() == -4) {
-                index++;
-                if (saveBytes[index - 1] != 0) {
-                    byteMap.putAll(getVersionByteMapOfType(
-                            "FREQUENCY", saveVersion, saveBytes));
-                }
+     * @param length The amount of bytes to skip.
+     * @throws IOException if the save data could not be read
+     */
+    private void skip(int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            require(1);
+            int chunk = Math.min(buffer.remaining(), length - skipped);
+            buffer.position(buffer.position() + chunk);
+            skipped += chunk;
+        }
+    }
+
+    /**
+     * Skips over a specified amount of bytes in the save data, which may be more than an int.
+     *
+     * @param length The amount of bytes to skip.
+     * @throws IOException if the save data could not be read
+     */
+    private void skipLong(long length) throws IOException {
+        for (long skipped = 0; skipped < length; skipped += Integer.MAX_VALUE) {
+            skip((int) Math.min(Integer.MAX_VALUE, length - skipped));
+        }
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint from the save data.
+     *
+     * @return The number read.
+     * @throws IOException if the save data could not be read, or the varint is malformed
+     * @see Varint
+     */
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 7 * Varint.MAX_LENGTH; shift += 7) {
+            require(1);
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
             }
         }
-        return byteMap;
+        throw new IOException("Save data contains a malformed varint");
     }
 
     /**
-     * <p>
-     *     Gets an empty byte map of type {@link VersionTemplate#TOP_LEVEL}.
-     * </p><p>
-     *     This byte map will use the template of version {@link VersionTemplate#CURRENT_VERSION}.
-     * </p>
+     * Reads a length or count from the save data.
+     * Lengths & counts are never negative, so fixed-width ones are read as unsigned.
      *
-     * @return An empty byte map of the top level type
+     * @param width How many bytes the length is stored in,
+     *              or {@link CodecPlan#VARINT} if it's stored as a varint.
+     * @return The length read.
+     * @throws IOException if the save data could not be read, or the length is too large
      */
-    private static Map<String, byte[]> getEmptyByteMap() {
-        return getEmptyByteMapOfType(VersionTemplate.TOP_LEVEL);
+    private int readLength(int width) throws IOException {
+        long length;
+        switch (width) {
+            case CodecPlan.VARINT:
+                length = readVarint();
+                break;
+            case 1:
+                require(1);
+                length = Byte.toUnsignedInt(buffer.get());
+                break;
+            case 2:
+                require(2);
+                length = Short.toUnsignedInt(buffer.getShort());
+                break;
+            default:
+                throw new IllegalStateException("Unknown length width " + width);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Save data contains a length that is too large");
+        }
+        return (int) length;
     }
 
     /**
-     * Puts save data into a byte map of type {@link VersionTemplate#TOP_LEVEL}.
+     * Reads a string field from the save data.
      *
-     * @param saveVersion The version of the save data.
-     *                    The returned byte map will also be of this version
-     * @param saveBytes The save data
-     * @return A loaded byte map of the top level type. for the specified version
-     */
-    private static Map<String, byte[]> getVersionByteMap(String saveVersion, byte[] saveBytes) {
-        index = 0;
-        return getVersionByteMapOfType(
-                VersionTemplate.TOP_LEVEL, saveVersion, saveBytes);
-    }
-
-    /**
-     * <p>
-     *     Puts save data into a byte map of type {@link VersionTemplate#TOP_LEVEL}.
-     * </p><p>
-     *     This byte map will use the template of version {@link VersionTemplate#CURRENT_VERSION}.
-     *     Save data of older versions will be converted to the current version.
-     * </p>
-     *
-     * @param saveVersion The version of the save data
-     * @param saveBytes The save data
-     * @return A loaded byte map of the top level type
-     */
-    public static Map<String, byte[]> getLatestByteMap(String saveVersion, byte[] saveBytes) {
-        Map<String, byte[]> versionByteMap = getVersionByteMap(saveVersion, saveBytes);
-        Map<String, byte[]> latestByteMap = getEmptyByteMap();
-
-        //If multiple keys with the same name are missing some key indexes,
-        //Keys indexes are created, so they don't overwrite each other.
-        Map<String, Integer> missingKeyIndexes = new HashMap<>();
-
-        for (Map.Entry<String, byte[]> entry : versionByteMap.entrySet()) {
-            String[] keySplit = entry.getKey().split("\\|");
-            String keyName = keySplit[0];
-            String[] keyIndexes = Arrays.copyOfRange(keySplit, 1, keySplit.length);
-
-            Optional<String> latestKeyOptional = latestByteMap
-                    .keySet()
-                    .stream()
-                    .filter(key -> key.startsWith(keyName))
-                    .findFirst();
-            String latestKey = latestKeyOptional.orElse("");
-            if (latestKey.equals(keyName)) {
-                latestByteMap.put(latestKey, entry.getValue());
-            } else if (!latestKey.isBlank()) {
-                String[] latestKeySplit = latestKey.split("!");
-                String latestKeyName = latestKeySplit[0];
-                String[] latestKeyIndexes = Arrays
-                        .copyOfRange(latestKeySplit, 1, latestKeySplit.length);
-
-                for (int i = 0; i < latestKeyIndexes.length; i++) {
-                    String latestKeyIndex = latestKeyIndexes[i];
-                    Optional<String> keyIndexOptional = Arrays.stream(keyIndexes)
-                            .filter(ki -> ki.startsWith(latestKeyIndex))
-                            .findFirst();
-                    if (keyIndexOptional.isPresent()) {
-                        latestKeyIndexes[i] = keyIndexOptional.get().split("&")[1];
-                        //CheckStyle complains about cognitive complexity if I put the
-                        //below code into an "else"-block
-                        continue;
+     * @param argument How the string is stored, as given by its plan operation:
+     *                 Either the width of its length,
+     *                 or {@link CodecPlan#STRING_REFERENCE} if it's a string reference.
+     * @return The string read. Strings from the dictionary are shared, not copied.
+     * @throws IOException if the save data could not be read, or the reference is invalid
+     * @see StringDictionary
+     */
+    private String readStringField(int argument) throws IOException {
+        if (argument != CodecPlan.STRING_REFERENCE) {
+            return readString(readLength(argument));
+        }
+        long reference = readVarint();
+        if (reference == 0) {
+            return readString(readLength(CodecPlan.VARINT));
+        }
+        if (reference > stringDictionary.length) {
+            throw new IOException("Save data references a string not in the dictionary");
+        }
+        return stringDictionary[(int) reference - 1];
+    }
+
+    /**
+     * Reads a dictionary of strings from the save data,
+     * to be used by the string references that follow.
+     * Every string is interned, so equal strings share a single instance.
+     *
+     * @throws IOException if the save data could not be read
+     * @see StringDictionary
+     */
+    private void readStringDictionary() throws IOException {
+        int stringCount = readLength(CodecPlan.VARINT);
+        List<String> strings = new ArrayList<>(Math.min(stringCount, BUFFER_SIZE));
+        for (int i = 0; i < stringCount; i++) {
+            strings.add(readString(readLength(CodecPlan.VARINT)).intern());
+        }
+        stringDictionary = strings.toArray(new String[0]);
+    }
+
+    /**
+     * Applies a plan to the save data, reading every field it describes.
+     *
+     * @param plan The plan to apply.
+     * @throws IOException if the save data could not be read
+     */
+    private void readPlan(CodecPlan plan) throws IOException {
+        for (int i = 0; i < plan.length(); i++) {
+            switch (plan.op(i)) {
+                case SKIP:
+                case SLOT_SUMMARY:
+                    skip(plan.argument(i));
+                    break;
+                case SKIP_STRING:
+                    if (plan.argument(i) == CodecPlan.STRING_REFERENCE) {
+                        readStringField(plan.argument(i));
+                    } else {
+                        skip(readLength(plan.argument(i)));
+                    }
+                    break;
+                case STRING_DICTIONARY:
+                    readStringDictionary();
+                    break;
+                case SKIP_VARINT:
+                    readVarint();
+                    break;
+                case STARTING_FUNDS:
+                    if (plan.argument(i) == CodecPlan.VARINT) {
+                        startingFunds = Varint.unZigZag(readVarint());
+                    } else {
+                        require(8);
+                        storedStartingFunds = buffer.getDouble();
+                        startingFundsStoredAsDouble = true;
+                        startingFunds = Money.toMinorUnits(storedStartingFunds);
+                    }
+                    break;
+                case TRANSACTION_YEAR:
+                    require(2);
+                    transactionYear = buffer.getShort();
+                    break;
+                case TRANSACTION_MONTH:
+                    require(1);
+                    transactionMonth = buffer.get();
+                    break;
+                case TRANSACTION_DAY:
+                    require(1);
+                    transactionDay = buffer.get();
+                    break;
+                case TRANSACTION_EPOCH_DAY:
+                    setTransactionDate(Varint.unZigZag(readVarint()));
+                    break;
+                case TRANSACTION_AMOUNT:
+                    if (plan.argument(i) == CodecPlan.VARINT) {
+                        transactionAmount = Varint.unZigZag(readVarint());
+                    } else {
+                        require(4);
+                        transactionAmount = Money.toMinorUnits(buffer.getFloat());
+                    }
+                    break;
+                case FREQUENCY_AMOUNT:
+                    if (plan.argument(i) == CodecPlan.VARINT) {
+                        frequencyAmount = (short) Varint.unZigZag(readVarint());
+                    } else {
+                        require(2);
+                        frequencyAmount = buffer.getShort();
+                    }
+                    break;
+                case USERNAME:
+                    username = readStringField(plan.argument(i));
+                    break;
+                case TRANSACTION_CATEGORY:
+                    transactionCategory = readStringField(plan.argument(i));
+                    break;
+                case TRANSACTION_NAME:
+                    transactionName = readStringField(plan.argument(i));
+                    break;
+                case FREQUENCY_TYPE:
+                    frequencyType = readStringField(plan.argument(i));
+                    break;
+                case TRANSACTION_HISTORY:
+                    readPlan(plan.nestedPlan(i));
+                    break;
+                case TRANSACTIONS:
+                    transactionCount = readLength(plan.argument(i));
+                    if (!headerOnly) {
+                        readTransactions(plan.nestedPlan(i), transactionCount);
+                    }
+                    break;
+                case TRANSACTION_INDEX:
+                    if (!headerOnly) {
+                        require(4);
+                        int blockCount = buffer.getInt();
+                        if (blockCount < 0) {
+                            throw new IOException("Save data contains a malformed index");
+                        }
+                        skipLong(TransactionIndex.lengthAfterBlockCount(blockCount));
+                    }
+                    break;
+                case CHECKED_TRANSACTIONS:
+                    transactionCount = readLength(plan.argument(i));
+                    if (!headerOnly) {
+                        readCheckedTransactions(plan.nestedPlan(i), transactionCount);
                     }
-                    String precedingText = latestKeyName + String.join("|",
-                            Arrays.copyOfRange(latestKeyIndexes, 0, i));
-                    if (!missingKeyIndexes.containsKey(precedingText)) {
-                        missingKeyIndexes.put(precedingText, 0);
+                    break;
+                case USER_CHECKSUM:
+                    require(4);
+                    int userChecksum = startingFundsStoredAsDouble
+                            ? CheckedRecords.userFieldsChecksum(storedStartingFunds, username)
+                            : CheckedRecords.userFieldsChecksum(startingFunds, username);
+                    if (buffer.getInt() != userChecksum) {
+                        throw new IOException("Save data contains a damaged user");
                     }
-                    int missingKeyIndex = missingKeyIndexes.get(precedingText);
-                    latestKeyIndexes[i] = Integer.toString(missingKeyIndex);
-                    missingKeyIndexes.put(precedingText, missingKeyIndex + 1);
+                    break;
+                case STRING_DICTIONARY_CHECKSUM:
+                    require(4);
+                    if (buffer.getInt() != CheckedRecords.dictionaryChecksum(
+                            List.of(stringDictionary))) {
+                        throw new IOException("Save data contains a damaged dictionary");
+                    }
+                    break;
+                case TRANSACTION_COLUMNS:
+                    readTransactionColumns(plan.nestedPlan(i), readLength(plan.argument(i)));
+                    break;
+                case COMPRESSED_SAVE:
+                    readCompressedSave();
+                    break;
+                case HISTORY_SEGMENTS:
+                    readHistorySegments(plan.storesMinorUnits());
+                    break;
+                case CATEGORY_RENAMES:
+                    readCategoryRenames();
+                    break;
+                case FREQUENCY:
+                    require(1);
+                    if (buffer.get() != 0) {
+                        hasFrequency = true;
+                        readPlan(plan.nestedPlan(i));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + plan.op(i));
+            }
+        }
+    }
+
+    /**
+     * Reads an amount of transactions, adding each one to the transaction history.
+     *
+     * @param transactionPlan The plan of a single transaction.
+     * @param repeatAmount The amount of transactions to read.
+     * @throws IOException if the save data could not be read
+     */
+    private void readTransactions(CodecPlan transactionPlan, int repeatAmount)
+            throws IOException {
+        for (int i = 0; i < repeatAmount; i++) {
+            resetTransactionFields();
+            readPlan(transactionPlan);
+            transactionHistory.addTransaction(makeTransaction());
+        }
+    }
+
+    /**
+     * Reads transactions stored as checked records until the save data ends,
+     * adding each intact one to the transaction history.
+     * Damaged records are skipped, by looking for the start of the next intact record,
+     * and counted as damage.
+     *
+     * @param transactionPlan The plan of a single transaction.
+     * @param recordCount The amount of records stored.
+     * @throws IOException if the save data could not be read
+     * @see CheckedRecords
+     */
+    private void readCheckedTransactions(CodecPlan transactionPlan, int recordCount)
+            throws IOException {
+        int intactRecords = 0;
+        int gaps = 0;
+        boolean inGap = false;
+        while (true) {
+            if (skipToSync() > 0 && !inGap) {
+                damageGaps.add(transactionHistory.getLoadedTransactions().size());
+                gaps++;
+                inGap = true;
+            }
+            if (!buffer.hasRemaining()) {
+                break;
+            }
+            if (readCheckedRecord(transactionPlan)) {
+                intactRecords++;
+                inGap = false;
+            } else {
+                //Not an intact record, so the next record can start anywhere after its start.
+                buffer.position(buffer.position() + 1);
+            }
+        }
+        if (intactRecords < recordCount && !inGap && gaps == 0) {
+            //The records are damaged from the start of one to the very end.
+            damageGaps.add(transactionHistory.getLoadedTransactions().size());
+            gaps++;
+        }
+        damagedRecords += Math.max(recordCount - intactRecords, gaps);
+    }
+
+    /**
+     * Skips save data until the start of a checked record, or until the save data ends.
+     *
+     * @return The amount of bytes skipped.
+     * @throws IOException if the save data could not be read
+     */
+    private long skipToSync() throws IOException {
+        long skipped = 0;
+        while (request(CheckedRecords.SYNC.length)) {
+            boolean atSync = true;
+            for (int i = 0; i < CheckedRecords.SYNC.length && atSync; i++) {
+                atSync = buffer.get(buffer.position() + i) == CheckedRecords.SYNC[i];
+            }
+            if (atSync) {
+                return skipped;
+            }
+            buffer.position(buffer.position() + 1);
+            skipped++;
+        }
+        skipped += buffer.remaining();
+        buffer.position(buffer.limit());
+        return skipped;
+    }
+
+    /**
+     * Reads a checked record starting at the current position,
+     * adding its transaction to the transaction history if the record is intact.
+     * The record is checked before any of it is read,
+     * so a damaged record leaves the position where it was.
+     *
+     * @param transactionPlan The plan of a single transaction.
+     * @return If the record was intact.
+     * @throws IOException if the save data could not be read,
+     *     or an intact record doesn't match the plan
+     */
+    private boolean readCheckedRecord(CodecPlan transactionPlan) throws IOException {
+        int headerLength = CheckedRecords.SYNC.length;
+        long recordLength = 0;
+        for (int shift = 0; true; shift += 7) {
+            if (shift >= 7 * Varint.MAX_LENGTH || !request(headerLength + 1)) {
+                return false;
+            }
+            byte b = buffer.get(buffer.position() + headerLength++);
+            recordLength |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (recordLength > CheckedRecords.MAX_RECORD_LENGTH
+                || !request(headerLength + (int) recordLength + 4)) {
+            return false;
+        }
+        int recordStart = buffer.position() + headerLength;
+        int recordEnd = recordStart + (int) recordLength;
+        if (buffer.getInt(recordEnd) != CheckedRecords.checksum(
+                buffer, recordStart, (int) recordLength)) {
+            return false;
+        }
+        buffer.position(recordStart);
+        resetTransactionFields();
+        readPlan(transactionPlan);
+        if (buffer.position() != recordEnd) {
+            throw new IOException("Save data contains a record that doesn't match its length");
+        }
+        buffer.position(recordEnd + 4);
+        transactionHistory.addTransaction(makeTransaction());
+        return true;
+    }
+
+    /**
+     * Reads the segments of the transaction history.
+     * The segments are added to the transaction history once it's fully read,
+     * so no segment is loaded while reading.
+     *
+     * @param minorUnits If the sums of the segments are stored as longs of minor units.
+     *                   Older versions store them as doubles of kroner.
+     * @throws IOException if the save data could not be read
+     * @see HistorySegment#writeTo(ByteBuffer)
+     */
+    private void readHistorySegments(boolean minorUnits) throws IOException {
+        int segmentCount = readLength(CodecPlan.VARINT);
+        for (int i = 0; i < segmentCount; i++) {
+            long year = Varint.unZigZag(readVarint());
+            int transactionCount = readLength(CodecPlan.VARINT);
+            require(8 + 8 + 4);
+            long income = minorUnits ? buffer.getLong() : Money.toMinorUnits(buffer.getDouble());
+            long expenses = minorUnits ? buffer.getLong() : Money.toMinorUnits(buffer.getDouble());
+            int checksum = buffer.getInt();
+            String fileName = readString(readLength(CodecPlan.VARINT));
+            if (year < Integer.MIN_VALUE || year > Integer.MAX_VALUE
+                    || fileName.isBlank() || fileName.contains("/") || fileName.contains("\\")) {
+                throw new IOException("Save data contains an invalid history segment");
+            }
+            historySegments.add(new HistorySegment((int) year, transactionCount,
+                    income, expenses, checksum, fileName));
+        }
+    }
+
+    /**
+     * Reads the categories renamed after the segments of the transaction history were stored.
+     * The renames are added to the transaction history along with the segments.
+     *
+     * @throws IOException if the save data could not be read
+     * @see TransactionHistory#getUnloadedRenames()
+     */
+    private void readCategoryRenames() throws IOException {
+        int renameCount = readLength(CodecPlan.VARINT);
+        for (int i = 0; i < renameCount; i++) {
+            String storedName = readString(readLength(CodecPlan.VARINT));
+            categoryRenames.put(storedName, readString(readLength(CodecPlan.VARINT)));
+        }
+    }
+
+    /**
+     * Adds every segment read to the transaction history,
+     * along with the categories renamed after they were stored.
+     *
+     * @throws IOException if the save data has more than one segment of the same year
+     */
+    private void addHistorySegments() throws IOException {
+        try {
+            for (HistorySegment segment : historySegments) {
+                transactionHistory.addSegment(segment);
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("Save data contains overlapping history segments", iae);
+        }
+        categoryRenames.forEach(transactionHistory::addUnloadedRename);
+    }
+
+    /**
+     * Gets a channel of the save data that hasn't been read yet,
+     * starting with what is left in the buffer.
+     *
+     * @return A channel of the rest of the save data.
+     */
+    private ReadableByteChannel remainingChannel() {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (buffer.hasRemaining()) {
+                    int chunk = Math.min(dst.remaining(), buffer.remaining());
+                    dst.put(dst.position(), buffer, buffer.position(), chunk);
+                    dst.position(dst.position() + chunk);
+                    buffer.position(buffer.position() + chunk);
+                    return chunk;
                 }
-                latestByteMap.put(
-                        latestKeyName + "|" + String.join("|", latestKeyIndexes),
-                        entry.getValue()
-                );
+                return channel != null ? channel.read(dst) : -1;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
             }
+
+            @Override
+            public void close() {
+                //The underlying channel is closed by whoever opened it.
+            }
+        };
+    }
+
+    /**
+     * Decompresses the rest of the save data, and reads it as a save of the version stored with it.
+     *
+     * @throws IOException if the save data could not be read or decompressed
+     * @see BlockDecompressingChannel
+     */
+    private void readCompressedSave() throws IOException {
+        try (BlockDecompressingChannel decompressed =
+                     new BlockDecompressingChannel(remainingChannel())) {
+            SaveDataReader reader =
+                    new SaveDataReader(decompressed.getSaveVersion(), decompressed);
+            User user = reader.readUser();
+            damagedRecords += reader.damagedRecords;
+            damageGaps.addAll(reader.damageGaps);
+            startingFunds = user.getStartingFunds();
+            username = user.getUsername();
+            transactionHistory = user.getTransactionHistory();
         }
-        List<String> latestKeysToRemove = latestByteMap
-                .keySet()
-                .stream()
-                .filter(key -> key.contains("!"))
-                .toList();
-        for (String keyToRemove : latestKeysToRemove) {
-            latestByteMap.remove(keyToRemove);
+    }
+
+    /**
+     * Reads transactions stored as columns, adding each one to the transaction history.
+     * Every column is read in one go, and columns that aren't needed are skipped as a whole.
+     *
+     * @param transactionPlan The plan of a single transaction, where each field is a column.
+     * @param repeatAmount The amount of transactions to read.
+     * @throws IOException if the save data could not be read
+     */
+    private void readTransactionColumns(CodecPlan transactionPlan, int repeatAmount)
+            throws IOException {
+        long[] epochDays = null;
+        long[] amounts = null;
+        String[] categories = null;
+        String[] names = null;
+        boolean[] hasFrequencies = null;
+        short[] frequencyAmounts = null;
+        String[] frequencyTypes = null;
+
+        for (int i = 0; i < transactionPlan.length(); i++) {
+            int columnLength = readLength(CodecPlan.VARINT);
+            if (columnLength < repeatAmount) {
+                throw new IOException("Save data contains a column too short for its transactions");
+            }
+            switch (transactionPlan.op(i)) {
+                case TRANSACTION_EPOCH_DAY:
+                    epochDays = new long[repeatAmount];
+                    long epochDay = 0;
+                    for (int j = 0; j < repeatAmount; j++) {
+                        epochDay += Varint.unZigZag(readVarint());
+                        epochDays[j] = epochDay;
+                    }
+                    break;
+                case TRANSACTION_AMOUNT:
+                    if (transactionPlan.argument(i) == CodecPlan.VARINT) {
+                        amounts = new long[repeatAmount];
+                        long amount = 0;
+                        for (int j = 0; j < repeatAmount; j++) {
+                            amount += Varint.unZigZag(readVarint());
+                            amounts[j] = amount;
+                        }
+                    } else {
+                        amounts = readFloatAmounts(repeatAmount);
+                    }
+                    break;
+                case TRANSACTION_CATEGORY:
+                    categories = readStringColumn(repeatAmount, transactionPlan.argument(i));
+                    break;
+                case TRANSACTION_NAME:
+                    names = readStringColumn(repeatAmount, transactionPlan.argument(i));
+                    break;
+                case FREQUENCY:
+                    hasFrequencies = new boolean[repeatAmount];
+                    frequencyAmounts = new short[repeatAmount];
+                    frequencyTypes = new String[repeatAmount];
+                    for (int j = 0; j < repeatAmount; j++) {
+                        require(1);
+                        if (buffer.get() != 0) {
+                            resetTransactionFields();
+                            readPlan(transactionPlan.nestedPlan(i));
+                            hasFrequencies[j] = true;
+                            frequencyAmounts[j] = frequencyAmount;
+                            frequencyTypes[j] = frequencyType;
+                        }
+                    }
+                    break;
+                default:
+                    skip(columnLength);
+            }
         }
-        return latestByteMap;
+
+        for (int j = 0; j < repeatAmount; j++) {
+            resetTransactionFields();
+            if (epochDays != null) {
+                setTransactionDate(epochDays[j]);
+            }
+            if (amounts != null) {
+                transactionAmount = amounts[j];
+            }
+            if (categories != null) {
+                transactionCategory = categories[j];
+            }
+            if (names != null) {
+                transactionName = names[j];
+            }
+            if (hasFrequencies != null) {
+                hasFrequency = hasFrequencies[j];
+                frequencyAmount = frequencyAmounts[j];
+                frequencyType = frequencyTypes[j];
+            }
+            transactionHistory.addTransaction(makeTransaction());
+        }
+    }
+
+    /**
+     * Reads a column of amounts stored as floats of kroner by older versions, all at once,
+     * converting every amount to minor units.
+     *
+     * @param amount The amount of floats to read.
+     * @return The amounts read, in minor units.
+     * @throws IOException if the save data could not be read
+     */
+    private long[] readFloatAmounts(int amount) throws IOException {
+        float[] floats = new float[amount];
+        int read = 0;
+        while (read < amount) {
+            require(4);
+            int chunk = Math.min(buffer.remaining() / 4, amount - read);
+            buffer.asFloatBuffer().get(floats, read, chunk);
+            buffer.position(buffer.position() + 4 * chunk);
+            read += chunk;
+        }
+        long[] amounts = new long[amount];
+        for (int i = 0; i < amount; i++) {
+            amounts[i] = Money.toMinorUnits(floats[i]);
+        }
+        return amounts;
+    }
+
+    /**
+     * Reads a column of strings.
+     *
+     * @param amount The amount of strings to read.
+     * @param argument How the strings are stored, as given by their plan operation.
+     * @return The strings read.
+     * @throws IOException if the save data could not be read
+     */
+    private String[] readStringColumn(int amount, int argument) throws IOException {
+        String[] strings = new String[amount];
+        for (int i = 0; i < amount; i++) {
+            strings[i] = readStringField(argument);
+        }
+        return strings;
+    }
+
+    /**
+     * Sets the date of the transaction being read.
+     *
+     * @param epochDay The date, as days since 1970-01-01.
+     * @throws IOException if the date is outside the range of supported dates
+     */
+    private void setTransactionDate(long epochDay) throws IOException {
+        LocalDate date;
+        try {
+            date = LocalDate.ofEpochDay(epochDay);
+        } catch (DateTimeException dte) {
+            throw new IOException("Save data contains an invalid date", dte);
+        }
+        transactionYear = date.getYear();
+        transactionMonth = (byte) date.getMonthValue();
+        transactionDay = (byte) date.getDayOfMonth();
+    }
+
+    private void resetTransactionFields() {
+        transactionYear = 1970;
+        transactionMonth = 1;
+        transactionDay = 1;
+        transactionAmount = 0;
+        transactionCategory = "(No category)";
+        transactionName = "(No name)";
+        hasFrequency = false;
+        frequencyAmount = 1;
+        frequencyType = null;
+    }
+
+    /**
+     * Makes a transaction from the transaction fields read.
+     *
+     * @return The transaction made.
+     */
+    private Transaction makeTransaction() {
+        Frequency frequency = null;
+        if (hasFrequency) {
+            TimeType timeType = TimeType.MONTHS;
+            for (TimeType value : TimeType.values()) {
+                if (value.toString().equalsIgnoreCase(frequencyType)) {
+                    timeType = value;
+                }
+            }
+            frequency = new Frequency(frequencyAmount, timeType);
+        }
+        return new Transaction(
+                transactionName,
+                transactionCategory,
+                transactionAmount,
+                LocalDate.of(transactionYear, transactionMonth, transactionDay),
+                frequency
+        );
+    }
+
+    /**
+     * Reads a single transaction from the save data, as an object of type {@code TRANSACTION}.
+     *
+     * @return The transaction read.
+     * @throws IOException if the save data could not be read
+     */
+    public Transaction readTransaction() throws IOException {
+        resetTransactionFields();
+        readPlan(CodecPlan.get("TRANSACTION", saveVersion));
+        return makeTransaction();
+    }
+
+    /**
+     * Reads a user from the save data, as an object of type {@link VersionTemplate#TOP_LEVEL}.
+     *
+     * @return The user read.
+     * @throws IOException if the save data could not be read
+     */
+    public User readUser() throws IOException {
+        startingFunds = 0;
+        startingFundsStoredAsDouble = false;
+        username = "(Unknown username)";
+        transactionHistory = new TransactionHistory();
+        historySegments = new ArrayList<>();
+        categoryRenames = new LinkedHashMap<>();
+        damagedRecords = 0;
+        damageGaps = new ArrayList<>();
+        readPlan(CodecPlan.get(VersionTemplate.TOP_LEVEL, saveVersion));
+        addHistorySegments();
+        return new User(username, startingFunds, transactionHistory);
+    }
+
+    /**
+     * Reads every field of a user from the save data, up to the amount of transactions,
+     * without reading the transactions themselves.
+     * Used for indexed saves, where the transactions are read in blocks later on.
+     *
+     * @return The user read, with an empty transaction history.
+     * @throws IOException if the save data could not be read
+     * @see #getStringDictionary()
+     * @see #getTransactionCount()
+     */
+    User readUserHeader() throws IOException {
+        headerOnly = true;
+        try {
+            return readUser();
+        } finally {
+            headerOnly = false;
+        }
+    }
+
+    /**
+     * Gets the damage found in checked records while reading the user read last.
+     *
+     * @return The damage found, or {@code null} if no record was damaged.
+     * @see CheckedRecords
+     */
+    public SaveDamage getDamage() {
+        return damagedRecords == 0 ? null : new SaveDamage(damagedRecords, damageGaps);
+    }
+
+    /**
+     * Gets the dictionary of strings read last, for the string references that follow it.
+     *
+     * @return The dictionary of strings read last.
+     */
+    String[] getStringDictionary() {
+        return stringDictionary;
+    }
+
+    /**
+     * Gets the amount of transactions read last.
+     *
+     * @return The amount of transactions read last.
+     */
+    int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Reads an amount of transactions that reference a known dictionary of strings,
+     * like a single block of an indexed save.
+     *
+     * @param stringDictionary The strings the transactions reference.
+     * @param repeatAmount The amount of transactions to read.
+     * @return The transactions read.
+     * @throws IOException if the save data could not be read
+     * @see TransactionPages
+     */
+    List<Transaction> readTransactions(String[] stringDictionary, int repeatAmount)
+            throws IOException {
+        this.stringDictionary = stringDictionary;
+        transactionHistory = new TransactionHistory();
+        readTransactions(CodecPlan.get("TRANSACTION", saveVersion), repeatAmount);
+        return transactionHistory.getLoadedTransactions();
+    }
+
+    /**
+     * Reads a transaction history from the save data,
+     * as an object of type {@code TRANSACTION_HISTORY}.
+     *
+     * @return The transaction history read.
+     * @throws IOException if the save data could not be read
+     */
+    public TransactionHistory readTransactionHistory() throws IOException {
+        transactionHistory = new TransactionHistory();
+        historySegments = new ArrayList<>();
+        categoryRenames = new LinkedHashMap<>();
+        readPlan(CodecPlan.get("TRANSACTION_HISTORY", saveVersion));
+        addHistorySegments();
+        return transactionHistory;
     }
 }
@@ -0,0 +1,439 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>
+ *     Makes & applies deltas between two versions of a save file,
+ *     so a backup only has to store the bytes that changed between them.
+ * </p><p>
+ *     Both versions are split into chunks where their content says so,
+ *     using a rolling hash over the last bytes seen.
+ *     Since the chunk boundaries only depend on the bytes around them,
+ *     a transaction that's added or removed only changes the chunks around it,
+ *     and every other chunk is found again in the other version, wherever it moved to.
+ *     Deltas are made from the save files a window at a time,
+ *     so making one never holds either version in memory.
+ * </p><p>
+ *     A delta is stored as follows:
+ *     <ul>
+ *         <li><b>Byte 0 - 3:</b> {@link #MAGIC}, which sets deltas apart from full saves.</li>
+ *         <li><b>Byte 4 - 7:</b> The CRC32C checksum of the base the delta applies to.</li>
+ *         <li><b>Byte 8 - 11:</b> The CRC32C checksum of the bytes the delta rebuilds.</li>
+ *         <li><b>Byte 12 - n:</b> The amount of bytes the delta rebuilds, as a varint.</li>
+ *         <li>An operation, as a varint of its length shifted left once,
+ *         with the lowest bit set if the operation inserts new bytes.
+ *         Inserting operations are followed by the bytes to insert.
+ *         Other operations copy bytes from the base,
+ *         and are followed by where in the base to copy from, as a varint.</li>
+ *     </ul>
+ *     Operations are repeated until the end of the delta.
+ *     Varints are documented in {@link Varint}.
+ * </p>
+ */
+public final class SaveDelta {
+    /**
+     * The bytes every delta starts with.
+     */
+    public static final byte[] MAGIC = {'D', 'L', 'T', 'A'};
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int MIN_CHUNK_LENGTH = 64;
+    private static final int MAX_CHUNK_LENGTH = 4096;
+    // Chunks end where the lowest 9 bits of the hash are 0, for chunks of about 512 bytes
+    private static final long CHUNK_BOUNDARY_MASK = (1 << 9) - 1;
+    // Files are read & written this many bytes at a time
+    private static final int WINDOW_LENGTH = 64 * 1024;
+    private static final long[] GEAR = new SplittableRandom(0x5A7EDE17AL).longs(256).toArray();
+
+    private SaveDelta() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Checks if some bytes are a delta.
+     *
+     * @param bytes The bytes to check, from index 0.
+     * @return If the bytes start with {@link #MAGIC}.
+     */
+    public static boolean isDelta(ByteBuffer bytes) {
+        return bytes.limit() >= HEADER_LENGTH
+                && bytes.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC));
+    }
+
+    /**
+     * Checks if a delta applies to a base.
+     * Only the header of the delta is read, and the base is read a window at a time.
+     *
+     * @param delta The delta to check.
+     * @param base The file to check the delta against.
+     * @return If the delta was made against the base.
+     * @throws IOException if either file could not be read
+     */
+    public static boolean appliesTo(FileChannel delta, FileChannel base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readAt(delta, header, 0);
+        header.flip();
+        return isDelta(header) && header.getInt(MAGIC.length) == checksum(base);
+    }
+
+    /**
+     * Reads from a channel at a position until a buffer is full, or the channel ends.
+     *
+     * @param channel The channel to read from.
+     * @param buffer The buffer to read into.
+     * @param position Where in the channel to start reading.
+     * @throws IOException if the channel could not be read
+     */
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Finds where the chunk starting at an index ends.
+     *
+     * @param bytes The bytes to split into chunks, up to their limit.
+     * @param start Where the chunk starts.
+     * @return Where the chunk ends, exclusive.
+     */
+    private static int chunkEnd(ByteBuffer bytes, int start) {
+        int minEnd = Math.min(bytes.limit(), start + MIN_CHUNK_LENGTH);
+        int maxEnd = Math.min(bytes.limit(), start + MAX_CHUNK_LENGTH);
+        long hash = 0;
+        for (int i = start; i < maxEnd; i++) {
+            hash = (hash << 1) + GEAR[bytes.get(i) & 0xFF];
+            if (i + 1 >= minEnd && (hash & CHUNK_BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return maxEnd;
+    }
+
+    /**
+     * Hashes a chunk, so chunks with the same content can be looked up.
+     *
+     * @param chunk The bytes of the chunk, from its position to its limit.
+     * @return The hash of the chunk.
+     */
+    private static long hashChunk(ByteBuffer chunk) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            hash = (hash ^ (chunk.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash ^ chunk.remaining();
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes.duplicate());
+        return (int) checksum.getValue();
+    }
+
+    private static int checksum(FileChannel channel) throws IOException {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_LENGTH);
+        long position = 0;
+        for (int read = channel.read(window, position); read >= 0;
+                read = channel.read(window.clear(), position)) {
+            position += read;
+            checksum.update(window.flip());
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Makes a delta that rebuilds the target from the base, and writes it to a file.
+     * Both the base & the target are read a window at a time,
+     * and only the start & hash of every chunk of the base is kept in memory.
+     *
+     * @param base The file the delta will be applied to.
+     * @param target The file the delta rebuilds.
+     * @param delta The empty file to write the delta to.
+     * @throws IOException if the base or the target could not be read,
+     *     or the delta could not be written
+     */
+    public static void compute(FileChannel base, FileChannel target, FileChannel delta)
+            throws IOException {
+        Map<Long, Long> baseChunks = new HashMap<>();
+        ChunkReader baseReader = new ChunkReader(base);
+        while (baseReader.next()) {
+            baseChunks.putIfAbsent(hashChunk(baseReader.chunk()), baseReader.chunkStart());
+        }
+
+        DeltaWriter writer = new DeltaWriter(delta, baseReader.checksum(), target.size());
+        ChunkReader targetReader = new ChunkReader(target);
+        ByteBuffer baseChunk = ByteBuffer.allocate(MAX_CHUNK_LENGTH);
+        while (targetReader.next()) {
+            ByteBuffer chunk = targetReader.chunk();
+            Long baseStart = baseChunks.get(hashChunk(chunk));
+            if (baseStart != null) {
+                baseChunk.clear().limit(chunk.remaining());
+                readAt(base, baseChunk, baseStart);
+                baseChunk.flip();
+            }
+            if (baseStart != null && baseChunk.equals(chunk)) {
+                writer.copy(baseStart, chunk.remaining());
+            } else {
+                writer.insert(chunk);
+            }
+        }
+        writer.finish(targetReader.checksum());
+    }
+
+    /**
+     * Applies a delta to its base.
+     *
+     * @param base The bytes the delta was made against, from index 0 to their limit.
+     * @param delta The delta to apply, from index 0 to its limit.
+     * @return The bytes the delta rebuilds.
+     * @throws IOException if the delta is malformed, doesn't belong to the base,
+     *     or doesn't rebuild the bytes it was made from
+     */
+    public static byte[] apply(ByteBuffer base, ByteBuffer delta) throws IOException {
+        return apply(base, delta, true);
+    }
+
+    /**
+     * Applies a delta to a base that may be damaged, without checking either checksum.
+     * Bytes copied from damaged parts of the base are damaged in what's rebuilt as well,
+     * so this is only used for saves that check every record on their own.
+     *
+     * @param base The bytes the delta was made against, possibly damaged.
+     * @param delta The delta to apply.
+     * @return The bytes the delta rebuilds, possibly damaged.
+     * @throws IOException if the delta is malformed
+     * @see CheckedRecords
+     */
+    static byte[] applyUnchecked(ByteBuffer base, ByteBuffer delta) throws IOException {
+        return apply(base, delta, false);
+    }
+
+    /**
+     * Applies a delta to its base.
+     *
+     * @param base The bytes the delta was made against.
+     * @param delta The delta to apply.
+     * @param checked If the checksums of the base & the rebuilt bytes should be checked.
+     * @return The bytes the delta rebuilds.
+     * @throws IOException if the delta is malformed, or the checksums don't match
+     */
+    private static byte[] apply(ByteBuffer base, ByteBuffer delta, boolean checked)
+            throws IOException {
+        if (!isDelta(delta)) {
+            throw new IOException("Backup is not a delta");
+        }
+        base = base.duplicate().rewind();
+        ByteBuffer buffer = delta.duplicate().position(MAGIC.length);
+        if (buffer.getInt() != checksum(base) && checked) {
+            throw new IOException("Backup does not belong to the save it's applied to");
+        }
+        int expectedChecksum = buffer.getInt();
+        try {
+            long targetLength = Varint.read(buffer);
+            if (targetLength < 0 || targetLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("Backup has an invalid length");
+            }
+            byte[] target = new byte[(int) targetLength];
+            int position = 0;
+            while (buffer.hasRemaining()) {
+                long operation = Varint.read(buffer);
+                long length = operation >>> 1;
+                if (length > target.length - position) {
+                    throw new IOException("Backup rebuilds more bytes than it should");
+                }
+                if ((operation & 1) == 1) {
+                    buffer.get(target, position, (int) length);
+                } else {
+                    long baseStart = Varint.read(buffer);
+                    if (baseStart < 0 || baseStart + length > base.limit()) {
+                        throw new IOException("Backup copies bytes from outside its base");
+                    }
+                    base.get((int) baseStart, target, position, (int) length);
+                }
+                position += (int) length;
+            }
+            if (position != target.length
+                    || (checked && checksum(ByteBuffer.wrap(target)) != expectedChecksum)) {
+                throw new IOException("Backup does not rebuild the save it was made from");
+            }
+            return target;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Backup is malformed", e);
+        }
+    }
+
+    /**
+     * Reads a file a window at a time, split into chunks where its content says so.
+     * The window always holds at least a whole chunk from where the chunk starts,
+     * so chunks are split the same way no matter where the window starts.
+     */
+    private static class ChunkReader {
+        private final FileChannel channel;
+        private final ByteBuffer window = ByteBuffer.allocate(WINDOW_LENGTH);
+        private final CRC32C checksum = new CRC32C();
+        // Where in the file the window starts, and where the next read from the file starts
+        private long windowStart = 0;
+        private long readPosition = 0;
+        private int chunkStart = 0;
+        private int chunkEnd = 0;
+
+        private ChunkReader(FileChannel channel) {
+            this.channel = channel;
+            window.limit(0);
+        }
+
+        /**
+         * Moves on to the next chunk of the file.
+         *
+         * @return If there was another chunk, false at the end of the file.
+         * @throws IOException if the file could not be read
+         */
+        private boolean next() throws IOException {
+            chunkStart = chunkEnd;
+            if (window.limit() - chunkStart < MAX_CHUNK_LENGTH) {
+                //The bytes before the chunk are dropped, to make room for the bytes after it.
+                window.position(chunkStart).compact();
+                windowStart += chunkStart;
+                chunkStart = 0;
+                readAt(channel, window, readPosition);
+                readPosition = windowStart + window.position();
+                window.flip();
+            }
+            if (chunkStart == window.limit()) {
+                return false;
+            }
+            chunkEnd = chunkEnd(window, chunkStart);
+            checksum.update(chunk());
+            return true;
+        }
+
+        private ByteBuffer chunk() {
+            return window.slice(chunkStart, chunkEnd - chunkStart);
+        }
+
+        private long chunkStart() {
+            return windowStart + chunkStart;
+        }
+
+        /**
+         * Gets the CRC32C checksum of every chunk read so far,
+         * which is the checksum of the whole file once every chunk is read.
+         *
+         * @return The checksum.
+         */
+        private int checksum() {
+            return (int) checksum.getValue();
+        }
+    }
+
+    /**
+     * Writes the operations of a delta to a file a window at a time,
+     * merging operations that follow each other.
+     * Bytes to insert are kept until a window of them is full,
+     * so inserting operations are never longer than a window.
+     */
+    private static class DeltaWriter {
+        private final FileChannel delta;
+        private final ByteBuffer window = ByteBuffer.allocate(2 * WINDOW_LENGTH);
+        private final ByteBuffer pendingInsert = ByteBuffer.allocate(WINDOW_LENGTH);
+        private long pendingCopyStart;
+        private long pendingCopyLength = 0;
+
+        /**
+         * Starts writing a delta, with its header.
+         * The checksum of the target is written by {@link #finish(int)}.
+         *
+         * @param delta The empty file to write the delta to.
+         * @param baseChecksum The CRC32C checksum of the base.
+         * @param targetLength The length of the target.
+         */
+        private DeltaWriter(FileChannel delta, int baseChecksum, long targetLength) {
+            this.delta = delta;
+            window.put(MAGIC).putInt(baseChecksum).putInt(0);
+            Varint.write(window, targetLength);
+        }
+
+        private void copy(long baseStart, int length) throws IOException {
+            writeInsert();
+            if (pendingCopyLength > 0 && pendingCopyStart + pendingCopyLength == baseStart) {
+                pendingCopyLength += length;
+                return;
+            }
+            writeCopy();
+            pendingCopyStart = baseStart;
+            pendingCopyLength = length;
+        }
+
+        private void insert(ByteBuffer bytes) throws IOException {
+            writeCopy();
+            if (bytes.remaining() > pendingInsert.remaining()) {
+                writeInsert();
+            }
+            pendingInsert.put(bytes);
+        }
+
+        private void writeCopy() throws IOException {
+            if (pendingCopyLength == 0) {
+                return;
+            }
+            makeRoom(2 * Varint.MAX_LENGTH);
+            Varint.write(window, pendingCopyLength << 1);
+            Varint.write(window, pendingCopyStart);
+            pendingCopyLength = 0;
+        }
+
+        private void writeInsert() throws IOException {
+            if (pendingInsert.position() == 0) {
+                return;
+            }
+            makeRoom(Varint.MAX_LENGTH + pendingInsert.position());
+            Varint.write(window, ((long) pendingInsert.position() << 1) | 1);
+            window.put(pendingInsert.flip());
+            pendingInsert.clear();
+        }
+
+        private void makeRoom(int length) throws IOException {
+            if (window.remaining() < length) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            window.flip();
+            while (window.hasRemaining()) {
+                delta.write(window);
+            }
+            window.clear();
+        }
+
+        /**
+         * Writes the last operation, and the checksum of the target into the header.
+         *
+         * @param targetChecksum The CRC32C checksum of the target.
+         * @throws IOException if the delta could not be written
+         */
+        private void finish(int targetChecksum) throws IOException {
+            writeCopy();
+            writeInsert();
+            flush();
+            ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).putInt(targetChecksum).flip();
+            for (long position = MAGIC.length + Integer.BYTES; checksum.hasRemaining(); ) {
+                position += delta.write(checksum, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import no.ntnu.idatx2001.g11.generics.User;
+
+/**
+ * <p>
+ *     Saves users on a background thread, so saving never blocks the thread that asks for it.
+ * </p><p>
+ *     When a save is submitted, a copy of the user is taken straight away,
+ *     so the user can keep changing while the copy is being saved.
+ *     The copy shares the user's transactions until either of them is changed,
+ *     so taking it doesn't depend on how long the user's history is.
+ *     The position of the slot's journal is only taken on the background thread,
+ *     from how much had been appended to it when the copy was taken.
+ *     If a save for the same slot is already waiting to start,
+ *     the waiting save is given the newer copy instead,
+ *     so a burst of saves only writes the slot once.
+ *     Saves are written one at a time, in the order they were first submitted.
+ * </p>
+ *
+ * @see SaveManager#writeUserAsOf(User, int, long)
+ */
+public class SaveExecutor {
+    private final ExecutorService executor;
+    private final Map<Integer, PendingSave> pendingSaves;
+
+    /**
+     * A save that is waiting to start.
+     */
+    private static class PendingSave {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private User user;
+        private long appendedLength;
+    }
+
+    /**
+     * Makes a save executor, with its own background thread.
+     */
+    public SaveExecutor() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "save-executor");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Makes a save executor, that saves users on the given executor.
+     *
+     * @param executor The executor to save users on. Must only run one task at a time.
+     */
+    SaveExecutor(ExecutorService executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("\"executor\" cannot be null");
+        }
+        this.executor = executor;
+        this.pendingSaves = new HashMap<>();
+    }
+
+    /**
+     * Submits a user to be saved in the background.
+     * A copy of the user is taken before this method returns.
+     *
+     * @param user The user to save.
+     * @param saveSlot The save slot to save the user in.
+     * @return A future that completes once the user is saved,
+     *     or completes exceptionally with the {@link IOException} that made saving fail.
+     *     Saves that are coalesced share the same future.
+     */
+    public CompletableFuture<Void> submit(User user, int saveSlot) {
+        if (user == null) {
+            throw new IllegalArgumentException("\"user\" cannot be null");
+        }
+        User copy = user.copy();
+        long appendedLength = TransactionJournal.appendedLength(saveSlot);
+        synchronized (pendingSaves) {
+            PendingSave pendingSave = pendingSaves.get(saveSlot);
+            if (pendingSave == null) {
+                pendingSave = new PendingSave();
+                executor.execute(() -> runSave(saveSlot));
+                pendingSaves.put(saveSlot, pendingSave);
+            }
+            pendingSave.user = copy;
+            pendingSave.appendedLength = appendedLength;
+            return pendingSave.future;
+        }
+    }
+
+    /**
+     * Writes the latest copy submitted for a save slot.
+     *
+     * @param saveSlot The save slot to save.
+     */
+    private void runSave(int saveSlot) {
+        PendingSave pendingSave;
+        synchronized (pendingSaves) {
+            pendingSave = pendingSaves.remove(saveSlot);
+        }
+        try {
+            SaveManager.writeUserAsOf(pendingSave.user, saveSlot, pendingSave.appendedLength);
+            pendingSave.future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            pendingSave.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for every save submitted so far to finish, successfully or not.
+     *
+     * @param timeout The longest time to wait.
+     * @return If every save finished before the time ran out.
+     */
+    public boolean flush(Duration timeout) {
+        if (executor.isShutdown()) {
+            return shutdown(timeout);
+        }
+        try {
+            CompletableFuture.runAsync(() -> { }, executor)
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops taking new saves, and waits for every save submitted so far to finish.
+     * Saves that don't finish in time keep running in the background,
+     * but won't stop the program from exiting.
+     *
+     * @param timeout The longest time to wait.
+     * @return If every save finished before the time ran out.
+     */
+    public boolean shutdown(Duration timeout) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
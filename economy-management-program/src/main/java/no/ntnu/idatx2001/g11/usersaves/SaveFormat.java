@@ -0,0 +1,51 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+/**
+ * The layouts a user can be saved in.
+ * Every format is its own save version, so saves of any format load the same way.
+ *
+ * @see SaveManager#setSaveFormat(SaveFormat)
+ */
+public enum SaveFormat {
+    /** Every transaction is stored after each other, with all of its fields. */
+    ROWS(SaveManager.SAVE_VERSION),
+    /** Every field is stored for every transaction after each other, as columns. */
+    COLUMNS(SaveManager.COLUMNAR_SAVE_VERSION),
+    /**
+     * Every transaction is stored after each other, with every year before the current one
+     * stored in a {@link HistorySegment} file of its own, which is only loaded when needed.
+     */
+    SEGMENTS(SaveManager.SEGMENTED_SAVE_VERSION),
+    /**
+     * Every transaction is stored after each other, followed by a {@link TransactionIndex},
+     * so the transactions can be read a block at a time through {@link TransactionPages}.
+     */
+    INDEXED(SaveManager.INDEXED_SAVE_VERSION),
+    /**
+     * Every transaction is stored after each other, each with a checksum of its own,
+     * so a damaged transaction only loses itself, and can be recovered from a backup.
+     *
+     * @see CheckedRecords
+     */
+    CHECKED(SaveManager.CHECKED_SAVE_VERSION);
+
+    private final String version;
+
+    /**
+     * Constructor.
+     *
+     * @param version the save version of the format.
+     */
+    SaveFormat(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets the save version of the format.
+     *
+     * @return the save version of the format.
+     */
+    public String getVersion() {
+        return version;
+    }
+}
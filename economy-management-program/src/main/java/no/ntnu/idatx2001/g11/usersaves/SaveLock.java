@@ -0,0 +1,160 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ *     A lock on a save slot, shared between every thread & every process using the slot.
+ *     Anything that changes the files of a slot holds an exclusive lock,
+ *     and anything that only reads them holds a shared lock,
+ *     so a save is never read halfway through being written,
+ *     and two programs never write the same slot at the same time.
+ * </p><p>
+ *     Between processes, the slot is locked with a {@link FileChannel#lock(long, long, boolean)}
+ *     on a lock file next to the save file. The lock file is never deleted,
+ *     since a process could be waiting to lock it.
+ *     Within a process, a {@link ReentrantReadWriteLock} decides which threads hold the slot,
+ *     and the lock file is locked by the first thread, and released by the last.
+ *     Locks are reentrant, and a thread holding an exclusive lock can also take a shared lock,
+ *     but a thread holding a shared lock can't take an exclusive lock.
+ * </p><p>
+ *     Single files that are changed without holding their save slot, like the journal of a slot,
+ *     are locked the same way through {@link #file(Path)}, with a lock file of their own.
+ *     These are only held while the file is read or written,
+ *     so they never wait for a save of the slot to be written.
+ * </p>
+ */
+public final class SaveLock implements AutoCloseable {
+    // Every lock file that has been locked, never removed, so every thread locks the same instance
+    private static final Map<Path, SlotLock> slotLocks = new HashMap<>();
+
+    private final SlotLock slotLock;
+    private final Lock heldLock;
+    private boolean closed = false;
+
+    /**
+     * The locks of a single save slot, or a single file.
+     */
+    private static class SlotLock {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private FileChannel channel;
+        private int holders;
+    }
+
+    private SaveLock(SlotLock slotLock, Lock heldLock) {
+        this.slotLock = slotLock;
+        this.heldLock = heldLock;
+    }
+
+    /**
+     * Gets the path to the lock file of a save slot.
+     *
+     * @param saveSlot The save slot to get the lock file of.
+     * @return The path to the lock file.
+     */
+    public static Path getPath(int saveSlot) {
+        return Paths.get(SaveManager.getFilepath(saveSlot) + SaveManager.LOCK_EXTENSION);
+    }
+
+    /**
+     * Takes a shared lock on a save slot, waiting until no one holds an exclusive lock on it.
+     *
+     * @param saveSlot The save slot to lock.
+     * @return The lock, which is released when closed.
+     * @throws IOException if the lock file could not be locked
+     */
+    public static SaveLock shared(int saveSlot) throws IOException {
+        return acquire(getPath(saveSlot), true);
+    }
+
+    /**
+     * Takes an exclusive lock on a save slot, waiting until no one else holds any lock on it.
+     *
+     * @param saveSlot The save slot to lock.
+     * @return The lock, which is released when closed.
+     * @throws IOException if the lock file could not be locked
+     */
+    public static SaveLock exclusive(int saveSlot) throws IOException {
+        return acquire(getPath(saveSlot), false);
+    }
+
+    /**
+     * Takes an exclusive lock on a single file, waiting until no one else holds it.
+     * The file is locked through a lock file next to it, named like the file,
+     * with {@link SaveManager#LOCK_EXTENSION} added.
+     * Doesn't lock the save slot of the file.
+     *
+     * @param path The path to the file to lock.
+     * @return The lock, which is released when closed.
+     * @throws IOException if the lock file could not be locked
+     */
+    static SaveLock file(Path path) throws IOException {
+        return acquire(Paths.get(path + SaveManager.LOCK_EXTENSION), false);
+    }
+
+    private static SaveLock acquire(Path lockPath, boolean shared) throws IOException {
+        Path path = lockPath.toAbsolutePath().normalize();
+        SlotLock slotLock;
+        synchronized (slotLocks) {
+            slotLock = slotLocks.computeIfAbsent(path, lockedPath -> new SlotLock());
+        }
+        Lock heldLock = shared ? slotLock.lock.readLock() : slotLock.lock.writeLock();
+        heldLock.lock();
+        try {
+            synchronized (slotLock) {
+                if (slotLock.holders == 0) {
+                    Files.createDirectories(path.getParent());
+                    FileChannel channel = FileChannel.open(path,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    try {
+                        channel.lock(0, Long.MAX_VALUE, shared);
+                    } catch (IOException | RuntimeException e) {
+                        channel.close();
+                        throw e;
+                    }
+                    slotLock.channel = channel;
+                }
+                slotLock.holders++;
+            }
+        } catch (IOException | RuntimeException e) {
+            heldLock.unlock();
+            throw e;
+        }
+        return new SaveLock(slotLock, heldLock);
+    }
+
+    /**
+     * Releases the lock. Releasing a lock more than once does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (slotLock) {
+            slotLock.holders--;
+            if (slotLock.holders == 0) {
+                try {
+                    //Closing the channel releases the lock file.
+                    slotLock.channel.close();
+                } catch (IOException ioe) {
+                    //The lock file is released when the process exits anyway.
+                }
+                slotLock.channel = null;
+            }
+        }
+        heldLock.unlock();
+    }
+}
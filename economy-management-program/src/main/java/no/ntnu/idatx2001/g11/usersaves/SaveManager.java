@@ -1,17 +1,36 @@
 package no.ntnu.idatx2001.g11.usersaves;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.file.FileAlreadyExistsException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
 import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
+import no.ntnu.idatx2001.g11.generics.Transaction;
 import no.ntnu.idatx2001.g11.generics.TransactionHistory;
 import no.ntnu.idatx2001.g11.generics.User;
 
@@ -24,7 +43,43 @@ public class SaveManager {
     /**
      * Current save version.
      */
-    public static final String SAVE_VERSION = "1.0.0";
+    public static final String SAVE_VERSION = "1.8.0";
+
+    /**
+     * Save version of the columnar save format.
+     *
+     * @see SaveFormat#COLUMNS
+     */
+    public static final String COLUMNAR_SAVE_VERSION = "1.9.0";
+
+    /**
+     * Save version of compressed saves.
+     *
+     * @see #setCompressed(boolean)
+     */
+    public static final String COMPRESSED_SAVE_VERSION = "1.4.0";
+
+    /**
+     * Save version of the segmented save format.
+     * Segmented saves of 1.10.0 are still loaded, but are stored without renamed categories.
+     *
+     * @see SaveFormat#SEGMENTS
+     */
+    public static final String SEGMENTED_SAVE_VERSION = "1.13.0";
+
+    /**
+     * Save version of the indexed save format.
+     *
+     * @see SaveFormat#INDEXED
+     */
+    public static final String INDEXED_SAVE_VERSION = "1.11.0";
+
+    /**
+     * Save version of the checked save format.
+     *
+     * @see SaveFormat#CHECKED
+     */
+    public static final String CHECKED_SAVE_VERSION = "1.12.0";
 
     /**
      * Maximum possible save version.
@@ -53,13 +108,65 @@ public class SaveManager {
     public static final String BACKUP_EXTENSION = ".bak";
 
     /**
-     * The amount of backups to keep.
+     * The default file extension to be used for transaction journals.
+     */
+    public static final String JOURNAL_EXTENSION = ".journal";
+
+    /**
+     * The file extension of the lock file next to every save file.
+     *
+     * @see SaveLock
+     */
+    public static final String LOCK_EXTENSION = ".lock";
+
+    /**
+     * The default file extension to be used for history segments.
+     *
+     * @see HistorySegment
+     */
+    public static final String SEGMENT_EXTENSION = ".segment";
+
+    /**
+     * The default file extension to be used for files that are being written,
+     * before they replace the file they're for.
+     */
+    public static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * The name of the catalog of every save slot, in the save directory.
+     *
+     * @see SaveCatalog
+     */
+    public static final String CATALOG_FILE_NAME = "saves.catalog";
+
+    /**
+     * The default amount of backups to keep.
      */
     public static final int BACKUP_COUNT = 3;
 
+    /**
+     * The longest time between saves that are forced to disk,
+     * when the fsync policy is {@link FsyncPolicy#BATCHED}.
+     */
+    public static final Duration FSYNC_BATCH_INTERVAL = Duration.ofSeconds(10);
+
+    // Windows can't replace a file while it's mapped, and mappings are only released
+    // once they're garbage collected, so save files are streamed there instead
+    private static final boolean MAP_SAVE_FILES =
+            !System.getProperty("os.name", "").startsWith("Windows");
+
     // Singletons
     private static ExceptionCommunicator exceptionCommunicator = ExceptionCommunicator.getInstance();
 
+    private static SaveFormat saveFormat = SaveFormat.ROWS;
+    private static boolean compressed = false;
+    private static FsyncPolicy fsyncPolicy = FsyncPolicy.BATCHED;
+    private static int backupRetention = BACKUP_COUNT;
+    private static long lastForcedNanos = System.nanoTime() - FSYNC_BATCH_INTERVAL.toNanos();
+
+    // Re-used by every save, guarded by writeUser(...) being synchronized
+    private static ByteBuffer[] writeBuffers = SaveWriter.makeBuffers();
+
     private static String getFilepath(String filename) {
         return SAVE_PATH + filename;
     }
@@ -78,6 +185,127 @@ public class SaveManager {
         return getFilepath(saveSlot) + BACKUP_EXTENSION + backupNum;
     }
 
+    /**
+     * Gets the path to the transaction journal of a save slot.
+     *
+     * @param saveSlot slot to get the journal for
+     * @return the file path to the journal associated with the slot
+     * @see TransactionJournal
+     */
+    public static String getJournalFilepath(int saveSlot) {
+        return getFilepath(saveSlot) + JOURNAL_EXTENSION;
+    }
+
+    /**
+     * Gets the format users are saved in.
+     *
+     * @return the format users are saved in
+     */
+    public static SaveFormat getSaveFormat() {
+        return saveFormat;
+    }
+
+    /**
+     * Sets the format users are saved in.
+     * Saves of every format can always be loaded, no matter which format is set.
+     *
+     * @param saveFormat the format to save users in
+     */
+    public static void setSaveFormat(SaveFormat saveFormat) {
+        if (saveFormat == null) {
+            throw new IllegalArgumentException("\"saveFormat\" cannot be null");
+        }
+        SaveManager.saveFormat = saveFormat;
+    }
+
+    /**
+     * Checks if users are saved compressed.
+     *
+     * @return if users are saved compressed
+     */
+    public static boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets if users should be saved compressed.
+     * Compressed saves store the user in the set save format,
+     * split into blocks that are compressed & checksummed on their own.
+     * Saves can always be loaded, no matter if they are compressed.
+     *
+     * @param compressed if users should be saved compressed
+     * @see BlockCompressingChannel
+     */
+    public static void setCompressed(boolean compressed) {
+        SaveManager.compressed = compressed;
+    }
+
+    /**
+     * Gets the amount of backups kept of each save slot.
+     *
+     * @return the amount of backups kept of each save slot
+     */
+    public static int getBackupRetention() {
+        return backupRetention;
+    }
+
+    /**
+     * Sets the amount of backups kept of each save slot.
+     * Backups only store what changed since the newer save, so keeping many of them is cheap.
+     * Backups beyond the new amount are dropped the next time the slot is saved.
+     *
+     * @param backupRetention the amount of backups to keep of each save slot
+     */
+    public static void setBackupRetention(int backupRetention) {
+        if (backupRetention < 0) {
+            throw new IllegalArgumentException("\"backupRetention\" cannot be negative");
+        }
+        SaveManager.backupRetention = backupRetention;
+    }
+
+    /**
+     * Gets when save files are forced to disk.
+     *
+     * @return the fsync policy of save files
+     */
+    public static FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Sets when save files are forced to disk.
+     *
+     * @param fsyncPolicy the fsync policy of save files
+     */
+    public static void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy == null) {
+            throw new IllegalArgumentException("\"fsyncPolicy\" cannot be null");
+        }
+        SaveManager.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * Decides if the save that's being written should be forced to disk,
+     * according to the fsync policy.
+     *
+     * @return If the save should be forced to disk
+     */
+    private static boolean shouldForce() {
+        switch (fsyncPolicy) {
+            case ALWAYS:
+                return true;
+            case BATCHED:
+                long now = System.nanoTime();
+                if (now - lastForcedNanos < FSYNC_BATCH_INTERVAL.toNanos()) {
+                    return false;
+                }
+                lastForcedNanos = now;
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Converts a version string of X.Y.Z version into an array of bytes.
      *
@@ -89,112 +317,893 @@ public class SaveManager {
     }
 
     /**
-     * Attempts to create a new save file for the specified save slot.
-     * Will fail to create save file if it already exists, will not overwrite any files.
+     * Converts a version string of X.Y.Z version into the 2 bytes stored in save files.
      *
-     * @param saveSlot The save slot to create a save file for.
+     * @param version The version string to convert.
+     * @return The version, as a short
+     * @throws UnsupportedVersionException if any number in the version is above its max
      */
-    private static void createSaveFile(int saveSlot) throws IOException {
-        Files.createDirectories(Paths.get(SAVE_PATH));
-        File f = new File(getFilepath(saveSlot));
-        if (!f.createNewFile()) {
-            throw new FileAlreadyExistsException("Save file already exists: " + f.getName());
+    public static short getVersionBits(String version) {
+        int[] versionNums = getVersionNums(version);
+        int[] maxVersionNums = getVersionNums(MAX_VERSION);
+        if (versionNums[0] > maxVersionNums[0]
+                || versionNums[1] > maxVersionNums[1]
+                || versionNums[2] > maxVersionNums[2]) {
+            throw new UnsupportedVersionException(version, MAX_VERSION);
+        }
+        short versionBits = 0;
+        versionBits = (short) (versionBits | versionNums[2]);
+        versionBits = (short) (versionBits | (versionNums[1] << 5));
+        versionBits = (short) (versionBits | (versionNums[0] << 10));
+        return versionBits;
+    }
+
+    /**
+     * Converts the 2 version bytes stored in save files into a version string of X.Y.Z version.
+     *
+     * @param versionBits The version bytes, as a short.
+     * @return The version string
+     */
+    public static String getVersionString(short versionBits) {
+        String[] saveVersionArray = new String[3];
+        saveVersionArray[0] = Integer.toString((versionBits & 0b1111110000000000) >> 10);
+        saveVersionArray[1] = Integer.toString((versionBits & 0b0000001111100000) >> 5);
+        saveVersionArray[2] = Integer.toString(versionBits & 0b0000000000011111);
+        return String.join(".", saveVersionArray);
+    }
+
+    /**
+     * Moves a file in place of another file in one step, replacing it if it exists.
+     * If the file system can't move files in one step, the file is moved the normal way.
+     *
+     * @param source The file to move.
+     * @param target The file to replace.
+     * @param force If the directory of the target should be forced to disk after the move,
+     *              so the move survives a power loss.
+     * @throws IOException if the file could not be moved
+     */
+    static void moveAtomically(Path source, Path target, boolean force) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (force) {
+            try (FileChannel directory =
+                         FileChannel.open(target.toAbsolutePath().getParent(),
+                                 StandardOpenOption.READ)) {
+                directory.force(true);
+            } catch (IOException ioe) {
+                //Not every platform can open & force a directory, and the move already happened.
+            }
+        }
+    }
+
+    /**
+     * Writes some bytes to a file, replacing it if it exists.
+     *
+     * @param path The file to write.
+     * @param bytes The bytes to write.
+     * @param force If the file should be forced to disk.
+     * @throws IOException if the file could not be written
+     */
+    static void writeFile(Path path, byte[] bytes, boolean force) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(true);
+            }
         }
     }
 
     /**
-     * Removes the version bytes from an array of save data.
+     * Reads a whole file, for backups & the save files they're rebuilt from.
+     * The file is mapped read-only where save files are mapped, so it's never copied into memory,
+     * and read into memory where a mapped file couldn't be replaced.
      *
-     * @param saveBytes The array of bytes to remove the version bytes from.
-     * @return The array of bytes, without the version bytes.
+     * @param path The file to read.
+     * @return The bytes of the file, from index 0.
+     * @throws IOException if the file could not be read
      */
-    private static byte[] getVersionLessBytes(byte[] saveBytes) {
-        byte[] saveBytesVersionLess = new byte[saveBytes.length - 2];
-        System.arraycopy(saveBytes, 2, saveBytesVersionLess, 0, saveBytesVersionLess.length);
-        return saveBytesVersionLess;
+    private static ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (MAP_SAVE_FILES && channel.size() <= Integer.MAX_VALUE) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    /**
+     * Gets the bytes of a buffer as an array, without copying them if they're already one.
+     *
+     * @param buffer The buffer, from index 0 to its limit.
+     * @return The bytes of the buffer.
+     */
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0
+                && buffer.array().length == buffer.limit()) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    private static Path getPendingBackupPath(int saveSlot) {
+        return Paths.get(getBackupFilepath(saveSlot, 1) + TEMPORARY_EXTENSION);
+    }
+
+    /**
+     * Shifts every backup of a save slot one step back, and moves the pending backup
+     * in as the newest backup. Backups beyond the backup retention are dropped.
+     *
+     * @param saveSlot The save slot to shift the backups of.
+     * @param force If the backups should be forced to disk.
+     * @throws IOException if the backups could not be shifted
+     */
+    private static void shiftBackups(int saveSlot, boolean force) throws IOException {
+        for (int i = backupRetention; i > 1; i--) {
+            Path backup = Paths.get(getBackupFilepath(saveSlot, i - 1));
+            if (Files.exists(backup)) {
+                moveAtomically(backup, Paths.get(getBackupFilepath(saveSlot, i)), false);
+            }
+        }
+        if (backupRetention > 0) {
+            moveAtomically(getPendingBackupPath(saveSlot),
+                    Paths.get(getBackupFilepath(saveSlot, 1)), force);
+        }
+        dropBackupsFrom(saveSlot, backupRetention + 1);
+    }
+
+    /**
+     * Deletes every backup of a save slot from a backup onwards.
+     *
+     * @param saveSlot The save slot to delete the backups of.
+     * @param firstBackupNum The first backup to delete.
+     * @throws IOException if a backup could not be deleted
+     */
+    private static void dropBackupsFrom(int saveSlot, int firstBackupNum) throws IOException {
+        for (int i = firstBackupNum; Files.deleteIfExists(
+                Paths.get(getBackupFilepath(saveSlot, i))); i++) {
+            //Keep deleting until there are no more backups.
+        }
+    }
+
+    /**
+     * Finishes a backup rotation that was cut short, after the save file was replaced,
+     * but before the backups were shifted.
+     * A pending backup that doesn't belong to the current save file was never used,
+     * since the save file wasn't replaced, and is deleted.
+     *
+     * @param saveSlot The save slot to finish the backup rotation of.
+     * @throws IOException if the backups could not be shifted
+     */
+    private static void recoverBackupRotation(int saveSlot) throws IOException {
+        Path pendingBackup = getPendingBackupPath(saveSlot);
+        if (!Files.exists(pendingBackup)) {
+            return;
+        }
+        Path path = Paths.get(getFilepath(saveSlot));
+        boolean applies = false;
+        if (Files.exists(path)) {
+            try (FileChannel backup = FileChannel.open(pendingBackup, StandardOpenOption.READ);
+                    FileChannel save = FileChannel.open(path, StandardOpenOption.READ)) {
+                applies = SaveDelta.appliesTo(backup, save);
+            }
+        }
+        if (applies) {
+            shiftBackups(saveSlot, false);
+        } else {
+            Files.delete(pendingBackup);
+        }
+    }
+
+    /**
+     * Replaces the save file of a slot with a new one,
+     * keeping the old save file as the newest backup.<br/><br/>
+     * Backups are stored as deltas, documented in {@link SaveDelta},
+     * that rebuild the old save file from the new one,
+     * so only the bytes that changed are written.
+     * The delta is made from both save files a window at a time,
+     * so neither is read into memory as a whole.
+     * The delta is written to a pending backup first, then the save file is replaced,
+     * and lastly the backups are shifted to make room for the pending backup.
+     * If the program stops at any point, the save file & its backups are still intact,
+     * and any unfinished backup rotation is finished by the next save.
+     *
+     * @param saveSlot The save slot to replace the save file of.
+     * @param temporaryPath The new save file.
+     * @param force If the new save file & backup should be forced to disk.
+     * @throws IOException if the save file could not be replaced
+     */
+    private static void publishSave(int saveSlot, Path temporaryPath, boolean force)
+            throws IOException {
+        Path path = Paths.get(getFilepath(saveSlot));
+        recoverBackupRotation(saveSlot);
+        if (backupRetention == 0 || !Files.exists(path)) {
+            moveAtomically(temporaryPath, path, force);
+            dropBackupsFrom(saveSlot, backupRetention + 1);
+            return;
+        }
+        try (FileChannel base = FileChannel.open(temporaryPath, StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel delta = FileChannel.open(getPendingBackupPath(saveSlot),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            SaveDelta.compute(base, target, delta);
+            if (force) {
+                delta.force(true);
+            }
+        }
+        moveAtomically(temporaryPath, path, force);
+        shiftBackups(saveSlot, force);
+    }
+
+    /**
+     * Rebuilds a backup of a save slot, by applying every backup up to it
+     * to the current save file, one after another.
+     * Backups made before backups were stored as deltas are full save files,
+     * and are used as they are.
+     *
+     * @param saveSlot The save slot to rebuild a backup of.
+     * @param backupNum Which backup to rebuild, from 1 (the newest)
+     *                  to {@link #getBackupRetention()}.
+     * @return The backup, as the bytes of a full save file.
+     * @throws NoSuchFileException if the save file or any backup up to it does not exist
+     * @throws IOException if a backup could not be read, or is corrupted
+     */
+    public static synchronized byte[] rebuildBackup(int saveSlot, int backupNum)
+            throws IOException {
+        if (backupNum < 1) {
+            throw new IllegalArgumentException("\"backupNum\" must be at least 1");
+        }
+        //Finishing a backup rotation writes to the slot, so the slot is locked exclusively.
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            recoverBackupRotation(saveSlot);
+            ByteBuffer save = readFile(Paths.get(getFilepath(saveSlot)));
+            for (int i = 1; i <= backupNum; i++) {
+                ByteBuffer backup = readFile(Paths.get(getBackupFilepath(saveSlot, i)));
+                save = SaveDelta.isDelta(backup)
+                        ? ByteBuffer.wrap(SaveDelta.apply(save, backup)) : backup;
+            }
+            return toArray(save);
+        }
+    }
+
+    /**
+     * Restores a backup of a save slot, making it the current save file.
+     * The save file that's replaced becomes the newest backup,
+     * so every other backup moves one step back, and the restore can be undone.
+     * The slot's {@link TransactionJournal} is emptied,
+     * since its changes were made after the backup.
+     *
+     * @param saveSlot The save slot to restore a backup of.
+     * @param backupNum Which backup to restore, from 1 (the newest)
+     *                  to {@link #getBackupRetention()}.
+     * @throws NoSuchFileException if the save file or any backup up to it does not exist
+     * @throws IOException if the backup could not be rebuilt, or the save file replaced
+     * @see #rebuildBackup(int, int)
+     */
+    public static synchronized void restoreBackup(int saveSlot, int backupNum)
+            throws IOException {
+        boolean force = shouldForce();
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            byte[] backup = rebuildBackup(saveSlot, backupNum);
+            Path temporaryPath = Paths.get(getFilepath(saveSlot) + TEMPORARY_EXTENSION);
+            writeFile(temporaryPath, backup, force);
+            publishSave(saveSlot, temporaryPath, force);
+            TransactionJournal.reset(saveSlot);
+        }
+        SaveCatalog.refresh(saveSlot, force);
+    }
+
+    /**
+     * Reads the version bytes at the start of a save file.
+     *
+     * @param channel The channel to read from, positioned at the start of the save file.
+     * @return The version of the save file
+     * @throws IOException if the version could not be read
+     */
+    private static String readVersion(ReadableByteChannel channel) throws IOException {
+        ByteBuffer versionBuffer = ByteBuffer.allocate(2);
+        while (versionBuffer.hasRemaining() && channel.read(versionBuffer) >= 0) {
+            //Keep reading until both version bytes are read, or the file is empty.
+        }
+        if (versionBuffer.hasRemaining()) {
+            throw new EOFException("Save file has no version");
+        }
+        return getVersionString(versionBuffer.flip().getShort());
     }
 
     /**
      * Loads a user from a file.
      * Can load data from any supported save version in {@link VersionTemplate}.
+     * The save file is mapped into memory, and every field is read where it is in the file,
+     * so the save file is never copied into memory as a whole.
+     * Where save files can't be mapped, the save file is streamed instead.
+     * Uncompressed saves of the {@link SaveFormat#INDEXED} format are instead read
+     * a block of transactions at a time, decoding every block in parallel.
+     * The slot is held with a shared {@link SaveLock} while it's read,
+     * so it's never read while another thread or program is writing it.
+     * Damaged records of {@link SaveFormat#CHECKED} saves are skipped,
+     * and recovered from the backups of the slot where they're intact,
+     * as documented in {@link #recoverFromBackups(int, User, SaveDamage)}.
      *
      * @param saveSlot The save slot to load the purchase history for.
      * @return The loaded user. Will be null if the user doesn't exist
      * @throws NoSuchFileException if the save file does not exist
      * @see VersionTemplate
+     * @see #loadUserBytes(int, boolean)
      */
     public static UserBytes loadUserBytes(int saveSlot) throws NoSuchFileException {
-        UserBytes user = null;
-        try {
-            byte[] saveBytes = Files.readAllBytes(new File(getFilepath(saveSlot)).toPath());
-            short versionBits = ByteBuffer.wrap(Arrays.copyOfRange(saveBytes, 0, 2)).getShort();
-            String[] saveVersionArray = new String[3];
-            saveVersionArray[0] = Integer.toString((versionBits & 0b1111110000000000) >> 10);
-            saveVersionArray[1] = Integer.toString((versionBits & 0b0000001111100000) >> 5);
-            saveVersionArray[2] = Integer.toString(versionBits & 0b0000000000011111);
-            user = new UserBytes(
-                    String.join(".", saveVersionArray),
-                    getVersionLessBytes(saveBytes)
-            );
+        return loadUserBytes(saveSlot, false);
+    }
 
+    /**
+     * Loads a user from a file, like {@link #loadUserBytes(int)}.
+     * If the user is loaded paged, the transactions of uncompressed saves
+     * of the {@link SaveFormat#INDEXED} format aren't read up front.
+     * Only the fields before the transactions & the index at the end of the file are read,
+     * and the transactions are read a block at a time through {@link TransactionPages},
+     * which take over the channel of the save file.
+     * Other saves are loaded in full either way.
+     * If the save file can't be read, an error dialogue is shown.
+     *
+     * @param saveSlot The save slot to load the user from.
+     * @param paged If the transactions of indexed saves should be read a block at a time,
+     *     instead of decoding every block up front.
+     * @return The loaded user. Will be null if the user couldn't be loaded
+     * @throws NoSuchFileException if the save file does not exist
+     * @see #readUserBytes(int, boolean)
+     */
+    public static UserBytes loadUserBytes(int saveSlot, boolean paged)
+            throws NoSuchFileException {
+        try {
+            return readUserBytes(saveSlot, paged);
         } catch (NoSuchFileException nsfe) {
             throw nsfe;
         } catch (IOException ioe) {
             exceptionCommunicator.throwErrorDialogue(
                 "Failed to load",
                 "Failed to load the user's save data.");
+            return null;
         }
+    }
 
+    /**
+     * Loads a user from a file, as documented in {@link #loadUserBytes(int, boolean)},
+     * without showing any dialogue if it fails.
+     * Remembers which snapshot of the slot the user was loaded from,
+     * so the slot's journal is only replayed on top of that snapshot.
+     *
+     * @param saveSlot The save slot to load the user from.
+     * @param paged If the transactions of indexed saves should be read a block at a time,
+     *     instead of decoding every block up front.
+     * @return The loaded user.
+     * @throws NoSuchFileException if the save file does not exist
+     * @throws IOException if the save file could not be read
+     * @see TransactionJournal#replayJournal(User, int, UserBytes)
+     */
+    public static UserBytes readUserBytes(int saveSlot, boolean paged) throws IOException {
+        UserBytes user;
+        FileChannel channel = null;
+        try (SaveLock lock = SaveLock.shared(saveSlot)) {
+            Path path = Paths.get(getFilepath(saveSlot));
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            BasicFileAttributes snapshotAttributes =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+            String version = readVersion(channel);
+            if (CodecPlan.get(VersionTemplate.TOP_LEVEL, version).isIndexed()) {
+                User indexedUser = openIndexedUser(channel, version);
+                if (paged) {
+                    //The pages own the channel from here on, and close it once they're unused.
+                    channel = null;
+                } else {
+                    //Every block is decoded in parallel.
+                    indexedUser.getTransactionHistory().getTransactions();
+                }
+                user = new UserBytes(indexedUser);
+            } else if (MAP_SAVE_FILES && channel.size() <= Integer.MAX_VALUE) {
+                //Mapped save data is decoded in place, so it's never copied into memory
+                user = new UserBytes(version,
+                        channel.map(FileChannel.MapMode.READ_ONLY, 2, channel.size() - 2));
+            } else {
+                user = new UserBytes(version, channel);
+            }
+            user.setSnapshot(snapshotAttributes.size(),
+                    snapshotAttributes.lastModifiedTime().toMillis());
+            if (user.getDamage() != null) {
+                recoverFromBackups(saveSlot, user.makeUser(), user.getDamage());
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("Save file is malformed", iae);
+        } finally {
+            closeQuietly(channel);
+        }
         return user;
     }
 
+    /**
+     * Recovers the damaged records of a save from the backups of its save slot,
+     * for saves where every record is checked, as documented in {@link CheckedRecords}.
+     * Backups are rebuilt from the newest to the oldest, without checking the checksum
+     * of the save they're rebuilt from, since it's damaged.
+     * Every gap in the loaded transactions is filled with the transactions
+     * between the transactions on either side of it, from the newest backup that has them,
+     * as long as that backup isn't damaged in the same place.
+     * Transactions deleted since the backup can't be told apart from damaged ones,
+     * so a backup is only used if it doesn't have more transactions in the gap
+     * than there are damaged records left.
+     * Must be called while holding a lock on the save slot.
+     *
+     * @param saveSlot The save slot the user was loaded from.
+     * @param user The user loaded from the save slot, without its damaged records.
+     * @param damage The damage found while loading the user.
+     *               Recovered records are counted in it.
+     */
+    private static void recoverFromBackups(int saveSlot, User user, SaveDamage damage) {
+        List<Transaction> transactions =
+                new ArrayList<>(user.getTransactionHistory().getLoadedTransactions());
+        List<Integer> gaps = new ArrayList<>(damage.getGaps());
+        List<Transaction> recovered = new ArrayList<>();
+        try {
+            ByteBuffer save = readFile(Paths.get(getFilepath(saveSlot)));
+            for (int i = 1; i <= backupRetention && !gaps.isEmpty(); i++) {
+                Path backupPath = Paths.get(getBackupFilepath(saveSlot, i));
+                if (!Files.exists(backupPath)) {
+                    break;
+                }
+                ByteBuffer backup = readFile(backupPath);
+                save = SaveDelta.isDelta(backup)
+                        ? ByteBuffer.wrap(SaveDelta.applyUnchecked(save, backup)) : backup;
+                UserBytes backupUser;
+                List<Transaction> backupTransactions;
+                try {
+                    ByteBuffer buffer = save.duplicate().rewind();
+                    backupUser = new UserBytes(getVersionString(buffer.getShort()), buffer.slice());
+                    backupTransactions =
+                            backupUser.makeUser().getTransactionHistory().getTransactions();
+                } catch (IOException | RuntimeException e) {
+                    //A backup that can't be loaded can still be the base of older backups.
+                    continue;
+                }
+                for (Iterator<Integer> gap = gaps.iterator(); gap.hasNext(); ) {
+                    List<Transaction> gapTransactions = findGapTransactions(transactions,
+                            gap.next(), backupTransactions, backupUser.getDamage());
+                    if (gapTransactions != null && !gapTransactions.isEmpty()
+                            && gapTransactions.size() <= damage.getLostRecords()) {
+                        recovered.addAll(gapTransactions);
+                        damage.addRecoveredRecords(gapTransactions.size());
+                        gap.remove();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            //The backups that couldn't be rebuilt have nothing to recover.
+        }
+        for (Transaction transaction : recovered) {
+            user.getTransactionHistory().addTransaction(transaction);
+        }
+    }
+
+    /**
+     * Finds the transactions of a gap in the transactions of a backup,
+     * as the transactions between the transactions on either side of the gap.
+     * Equal transactions are matched in the order they're in,
+     * so repeated transactions on either side of a gap are matched to the right ones.
+     *
+     * @param transactions The transactions with a gap.
+     * @param gap Where in the transactions the gap is.
+     * @param backupTransactions The transactions of the backup.
+     * @param backupDamage The damage found in the backup, or {@code null} if it's intact.
+     * @return The transactions of the gap,
+     *     or {@code null} if the backup doesn't have every transaction of the gap.
+     */
+    private static List<Transaction> findGapTransactions(List<Transaction> transactions,
+            int gap, List<Transaction> backupTransactions, SaveDamage backupDamage) {
+        int start = 0;
+        if (gap > 0) {
+            Transaction before = transactions.get(gap - 1);
+            int occurrence = 0;
+            for (int i = 0; i < gap - 1; i++) {
+                if (transactions.get(i).equals(before)) {
+                    occurrence++;
+                }
+            }
+            start = -1;
+            for (int i = 0; i < backupTransactions.size() && start < 0; i++) {
+                if (backupTransactions.get(i).equals(before) && occurrence-- == 0) {
+                    start = i + 1;
+                }
+            }
+            if (start < 0) {
+                return null;
+            }
+        }
+        int end = backupTransactions.size();
+        if (gap < transactions.size()) {
+            end = backupTransactions.subList(start, end).indexOf(transactions.get(gap));
+            if (end < 0) {
+                return null;
+            }
+            end += start;
+        }
+        if (backupDamage != null) {
+            for (int backupGap : backupDamage.getGaps()) {
+                if (backupGap >= start && backupGap <= end) {
+                    return null;
+                }
+            }
+        }
+        return backupTransactions.subList(start, end);
+    }
+
+    /**
+     * Loads a user from a file, without reading the user's transactions up front.
+     * Indexed saves are read a block at a time, as documented in
+     * {@link #loadUserBytes(int, boolean)}.
+     *
+     * @param saveSlot The save slot to load the user from.
+     * @return The loaded user. Will be null if the user couldn't be loaded
+     * @throws NoSuchFileException if the save file does not exist
+     */
+    public static User loadUserPaged(int saveSlot) throws NoSuchFileException {
+        UserBytes userBytes = loadUserBytes(saveSlot, true);
+        return userBytes == null ? null : userBytes.makeUser();
+    }
+
+    /**
+     * Opens a user from an indexed save file, with a transaction history backed by
+     * the {@link TransactionPages} of the save.
+     * The pages take over the channel.
+     *
+     * @param channel The channel of the save file, positioned after the version bytes.
+     * @param version The version of the save file.
+     * @return The user, with none of the user's transactions read yet.
+     * @throws IOException if the fields before the transactions or the index could not be read
+     */
+    private static User openIndexedUser(FileChannel channel, String version)
+            throws IOException {
+        TransactionIndex index = TransactionIndex.read(channel,
+                CodecPlan.get(VersionTemplate.TOP_LEVEL, version).storesMinorUnits());
+        long headerLength = channel.size() - index.byteLength()
+                - index.getTransactionsLength() - 2;
+        if (headerLength < 0 || headerLength > Integer.MAX_VALUE) {
+            throw new IOException("Save file has a malformed transaction index");
+        }
+        SaveDataReader reader = new SaveDataReader(version,
+                TransactionIndex.readFully(channel, 2, (int) headerLength));
+        User header = reader.readUserHeader();
+        if (reader.getTransactionCount() != index.getTransactionCount()) {
+            throw new IOException("Save file has an index of other transactions");
+        }
+        TransactionPages pages = new TransactionPages(
+                channel, version, reader.getStringDictionary(), index);
+        return new User(header.getUsername(), header.getStartingFunds(),
+                new TransactionHistory(pages));
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                //The channel is no longer used either way.
+            }
+        }
+    }
+
+    /**
+     * Loads the summary of a save slot.
+     * For saves with a {@link SlotSummary}, only the version and the summary are read,
+     * with a single positional read from the start of the file.
+     * Older saves don't have a summary, and are loaded in full to make one.
+     *
+     * @param saveSlot The save slot to load the summary of.
+     * @return The summary of the save slot. Will be null if the summary couldn't be loaded
+     * @throws NoSuchFileException if the save file does not exist
+     * @see SlotSummary
+     */
+    public static SlotSummary loadSlotSummary(int saveSlot) throws NoSuchFileException {
+        SlotSummary summary = null;
+        try {
+            summary = readSlotSummary(saveSlot);
+
+        } catch (NoSuchFileException nsfe) {
+            throw nsfe;
+        } catch (IOException | UnsupportedVersionException e) {
+            exceptionCommunicator.throwErrorDialogue(
+                "Failed to load",
+                "Failed to load the summary of save slot " + saveSlot + ".");
+        }
+
+        return summary;
+    }
+
+    /**
+     * Reads the summary of a save slot, like {@link #loadSlotSummary(int)},
+     * without showing an error dialogue if it can't be read.
+     *
+     * @param saveSlot The save slot to read the summary of.
+     * @return The summary of the save slot.
+     * @throws NoSuchFileException if the save file does not exist
+     * @throws IOException if the save file could not be read
+     * @throws UnsupportedVersionException if the save file has an unsupported version
+     */
+    static SlotSummary readSlotSummary(int saveSlot) throws IOException {
+        Path path = Paths.get(getFilepath(saveSlot));
+        try (SaveLock lock = SaveLock.shared(saveSlot);
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(2 + SlotSummary.LENGTH);
+            while (headerBuffer.hasRemaining()
+                    && channel.read(headerBuffer, headerBuffer.position()) >= 0) {
+                //Keep reading until the whole header is read, or the file ends.
+            }
+            headerBuffer.flip();
+            if (headerBuffer.remaining() < 2) {
+                throw new EOFException("Save file has no version");
+            }
+            String version = getVersionString(headerBuffer.getShort());
+            if (CodecPlan.get(VersionTemplate.TOP_LEVEL, version).startsWithSlotSummary()) {
+                if (headerBuffer.remaining() < SlotSummary.LENGTH) {
+                    throw new EOFException("Save file has no slot summary");
+                }
+                return SlotSummary.read(headerBuffer);
+            }
+            return SlotSummary.of(new UserBytes(version, channel.position(2)).makeUser(),
+                    Files.getLastModifiedTime(path).toMillis());
+        }
+    }
+
+    /**
+     * Verifies that the save file of a save slot is intact.
+     *
+     * @param saveSlot The save slot to verify.
+     * @return If the save file is intact
+     * @throws NoSuchFileException if the save file does not exist
+     * @see #verifySaveFile(Path)
+     */
+    public static boolean verifySave(int saveSlot) throws NoSuchFileException {
+        return verifySaveFile(Paths.get(getFilepath(saveSlot)));
+    }
+
+    /**
+     * Verifies that a backup of a save slot is intact.
+     * The backup is rebuilt first, as documented in {@link #rebuildBackup(int, int)}.
+     *
+     * @param saveSlot The save slot the backup is for.
+     * @param backupNum Which backup to verify, from 1 to {@link #getBackupRetention()}.
+     * @return If the backup is intact
+     * @throws NoSuchFileException if the backup does not exist
+     * @see #verifySaveFile(ReadableByteChannel)
+     */
+    public static boolean verifyBackup(int saveSlot, int backupNum) throws NoSuchFileException {
+        try {
+            byte[] backup = rebuildBackup(saveSlot, backupNum);
+            return verifySaveFile(Channels.newChannel(new ByteArrayInputStream(backup)));
+        } catch (NoSuchFileException nsfe) {
+            throw nsfe;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies that a save file is intact.
+     *
+     * @param path The save file to verify.
+     * @return If the save file is intact
+     * @throws NoSuchFileException if the save file does not exist
+     * @see #verifySaveFile(ReadableByteChannel)
+     */
+    private static boolean verifySaveFile(Path path) throws NoSuchFileException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return verifySaveFile(channel);
+        } catch (NoSuchFileException nsfe) {
+            throw nsfe;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies that a save file is intact.
+     * Compressed saves are verified by the checksum of each block, without decompressing them.
+     * Other saves are verified by loading them in full,
+     * including every {@link HistorySegment} they refer to,
+     * and are damaged if any record of a {@link SaveFormat#CHECKED} save is damaged.
+     *
+     * @param channel The channel to read the save file from, positioned at its start.
+     * @return If the save file is intact
+     */
+    private static boolean verifySaveFile(ReadableByteChannel channel) {
+        try {
+            String version = readVersion(channel);
+            CodecPlan plan = CodecPlan.get(VersionTemplate.TOP_LEVEL, version);
+            if (plan.isBlockCompressed() && plan.startsWithSlotSummary()) {
+                ByteBuffer summary = ByteBuffer.allocate(SlotSummary.LENGTH);
+                while (summary.hasRemaining()) {
+                    if (channel.read(summary) < 0) {
+                        return false;
+                    }
+                }
+                return BlockDecompressingChannel.verify(channel);
+            }
+            //Loading every transaction also verifies the checksum of every history segment.
+            UserBytes userBytes = new UserBytes(version, channel);
+            userBytes.makeUser().getTransactionHistory().getTransactions();
+            return userBytes.getDamage() == null;
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the slot summary & the user, in the set save format.
+     *
+     * @param user The user to write.
+     * @param summary The summary of the user.
+     * @param segments The segments of the user's transaction history,
+     *                 if the save format is {@link SaveFormat#SEGMENTS}.
+     * @param writer The save writer to write through.
+     * @throws IOException if the bytes could not be written
+     */
+    private static void writeSaveBody(User user, SlotSummary summary,
+                                      List<HistorySegment> segments, SaveWriter writer)
+            throws IOException {
+        summary.writeTo(writer);
+        if (saveFormat == SaveFormat.COLUMNS) {
+            user.writeColumnsTo(writer);
+        } else if (saveFormat == SaveFormat.SEGMENTS) {
+            user.writeSegmentsTo(writer, segments);
+        } else if (saveFormat == SaveFormat.INDEXED) {
+            user.writeIndexedTo(writer);
+        } else if (saveFormat == SaveFormat.CHECKED) {
+            user.writeCheckedTo(writer);
+        } else {
+            user.writeTo(writer);
+        }
+    }
+
+    /**
+     * Writes a segment file for every year of a user's transaction history
+     * before the current year.
+     * Years that aren't loaded, and years that haven't changed since they were loaded,
+     * keep the segment file they already have.
+     *
+     * @param user The user to write the segments of.
+     * @param saveSlot The save slot the segments are for.
+     * @param force If the segment files should be forced to disk.
+     * @return The segments of the user's transaction history, in order of year.
+     * @throws IOException if a segment file could not be written
+     */
+    private static List<HistorySegment> writeSegments(User user, int saveSlot, boolean force)
+            throws IOException {
+        TransactionHistory history = user.getTransactionHistory();
+        int currentYear = LocalDate.now().getYear();
+        Map<Integer, List<Transaction>> years = new TreeMap<>();
+        for (Transaction transaction : history.getLoadedTransactions()) {
+            int year = transaction.getDate().getYear();
+            if (year < currentYear) {
+                years.computeIfAbsent(year, y -> new ArrayList<>()).add(transaction);
+            }
+        }
+        List<HistorySegment> segments = new ArrayList<>();
+        for (HistorySegment segment : history.getUnloadedSegments()) {
+            if (segment.belongsTo(saveSlot)) {
+                segments.add(segment);
+            } else {
+                //Segments of other slots could be deleted with the slot they belong to.
+                segments.add(HistorySegment.write(
+                        saveSlot, segment.getYear(), segment.load(), null, force));
+            }
+        }
+        for (Map.Entry<Integer, List<Transaction>> year : years.entrySet()) {
+            segments.add(HistorySegment.write(saveSlot, year.getKey(), year.getValue(),
+                    history.getLoadedSegment(year.getKey()), force));
+        }
+        segments.sort(Comparator.comparingInt(HistorySegment::getYear));
+        return segments;
+    }
+
+    /**
+     * Gets the name of every segment file a save refers to.
+     *
+     * @param saveBytes The save, as the bytes of a full save file.
+     * @return The name of every segment file the save refers to.
+     * @throws IOException if the save could not be read
+     */
+    private static Set<String> getSegmentFileNames(byte[] saveBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(saveBytes);
+        String version = getVersionString(buffer.getShort());
+        User user = new UserBytes(version, buffer.slice()).makeUser();
+        Set<String> fileNames = new HashSet<>();
+        for (HistorySegment segment : user.getTransactionHistory().getUnloadedSegments()) {
+            fileNames.add(segment.getFileName());
+        }
+        return fileNames;
+    }
+
+    /**
+     * Deletes every segment file of a save slot
+     * that neither the save file nor any of its backups refer to anymore.
+     * If any backup can't be read, nothing is deleted,
+     * so a segment file is never deleted while something might still refer to it.
+     *
+     * @param saveSlot The save slot to delete the unused segment files of.
+     * @param segments The segments the save file refers to.
+     */
+    private static void deleteUnusedSegments(int saveSlot, List<HistorySegment> segments) {
+        Set<String> usedFileNames = new HashSet<>();
+        segments.forEach(segment -> usedFileNames.add(segment.getFileName()));
+        String prefix = HistorySegment.getFileNamePrefix(saveSlot);
+        try {
+            for (int i = 1; Files.exists(Paths.get(getBackupFilepath(saveSlot, i))); i++) {
+                usedFileNames.addAll(getSegmentFileNames(rebuildBackup(saveSlot, i)));
+            }
+            try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(
+                    Paths.get(SAVE_PATH), prefix + "*" + SEGMENT_EXTENSION)) {
+                for (Path segmentFile : segmentFiles) {
+                    if (!usedFileNames.contains(segmentFile.getFileName().toString())) {
+                        Files.deleteIfExists(segmentFile);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            //Unused segment files are only wasted space, and are deleted by a later save.
+        }
+    }
+
     /**
      * Stores a user as a series of bytes.<br/>
      * The bytes are stored as follows:<br/>
      * <b>Byte 0:</b> Major save version.<br/>
      * <b>Byte 1, bit 0 - 3:</b> Minor save version.<br/>
      * <b>Byte 1, bit 4 - 7:</b> Patch/debug save version.<br/>
-     * <b>Byte 2 - {@code n}:</b> A user, encoded to bytes as documented in {@link User#asBytes()}.
+     * <b>Byte 2 - 97:</b> A summary of the user, encoded to bytes as documented in
+     * {@link SlotSummary#writeTo(ByteBuffer)}.<br/>
+     * <b>Byte 98 - {@code n}:</b> A user, encoded to bytes as documented in
+     * {@link User#writeTo(ByteBuffer)}, or {@link User#writeColumnsTo(SaveWriter)}
+     * if the save format is {@link SaveFormat#COLUMNS}.<br/><br/>
+     * If the save format is {@link SaveFormat#SEGMENTS}, every year before the current one
+     * is written to a {@link HistorySegment} file first, unless it already has one,
+     * and the user is encoded to bytes as documented in
+     * {@link User#writeSegmentsTo(SaveWriter, List)}.
+     * Segment files that neither the save nor its backups refer to anymore are deleted.
+     * If the save format is {@link SaveFormat#INDEXED}, the user is encoded to bytes as
+     * documented in {@link User#writeIndexedTo(SaveWriter)}.<br/><br/>
+     * If saves are compressed, the version is {@link #COMPRESSED_SAVE_VERSION},
+     * and the slot summary is followed by the same bytes, from byte 2 onwards,
+     * compressed as documented in {@link BlockCompressingChannel}.
+     * <br/><br/>
+     * The user is written to a temporary file through a {@link SaveWriter},
+     * re-using the same set of buffers for every save.
+     * The temporary file is forced to disk according to the {@link FsyncPolicy},
+     * and then replaces the save file in one step,
+     * so the save file is never missing or half-written.
+     * The old save file is kept as the newest backup,
+     * as documented in {@link #publishSave(int, Path, boolean)}.
+     * Saving a user writes a new snapshot, which also compacts the slot's
+     * {@link TransactionJournal}.
      *
      * @param user The user to save.
      * @param saveSlot The save slot the purchase history if for.
-     * @see User#asBytes()
+     * @see User#writeTo(ByteBuffer)
+     * @see #writeUser(User, int, long)
      */
-    public static void saveUser(Savable user, int saveSlot) {
+    public static void saveUser(User user, int saveSlot) {
         try {
-            File oldestBackup = new File(getBackupFilepath(saveSlot, BACKUP_COUNT));
-            if (oldestBackup.isFile()) {
-                Files.delete(oldestBackup.toPath());
-            }
-            for (int i = BACKUP_COUNT; i > 1; i--) {
-                File backup = new File(getBackupFilepath(saveSlot, i - 1));
-                if (backup.isFile()) {
-                    Files.move(backup.toPath(), Paths.get(getBackupFilepath(saveSlot, i)));
-                }
-            }
-            Path path = Paths.get(getFilepath(saveSlot));
-            if (Files.exists(path)) {
-                Files.move(path, Paths.get(getBackupFilepath(saveSlot, 1)));
-            }
-
-            createSaveFile(saveSlot);
-            try (FileOutputStream outputStream = new FileOutputStream(getFilepath(saveSlot))) {
-                int[] versionNums = getVersionNums(SAVE_VERSION);
-                int[] maxVersionNums = getVersionNums(MAX_VERSION);
-                if (versionNums[0] <= maxVersionNums[0]
-                        && versionNums[1] <= maxVersionNums[1]
-                        && versionNums[2] <= maxVersionNums[2]) {
-                    short versionBits = 0;
-                    versionBits = (short) (versionBits | versionNums[2]);
-                    versionBits = (short) (versionBits | (versionNums[1] << 5));
-                    versionBits = (short) (versionBits | (versionNums[0] << 10));
-
-                    outputStream.write(ByteBuffer.allocate(2).putShort(versionBits).array());
-                    outputStream.write(user.asBytes());
-                } else {
-                    throw new UnsupportedVersionException(SAVE_VERSION, MAX_VERSION);
-                }
-            }
+            writeUser(user, saveSlot, TransactionJournal.position(saveSlot));
         } catch (IOException e) {
             exceptionCommunicator.throwErrorDialogue(
                 "Error saving user",
@@ -202,4 +1211,183 @@ public class SaveManager {
             );
         }
     }
+
+    /**
+     * Stores a user as a series of bytes, as documented in {@link #saveUser(User, int)},
+     * without showing any dialogue if it fails. Can be called from any thread.
+     *
+     * @param user The user to save. Must not be changed while it's being saved.
+     * @param saveSlot The save slot to save the user in.
+     * @param journalPosition The position of the slot's {@link TransactionJournal}
+     *                        when the user was taken,
+     *                        from {@link TransactionJournal#position(int)}.
+     *                        Records before it are compacted away after saving.
+     * @throws IOException if the user could not be saved
+     * @see SaveExecutor
+     * @see SaveLock
+     */
+    public static synchronized void writeUser(User user, int saveSlot, long journalPosition)
+            throws IOException {
+        boolean force = shouldForce();
+        SlotSummary summary = SlotSummary.of(user, System.currentTimeMillis());
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            writeSnapshot(user, saveSlot, journalPosition, summary, writeBuffers, false, force);
+        }
+        SaveCatalog.update(saveSlot, summary, force);
+    }
+
+    /**
+     * Stores a user like {@link #writeUser(User, int, long)} does,
+     * but only takes the position of the slot's {@link TransactionJournal}
+     * once the slot is locked, on the thread that saves the user.
+     * The thread that took the user only has to note how much it had appended to the journal,
+     * without reading the journal.
+     *
+     * @param user The user to save. Must not be changed while it's being saved.
+     * @param saveSlot The save slot to save the user in.
+     * @param appendedLength How much this program had appended to the slot's journal
+     *                       when the user was taken,
+     *                       from {@link TransactionJournal#appendedLength(int)}.
+     *                       Records appended before then are compacted away after saving.
+     * @throws IOException if the user could not be saved
+     * @see SaveExecutor
+     */
+    public static synchronized void writeUserAsOf(User user, int saveSlot, long appendedLength)
+            throws IOException {
+        boolean force = shouldForce();
+        SlotSummary summary = SlotSummary.of(user, System.currentTimeMillis());
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            long journalPosition = TransactionJournal.positionAsOf(saveSlot, appendedLength);
+            writeSnapshot(user, saveSlot, journalPosition, summary, writeBuffers, false, force);
+        }
+        SaveCatalog.update(saveSlot, summary, force);
+    }
+
+    /**
+     * Writes a new snapshot of a user to a save slot, and compacts the slot's journal.
+     * Must be called with an exclusive {@link SaveLock} on the slot.
+     *
+     * @param user The user to save.
+     * @param saveSlot The save slot to save the user in.
+     * @param journalPosition The position of the slot's journal when the user was taken.
+     * @param summary The summary of the user.
+     * @param buffers The buffers to write through, not used by any other thread meanwhile.
+     * @param verify If the new save file should be loaded back & compared to the user,
+     *               before it replaces the old save file.
+     * @param force If the files written should be forced to disk.
+     * @throws IOException if the user could not be saved, or didn't load back the same
+     */
+    private static void writeSnapshot(User user, int saveSlot, long journalPosition,
+                                      SlotSummary summary, ByteBuffer[] buffers,
+                                      boolean verify, boolean force) throws IOException {
+        Path path = Paths.get(getFilepath(saveSlot));
+        Path temporaryPath = Paths.get(getFilepath(saveSlot) + TEMPORARY_EXTENSION);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        List<HistorySegment> segments = saveFormat == SaveFormat.SEGMENTS
+                ? writeSegments(user, saveSlot, force) : List.of();
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SaveWriter writer = new SaveWriter(channel, buffers);
+            if (compressed) {
+                writer.reserve(2).putShort(getVersionBits(COMPRESSED_SAVE_VERSION));
+                summary.writeTo(writer);
+                writer.flush();
+                try (BlockCompressingChannel compressedChannel =
+                             new BlockCompressingChannel(channel, saveFormat.getVersion())) {
+                    SaveWriter compressedWriter =
+                            new SaveWriter(compressedChannel, buffers);
+                    writeSaveBody(user, summary, segments, compressedWriter);
+                    compressedWriter.flush();
+                }
+            } else {
+                writer.reserve(2).putShort(getVersionBits(saveFormat.getVersion()));
+                writeSaveBody(user, summary, segments, writer);
+                writer.flush();
+            }
+            if (force) {
+                channel.force(true);
+            }
+            if (verify) {
+                verifyRoundTrip(user, temporaryPath);
+            }
+        } catch (IOException ioe) {
+            Files.deleteIfExists(temporaryPath);
+            throw ioe;
+        }
+        publishSave(saveSlot, temporaryPath, force);
+        //The new snapshot contains everything the journal did up to the position it was taken at.
+        TransactionJournal.compact(saveSlot, journalPosition);
+        //Segment files can only have become unused if the segments differ from the loaded ones.
+        Set<String> segmentFileNames = new HashSet<>();
+        segments.forEach(segment -> segmentFileNames.add(segment.getFileName()));
+        Set<String> loadedFileNames = new HashSet<>();
+        user.getTransactionHistory().getSegments()
+                .forEach(segment -> loadedFileNames.add(segment.getFileName()));
+        if (!segmentFileNames.equals(loadedFileNames)) {
+            deleteUnusedSegments(saveSlot, segments);
+        }
+    }
+
+    /**
+     * Checks that a save file loads back into the same user it was written from.
+     *
+     * @param user The user the save file was written from.
+     * @param path The save file to check.
+     * @throws IOException if the save file could not be loaded, or loaded a different user
+     */
+    private static void verifyRoundTrip(User user, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            String version = readVersion(channel);
+            if (!user.equals(new UserBytes(version, channel).makeUser())) {
+                throw new IOException("Save file does not load back into the same user");
+            }
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            throw new IOException("Save file could not be loaded back", e);
+        }
+    }
+
+    /**
+     * Migrates the save file of a save slot to the set save format,
+     * if it isn't stored in it already, without showing any dialogue if it fails.
+     * The save file is streamed in, and the slot's {@link TransactionJournal} is replayed
+     * on top of it, so the migrated save contains every change, and the journal is compacted.
+     * The new save file is loaded back & compared to the user before it replaces the old one,
+     * and the old save file is kept as the newest backup, like with any other save.
+     * The slot is held with an exclusive {@link SaveLock} while it's migrated.
+     * Can be called from any thread, and for different slots at the same time.
+     *
+     * @param saveSlot The save slot to migrate.
+     * @param buffers The buffers to write through, not used by any other thread meanwhile.
+     * @return The summary of the migrated save file,
+     *     or null if the save file was already stored in the set save format.
+     * @throws NoSuchFileException if the save file does not exist
+     * @throws IOException if the save file could not be read, written or verified
+     * @see SaveMigrator
+     */
+    static SlotSummary migrateSave(int saveSlot, ByteBuffer[] buffers) throws IOException {
+        String targetVersion = compressed ? COMPRESSED_SAVE_VERSION : saveFormat.getVersion();
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            User user;
+            try (FileChannel channel = FileChannel.open(Paths.get(getFilepath(saveSlot)),
+                    StandardOpenOption.READ)) {
+                String version = readVersion(channel);
+                //Compressed saves are only migrated if the save they compress is current.
+                if (targetVersion.equals(version) && (!compressed
+                        || saveFormat.getVersion().equals(getVersionString(TransactionIndex
+                        .readFully(channel, 2L + SlotSummary.LENGTH, 2).getShort())))) {
+                    return null;
+                }
+                user = new UserBytes(version, channel).makeUser();
+            }
+            TransactionJournal.replayJournal(user, saveSlot);
+            SlotSummary summary = SlotSummary.of(user, System.currentTimeMillis());
+            writeSnapshot(user, saveSlot, TransactionJournal.position(saveSlot), summary,
+                    buffers, true, fsyncPolicy != FsyncPolicy.NEVER);
+            return summary;
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     Migrates every save file in the save directory to the set save format at once,
+ *     instead of one at a time as users are loaded & saved again.
+ * </p><p>
+ *     Save files are migrated in parallel, one save slot per thread,
+ *     and each thread streams save files in & out through its own set of buffers,
+ *     so no save file is ever in memory as a whole, no matter how large it is.
+ *     Every migrated save file is loaded back & compared to the user before it replaces
+ *     the old save file, and the old save file is kept as the newest backup,
+ *     so a migration can be undone with {@link SaveManager#restoreBackup(int, int)}.
+ *     The {@link SaveCatalog} is written once, after every save file is migrated.
+ * </p>
+ *
+ * @see SaveManager#setSaveFormat(SaveFormat)
+ * @see SaveManager#setCompressed(boolean)
+ */
+public final class SaveMigrator {
+    private SaveMigrator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * What a migration did with each save slot.
+     */
+    public static class Report {
+        private final Map<Integer, SlotSummary> migrated;
+        private final int alreadyCurrent;
+        private final Map<Integer, Exception> failed;
+
+        private Report(Map<Integer, SlotSummary> migrated, int alreadyCurrent,
+                       Map<Integer, Exception> failed) {
+            this.migrated = Collections.unmodifiableMap(migrated);
+            this.alreadyCurrent = alreadyCurrent;
+            this.failed = Collections.unmodifiableMap(failed);
+        }
+
+        /**
+         * Gets the summary of every save file that was migrated.
+         *
+         * @return The summary of every migrated save file, by slot, in order.
+         */
+        public Map<Integer, SlotSummary> getMigrated() {
+            return migrated;
+        }
+
+        /**
+         * Gets the amount of save files that were already stored in the set save format.
+         *
+         * @return The amount of save files that didn't need migrating.
+         */
+        public int getAlreadyCurrent() {
+            return alreadyCurrent;
+        }
+
+        /**
+         * Gets every save slot that couldn't be migrated, and why.
+         * The save files of these slots are left as they were.
+         *
+         * @return What made each save slot fail, by slot, in order.
+         */
+        public Map<Integer, Exception> getFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * Migrates every save file in the save directory to the set save format,
+     * using one thread for every available processor.
+     *
+     * @return What the migration did with each save slot.
+     * @see #migrateAll(int)
+     */
+    public static Report migrateAll() {
+        return migrateAll(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Migrates every save file in the save directory to the set save format,
+     * as documented in {@link SaveManager#migrateSave(int, ByteBuffer[])}.
+     * Save slots that fail are reported, and don't stop the other slots from migrating.
+     *
+     * @param threads The amount of save files to migrate at the same time.
+     * @return What the migration did with each save slot.
+     */
+    public static Report migrateAll(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("\"threads\" must be at least 1");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "save-migrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Each thread re-uses its own buffers for every save file it writes.
+        ThreadLocal<ByteBuffer[]> buffers = ThreadLocal.withInitial(SaveWriter::makeBuffers);
+        Map<Integer, Future<SlotSummary>> migrations = new LinkedHashMap<>();
+        for (int slot : SaveCatalog.findSaveSlots()) {
+            migrations.put(slot, executor.submit(
+                    () -> SaveManager.migrateSave(slot, buffers.get())));
+        }
+        executor.shutdown();
+
+        Map<Integer, SlotSummary> migrated = new TreeMap<>();
+        int alreadyCurrent = 0;
+        Map<Integer, Exception> failed = new TreeMap<>();
+        for (Map.Entry<Integer, Future<SlotSummary>> migration : migrations.entrySet()) {
+            try {
+                SlotSummary summary = migration.getValue().get();
+                if (summary == null) {
+                    alreadyCurrent++;
+                } else {
+                    migrated.put(migration.getKey(), summary);
+                }
+            } catch (ExecutionException ee) {
+                failed.put(migration.getKey(), ee.getCause() instanceof Exception
+                        ? (Exception) ee.getCause() : ee);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                failed.put(migration.getKey(), ie);
+            }
+        }
+        if (!migrated.isEmpty()) {
+            SaveCatalog.updateAll(migrated,
+                    SaveManager.getFsyncPolicy() != FsyncPolicy.NEVER);
+        }
+        return new Report(migrated, alreadyCurrent, failed);
+    }
+}
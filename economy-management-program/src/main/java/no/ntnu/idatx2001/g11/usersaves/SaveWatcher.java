@@ -0,0 +1,121 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *     Watches the save directory on a background thread,
+ *     and tells a listener whenever the save file or journal of a save slot changes,
+ *     whether it was changed by this program or by another program using the same slot.
+ * </p><p>
+ *     The listener is called on the watcher's thread.
+ *     Changes this program made itself are reported too,
+ *     so the listener should find out what actually changed,
+ *     like {@link TransactionJournal#readChanges(int)} does.
+ *     If changes were missed, the listener is called with {@link #ANY_SLOT}.
+ * </p>
+ */
+public class SaveWatcher implements AutoCloseable {
+    /**
+     * The slot the listener is called with when changes were missed,
+     * so any save slot might have changed.
+     */
+    public static final int ANY_SLOT = -1;
+
+    private static final Pattern WATCHED_FILE_NAME = Pattern.compile(
+            Pattern.quote(SaveManager.FILE_NAME_BASE) + "(\\d{1,9})"
+                    + Pattern.quote(SaveManager.FILE_EXTENSION)
+                    + "(" + Pattern.quote(SaveManager.JOURNAL_EXTENSION) + ")?");
+
+    private final WatchService watchService;
+    private final IntConsumer listener;
+
+    /**
+     * Starts watching the save directory, creating it if it doesn't exist.
+     *
+     * @param listener Called with the save slot that changed.
+     * @throws IOException if the save directory could not be watched
+     */
+    public SaveWatcher(IntConsumer listener) throws IOException {
+        if (listener == null) {
+            throw new IllegalArgumentException("\"listener\" cannot be null");
+        }
+        this.listener = listener;
+        Path saveDirectory = Paths.get(SaveManager.SAVE_PATH);
+        Files.createDirectories(saveDirectory);
+        this.watchService = saveDirectory.getFileSystem().newWatchService();
+        try {
+            saveDirectory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ioe) {
+            watchService.close();
+            throw ioe;
+        }
+        Thread thread = new Thread(this::watch, "save-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the save slot a file in the save directory belongs to.
+     *
+     * @param fileName The name of the file.
+     * @return The save slot of the file,
+     *     or -1 if the file isn't the save file or journal of a save slot.
+     */
+    static int slotOf(String fileName) {
+        Matcher matcher = WATCHED_FILE_NAME.matcher(fileName);
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Waits for changes in the save directory, until the watcher is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        listener.accept(ANY_SLOT);
+                    } else {
+                        int slot = slotOf(((Path) event.context()).getFileName().toString());
+                        if (slot >= 0) {
+                            listener.accept(slot);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    //The save directory is gone, so there's nothing more to watch.
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException cwse) {
+            //The watcher was closed.
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops watching the save directory.
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
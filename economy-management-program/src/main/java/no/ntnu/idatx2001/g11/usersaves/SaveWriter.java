@@ -0,0 +1,125 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * <p>
+ *     Writes {@link Savable} objects to a channel through a small set of reusable buffers.
+ * </p><p>
+ *     Objects write themselves directly into the buffers handed out by {@link #reserve(int)}.
+ *     When every buffer is full, they are all written to the channel with a single gathering
+ *     write, and re-used. This way, saving never needs a copy of the entire save in memory.
+ * </p>
+ *
+ * @see Savable#writeTo(SaveWriter)
+ */
+public class SaveWriter {
+    /**
+     * The size of each buffer made by {@link #makeBuffers()}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The amount of buffers made by {@link #makeBuffers()}.
+     */
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    private final GatheringByteChannel channel;
+    private final ByteBuffer[] buffers;
+    private int currentBuffer;
+    private ByteBuffer oversizedBuffer;
+
+    /**
+     * Makes a save writer that writes through a set of caller-supplied buffers.
+     * The buffers are cleared, and can be reused by another save writer once this one is done.
+     *
+     * @param channel The channel to write to.
+     * @param buffers The buffers to write through. Can be direct buffers.
+     */
+    public SaveWriter(GatheringByteChannel channel, ByteBuffer[] buffers) {
+        if (channel == null) {
+            throw new IllegalArgumentException("\"channel\" cannot be null");
+        }
+        if (buffers == null || buffers.length == 0) {
+            throw new IllegalArgumentException("\"buffers\" cannot be null or empty");
+        }
+        this.channel = channel;
+        this.buffers = buffers;
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+        }
+        this.currentBuffer = 0;
+        this.oversizedBuffer = null;
+    }
+
+    /**
+     * Makes a set of direct buffers for a save writer, of the default size and count.
+     *
+     * @return A new set of buffers.
+     */
+    public static ByteBuffer[] makeBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[DEFAULT_BUFFER_COUNT];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+        }
+        return buffers;
+    }
+
+    /**
+     * Gets a buffer with room for a specified amount of bytes.
+     * The bytes must be put into the buffer before the next call to this method.
+     *
+     * @param length The amount of bytes to make room for.
+     * @return A buffer with at least {@code length} bytes remaining.
+     * @throws IOException if buffered bytes could not be written to the channel
+     */
+    public ByteBuffer reserve(int length) throws IOException {
+        if (oversizedBuffer != null) {
+            flush();
+        }
+        if (buffers[currentBuffer].remaining() < length) {
+            if (currentBuffer + 1 < buffers.length) {
+                currentBuffer++;
+            } else {
+                flush();
+            }
+        }
+        ByteBuffer buffer = buffers[currentBuffer];
+        if (buffer.remaining() < length) {
+            //Larger than an entire buffer, gets its own buffer.
+            flush();
+            oversizedBuffer = ByteBuffer.allocate(length);
+            buffer = oversizedBuffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes every buffered byte to the channel.
+     *
+     * @throws IOException if the bytes could not be written
+     */
+    public void flush() throws IOException {
+        int bufferCount = currentBuffer + 1;
+        long bytesToWrite = 0;
+        for (int i = 0; i < bufferCount; i++) {
+            bytesToWrite += buffers[i].flip().remaining();
+        }
+        while (bytesToWrite > 0) {
+            bytesToWrite -= channel.write(buffers, 0, bufferCount);
+        }
+        for (int i = 0; i < bufferCount; i++) {
+            buffers[i].clear();
+        }
+        currentBuffer = 0;
+        if (oversizedBuffer != null) {
+            oversizedBuffer.flip();
+            while (oversizedBuffer.hasRemaining()) {
+                channel.write(oversizedBuffer);
+            }
+            oversizedBuffer = null;
+        }
+    }
+}
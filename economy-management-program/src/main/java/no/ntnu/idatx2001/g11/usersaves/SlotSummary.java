@@ -0,0 +1,174 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import no.ntnu.idatx2001.g11.generics.Money;
+import no.ntnu.idatx2001.g11.generics.User;
+
+/**
+ * <p>
+ *     A small, fixed-size summary of a save slot, stored at the start of the save file.
+ *     This allows showing save slots without loading every save file in full.
+ * </p><p>
+ *     The summary describes the user as of the last snapshot,
+ *     changes only stored in the {@link TransactionJournal} are not included.
+ * </p>
+ */
+public class SlotSummary implements Savable {
+    /**
+     * The length of a summary, in bytes.
+     */
+    public static final int LENGTH = 96;
+
+    /**
+     * The maximum amount of bytes used to store the username in a summary.
+     * Longer usernames are cut short in the summary, but are still stored in full in the save.
+     */
+    public static final int MAX_USERNAME_LENGTH = LENGTH - 21;
+
+    private final String username;
+    private final int transactionCount;
+    private final long currentFunds;
+    private final long lastModified;
+
+    /**
+     * Makes a slot summary.
+     *
+     * @param username The username of the user in the slot.
+     * @param transactionCount The amount of transactions the user has.
+     * @param currentFunds The current funds of the user, in minor units (see {@link Money}).
+     * @param lastModified When the slot was last saved, in milliseconds since the epoch.
+     */
+    public SlotSummary(String username, int transactionCount, long currentFunds,
+                       long lastModified) {
+        if (username == null) {
+            throw new IllegalArgumentException("String \"username\" cannot be null");
+        }
+        this.username = username;
+        this.transactionCount = transactionCount;
+        this.currentFunds = currentFunds;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Makes a slot summary of a user.
+     *
+     * @param user The user to summarize.
+     * @param lastModified When the slot was last saved, in milliseconds since the epoch.
+     * @return The summary of the user.
+     */
+    public static SlotSummary of(User user, long lastModified) {
+        return new SlotSummary(
+                user.getUsername(),
+                user.getTransactionHistory().size(),
+                user.getCurrentFunds(),
+                lastModified
+        );
+    }
+
+    /**
+     * Reads a slot summary from a buffer.
+     *
+     * @param buffer The buffer to read from, with at least {@link #LENGTH} bytes remaining.
+     * @return The summary read.
+     */
+    public static SlotSummary read(ByteBuffer buffer) {
+        int transactionCount = buffer.getInt();
+        long currentFunds = Money.toMinorUnits(buffer.getDouble());
+        long lastModified = buffer.getLong();
+        byte[] usernameBytes = new byte[Math.min(buffer.get(), MAX_USERNAME_LENGTH)];
+        buffer.get(usernameBytes);
+        buffer.position(buffer.position() + MAX_USERNAME_LENGTH - usernameBytes.length);
+        return new SlotSummary(
+                new String(usernameBytes, StandardCharsets.UTF_8),
+                transactionCount,
+                currentFunds,
+                lastModified
+        );
+    }
+
+    /**
+     * Gets the username, cut short if it's too long to be stored in full.
+     *
+     * @return The username, cut short to at most {@link #MAX_USERNAME_LENGTH} bytes.
+     */
+    private String getStoredUsername() {
+        String storedUsername = username;
+        while (Utf8.length(storedUsername) > MAX_USERNAME_LENGTH) {
+            int end = storedUsername.offsetByCodePoints(storedUsername.length(), -1);
+            storedUsername = storedUsername.substring(0, end);
+        }
+        return storedUsername;
+    }
+
+    /**
+     * Gets the username of the user in the slot.
+     *
+     * @return The username of the user in the slot.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Gets the amount of transactions the user has.
+     *
+     * @return The amount of transactions the user has.
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Gets the current funds of the user, in minor units (see {@link Money}).
+     *
+     * @return The current funds of the user.
+     */
+    public long getCurrentFunds() {
+        return currentFunds;
+    }
+
+    /**
+     * Gets when the slot was last saved.
+     *
+     * @return When the slot was last saved, in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Writes the summary into a buffer.<br/><br/>
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li><b>Byte 0 - 3:</b> The amount of transactions, as an int.</li>
+     *     <li><b>Byte 4 - 11:</b> The current funds in kroner, as a double.
+     *     Every save version stores the summary the same way, and a double holds
+     *     any realistic amount of minor units exactly.</li>
+     *     <li><b>Byte 12 - 19:</b> When the slot was last saved, in milliseconds, as a long.</li>
+     *     <li><b>Byte 20:</b> The amount of bytes used to store the username.</li>
+     *     <li><b>Byte 21 - 95:</b> The username, encoded to bytes using UTF-8,
+     *     followed by zeroes until the end of the summary.</li>
+     * </ul>
+     *
+     * @param buffer The buffer to write the summary into.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        String storedUsername = getStoredUsername();
+        int usernameLength = Utf8.length(storedUsername);
+        buffer.putInt(transactionCount);
+        buffer.putDouble(Money.toUnits(currentFunds));
+        buffer.putLong(lastModified);
+        buffer.put((byte) usernameLength);
+        Utf8.write(buffer, storedUsername);
+        for (int i = usernameLength; i < MAX_USERNAME_LENGTH; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    @Override
+    public int byteLength() {
+        return LENGTH;
+    }
+}
@@ -0,0 +1,184 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+
+/**
+ * <p>
+ *     A dictionary of strings that are repeated throughout a save,
+ *     like transaction categories & names that show up again and again.
+ *     Every string in the dictionary is stored once,
+ *     and everywhere it's used only stores a reference to it.
+ * </p><p>
+ *     A string reference is stored as a varint, documented in {@link Varint}:
+ *     <ul>
+ *         <li><b>0:</b> The string is not in the dictionary,
+ *         and is stored in full right after the reference,
+ *         as a varint length followed by the string, encoded to bytes using UTF-8.</li>
+ *         <li><b>n:</b> For any other number, the string is entry {@code n - 1}
+ *         of the dictionary.</li>
+ *     </ul>
+ *     Strings stored without a dictionary, like a single transaction,
+ *     use {@link #EMPTY}, and are always stored in full.
+ * </p>
+ */
+public class StringDictionary implements Savable {
+    /**
+     * A dictionary without any strings.
+     */
+    public static final StringDictionary EMPTY = new StringDictionary(List.of());
+
+    private final List<String> strings;
+    private final Map<String, Integer> references;
+
+    private StringDictionary(List<String> strings) {
+        this.strings = strings;
+        this.references = new HashMap<>();
+        for (int i = 0; i < strings.size(); i++) {
+            references.put(strings.get(i), i + 1);
+        }
+    }
+
+    /**
+     * Makes a dictionary of every string that is used more than once.
+     * The most used strings come first, so they get the shortest references.
+     *
+     * @param usedStrings Every string used, including repeats.
+     * @return A dictionary of the repeated strings.
+     */
+    public static StringDictionary of(Iterable<String> usedStrings) {
+        Map<String, Integer> useCounts = new HashMap<>();
+        for (String string : usedStrings) {
+            useCounts.merge(string, 1, Integer::sum);
+        }
+        List<String> repeatedStrings = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : useCounts.entrySet()) {
+            if (entry.getValue() > 1) {
+                repeatedStrings.add(entry.getKey());
+            }
+        }
+        repeatedStrings.sort(Comparator
+                .comparing((String string) -> useCounts.get(string))
+                .reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return repeatedStrings.isEmpty() ? EMPTY : new StringDictionary(repeatedStrings);
+    }
+
+    /**
+     * Makes a dictionary of the strings repeated throughout a list of transactions.
+     *
+     * @param transactions The transactions to make a dictionary for.
+     * @return A dictionary of the repeated categories, names & frequency types.
+     */
+    public static StringDictionary ofTransactions(List<Transaction> transactions) {
+        List<String> usedStrings = new ArrayList<>(transactions.size() * 2);
+        for (Transaction transaction : transactions) {
+            usedStrings.add(transaction.getCategory());
+            usedStrings.add(transaction.getName());
+            if (transaction.getFrequency() != null) {
+                usedStrings.add(transaction.getFrequency().getTimeType().toString());
+            }
+        }
+        return of(usedStrings);
+    }
+
+    /**
+     * Gets the amount of bytes a reference to a string takes up,
+     * including the string itself if it's not in the dictionary.
+     *
+     * @param string The string to reference.
+     * @return The amount of bytes the reference takes up.
+     */
+    public int referenceLength(String string) {
+        Integer reference = references.get(string);
+        if (reference != null) {
+            return Varint.length(reference);
+        }
+        int stringLength = Utf8.length(string);
+        return 1 + Varint.length(stringLength) + stringLength;
+    }
+
+    /**
+     * Puts a reference to a string into a buffer,
+     * including the string itself if it's not in the dictionary.
+     *
+     * @param buffer The buffer to put the reference into.
+     *               Must have at least {@link #referenceLength(String)} bytes remaining.
+     * @param string The string to reference.
+     */
+    public void writeReference(ByteBuffer buffer, String string) {
+        Integer reference = references.get(string);
+        if (reference != null) {
+            Varint.write(buffer, reference);
+        } else {
+            buffer.put((byte) 0);
+            Varint.write(buffer, Utf8.length(string));
+            Utf8.write(buffer, string);
+        }
+    }
+
+    /**
+     * Writes the dictionary into a buffer.<br/><br/>
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li>The amount of strings in the dictionary, as a varint.</li>
+     *     <li>The length of a string, as a varint.</li>
+     *     <li>The string, encoded to bytes using UTF-8.</li>
+     * </ul>
+     * The last two are repeated for every string in the dictionary.
+     *
+     * @param buffer The buffer to write the dictionary into.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        Varint.write(buffer, strings.size());
+        for (String string : strings) {
+            Varint.write(buffer, Utf8.length(string));
+            Utf8.write(buffer, string);
+        }
+    }
+
+    /**
+     * Writes the dictionary through a save writer, one string at a time.
+     * The bytes are stored as documented in {@link #writeTo(ByteBuffer)}.
+     *
+     * @param writer The save writer to write the dictionary through.
+     * @throws IOException if the bytes could not be written
+     */
+    @Override
+    public void writeTo(SaveWriter writer) throws IOException {
+        Varint.write(writer.reserve(Varint.length(strings.size())), strings.size());
+        for (String string : strings) {
+            int stringLength = Utf8.length(string);
+            ByteBuffer buffer = writer.reserve(Varint.length(stringLength) + stringLength);
+            Varint.write(buffer, stringLength);
+            Utf8.write(buffer, string);
+        }
+    }
+
+    /**
+     * Computes the CRC32C checksum of the dictionary, as it's encoded to bytes.
+     *
+     * @return The checksum of the dictionary.
+     * @see CheckedRecords#dictionaryChecksum(List)
+     */
+    public int checksum() {
+        return CheckedRecords.dictionaryChecksum(strings);
+    }
+
+    @Override
+    public int byteLength() {
+        int length = Varint.length(strings.size());
+        for (String string : strings) {
+            int stringLength = Utf8.length(string);
+            length += Varint.length(stringLength) + stringLength;
+        }
+        return length;
+    }
+}
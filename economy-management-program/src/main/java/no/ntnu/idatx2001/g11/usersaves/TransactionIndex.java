@@ -0,0 +1,357 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import no.ntnu.idatx2001.g11.generics.Money;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+
+/**
+ * <p>
+ *     An index of the transactions stored before it, split into blocks of
+ *     {@link #BLOCK_SIZE} transactions, so any block can be found and read on its own.
+ *     The index is stored at the very end of a save, so it can be found from the end
+ *     of the file without reading anything else.
+ * </p><p>
+ *     For every block, the index stores where the block starts, how many transactions
+ *     it has, the earliest & latest purchase date in it,
+ *     and the sum of every income & expense in it.
+ *     This way, queries by date only read the blocks that can have matching transactions,
+ *     and sums never have to read any block at all.
+ * </p>
+ *
+ * @see TransactionPages
+ */
+public class TransactionIndex implements Savable {
+    /**
+     * The bytes every index ends with.
+     */
+    public static final byte[] MAGIC = {'P', 'I', 'D', 'X'};
+
+    /**
+     * The amount of transactions in each block, except the last one.
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    private static final int BLOCK_ENTRY_LENGTH = 8 + 4 + 8 + 8 + 8 + 8;
+    private static final int TRAILER_LENGTH = 4 + MAGIC.length;
+
+    private final long[] offsets;
+    private final int[] counts;
+    private final long[] firstEpochDays;
+    private final long[] lastEpochDays;
+    private final long[] incomes;
+    private final long[] expenses;
+    private final long transactionsLength;
+
+    private TransactionIndex(int blockCount, long transactionsLength) {
+        this.offsets = new long[blockCount];
+        this.counts = new int[blockCount];
+        this.firstEpochDays = new long[blockCount];
+        this.lastEpochDays = new long[blockCount];
+        this.incomes = new long[blockCount];
+        this.expenses = new long[blockCount];
+        this.transactionsLength = transactionsLength;
+    }
+
+    /**
+     * Makes an index of a list of transactions, as they're stored after each other,
+     * referencing strings in a dictionary.
+     *
+     * @param transactions The transactions to index.
+     * @param dictionary The dictionary the transactions reference strings in.
+     * @return The index of the transactions.
+     * @see Transaction#writeTo(ByteBuffer, StringDictionary)
+     */
+    public static TransactionIndex of(List<Transaction> transactions,
+                                      StringDictionary dictionary) {
+        int blockCount = (transactions.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long offset = 0;
+        long[] offsets = new long[blockCount];
+        for (int i = 0; i < transactions.size(); i++) {
+            if (i % BLOCK_SIZE == 0) {
+                offsets[i / BLOCK_SIZE] = offset;
+            }
+            offset += transactions.get(i).byteLength(dictionary);
+        }
+        TransactionIndex index = new TransactionIndex(blockCount, offset);
+        System.arraycopy(offsets, 0, index.offsets, 0, blockCount);
+        Arrays.fill(index.firstEpochDays, Long.MAX_VALUE);
+        Arrays.fill(index.lastEpochDays, Long.MIN_VALUE);
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            int block = i / BLOCK_SIZE;
+            long epochDay = transaction.getDate().toEpochDay();
+            index.counts[block]++;
+            index.firstEpochDays[block] = Math.min(index.firstEpochDays[block], epochDay);
+            index.lastEpochDays[block] = Math.max(index.lastEpochDays[block], epochDay);
+            if (transaction.isIncome()) {
+                index.incomes[block] += transaction.getAbsAmount();
+            } else {
+                index.expenses[block] += transaction.getAbsAmount();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads the index at the end of a save file, with positional reads.
+     *
+     * @param channel The channel of the save file.
+     * @param minorUnits If the sums of the blocks are stored as longs of minor units.
+     *                   Older save versions store them as doubles of kroner.
+     * @return The index of the save file.
+     * @throws IOException if the index could not be read, or is malformed
+     * @see CodecPlan#storesMinorUnits()
+     */
+    public static TransactionIndex read(FileChannel channel, boolean minorUnits)
+            throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_LENGTH) {
+            throw new EOFException("Save file has no transaction index");
+        }
+        ByteBuffer trailer = readFully(channel, size - TRAILER_LENGTH, TRAILER_LENGTH);
+        int indexLength = trailer.getInt();
+        byte[] magic = new byte[MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || indexLength < 4 + 8 + TRAILER_LENGTH
+                || indexLength > size) {
+            throw new IOException("Save file has no valid transaction index");
+        }
+        ByteBuffer buffer = readFully(channel, size - indexLength, indexLength - TRAILER_LENGTH);
+        int blockCount = buffer.getInt();
+        if (blockCount < 0 || 4 + (long) blockCount * BLOCK_ENTRY_LENGTH + 8 + TRAILER_LENGTH
+                != indexLength) {
+            throw new IOException("Save file has a malformed transaction index");
+        }
+        ByteBuffer blocks = buffer.slice(buffer.position(), blockCount * BLOCK_ENTRY_LENGTH);
+        buffer.position(buffer.position() + blockCount * BLOCK_ENTRY_LENGTH);
+        TransactionIndex index = new TransactionIndex(blockCount, buffer.getLong());
+        for (int i = 0; i < blockCount; i++) {
+            index.offsets[i] = blocks.getLong();
+            index.counts[i] = blocks.getInt();
+            index.firstEpochDays[i] = blocks.getLong();
+            index.lastEpochDays[i] = blocks.getLong();
+            if (minorUnits) {
+                index.incomes[i] = blocks.getLong();
+                index.expenses[i] = blocks.getLong();
+            } else {
+                index.incomes[i] = Money.toMinorUnits(blocks.getDouble());
+                index.expenses[i] = Money.toMinorUnits(blocks.getDouble());
+            }
+            if (index.counts[i] < 0 || index.offsets[i] < 0
+                    || index.offsets[i] > index.transactionsLength
+                    || i > 0 && index.offsets[i] < index.offsets[i - 1]) {
+                throw new IOException("Save file has a malformed transaction index");
+            }
+        }
+        if (index.transactionsLength > size - indexLength) {
+            throw new IOException("Save file has a malformed transaction index");
+        }
+        return index;
+    }
+
+    /**
+     * Reads a specified amount of bytes from a channel, with positional reads.
+     *
+     * @param channel The channel to read from.
+     * @param position Where to start reading.
+     * @param length The amount of bytes to read.
+     * @return A buffer of the bytes read.
+     * @throws IOException if the bytes could not be read
+     */
+    static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Save file ended unexpectedly");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Gets the amount of bytes used to store the index,
+     * which is skipped when a save is read from start to end.
+     *
+     * @param blockCount The amount of blocks in the index.
+     * @return The amount of bytes the index takes up, after the amount of blocks.
+     */
+    static long lengthAfterBlockCount(int blockCount) {
+        return (long) blockCount * BLOCK_ENTRY_LENGTH + 8 + TRAILER_LENGTH;
+    }
+
+    /**
+     * Gets the amount of blocks in the index.
+     *
+     * @return The amount of blocks in the index.
+     */
+    public int getBlockCount() {
+        return counts.length;
+    }
+
+    /**
+     * Gets where a block starts, counted from the start of the first block.
+     *
+     * @param block The block to get the start of.
+     * @return Where the block starts.
+     */
+    public long getOffset(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * Gets where a block ends, counted from the start of the first block.
+     *
+     * @param block The block to get the end of.
+     * @return Where the block ends, exclusive.
+     */
+    public long getEnd(int block) {
+        return block + 1 < offsets.length ? offsets[block + 1] : transactionsLength;
+    }
+
+    /**
+     * Gets the amount of transactions in a block.
+     *
+     * @param block The block to get the amount of transactions in.
+     * @return The amount of transactions in the block.
+     */
+    public int getCount(int block) {
+        return counts[block];
+    }
+
+    /**
+     * Gets the amount of bytes used to store every block.
+     *
+     * @return The amount of bytes used to store every block.
+     */
+    public long getTransactionsLength() {
+        return transactionsLength;
+    }
+
+    /**
+     * Gets the amount of transactions in every block.
+     *
+     * @return The amount of transactions in the index.
+     */
+    public int getTransactionCount() {
+        int count = 0;
+        for (int blockCount : counts) {
+            count += blockCount;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if a block can have any transaction within a date range.
+     *
+     * @param block The block to check.
+     * @param startDate The start date of the range (Inclusive).
+     * @param endDate The end date of the range (Exclusive).
+     * @return If the block overlaps the date range.
+     */
+    public boolean overlaps(int block, LocalDate startDate, LocalDate endDate) {
+        return counts[block] > 0
+                && lastEpochDays[block] >= startDate.toEpochDay()
+                && firstEpochDays[block] < endDate.toEpochDay();
+    }
+
+    /**
+     * Gets the date of the earliest transaction in every block.
+     *
+     * @return The earliest date in the index, or null if it has no transactions.
+     */
+    public LocalDate getEarliestDate() {
+        long earliestEpochDay = Long.MAX_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                earliestEpochDay = Math.min(earliestEpochDay, firstEpochDays[i]);
+            }
+        }
+        return earliestEpochDay == Long.MAX_VALUE ? null : LocalDate.ofEpochDay(earliestEpochDay);
+    }
+
+    /**
+     * Gets the date of the latest transaction in every block.
+     *
+     * @return The latest date in the index, or null if it has no transactions.
+     */
+    public LocalDate getLatestDate() {
+        long latestEpochDay = Long.MIN_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                latestEpochDay = Math.max(latestEpochDay, lastEpochDays[i]);
+            }
+        }
+        return latestEpochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(latestEpochDay);
+    }
+
+    /**
+     * Gets the sum of every income in every block, in minor units (see {@link Money}).
+     *
+     * @return The sum of every income in the index.
+     */
+    public long getIncome() {
+        return sum(incomes);
+    }
+
+    /**
+     * Gets the sum of every expense in every block, in minor units (see {@link Money}).
+     *
+     * @return The sum of every expense in the index.
+     */
+    public long getExpenses() {
+        return sum(expenses);
+    }
+
+    private static long sum(long[] amounts) {
+        long sum = 0;
+        for (long amount : amounts) {
+            sum += amount;
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the index into a buffer.<br/><br/>
+     * The bytes are stored as follows:<br/>
+     * <ul>
+     *     <li><b>Byte 0 - 3:</b> The amount of blocks, as an int.</li>
+     *     <li>For every block, 44 bytes: Where the block starts,
+     *     counted from the start of the first block, as a long,
+     *     the amount of transactions in the block, as an int,
+     *     the earliest & latest purchase date in the block, as longs of days since 1970-01-01,
+     *     and the sum of every income & expense in the block, as longs of minor units.</li>
+     *     <li>The amount of bytes used to store every block, as a long.</li>
+     *     <li>The amount of bytes used to store the entire index, as an int.</li>
+     *     <li>{@link #MAGIC}.</li>
+     * </ul>
+     *
+     * @param buffer The buffer to write the index into.
+     */
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            buffer.putLong(offsets[i]);
+            buffer.putInt(counts[i]);
+            buffer.putLong(firstEpochDays[i]);
+            buffer.putLong(lastEpochDays[i]);
+            buffer.putLong(incomes[i]);
+            buffer.putLong(expenses[i]);
+        }
+        buffer.putLong(transactionsLength);
+        buffer.putInt(byteLength());
+        buffer.put(MAGIC);
+    }
+
+    @Override
+    public int byteLength() {
+        return 4 + (int) lengthAfterBlockCount(counts.length);
+    }
+}
@@ -0,0 +1,880 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import no.ntnu.idatx2001.g11.controllers.ui.ExceptionCommunicator;
+import no.ntnu.idatx2001.g11.exceptions.TransactionNotFoundException;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.User;
+
+/**
+ * <p>
+ *     An append-only log of transaction changes, stored next to a save file.
+ *     Instead of rewriting the entire save file for every change,
+ *     small records are appended to the journal.
+ *     Saving a user through {@link SaveManager#saveUser(User, int)} writes a new snapshot,
+ *     and compacts the journal back to an empty state.
+ *     When loading, the journal is replayed on top of the snapshot.
+ * </p><p>
+ *     Snapshots may be written on another thread, while new records keep being appended.
+ *     A snapshot therefore remembers the {@link #position(int)} of the journal
+ *     at the time it was taken, and compacting only drops the records before that position.
+ *     A snapshot written in the background only notes {@link #appendedLength(int)}
+ *     when it's taken, which is kept in memory, and the position is worked out from it
+ *     by {@link #positionAsOf(int, long)} once the snapshot is written.
+ *     Every method synchronizes on the journal, so records are never appended while compacting.
+ *     Reading & writing the journal also holds a {@link SaveLock#file(Path)} on the journal,
+ *     so other programs using the same slot never see half of a change.
+ *     Appending only holds the journal, and not the slot,
+ *     so a record is appended straight away even while a snapshot of the slot is written.
+ *     Replaying holds the slot, so it never replays a journal onto a snapshot being replaced.
+ * </p><p>
+ *     Other programs can append records to the journal of a slot while it's loaded here.
+ *     {@link #readChanges(int)} reads only the records that are new since the slot
+ *     was loaded, so the loaded user catches up without being loaded again.
+ *     The records are read & decoded on the thread that noticed the change,
+ *     and only applied to the user through {@link #applyChanges(JournalChanges, User)},
+ *     on the thread the user is used on.
+ * </p><p>
+ *     The journal is stored as follows:
+ *     <ul>
+ *         <li><b>Byte 0 - 1:</b> The save version of the records,
+ *         stored like the version of a save file.</li>
+ *         <li><b>Byte 2 - 9:</b> The size of the snapshot the journal applies to, as a long.</li>
+ *         <li><b>Byte 10 - 17:</b> The last modified time of the snapshot the journal applies to,
+ *         in milliseconds, as a long.</li>
+ *         <li><b>Byte 18 - {@code n}:</b> Any number of records.</li>
+ *     </ul>
+ *     Each record is stored as follows:
+ *     <ul>
+ *         <li><b>Byte 0:</b> The type of the record, either {@link #RECORD_ADD},
+ *         {@link #RECORD_REMOVE} or {@link #RECORD_RENAME}.</li>
+ *         <li><b>Byte 1 - 4:</b> The length of the transaction, as an int.</li>
+ *         <li><b>Byte 5 - {@code n}:</b> The transaction,
+ *         encoded to bytes as documented in {@link Transaction#writeTo(ByteBuffer)}.
+ *         A rename stores the names of the category instead of a transaction.</li>
+ *     </ul>
+ * </p><p>
+ *     If the snapshot doesn't match the one stored in the journal's header,
+ *     the journal is stale (the snapshot was written after the journal),
+ *     and it will not be replayed.
+ *     A journal of an older save version is rewritten in the current save version
+ *     when it's replayed, or before a record is appended to it.
+ * </p>
+ */
+public class TransactionJournal {
+    /**
+     * Record type for a transaction that was added.
+     */
+    public static final byte RECORD_ADD = 1;
+
+    /**
+     * Record type for a transaction that was removed.
+     */
+    public static final byte RECORD_REMOVE = 2;
+
+    /**
+     * Record type for a category that was renamed.
+     * Instead of a transaction, the record stores the name the category had,
+     * followed by its new name, each as a varint length followed by the name in UTF-8.
+     */
+    public static final byte RECORD_RENAME = 3;
+
+    private static final int HEADER_LENGTH = 18;
+    private static final int RECORD_HEADER_LENGTH = 5;
+
+    // Bytes of records compacted away from each journal, so positions keep counting up
+    private static final Map<Integer, Long> compactedLengths = new HashMap<>();
+
+    // Bytes of records this program appended to each journal, read without the journal's lock
+    private static final Map<Integer, Long> appendedLengths = new ConcurrentHashMap<>();
+
+    // How far into each journal the records are known, for the user loaded from the slot
+    private static final Map<Integer, JournalCursor> cursors = new HashMap<>();
+
+    // Singletons
+    private static ExceptionCommunicator exceptionCommunicator = ExceptionCommunicator.getInstance();
+
+    /**
+     * How far into the journal of a save slot the records are known to this program,
+     * and which snapshot the journal was bound to when they were read.
+     * Records this program appended after records it hasn't read yet
+     * are remembered, so they aren't replayed again when the records before them are.
+     * A cursor follows the journal through compaction,
+     * and is only replaced when a user is loaded from the slot again.
+     * A user loaded in the background isn't used straight away,
+     * so until it is, records are left unread for it, even the ones this program appends,
+     * since they're appended for the user that's still used.
+     */
+    private static class JournalCursor {
+        private long snapshotSize;
+        private long snapshotLastModified;
+        private long offset;
+        private final Set<Long> ownRecords = new HashSet<>();
+        // The user the journal was replayed onto, null if not replayed by this program
+        private final User user;
+        private boolean used;
+        private boolean changedBeforeUse = false;
+
+        private JournalCursor(ByteBuffer header, long offset, User user, boolean used) {
+            bindTo(header);
+            this.offset = offset;
+            this.user = user;
+            this.used = used;
+        }
+
+        private void bindTo(ByteBuffer header) {
+            this.snapshotSize = header.getLong(2);
+            this.snapshotLastModified = header.getLong(10);
+        }
+
+        private boolean isBoundTo(ByteBuffer header) {
+            return header.getLong(2) == snapshotSize && header.getLong(10) == snapshotLastModified;
+        }
+    }
+
+    /**
+     * Records another program appended to the journal of a save slot,
+     * read & decoded by {@link #readChanges(int)}, but not applied to the user yet.
+     */
+    public static final class JournalChanges {
+        private final int saveSlot;
+        // The cursor the records were read through, null if the user has to be loaded again
+        private final JournalCursor cursor;
+        private final List<Byte> recordTypes = new ArrayList<>();
+        //The transaction of every record, null for renames
+        private final List<Transaction> transactions = new ArrayList<>();
+        //The names of the category of every rename, null for other records
+        private final List<String[]> categoryNames = new ArrayList<>();
+
+        private JournalChanges(int saveSlot, JournalCursor cursor) {
+            this.saveSlot = saveSlot;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Gets the save slot of the journal the records were read from.
+         *
+         * @return The save slot of the journal.
+         */
+        public int getSaveSlot() {
+            return saveSlot;
+        }
+
+        /**
+         * Checks if the slot was saved or restored by another program,
+         * so the user has to be loaded from the slot again, instead of applying records.
+         *
+         * @return If the user has to be loaded from the slot again.
+         */
+        public boolean isReloadNeeded() {
+            return cursor == null;
+        }
+    }
+
+    private TransactionJournal() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static Path getJournalPath(int saveSlot) {
+        return Paths.get(SaveManager.getJournalFilepath(saveSlot));
+    }
+
+    /**
+     * Locks the journal of a save slot for other programs, while it's read or written.
+     * Only called while synchronized on the journal,
+     * so the lock is only ever waited for by other programs.
+     *
+     * @param saveSlot The save slot of the journal.
+     * @return The lock, which is released when closed.
+     * @throws IOException if the journal could not be locked
+     */
+    private static SaveLock lockJournal(int saveSlot) throws IOException {
+        return SaveLock.file(getJournalPath(saveSlot));
+    }
+
+    /**
+     * Makes a journal header that binds the journal to the current snapshot of a save slot.
+     * If the slot has no snapshot yet, because its first snapshot is still being written,
+     * the header binds the journal to no snapshot, until the journal is compacted.
+     *
+     * @param saveSlot The save slot to make the header for.
+     * @return The header, ready to be written.
+     * @throws IOException if the snapshot could not be read
+     */
+    private static ByteBuffer makeHeader(int saveSlot) throws IOException {
+        long snapshotSize = -1;
+        long snapshotLastModified = -1;
+        try {
+            BasicFileAttributes snapshotAttributes = Files.readAttributes(
+                    Paths.get(SaveManager.getFilepath(saveSlot)), BasicFileAttributes.class);
+            snapshotSize = snapshotAttributes.size();
+            snapshotLastModified = snapshotAttributes.lastModifiedTime().toMillis();
+        } catch (NoSuchFileException nsfe) {
+            //Bound to no snapshot, which never matches a snapshot that's written later.
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH)
+                .putShort(SaveManager.getVersionBits(SaveManager.SAVE_VERSION))
+                .putLong(snapshotSize)
+                .putLong(snapshotLastModified)
+                .flip();
+    }
+
+    /**
+     * Checks if a journal header belongs to the current snapshot of a save slot.
+     *
+     * @param header The journal header.
+     * @param saveSlot The save slot to check the header against.
+     * @return If the journal belongs to the current snapshot.
+     * @throws IOException if the snapshot could not be read
+     */
+    private static boolean isCurrent(ByteBuffer header, int saveSlot) throws IOException {
+        ByteBuffer currentHeader = makeHeader(saveSlot);
+        return header.getLong(2) == currentHeader.getLong(2)
+                && header.getLong(10) == currentHeader.getLong(10);
+    }
+
+    /**
+     * Gets the current position of the end of the journal of a save slot.
+     * Positions keep counting up as records are compacted away,
+     * so a position taken before compacting still points to the same record afterwards.
+     *
+     * @param saveSlot The save slot to get the journal position for.
+     * @return The position right after the last record in the journal.
+     */
+    public static synchronized long position(int saveSlot) {
+        long compactedLength = compactedLengths.getOrDefault(saveSlot, 0L);
+        try {
+            long journalLength = Files.size(getJournalPath(saveSlot));
+            return compactedLength + Math.max(0, journalLength - HEADER_LENGTH);
+        } catch (IOException ioe) {
+            return compactedLength;
+        }
+    }
+
+    /**
+     * Gets how many bytes of records this program has appended to the journal of a save slot.
+     * Only read from memory, without waiting for the journal,
+     * so it can be noted whenever a user is taken to be saved.
+     *
+     * @param saveSlot The save slot to get the appended length for.
+     * @return The length of every record this program appended to the journal.
+     * @see #positionAsOf(int, long)
+     */
+    public static long appendedLength(int saveSlot) {
+        return appendedLengths.getOrDefault(saveSlot, 0L);
+    }
+
+    /**
+     * Gets the position the journal of a save slot was at,
+     * when this program had appended a length of records to it.
+     * Records this program appended since then are at the end of the journal,
+     * so the position is found by taking their length away from the current position.
+     * Should be called with a {@link SaveLock} on the slot,
+     * so the journal isn't compacted by a snapshot of another program in the meantime.
+     *
+     * @param saveSlot The save slot to get the journal position for.
+     * @param appendedLength The length from {@link #appendedLength(int)}.
+     * @return The position right after the last record appended before the length was noted.
+     */
+    public static synchronized long positionAsOf(int saveSlot, long appendedLength) {
+        long appendedSince = appendedLength(saveSlot) - appendedLength;
+        return Math.max(compactedLengths.getOrDefault(saveSlot, 0L),
+                position(saveSlot) - appendedSince);
+    }
+
+    /**
+     * Empties the journal of a save slot, binding it to the slot's current snapshot.
+     *
+     * @param saveSlot The save slot to reset the journal for.
+     * @throws IOException if the journal could not be written
+     */
+    static synchronized void reset(int saveSlot) throws IOException {
+        compact(saveSlot, position(saveSlot));
+    }
+
+    /**
+     * Drops every record before a position from the journal of a save slot,
+     * and binds the journal to the slot's current snapshot.
+     * Called whenever a new snapshot is written, with the position the snapshot was taken at.
+     * Records appended after the snapshot was taken are kept.<br/><br/>
+     * The compacted journal is written to a temporary file first,
+     * and then moved in place of the old journal, so a failed compaction loses no records.
+     * It's only forced to disk if the fsync policy is {@link FsyncPolicy#ALWAYS},
+     * since records appended to the journal aren't forced to disk either.
+     *
+     * @param saveSlot The save slot to compact the journal for.
+     * @param position The position of the journal when the snapshot was taken,
+     *                 from {@link #position(int)}.
+     * @throws IOException if the journal could not be written
+     */
+    static synchronized void compact(int saveSlot, long position) throws IOException {
+        Path journalPath = getJournalPath(saveSlot);
+        long compactedLength = compactedLengths.getOrDefault(saveSlot, 0L);
+        ByteBuffer keptRecords = ByteBuffer.allocate(0);
+        long droppedLength = 0;
+        ByteBuffer header;
+        long keptLength;
+        Files.createDirectories(journalPath.getParent());
+        try (SaveLock lock = lockJournal(saveSlot)) {
+            if (Files.exists(journalPath)) {
+                byte[] journal = Files.readAllBytes(journalPath);
+                int keptFrom = (int) Math.min(journal.length,
+                        Math.max(HEADER_LENGTH, HEADER_LENGTH + position - compactedLength));
+                keptRecords = ByteBuffer.wrap(journal, keptFrom, journal.length - keptFrom);
+                droppedLength = Math.max(0, keptFrom - HEADER_LENGTH);
+                compactedLength += droppedLength;
+            }
+            header = makeHeader(saveSlot);
+            keptLength = keptRecords.remaining();
+            Path temporaryPath = Paths.get(journalPath + SaveManager.TEMPORARY_EXTENSION);
+            boolean force = SaveManager.getFsyncPolicy() == FsyncPolicy.ALWAYS;
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer[] journal = {header.duplicate(), keptRecords};
+                while (journal[0].hasRemaining() || journal[1].hasRemaining()) {
+                    channel.write(journal);
+                }
+                if (force) {
+                    channel.force(true);
+                }
+            }
+            SaveManager.moveAtomically(temporaryPath, journalPath, force);
+        }
+        compactedLengths.put(saveSlot, compactedLength);
+        JournalCursor cursor = cursors.get(saveSlot);
+        if (cursor != null && !cursor.used && HEADER_LENGTH + droppedLength > cursor.offset) {
+            //Records it never read went into the snapshot, so its user has to be loaded again.
+            cursors.remove(saveSlot);
+            return;
+        }
+        if (cursor == null) {
+            cursors.put(saveSlot,
+                    new JournalCursor(header, HEADER_LENGTH + keptLength, null, true));
+            return;
+        }
+        //Records kept by compacting move to the start of the journal, and so do the known ones.
+        cursor.bindTo(header);
+        cursor.offset = Math.max(HEADER_LENGTH, cursor.offset - droppedLength);
+        Set<Long> ownRecords = new HashSet<>();
+        for (long ownRecord : cursor.ownRecords) {
+            if (ownRecord - droppedLength >= HEADER_LENGTH) {
+                ownRecords.add(ownRecord - droppedLength);
+            }
+        }
+        cursor.ownRecords.clear();
+        cursor.ownRecords.addAll(ownRecords);
+    }
+
+    /**
+     * Appends a record to the journal of a save slot,
+     * holding a {@link SaveLock#file(Path)} on the journal while appending.
+     * The save slot isn't held, so appending never waits for a snapshot to be written.
+     * Records appended while a snapshot is written come after the position it was taken at,
+     * so compacting the journal afterwards keeps them.
+     * Records appended while a user loaded from the slot isn't used yet are left unread for it.
+     *
+     * @param recordType The type of the record.
+     * @param transaction The transaction the record is for.
+     * @param saveSlot The save slot to append the record to.
+     */
+    private static void append(byte recordType, Transaction transaction, int saveSlot) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("\"transaction\" cannot be null");
+        }
+        int transactionLength = transaction.byteLength();
+        ByteBuffer record = ByteBuffer
+                .allocate(RECORD_HEADER_LENGTH + transactionLength)
+                .put(recordType)
+                .putInt(transactionLength);
+        transaction.writeTo(record);
+        appendRecord(record.flip(), saveSlot);
+    }
+
+    /**
+     * Appends an encoded record to the journal of a save slot,
+     * as documented in {@link #append(byte, Transaction, int)}.
+     *
+     * @param record The record, with its header.
+     * @param saveSlot The save slot to append the record to.
+     */
+    private static void appendRecord(ByteBuffer record, int saveSlot) {
+        synchronized (TransactionJournal.class) {
+            try (SaveLock lock = lockJournal(saveSlot)) {
+                if (!Files.exists(getJournalPath(saveSlot))) {
+                    reset(saveSlot);
+                } else if (!cursors.containsKey(saveSlot)) {
+                    //Never replayed here, so its records may be of an older version.
+                    ByteBuffer journal = ByteBuffer.wrap(
+                            Files.readAllBytes(getJournalPath(saveSlot)));
+                    if (journal.remaining() >= HEADER_LENGTH) {
+                        upgrade(journal, saveSlot);
+                    }
+                }
+                try (FileChannel channel = FileChannel.open(getJournalPath(saveSlot),
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    long recordStart = channel.size();
+                    channel.write(record);
+                    appendedLengths.merge(saveSlot, (long) record.limit(), Long::sum);
+                    JournalCursor cursor = cursors.get(saveSlot);
+                    if (cursor != null && !cursor.used) {
+                        //Appended for the user still used, which the loaded user replaces.
+                        cursor.changedBeforeUse = true;
+                    } else if (cursor != null && cursor.offset == recordStart) {
+                        cursor.offset = recordStart + record.limit();
+                    } else if (cursor != null) {
+                        //Records from another program come first, and haven't been read yet.
+                        cursor.ownRecords.add(recordStart);
+                    }
+                }
+            } catch (IOException ioe) {
+                exceptionCommunicator.throwErrorDialogue(
+                    "Error saving user",
+                    "The program failed to save your latest change."
+                );
+            }
+        }
+    }
+
+    /**
+     * Records that a transaction was added to the user of a save slot.
+     *
+     * @param transaction The transaction that was added.
+     * @param saveSlot The save slot of the user.
+     */
+    public static void appendAddition(Transaction transaction, int saveSlot) {
+        append(RECORD_ADD, transaction, saveSlot);
+    }
+
+    /**
+     * Records that a transaction was removed from the user of a save slot.
+     *
+     * @param transaction The transaction that was removed.
+     * @param saveSlot The save slot of the user.
+     */
+    public static void appendRemoval(Transaction transaction, int saveSlot) {
+        append(RECORD_REMOVE, transaction, saveSlot);
+    }
+
+    /**
+     * Records that a category of the user of a save slot was renamed,
+     * so the rename is kept without loading or saving every transaction of the category.
+     *
+     * @param name The name the category had.
+     * @param newName The new name of the category.
+     * @param saveSlot The save slot of the user.
+     * @see no.ntnu.idatx2001.g11.generics.TransactionHistory#renameCategory(String, String)
+     */
+    public static void appendRename(String name, String newName, int saveSlot) {
+        if (name == null || newName == null) {
+            throw new IllegalArgumentException("\"name\" and \"newName\" cannot be null");
+        }
+        int nameLength = Utf8.length(name);
+        int newNameLength = Utf8.length(newName);
+        int namesLength = Varint.length(nameLength) + nameLength
+                + Varint.length(newNameLength) + newNameLength;
+        ByteBuffer record = ByteBuffer
+                .allocate(RECORD_HEADER_LENGTH + namesLength)
+                .put(RECORD_RENAME)
+                .putInt(namesLength);
+        Varint.write(record, nameLength);
+        Utf8.write(record, name);
+        Varint.write(record, newNameLength);
+        Utf8.write(record, newName);
+        appendRecord(record.flip(), saveSlot);
+    }
+
+    /**
+     * Reads the names of the category of a rename record.
+     *
+     * @param names The names, as stored in the record.
+     * @return The name the category had, followed by its new name.
+     * @throws IOException if the names are malformed
+     */
+    private static String[] readCategoryNames(ByteBuffer names) throws IOException {
+        String[] categoryNames = new String[2];
+        try {
+            for (int i = 0; i < categoryNames.length; i++) {
+                long nameLength = Varint.read(names);
+                if (nameLength < 0 || nameLength > names.remaining()) {
+                    throw new IOException("Journal contains a malformed rename");
+                }
+                byte[] nameBytes = new byte[(int) nameLength];
+                names.get(nameBytes);
+                categoryNames[i] = new String(nameBytes, StandardCharsets.UTF_8);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Journal contains a malformed rename", e);
+        }
+        return categoryNames;
+    }
+
+    /**
+     * Replays the journal of a save slot on top of a user loaded from the slot's snapshot.
+     * A stale journal is reset instead of replayed.
+     * An incomplete record at the end of the journal (from an interrupted write) is ignored.
+     * The slot is held with an exclusive {@link SaveLock} while replaying,
+     * since a stale journal is reset.
+     *
+     * @param user The user loaded from the save slot's snapshot.
+     * @param saveSlot The save slot to replay the journal for.
+     * @return The amount of records replayed.
+     */
+    public static int replay(User user, int saveSlot) {
+        try {
+            return replayJournal(user, saveSlot);
+        } catch (IOException ioe) {
+            exceptionCommunicator.throwErrorDialogue(
+                "Failed to load",
+                "Failed to load the user's latest changes.");
+            return 0;
+        }
+    }
+
+    /**
+     * Replays the journal of a save slot on top of a user loaded from the slot's snapshot,
+     * as documented in {@link #replay(User, int)}, without showing any dialogue if it fails.
+     *
+     * @param user The user loaded from the save slot's snapshot.
+     * @param saveSlot The save slot to replay the journal for.
+     * @return The amount of records replayed.
+     * @throws IOException if the journal could not be read, or reset
+     */
+    static int replayJournal(User user, int saveSlot) throws IOException {
+        return replayJournal(user, saveSlot, true);
+    }
+
+    /**
+     * Replays the journal of a save slot on top of a user loaded from the slot's snapshot,
+     * holding the slot & the journal.
+     *
+     * @param user The user loaded from the save slot's snapshot.
+     * @param saveSlot The save slot to replay the journal for.
+     * @param used If the user is used as the slot's user straight away,
+     *     instead of through {@link #use(User, int)}.
+     * @return The amount of records replayed.
+     * @throws IOException if the journal could not be read, or reset
+     */
+    private static int replayJournal(User user, int saveSlot, boolean used)
+            throws IOException {
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            synchronized (TransactionJournal.class) {
+                try (SaveLock journalLock = lockJournal(saveSlot)) {
+                    return replayLocked(user, saveSlot, used);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the journal of a save slot on top of a user loaded from the slot's snapshot,
+     * as documented in {@link #replay(User, int)}, without showing any dialogue if it fails.
+     * The user may be loaded without holding the slot,
+     * since the journal is only replayed if the slot still has the snapshot it was loaded from.
+     * Only replaying holds the slot with an exclusive {@link SaveLock}.
+     * The user may be replayed on another thread than the one it's used on,
+     * so it's only used as the slot's user once {@link #use(User, int)} is called.
+     *
+     * @param user The user loaded from the save slot's snapshot.
+     * @param saveSlot The save slot to replay the journal for.
+     * @param loadedFrom The save data the user was loaded from,
+     *     through {@link SaveManager#readUserBytes(int, boolean)}.
+     * @return The amount of records replayed, or -1 if the slot was saved since
+     *     the user was loaded, so the user has to be loaded from the slot again.
+     * @throws IOException if the journal could not be read, or reset
+     */
+    public static int replayJournal(User user, int saveSlot, UserBytes loadedFrom)
+            throws IOException {
+        try (SaveLock lock = SaveLock.exclusive(saveSlot)) {
+            ByteBuffer snapshot = makeHeader(saveSlot);
+            if (snapshot.getLong(2) != loadedFrom.getSnapshotSize()
+                    || snapshot.getLong(10) != loadedFrom.getSnapshotLastModified()) {
+                return -1;
+            }
+            return replayJournal(user, saveSlot, false);
+        }
+    }
+
+    /**
+     * Replays the journal of a save slot on top of a user loaded from the slot's snapshot,
+     * while the slot & the journal are held.
+     *
+     * @param user The user loaded from the save slot's snapshot.
+     * @param saveSlot The save slot to replay the journal for.
+     * @param used If the user is used as the slot's user straight away.
+     * @return The amount of records replayed.
+     * @throws IOException if the journal could not be read, or reset
+     */
+    private static int replayLocked(User user, int saveSlot, boolean used)
+            throws IOException {
+        //Whatever was known about the journal was for the user loaded before.
+        cursors.remove(saveSlot);
+        ByteBuffer journal;
+        try {
+            journal = ByteBuffer.wrap(Files.readAllBytes(getJournalPath(saveSlot)));
+        } catch (NoSuchFileException nsfe) {
+            //No journal means there's nothing to replay, until a record is appended.
+            cursors.put(saveSlot,
+                    new JournalCursor(makeHeader(saveSlot), HEADER_LENGTH, user, used));
+            return 0;
+        }
+        if (journal.remaining() < HEADER_LENGTH || !isCurrent(journal, saveSlot)) {
+            reset(saveSlot);
+            cursors.put(saveSlot,
+                    new JournalCursor(makeHeader(saveSlot), HEADER_LENGTH, user, used));
+            return 0;
+        }
+        journal = upgrade(journal, saveSlot);
+        JournalCursor cursor = new JournalCursor(journal, HEADER_LENGTH, user, used);
+        int replayedRecords = apply(readFrom(journal, cursor, saveSlot), user);
+        cursors.put(saveSlot, cursor);
+        return replayedRecords;
+    }
+
+    /**
+     * Starts using a user replayed through {@link #replayJournal(User, int, UserBytes)}
+     * as the user of its save slot.
+     * Until then, records appended to the journal are left unread for the user,
+     * since they were appended for the user used before, which the replayed user doesn't have.
+     * Called on the thread the user is used on, when it replaces the user used before.
+     *
+     * @param user The user replayed from the save slot.
+     * @param saveSlot The save slot the user was replayed from.
+     * @return -1 if another user was replayed from the save slot since, so the user is outdated.
+     *     1 if the journal changed after the user was replayed,
+     *     so the changes have to be read through {@link #readChanges(int)}, otherwise 0.
+     */
+    public static synchronized int use(User user, int saveSlot) {
+        JournalCursor cursor = cursors.get(saveSlot);
+        if (cursor == null || cursor.user != user) {
+            return -1;
+        }
+        cursor.used = true;
+        boolean changed = cursor.changedBeforeUse;
+        cursor.changedBeforeUse = false;
+        return changed ? 1 : 0;
+    }
+
+    /**
+     * Reads the records another program appended to the journal of a save slot,
+     * since the user was loaded from the slot or its changes were last read.
+     * Only the records that haven't been read yet are read,
+     * so the user is never loaded again just to see a few new records.
+     * The records are decoded here, but not applied to the user,
+     * so the journal is never read on the thread the user is used on.
+     * The slot is held with a shared {@link SaveLock} while the journal is read.
+     * Records are left unread for a user that isn't used yet, see {@link #use(User, int)}.
+     *
+     * @param saveSlot The save slot of the user, loaded through {@link #replay(User, int)}.
+     * @return The records read, to apply through {@link #applyChanges(JournalChanges, User)}.
+     *     If the slot was saved or restored by another program since,
+     *     the user has to be loaded from the slot again instead.
+     * @throws IOException if the journal could not be read
+     */
+    public static JournalChanges readChanges(int saveSlot) throws IOException {
+        try (SaveLock lock = SaveLock.shared(saveSlot)) {
+            synchronized (TransactionJournal.class) {
+                JournalCursor cursor = cursors.get(saveSlot);
+                if (cursor == null) {
+                    return new JournalChanges(saveSlot, null);
+                }
+                if (!cursor.used) {
+                    cursor.changedBeforeUse = true;
+                    return new JournalChanges(saveSlot, cursor);
+                }
+                ByteBuffer journal;
+                try (SaveLock journalLock = lockJournal(saveSlot)) {
+                    journal = ByteBuffer.wrap(Files.readAllBytes(getJournalPath(saveSlot)));
+                } catch (NoSuchFileException nsfe) {
+                    return new JournalChanges(saveSlot,
+                            cursor.isBoundTo(makeHeader(saveSlot)) ? cursor : null);
+                }
+                if (journal.remaining() < HEADER_LENGTH || !cursor.isBoundTo(journal)
+                        || !isCurrent(journal, saveSlot)) {
+                    return new JournalChanges(saveSlot, null);
+                }
+                return readFrom(journal, cursor, saveSlot);
+            }
+        }
+    }
+
+    /**
+     * Applies records read by {@link #readChanges(int)} to the user of their save slot.
+     * Records read before the user was loaded from the slot again are already in the user,
+     * so they're not applied again.
+     *
+     * @param changes The records to apply.
+     * @param user The user loaded from the save slot of the records.
+     * @return The amount of records applied, or -1 if the user has to be loaded again.
+     */
+    public static synchronized int applyChanges(JournalChanges changes, User user) {
+        if (changes.isReloadNeeded()) {
+            return -1;
+        }
+        if (cursors.get(changes.getSaveSlot()) != changes.cursor) {
+            return 0;
+        }
+        return apply(changes, user);
+    }
+
+    /**
+     * Rewrites a journal of an older save version, so every record is stored the way
+     * the current save version stores transactions, and new records can be appended to it.
+     * The journal stays bound to the same snapshot, and positions taken before the journal was
+     * rewritten still point to the end of the same records afterwards.
+     * An incomplete record at the end of the journal is dropped.
+     *
+     * @param journal The whole journal, with its header.
+     * @param saveSlot The save slot of the journal.
+     * @return The journal, rewritten if it was of an older save version.
+     * @throws IOException if a record could not be read, or the journal could not be written
+     */
+    private static ByteBuffer upgrade(ByteBuffer journal, int saveSlot) throws IOException {
+        short versionBits = SaveManager.getVersionBits(SaveManager.SAVE_VERSION);
+        if (journal.getShort(0) == versionBits) {
+            return journal;
+        }
+        String version = SaveManager.getVersionString(journal.getShort(0));
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        journal.position(HEADER_LENGTH);
+        while (journal.remaining() >= RECORD_HEADER_LENGTH) {
+            byte recordType = journal.get();
+            int transactionLength = journal.getInt();
+            if (transactionLength < 0 || journal.remaining() < transactionLength) {
+                break;
+            }
+            if (recordType == RECORD_RENAME) {
+                //Names are stored the same way by every version.
+                records.write(journal.array(), journal.position() - RECORD_HEADER_LENGTH,
+                        RECORD_HEADER_LENGTH + transactionLength);
+                journal.position(journal.position() + transactionLength);
+                continue;
+            }
+            Transaction transaction = GetMethods.getTransaction(
+                    journal.slice(journal.position(), transactionLength), version);
+            journal.position(journal.position() + transactionLength);
+            ByteBuffer record = ByteBuffer
+                    .allocate(RECORD_HEADER_LENGTH + transaction.byteLength())
+                    .put(recordType)
+                    .putInt(transaction.byteLength());
+            transaction.writeTo(record);
+            records.write(record.array());
+        }
+        ByteBuffer upgraded = ByteBuffer.allocate(HEADER_LENGTH + records.size())
+                .putShort(versionBits)
+                .put(journal.slice(2, HEADER_LENGTH - 2))
+                .put(records.toByteArray())
+                .flip();
+
+        Path journalPath = getJournalPath(saveSlot);
+        Path temporaryPath = Paths.get(journalPath + SaveManager.TEMPORARY_EXTENSION);
+        boolean force = SaveManager.getFsyncPolicy() == FsyncPolicy.ALWAYS;
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (upgraded.hasRemaining()) {
+                channel.write(upgraded);
+            }
+            if (force) {
+                channel.force(true);
+            }
+        }
+        SaveManager.moveAtomically(temporaryPath, journalPath, force);
+        compactedLengths.merge(saveSlot, (long) journal.limit() - upgraded.limit(), Long::sum);
+        //Offsets into the old records no longer point to records.
+        cursors.remove(saveSlot);
+        return upgraded.rewind();
+    }
+
+    /**
+     * Reads the records of a journal from a cursor, moving the cursor past them.
+     * Records appended by this program are skipped, since the user already has them.
+     *
+     * @param journal The whole journal, with its header.
+     * @param cursor Where to start reading.
+     * @param saveSlot The save slot of the journal.
+     * @return The records read.
+     * @throws IOException if a record could not be read
+     */
+    private static JournalChanges readFrom(ByteBuffer journal, JournalCursor cursor,
+            int saveSlot) throws IOException {
+        JournalChanges changes = new JournalChanges(saveSlot, cursor);
+        String version = SaveManager.getVersionString(journal.getShort(0));
+        journal.position((int) Math.min(journal.limit(), cursor.offset));
+        while (journal.remaining() >= RECORD_HEADER_LENGTH) {
+            long recordStart = journal.position();
+            byte recordType = journal.get();
+            int transactionLength = journal.getInt();
+            if (transactionLength < 0 || journal.remaining() < transactionLength) {
+                break;
+            }
+            ByteBuffer transactionBytes = journal.slice(journal.position(), transactionLength);
+            journal.position(journal.position() + transactionLength);
+            cursor.offset = journal.position();
+            if (cursor.ownRecords.remove(recordStart)) {
+                continue;
+            }
+            changes.recordTypes.add(recordType);
+            if (recordType == RECORD_RENAME) {
+                changes.transactions.add(null);
+                changes.categoryNames.add(readCategoryNames(transactionBytes));
+            } else {
+                changes.transactions.add(GetMethods.getTransaction(transactionBytes, version));
+                changes.categoryNames.add(null);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Applies records read from a journal to a user.
+     *
+     * @param changes The records to apply.
+     * @param user The user to apply the records to.
+     * @return The amount of records applied.
+     */
+    private static int apply(JournalChanges changes, User user) {
+        for (int i = 0; i < changes.transactions.size(); i++) {
+            Transaction transaction = changes.transactions.get(i);
+            byte recordType = changes.recordTypes.get(i);
+            if (recordType == RECORD_ADD) {
+                user.getTransactionHistory().addTransaction(transaction);
+            } else if (recordType == RECORD_REMOVE) {
+                try {
+                    user.getTransactionHistory().removeTransaction(transaction);
+                } catch (TransactionNotFoundException tnfe) {
+                    //Already gone, removing it again changes nothing.
+                }
+            } else if (recordType == RECORD_RENAME) {
+                String[] names = changes.categoryNames.get(i);
+                try {
+                    user.getTransactionHistory().renameCategory(names[0], names[1]);
+                } catch (IllegalArgumentException iae) {
+                    //Already renamed, or the new name was taken since, so it's left as it is.
+                }
+            }
+        }
+        return changes.transactions.size();
+    }
+}
@@ -0,0 +1,306 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.TransactionHistory;
+
+/**
+ * <p>
+ *     The transactions of an indexed save file, read one block at a time when they're needed.
+ *     Blocks are found through the save's {@link TransactionIndex},
+ *     and read with positional reads, so reading a block never reads any other block.
+ * </p><p>
+ *     At most {@link #MAX_RESIDENT_PAGES} blocks are kept in memory at a time.
+ *     When another block is needed, the block that was used the longest ago is dropped,
+ *     so going through every transaction only ever holds a few blocks in memory.
+ *     Reading every block at once decodes the blocks in parallel,
+ *     since every block can be decoded on its own.
+ * </p><p>
+ *     The save file is kept open for as long as the pages are used,
+ *     so saving over it doesn't change the transactions the pages read.
+ *     Transactions read from pages are read again once their block is dropped,
+ *     so changes to them are only kept once the transaction history is fully loaded.
+ * </p>
+ *
+ * @see TransactionHistory#TransactionHistory(TransactionPages)
+ * @see SaveManager#loadUserPaged(int)
+ */
+public class TransactionPages {
+    /**
+     * The most blocks that are kept in memory at a time.
+     */
+    public static final int MAX_RESIDENT_PAGES = 16;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final FileChannel channel;
+    private final String version;
+    private final String[] stringDictionary;
+    private final TransactionIndex index;
+    private final long transactionsStart;
+    private final int[] firstTransactions;
+    private final Map<Integer, List<Transaction>> residentPages;
+
+    /**
+     * Closes the save file once the pages are no longer used.
+     * Doesn't reference the pages, so they can be cleaned up.
+     */
+    private static class ChannelCloser implements Runnable {
+        private final FileChannel channel;
+
+        private ChannelCloser(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                //Nothing is left to read from the channel anyway.
+            }
+        }
+    }
+
+    /**
+     * Makes the pages of an indexed save file.
+     * The pages take over the channel, and close it once they're no longer used.
+     *
+     * @param channel The channel of the save file.
+     * @param version The save version of the transactions.
+     * @param stringDictionary The strings the transactions reference.
+     * @param index The index at the end of the save file.
+     * @throws IOException if the size of the save file could not be read
+     */
+    TransactionPages(FileChannel channel, String version, String[] stringDictionary,
+                     TransactionIndex index) throws IOException {
+        this.channel = channel;
+        this.version = version;
+        this.stringDictionary = stringDictionary;
+        this.index = index;
+        this.transactionsStart = channel.size() - index.byteLength()
+                - index.getTransactionsLength();
+        this.firstTransactions = new int[index.getBlockCount() + 1];
+        for (int i = 0; i < index.getBlockCount(); i++) {
+            firstTransactions[i + 1] = firstTransactions[i] + index.getCount(i);
+        }
+        this.residentPages = new LinkedHashMap<>(MAX_RESIDENT_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+                return size() > MAX_RESIDENT_PAGES;
+            }
+        };
+        CLEANER.register(this, new ChannelCloser(channel));
+    }
+
+    /**
+     * Reads a block from the save file, without keeping it in memory.
+     *
+     * @param block The block to read.
+     * @return The transactions in the block.
+     * @throws IOException if the block could not be read
+     */
+    private List<Transaction> readBlock(int block) throws IOException {
+        long length = index.getEnd(block) - index.getOffset(block);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Save file has a block that is too large");
+        }
+        ByteBuffer blockBytes = TransactionIndex.readFully(
+                channel, transactionsStart + index.getOffset(block), (int) length);
+        return new SaveDataReader(version, blockBytes)
+                .readTransactions(stringDictionary, index.getCount(block));
+    }
+
+    /**
+     * Gets a block, reading it from the save file if it isn't in memory.
+     *
+     * @param block The block to get.
+     * @return The transactions in the block.
+     * @throws UncheckedIOException if the block could not be read
+     */
+    private List<Transaction> getPage(int block) {
+        List<Transaction> page = residentPages.get(block);
+        if (page == null) {
+            try {
+                page = readBlock(block);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            residentPages.put(block, page);
+        }
+        return page;
+    }
+
+    /**
+     * Gets the amount of transactions in the pages.
+     *
+     * @return The amount of transactions in the pages.
+     */
+    public int size() {
+        return firstTransactions[firstTransactions.length - 1];
+    }
+
+    /**
+     * Gets a transaction, reading its block if it isn't in memory.
+     *
+     * @param transactionIndex The index of the transaction.
+     * @return The transaction at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws UncheckedIOException if the block of the transaction could not be read
+     */
+    public synchronized Transaction get(int transactionIndex) {
+        if (transactionIndex < 0 || transactionIndex >= size()) {
+            throw new IndexOutOfBoundsException(transactionIndex);
+        }
+        int low = 0;
+        int high = index.getBlockCount() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (firstTransactions[middle] <= transactionIndex) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return getPage(low).get(transactionIndex - firstTransactions[low]);
+    }
+
+    /**
+     * Gets every transaction within a date range.
+     * Only the blocks that can have transactions within the range are read.
+     *
+     * @param startDate the start date of the range (Inclusive).
+     * @param endDate the end date of the range (Exclusive).
+     * @return Every transaction within the range, in the order they're stored.
+     * @throws UncheckedIOException if a block could not be read
+     */
+    public synchronized List<Transaction> getInRange(LocalDate startDate, LocalDate endDate) {
+        List<Transaction> transactionsInRange = new ArrayList<>();
+        for (int block = 0; block < index.getBlockCount(); block++) {
+            if (index.overlaps(block, startDate, endDate)) {
+                for (Transaction transaction : getPage(block)) {
+                    if (!transaction.getDate().isBefore(startDate)
+                            && transaction.getDate().isBefore(endDate)) {
+                        transactionsInRange.add(transaction);
+                    }
+                }
+            }
+        }
+        return transactionsInRange;
+    }
+
+    /**
+     * Reads a range of blocks, splitting the range in two until each half is a single block,
+     * so the blocks are read in parallel by a {@link ForkJoinPool}.
+     */
+    private class BlockReader extends RecursiveAction {
+        private final List<List<Transaction>> blocks;
+        private final int from;
+        private final int to;
+
+        /**
+         * Makes a task that reads a range of blocks.
+         *
+         * @param blocks Where to put each block read, at the index of the block.
+         * @param from The first block to read.
+         * @param to The block after the last block to read.
+         */
+        private BlockReader(List<List<Transaction>> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockReader(blocks, from, middle),
+                        new BlockReader(blocks, middle, to));
+                return;
+            }
+            try {
+                blocks.set(from, readBlock(from));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Reads every transaction in the pages, without keeping any block in memory.
+     * Every block is read again, so none of the transactions are shared with the pages.
+     * Blocks are read & decoded in parallel on the common {@link ForkJoinPool},
+     * and put together in the order they're stored.
+     *
+     * @return Every transaction, in the order they're stored.
+     * @throws UncheckedIOException if a block could not be read
+     */
+    public synchronized List<Transaction> readAll() {
+        int blockCount = index.getBlockCount();
+        List<List<Transaction>> blocks = new ArrayList<>(Collections.nCopies(blockCount, null));
+        if (blockCount > 0) {
+            ForkJoinPool.commonPool().invoke(new BlockReader(blocks, 0, blockCount));
+        }
+        List<Transaction> transactions = new ArrayList<>(size());
+        blocks.forEach(transactions::addAll);
+        return transactions;
+    }
+
+    /**
+     * Gets the amount of blocks that are currently kept in memory.
+     *
+     * @return The amount of blocks in memory.
+     */
+    public synchronized int getResidentPageCount() {
+        return residentPages.size();
+    }
+
+    /**
+     * Gets the date of the earliest transaction, without reading any block.
+     *
+     * @return The earliest date, or null if there are no transactions.
+     */
+    public LocalDate getEarliestDate() {
+        return index.getEarliestDate();
+    }
+
+    /**
+     * Gets the date of the latest transaction, without reading any block.
+     *
+     * @return The latest date, or null if there are no transactions.
+     */
+    public LocalDate getLatestDate() {
+        return index.getLatestDate();
+    }
+
+    /**
+     * Gets the sum of every income, without reading any block.
+     *
+     * @return The sum of every income.
+     */
+    public long getIncome() {
+        return index.getIncome();
+    }
+
+    /**
+     * Gets the sum of every expense, without reading any block.
+     *
+     * @return The sum of every expense.
+     */
+    public long getExpenses() {
+        return index.getExpenses();
+    }
+}
@@ -1,21 +1,20 @@
 package no.ntnu.idatx2001.g11.usersaves;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Optional;
-import no.ntnu.idatx2001.g11.enums.TimeType;
-import no.ntnu.idatx2001.g11.generics.Frequency;
-import no.ntnu.idatx2001.g11.generics.Transaction;
+import java.nio.channels.ReadableByteChannel;
 import no.ntnu.idatx2001.g11.generics.User;
 
 /**
- * A byte map that stores all the bytes required to make a user.
+ * The loaded contents of a save file, decoded in a single pass through {@link GetMethods}.
  */
 public class UserBytes {
-    private final Map<String, byte[]> byteMap;
+    private final User user;
+    private final SaveDamage damage;
+    // The size & last modified time of the save file it was loaded from, -1 if it isn't known
+    private long snapshotSize = -1;
+    private long snapshotLastModified = -1;
 
     /**
      * Constructor.
@@ -24,180 +23,111 @@ public class UserBytes {
      * @param saveBytes bytes of the save file
      */
     public UserBytes(String version, byte[] saveBytes) {
-        byteMap = SaveDataReader.getLatestByteMap(version, saveBytes);
+        SaveDataReader reader = GetMethods.getReader(ByteBuffer.wrap(saveBytes), version);
+        try {
+            user = reader.readUser();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        damage = reader.getDamage();
     }
 
     /**
-     * Gets a byte from the user bytes.
+     * Constructor. Decodes the save data where it is in the buffer,
+     * so a save file mapped into memory is never copied as a whole.
      *
-     * @param key          The key associated with the byte.
-     * @param defaultValue The default return value if the byte is not found.
-     * @return The byte found at the specified key, or the default value if it wasn't found.
+     * @param version version of the save file
+     * @param saveBytes save data of the save file, without the version bytes
+     * @throws IOException if the save data could not be read
      */
-    public byte getByte(String key, byte defaultValue) {
-        byte returnValue = defaultValue;
-        if (byteMap.containsKey(key)) {
-            byte[] bytes = byteMap.get(key);
-            if (bytes.length != 1) {
-                throw new IllegalStateException(
-                        "Data value is not 1 bytes in length, cannot get byte");
-            }
-            returnValue = bytes[0];
-        }
-        return returnValue;
+    public UserBytes(String version, ByteBuffer saveBytes) throws IOException {
+        SaveDataReader reader = GetMethods.getReader(saveBytes, version);
+        user = reader.readUser();
+        damage = reader.getDamage();
     }
 
     /**
-     * Gets a short from the user bytes.
+     * Constructor. Streams the save data from a channel,
+     * so the save file is never fully read into memory.
      *
-     * @param key          The key associated with the short.
-     * @param defaultValue The default return value if the short is not found.
-     * @return The short found at the specified key, or the default value if it wasn't found.
+     * @param version version of the save file
+     * @param channel channel to read the save data from, positioned after the version bytes
+     * @throws IOException if the save data could not be read
      */
-    public short getShort(String key, short defaultValue) {
-        short returnValue = defaultValue;
-        if (byteMap.containsKey(key)) {
-            byte[] bytes = byteMap.get(key);
-            if (bytes.length != 2) {
-                throw new IllegalStateException(
-                        "Data value is not 2 bytes in length, cannot get short");
-            }
-            returnValue = ByteBuffer.wrap(bytes).getShort();
-        }
-        return returnValue;
+    public UserBytes(String version, ReadableByteChannel channel) throws IOException {
+        SaveDataReader reader = GetMethods.getReader(channel, version);
+        user = reader.readUser();
+        damage = reader.getDamage();
     }
 
-    //No "int"s are stored, getInt(...) not needed
-
-    //No "long"s are stored, getLong(...) not needed
+    /**
+     * Constructor, for save data that has already been decoded.
+     *
+     * @param user the user decoded from the save data
+     */
+    UserBytes(User user) {
+        this.user = user;
+        this.damage = null;
+    }
 
     /**
-     * Gets a float from the user bytes.
+     * Gets the username stored in the save data.
      *
-     * @param key          The key associated with the float.
-     * @param defaultValue The default return value if the float is not found.
-     * @return The float found at the specified key, or the default value if it wasn't found.
+     * @return The username stored in the save data.
      */
-    public float getFloat(String key, float defaultValue) {
-        float returnValue = defaultValue;
-        if (byteMap.containsKey(key)) {
-            byte[] bytes = byteMap.get(key);
-            if (bytes.length != 4) {
-                throw new IllegalStateException(
-                        "Data value is not 4 bytes in length, cannot get float");
-            }
-            returnValue = ByteBuffer.wrap(bytes).getFloat();
-        }
-        return returnValue;
+    public String getUsername() {
+        return user.getUsername();
     }
 
     /**
-     * Gets a double from the user bytes.
+     * Makes a user from the user bytes.
      *
-     * @param key          The key associated with the double.
-     * @param defaultValue The default return value if the double is not found.
-     * @return The double found at the specified key, or the default value if it wasn't found.
+     * @return The user made.
      */
-    public double getDouble(String key, double defaultValue) {
-        double returnValue = defaultValue;
-        if (byteMap.containsKey(key)) {
-            byte[] bytes = byteMap.get(key);
-            if (bytes.length != 8) {
-                throw new IllegalStateException(
-                        "Data value is not 8 bytes in length, cannot get double");
-            }
-            returnValue = ByteBuffer.wrap(bytes).getDouble();
-        }
-        return returnValue;
+    public User makeUser() {
+        return user;
     }
 
     /**
-     * Gets a string from the user bytes.
+     * Gets the damage found in the save data, for saves where every record is checked.
+     * Damaged records are missing from the user, unless they were recovered from a backup.
      *
-     * @param key          The key associated with the string.
-     * @param defaultValue The default return value if the string is not found.
-     * @return The string found at the specified key, or the default value if it wasn't found.
+     * @return The damage found, or {@code null} if the save data is intact.
+     * @see CheckedRecords
      */
-    public String getString(String key, String defaultValue) {
-        String returnValue = defaultValue;
-        if (byteMap.containsKey(key)) {
-            byte[] bytes = byteMap.get(key);
-            returnValue = new String(bytes, StandardCharsets.UTF_8);
-        }
-        return returnValue;
+    public SaveDamage getDamage() {
+        return damage;
     }
 
     /**
-     * Gets an enum value from the user bytes.
+     * Remembers which snapshot of a save slot the save data was loaded from,
+     * so the journal of the slot is only replayed on top of it if it's still that snapshot.
      *
-     * @param enumValues   The values of the enum class.
-     * @param key          The key associated with the enum value.
-     * @param defaultValue The default return value if the enum value is not found.
-     * @param <E>          The enum passed to this function.
-     * @return The enum value found at the specific key, or the default value if it wasn't found.
+     * @param size The size of the save file, when it was loaded.
+     * @param lastModified The last modified time of the save file when it was loaded,
+     *     in milliseconds.
+     * @see TransactionJournal#replayJournal(User, int, UserBytes)
      */
-    public <E extends Enum<E>> E getEnum(E[] enumValues, String key, E defaultValue) {
-        String enumString = getString(key, null);
-        E returnValue = defaultValue;
-        if (enumString != null) {
-            Optional<E> optionalEnum = Arrays
-                    .stream(enumValues)
-                    .filter(value -> value.toString().equalsIgnoreCase(enumString))
-                    .findFirst();
-            if (optionalEnum.isPresent()) {
-                returnValue = optionalEnum.get();
-            }
-        }
-        return returnValue;
+    void setSnapshot(long size, long lastModified) {
+        snapshotSize = size;
+        snapshotLastModified = lastModified;
     }
 
     /**
-     * Makes a user from the user bytes.
+     * Gets the size of the save file the save data was loaded from.
      *
-     * @return The user made.
+     * @return The size of the save file, or -1 if it isn't known.
      */
-    public User makeUser() {
-        User user = new User(
-                getString("username", "(Unknown username)"),
-                getDouble("startingFunds", 0)
-        );
-        int transactionIndex = 0;
-        boolean hasMoreTransactions = byteMap
-                .keySet()
-                .stream()
-                .anyMatch(key -> key.startsWith("transaction"));
-        while (hasMoreTransactions) {
-            int i = transactionIndex;
-            Frequency frequency = null;
-            if (byteMap
-                    .keySet()
-                    .stream()
-                    .anyMatch(key -> key.startsWith("frequency")
-                            && key.endsWith("|" + i))) {
-                frequency = new Frequency(
-                        getShort("frequencyAmount|" + i, (short) 1),
-                        getEnum(TimeType.values(), "frequencyType|" + i, TimeType.MONTHS)
-                );
-            }
-            user.getTransactionHistory().addTransaction(new Transaction(
-                    getString("transactionName|" + i, "(No name)"),
-                    getString("transactionCategory|" + i, "(No category"),
-                    getFloat("transactionAmount|" + i, 0),
-                    LocalDate.of(
-                            getShort("transactionYear|" + i, (short) 1970),
-                            getByte("transactionMonth|" + i, (byte) 1),
-                            getByte("transactionDay|" + i, (byte) 1)
-                    ),
-                    frequency
-            ));
+    long getSnapshotSize() {
+        return snapshotSize;
+    }
 
-            hasMoreTransactions = byteMap
-                    .keySet()
-                    .stream()
-                    .anyMatch(key -> key.startsWith("transaction")
-                            && key.endsWith("|" + (i + 1)));
-            transactionIndex++;
-        }
-        return user;
+    /**
+     * Gets the last modified time of the save file the save data was loaded from.
+     *
+     * @return The last modified time in milliseconds, or -1 if it isn't known.
+     */
+    long getSnapshotLastModified() {
+        return snapshotLastModified;
     }
 }
@@ -0,0 +1,76 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Measures and encodes strings as UTF-8, directly into buffers.
+ * Gives the same bytes as {@code String.getBytes(StandardCharsets.UTF_8)},
+ * without allocating a byte array for every string.
+ */
+public final class Utf8 {
+    private Utf8() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Gets the amount of bytes a string takes up when encoded as UTF-8.
+     *
+     * @param string The string to measure.
+     * @return The amount of bytes the string takes up.
+     */
+    public static int length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; //Unpaired surrogates are replaced with '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes a string as UTF-8, and puts it into a buffer.
+     *
+     * @param buffer The buffer to put the string into.
+     *               Must have at least {@link #length(String)} bytes remaining.
+     * @param string The string to encode.
+     */
+    public static void write(ByteBuffer buffer, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(i + 1));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ *     Measures and encodes numbers as LEB128 variable-length integers, directly into buffers.
+ * </p><p>
+ *     Each byte stores 7 bits of the number, lowest bits first,
+ *     and the highest bit of each byte is set if more bytes follow.
+ *     Small numbers, like most lengths & counts, only take up a single byte,
+ *     while large numbers are never cut short.
+ * </p><p>
+ *     Signed numbers are zigzag-encoded first, so small negative numbers also stay small.
+ * </p>
+ */
+public final class Varint {
+    /**
+     * The maximum amount of bytes a variable-length long can take up.
+     */
+    public static final int MAX_LENGTH = 10;
+
+    private Varint() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Gets the amount of bytes an unsigned number takes up when encoded.
+     *
+     * @param value The number to measure, treated as unsigned.
+     * @return The amount of bytes the number takes up.
+     */
+    public static int length(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Gets the amount of bytes a signed number takes up when zigzag-encoded.
+     *
+     * @param value The number to measure.
+     * @return The amount of bytes the number takes up.
+     */
+    public static int signedLength(long value) {
+        return length(zigZag(value));
+    }
+
+    /**
+     * Encodes an unsigned number, and puts it into a buffer.
+     *
+     * @param buffer The buffer to put the number into.
+     *               Must have at least {@link #length(long)} bytes remaining.
+     * @param value The number to encode, treated as unsigned.
+     */
+    public static void write(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Zigzag-encodes a signed number, and puts it into a buffer.
+     *
+     * @param buffer The buffer to put the number into.
+     *               Must have at least {@link #signedLength(long)} bytes remaining.
+     * @param value The number to encode.
+     */
+    public static void writeSigned(ByteBuffer buffer, long value) {
+        write(buffer, zigZag(value));
+    }
+
+    /**
+     * Reads an unsigned number from a buffer, that has every byte of the number in it.
+     *
+     * @param buffer The buffer to read the number from.
+     * @return The number read, as unsigned.
+     * @throws java.nio.BufferUnderflowException if the buffer ends before the number does
+     * @throws IllegalArgumentException if the number is longer than {@link #MAX_LENGTH} bytes
+     */
+    public static long read(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 7 * MAX_LENGTH; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Maps a signed number to an unsigned one, where small negative numbers stay small.
+     *
+     * @param value The signed number.
+     * @return The zigzag-encoded number.
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Maps a zigzag-encoded number back to the signed number it came from.
+     *
+     * @param value The zigzag-encoded number.
+     * @return The signed number.
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
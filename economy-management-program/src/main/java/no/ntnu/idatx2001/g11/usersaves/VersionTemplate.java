@@ -23,7 +23,44 @@ import java.util.stream.Collectors;
  *         <li><b>-3:</b> The next two bytes is how many times the transaction template
  *         should be applied, followed by the bytes to apply the template to</li>
  *         <li><b>-4:</b> If the next byte is not 0, the frequency template should be applied</li>
+ *         <li><b>-5:</b> The next varint is the length, followed by the bytes to read</li>
+ *         <li><b>-6:</b> The next varint is how many times the transaction template
+ *         should be applied, followed by the bytes to apply the template to</li>
+ *         <li><b>-7:</b> Read a zigzag-encoded varint number</li>
+ *         <li><b>-8:</b> Read a dictionary of strings, for the following string references</li>
+ *         <li><b>-9:</b> Read a string reference, which is either an entry in the dictionary,
+ *         or a varint length followed by the bytes to read</li>
+ *         <li><b>-10:</b> The next varint is how many times the transaction template
+ *         should be applied, followed by the template applied one field at a time:
+ *         Each field of the template is a column, storing the field of every transaction.
+ *         Each column starts with its length in bytes, as a varint,
+ *         and varint numbers in a column are stored as the difference from the previous one</li>
+ *         <li><b>-11:</b> The rest is compressed, as documented in
+ *         {@link BlockCompressingChannel}. Once decompressed,
+ *         it is a save of the version stored with it, without the version bytes</li>
+ *         <li><b>-12:</b> The next varint is how many history segments follow,
+ *         each stored as documented in {@link HistorySegment#writeTo(java.nio.ByteBuffer)}.
+ *         Every segment refers to a file with every transaction of one year,
+ *         which is only read once the year is needed</li>
+ *         <li><b>-13:</b> An index of the transactions before it,
+ *         stored as documented in {@link TransactionIndex#writeTo(java.nio.ByteBuffer)}.
+ *         It's skipped when the save is read from start to end</li>
+ *         <li><b>-14:</b> The next varint is how many times the transaction template
+ *         should be applied, followed by every transaction as a checked record,
+ *         stored as documented in {@link CheckedRecords}.
+ *         Damaged records are skipped, and the records run until the end of the save</li>
+ *         <li><b>-15:</b> A CRC32C checksum of the fields before it, as an int.
+ *         The fields of a user are checked as documented in
+ *         {@link CheckedRecords#userFieldsChecksum(long, String)},
+ *         and a dictionary of strings as documented in {@link StringDictionary#checksum()}</li>
+ *         <li><b>-16:</b> The next varint is how many categories of the history segments
+ *         were renamed, each stored as the name it has in the segments, followed by its
+ *         current name, each a varint length followed by the bytes to read.
+ *         Transactions read from the segments are given the current name of their category</li>
  *     </ul>
+ *
+ * <p>Varints are documented in {@link Varint},
+ * and dictionaries & string references are documented in {@link StringDictionary}.</p>
  */
 public enum VersionTemplate {
     //Map.of() doesn't work; doesn't keep insertion order.
@@ -35,6 +72,9 @@ public enum VersionTemplate {
     //NB: Don't remove any "unused" methods here,
     //they are used through VersionTemplate.valueOf(String)
 
+    //NB: Templates are compiled into a CodecPlan once per type & version,
+    //so new versions automatically get the same fast load path.
+
     /**
      * Save template for users.
      */
@@ -70,7 +110,424 @@ public enum VersionTemplate {
     FREQUENCY_1_0_0(List.of(
             new AbstractMap.SimpleEntry<>("frequencyAmount", 2),
             new AbstractMap.SimpleEntry<>("frequencyType", -1)
-    ));
+    )),
+
+    //1.0.1 is identical to 1.0.0, only exists as a way to test different versions.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_0_1(USER_1_0_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_0_1(TRANSACTION_HISTORY_1_0_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_0_1(TRANSACTION_1_0_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_0_1(FREQUENCY_1_0_0.getTemplate()),
+
+    //1.0.2 starts with a fixed-size slot summary, the rest is identical to 1.0.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_0_2(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("startingFunds", 8),
+            new AbstractMap.SimpleEntry<>("username", -1),
+            new AbstractMap.SimpleEntry<>("transactionHistory", -2)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_0_2(TRANSACTION_HISTORY_1_0_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_0_2(TRANSACTION_1_0_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_0_2(FREQUENCY_1_0_0.getTemplate()),
+
+    //1.1.0 stores counts, lengths & small numbers as varints.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_1_0(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("startingFunds", 8),
+            new AbstractMap.SimpleEntry<>("username", -5),
+            new AbstractMap.SimpleEntry<>("transactionHistory", -2)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_1_0(List.of(
+            new AbstractMap.SimpleEntry<>("transaction", -6)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_1_0(List.of(
+            new AbstractMap.SimpleEntry<>("transactionEpochDay", -7),
+            new AbstractMap.SimpleEntry<>("transactionAmount", 4),
+            new AbstractMap.SimpleEntry<>("transactionCategory", -5),
+            new AbstractMap.SimpleEntry<>("transactionName", -5),
+            new AbstractMap.SimpleEntry<>("transactionFrequency", -4)
+    )),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_1_0(List.of(
+            new AbstractMap.SimpleEntry<>("frequencyAmount", -7),
+            new AbstractMap.SimpleEntry<>("frequencyType", -5)
+    )),
+
+    //1.2.0 stores repeated strings once, in a dictionary at the start of the transaction history.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_2_0(USER_1_1_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_2_0(List.of(
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("transaction", -6)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_2_0(List.of(
+            new AbstractMap.SimpleEntry<>("transactionEpochDay", -7),
+            new AbstractMap.SimpleEntry<>("transactionAmount", 4),
+            new AbstractMap.SimpleEntry<>("transactionCategory", -9),
+            new AbstractMap.SimpleEntry<>("transactionName", -9),
+            new AbstractMap.SimpleEntry<>("transactionFrequency", -4)
+    )),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_2_0(List.of(
+            new AbstractMap.SimpleEntry<>("frequencyAmount", -7),
+            new AbstractMap.SimpleEntry<>("frequencyType", -9)
+    )),
+
+    //1.3.0 stores the transaction history as columns, and is only used if chosen.
+    //Individual transactions, like those in a journal, are stored the same way as in 1.2.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_3_0(USER_1_2_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_3_0(List.of(
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("transaction", -10)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_3_0(TRANSACTION_1_2_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_3_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.4.0 compresses a save of another version, and is only used if chosen.
+    //The slot summary is kept uncompressed, so it can still be read on its own.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_4_0(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("compressedSave", -11)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_4_0(TRANSACTION_HISTORY_1_2_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_4_0(TRANSACTION_1_2_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_4_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.5.0 stores older years of the transaction history in segment files,
+    //and is only used if chosen. The segment files themselves are stored as 1.2.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_5_0(USER_1_2_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_5_0(List.of(
+            new AbstractMap.SimpleEntry<>("historySegments", -12),
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("transaction", -6)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_5_0(TRANSACTION_1_2_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_5_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.6.0 ends with an index of the transactions, so blocks of them can be read on their own,
+    //and is only used if chosen.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_6_0(USER_1_2_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_6_0(List.of(
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("transaction", -6),
+            new AbstractMap.SimpleEntry<>("transactionIndex", -13)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_6_0(TRANSACTION_1_2_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_6_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.7.0 checks every transaction on its own, so a damaged transaction is skipped,
+    //instead of making the rest of the save unreadable, and is only used if chosen.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_7_0(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("startingFunds", 8),
+            new AbstractMap.SimpleEntry<>("username", -5),
+            new AbstractMap.SimpleEntry<>("userChecksum", -15),
+            new AbstractMap.SimpleEntry<>("transactionHistory", -2)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_7_0(List.of(
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("stringDictionaryChecksum", -15),
+            new AbstractMap.SimpleEntry<>("transaction", -14)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_7_0(TRANSACTION_1_2_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_7_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.8.0 stores amounts of money exactly, as varints of minor units (øre),
+    //instead of as floats & doubles of kroner. The rest is identical to 1.2.0.
+    //Sums stored along with the transactions are stored as longs of minor units.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_8_0(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("startingFunds", -7),
+            new AbstractMap.SimpleEntry<>("username", -5),
+            new AbstractMap.SimpleEntry<>("transactionHistory", -2)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_8_0(TRANSACTION_HISTORY_1_2_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_8_0(List.of(
+            new AbstractMap.SimpleEntry<>("transactionEpochDay", -7),
+            new AbstractMap.SimpleEntry<>("transactionAmount", -7),
+            new AbstractMap.SimpleEntry<>("transactionCategory", -9),
+            new AbstractMap.SimpleEntry<>("transactionName", -9),
+            new AbstractMap.SimpleEntry<>("transactionFrequency", -4)
+    )),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_8_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.9.0 is 1.3.0, with amounts stored like 1.8.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_9_0(USER_1_8_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_9_0(TRANSACTION_HISTORY_1_3_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_9_0(TRANSACTION_1_8_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_9_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.10.0 is 1.5.0, with amounts stored like 1.8.0. The segment files are stored as 1.8.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_10_0(USER_1_8_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_10_0(TRANSACTION_HISTORY_1_5_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_10_0(TRANSACTION_1_8_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_10_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.11.0 is 1.6.0, with amounts stored like 1.8.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_11_0(USER_1_8_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_11_0(TRANSACTION_HISTORY_1_6_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_11_0(TRANSACTION_1_8_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_11_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.12.0 is 1.7.0, with amounts stored like 1.8.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_12_0(List.of(
+            new AbstractMap.SimpleEntry<>("slotSummary", SlotSummary.LENGTH),
+            new AbstractMap.SimpleEntry<>("startingFunds", -7),
+            new AbstractMap.SimpleEntry<>("username", -5),
+            new AbstractMap.SimpleEntry<>("userChecksum", -15),
+            new AbstractMap.SimpleEntry<>("transactionHistory", -2)
+    )),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_12_0(TRANSACTION_HISTORY_1_7_0.getTemplate()),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_12_0(TRANSACTION_1_8_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_12_0(FREQUENCY_1_2_0.getTemplate()),
+
+    //1.13.0 is 1.10.0, with the categories renamed after the segments were stored,
+    //so renaming a category doesn't rewrite every segment. The segment files are stored as 1.8.0.
+
+    /**
+     * Save template for users.
+     */
+    USER_1_13_0(USER_1_8_0.getTemplate()),
+
+    /**
+     * Save template for transaction history.
+     */
+    TRANSACTION_HISTORY_1_13_0(List.of(
+            new AbstractMap.SimpleEntry<>("historySegments", -12),
+            new AbstractMap.SimpleEntry<>("categoryRenames", -16),
+            new AbstractMap.SimpleEntry<>("stringDictionary", -8),
+            new AbstractMap.SimpleEntry<>("transaction", -6)
+    )),
+
+    /**
+     * Save template for individual transactions.
+     */
+    TRANSACTION_1_13_0(TRANSACTION_1_8_0.getTemplate()),
+
+    /**
+     * Save template for frequency objects.
+     */
+    FREQUENCY_1_13_0(FREQUENCY_1_2_0.getTemplate());
 
     /**
      * The top level template.
@@ -78,9 +535,12 @@ public enum VersionTemplate {
     public static final String TOP_LEVEL = "USER";
     
     /**
-     * Current save version.
+     * Current save version, which saves of the default {@link SaveFormat#ROWS} format are
+     * stored as, and which journals are written in.
+     *
+     * @see SaveManager#SAVE_VERSION
      */
-    public static final String CURRENT_VERSION = "1.0.0";
+    public static final String CURRENT_VERSION = SaveManager.SAVE_VERSION;
     private final Map<String, Integer> template;
 
     VersionTemplate(List<Map.Entry<String, Integer>> template) {
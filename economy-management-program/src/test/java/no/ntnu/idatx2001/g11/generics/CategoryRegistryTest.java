@@ -0,0 +1,54 @@
+package no.ntnu.idatx2001.g11.generics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CategoryRegistryTest {
+    private CategoryRegistry registry;
+
+    @BeforeEach
+    void before() {
+        registry = new CategoryRegistry();
+        registry.register("Food");
+        registry.register("Fuel");
+    }
+
+    @Test
+    void testIdsAreDense() {
+        assertEquals(0, registry.getId("Food"));
+        assertEquals(1, registry.getId("Fuel"));
+        assertEquals(0, registry.register("Food"));
+        assertEquals(2, registry.register("Rent"));
+        assertEquals(3, registry.size());
+        assertEquals(List.of("Food", "Fuel", "Rent"), registry.getNames());
+    }
+
+    @Test
+    void testUnregisteredCategory() {
+        assertEquals(-1, registry.getId("Rent"));
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.getName(2));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(null));
+    }
+
+    @Test
+    void testRenameKeepsId() {
+        registry.rename("Food", "Groceries");
+        assertEquals(0, registry.getId("Groceries"));
+        assertEquals(-1, registry.getId("Food"));
+        assertEquals("Groceries", registry.getName(0));
+        assertThrows(IllegalArgumentException.class, () -> registry.rename("Food", "Snacks"));
+        assertThrows(IllegalArgumentException.class, () -> registry.rename("Fuel", "Groceries"));
+        assertThrows(IllegalArgumentException.class, () -> registry.rename("Fuel", " "));
+    }
+
+    @Test
+    void testCopyDoesNotChange() {
+        CategoryRegistry copy = registry.copy();
+        registry.rename("Food", "Groceries");
+        registry.register("Rent");
+        assertEquals(List.of("Food", "Fuel"), copy.getNames());
+    }
+}
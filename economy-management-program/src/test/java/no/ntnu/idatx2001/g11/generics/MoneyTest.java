@@ -0,0 +1,33 @@
+package no.ntnu.idatx2001.g11.generics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class MoneyTest {
+
+    @Test
+    void testParse() {
+        assertEquals(12_00, Money.parse("12"));
+        assertEquals(12_50, Money.parse("12.5"));
+        assertEquals(-10, Money.parse("-0,10"));
+        assertEquals(5, Money.parse(".05"));
+    }
+
+    @Test
+    void testParseOfInvalidAmounts() {
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.234"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("abc"));
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+        assertThrows(NumberFormatException.class, () -> Money.parse(null));
+        assertThrows(NumberFormatException.class, () -> Money.parse("99999999999999999999"));
+    }
+
+    @Test
+    void testFormat() {
+        assertEquals("-12.50 kr", Money.format(-12_50));
+        assertEquals("0.05 kr", Money.format(5));
+        assertEquals("1000.00 kr", Money.format(1000_00));
+    }
+}
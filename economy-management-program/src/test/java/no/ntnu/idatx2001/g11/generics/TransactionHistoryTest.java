@@ -1,6 +1,13 @@
 package no.ntnu.idatx2001.g11.generics;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import no.ntnu.idatx2001.g11.enums.TimeType;
 import no.ntnu.idatx2001.g11.exceptions.TransactionNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -62,4 +69,269 @@ class TransactionHistoryTest {
         validTransactionHistory.addTransaction(validTransaction);
         assertNotEquals(new TransactionHistory(), validTransactionHistory);
     }
+
+    @Test
+    void testStoredTransactionsAreViews() {
+        validTransactionHistory.addTransaction(validTransaction);
+        validTransactionHistory.addTransaction(new Transaction("Earlier", "Test category",
+                -200, LocalDate.of(2000, 1, 1), new Frequency(2, TimeType.WEEKS)));
+        assertEquals(300, validTransactionHistory.getSum());
+        assertEquals(500, validTransactionHistory.getTotalIncome());
+        assertEquals(200, validTransactionHistory.getTotalExpenses());
+
+        validTransactionHistory.getTransactions().sort(
+                (a, b) -> a.getDate().compareTo(b.getDate()));
+        Transaction earlier = validTransactionHistory.get(0);
+        assertEquals("Earlier", earlier.getName());
+        assertEquals(new Frequency(2, TimeType.WEEKS), earlier.getFrequency());
+
+        //Changing a view changes the stored transaction, but not a copy of the history.
+        TransactionHistory copy = validTransactionHistory.copy();
+        earlier.setAmount(-100);
+        assertEquals(400, validTransactionHistory.getSum());
+        assertEquals(300, copy.getSum());
+        assertTrue(validTransactionHistory.getTransactions().contains(earlier));
+        validTransactionHistory.removeTransaction(earlier);
+        assertEquals(List.of(validTransaction), validTransactionHistory.getTransactions());
+    }
+
+    @Test
+    void testViewsOfTheSameTransactionDontUndoEachOther() {
+        validTransactionHistory.addTransaction(validTransaction);
+        Transaction listed = validTransactionHistory.getListedTransactions().get(0);
+        Transaction inRange = validTransactionHistory
+                .viewTransactionsInRange(LocalDate.MIN, LocalDate.MAX).get(0);
+
+        LocalDate newDate = LocalDate.of(2001, 2, 3);
+        listed.setDate(newDate);
+        inRange.setName("New name");
+        inRange.setAmount(-50);
+        assertEquals(newDate, inRange.getDate());
+        assertEquals("New name", listed.getName());
+        assertEquals(new Transaction("New name", "Test category", -50, newDate),
+                validTransactionHistory.get(0));
+        assertEquals(-50, validTransactionHistory.getSum());
+
+        assertThrows(IllegalArgumentException.class, () -> listed.setName(null));
+        assertEquals("New name", inRange.getName());
+
+        //A removed view keeps the fields it last had.
+        validTransactionHistory.removeTransaction(listed);
+        assertTrue(validTransactionHistory.getTransactions().isEmpty());
+        assertEquals(newDate, inRange.getDate());
+        assertEquals("New name", inRange.getName());
+    }
+
+    @Test
+    void testAddedTransactionIsACopy() {
+        Transaction stored = validTransactionHistory.addTransaction(validTransaction);
+        validTransaction.setName("Changed after adding");
+        assertEquals("Test name", validTransactionHistory.get(0).getName());
+
+        stored.setName("Changed through the history");
+        assertEquals("Changed through the history", validTransactionHistory.get(0).getName());
+
+        Transaction inDateOrder = validTransactionHistory.addTransactionInDateOrder(
+                new Transaction("Earlier", "Test category", 5, LocalDate.of(2000, 1, 1)));
+        assertEquals(inDateOrder, validTransactionHistory.get(0));
+        assertEquals("Changed through the history", stored.getName());
+        validTransactionHistory.removeTransaction(inDateOrder);
+        validTransactionHistory.removeTransaction(stored);
+        assertTrue(validTransactionHistory.getTransactions().isEmpty());
+    }
+
+    @Test
+    void testCopiesDontChangeEachOther() {
+        validTransactionHistory.addTransaction(validTransaction);
+        TransactionHistory copy = validTransactionHistory.copy();
+        TransactionHistory copyOfCopy = copy.copy();
+
+        //Whichever is changed first stops sharing its transactions with the others.
+        copy.get(0).setName("Renamed in the copy");
+        copy.addTransaction(new Transaction("Added to the copy", "Other category",
+                -300, LocalDate.of(2020, 1, 1)));
+        validTransactionHistory.get(0).setAmount(700);
+        validTransactionHistory.addTransaction(new Transaction("Added to the original",
+                "Test category", 100, LocalDate.of(2021, 1, 1)));
+
+        assertEquals(List.of(validTransaction), copyOfCopy.getTransactions());
+        assertEquals("Test name", validTransactionHistory.get(0).getName());
+        assertEquals(800, validTransactionHistory.getSum());
+        assertEquals("Renamed in the copy", copy.get(0).getName());
+        assertEquals(500, copy.get(0).getAmount());
+        assertEquals(200, copy.getSum());
+        assertEquals(LocalDate.of(2020, 1, 1), copy.getEarliestDate());
+
+        copyOfCopy.removeTransaction(copyOfCopy.get(0));
+        assertTrue(copyOfCopy.getTransactions().isEmpty());
+        assertEquals(2, copy.size());
+        assertEquals(2, validTransactionHistory.size());
+    }
+
+    @Test
+    void testSumsAreExact() {
+        for (int i = 0; i < 10_000; i++) {
+            validTransactionHistory.addTransaction(new Transaction(
+                    "Income", "Test category", 10, LocalDate.of(2022, 1, 1)));
+            validTransactionHistory.addTransaction(new Transaction(
+                    "Expense", "Test category", -20, LocalDate.of(2022, 1, 1)));
+        }
+        assertEquals(100_000, validTransactionHistory.getTotalIncome());
+        assertEquals(200_000, validTransactionHistory.getTotalExpenses());
+        assertEquals(-100_000, validTransactionHistory.getSum());
+    }
+
+    @Test
+    void testTransactionsByCategory() {
+        validTransactionHistory.addTransaction(validTransaction);
+        validTransactionHistory.addTransaction(new Transaction("Other name", "Other category",
+                -200, LocalDate.of(2022, 1, 1)));
+        validTransactionHistory.addTransaction(new Transaction("Third name", "Test category",
+                300, LocalDate.of(2022, 1, 2)));
+        Map<String, TransactionHistory> byCategory =
+                validTransactionHistory.getTransactionsByCategory();
+        assertEquals(2, byCategory.size());
+        assertEquals(2, byCategory.get("Test category").size());
+        assertEquals(800, byCategory.get("Test category").getSum());
+        assertEquals(1, byCategory.get("Other category").size());
+    }
+
+    @Test
+    void testRenameCategory() {
+        validTransactionHistory.addTransaction(validTransaction);
+        Transaction view = validTransactionHistory.getTransactions().get(0);
+        validTransactionHistory.renameCategory("Test category", "Renamed category");
+
+        assertEquals("Renamed category", view.getCategory());
+        assertEquals("Renamed category",
+                validTransactionHistory.getTransactions().get(0).getCategory());
+        assertEquals(0, validTransactionHistory.getCategories().getId("Renamed category"));
+        assertThrows(IllegalArgumentException.class,
+                () -> validTransactionHistory.renameCategory("Test category", "Other"));
+
+        view.setAmount(600);
+        assertEquals("Renamed category",
+                validTransactionHistory.getTransactions().get(0).getCategory());
+        assertEquals(1, validTransactionHistory.getCategories().size());
+
+        view.setCategory("Other category");
+        assertEquals(1, validTransactionHistory.getCategories().getId("Other category"));
+        assertEquals("Other category",
+                validTransactionHistory.getTransactions().get(0).getCategory());
+    }
+
+    @Test
+    void testRangesFollowDateOrder() {
+        Random random = new Random(69);
+        List<Transaction> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Transaction transaction = new Transaction("Name " + i, "Test category",
+                    random.nextInt(2000) - 1000, LocalDate.of(2022, 1, 1)
+                    .plusDays(random.nextInt(365)));
+            added.add(transaction);
+            validTransactionHistory.addTransaction(transaction);
+        }
+        //Removes and inserts some in the middle, and moves some to another date
+        List<Transaction> stored = validTransactionHistory.getTransactions();
+        stored.subList(100, 200).clear();
+        added.subList(100, 200).clear();
+        stored.addAll(50, added.subList(500, 600));
+        added.addAll(50, added.subList(500, 600).stream().map(Transaction::copy).toList());
+        for (int i = 0; i < 1000; i += 10) {
+            stored.get(i).setDate(LocalDate.of(2022, 6, 1).plusDays(i % 70));
+            added.get(i).setDate(LocalDate.of(2022, 6, 1).plusDays(i % 70));
+        }
+
+        LocalDate startDate = LocalDate.of(2022, 5, 20);
+        LocalDate endDate = LocalDate.of(2022, 7, 1);
+        List<Transaction> expected = added.stream()
+                .filter(t -> !t.getDate().isBefore(startDate) && t.getDate().isBefore(endDate))
+                .sorted(Comparator.comparing(Transaction::getDate))
+                .toList();
+        List<Transaction> inRange =
+                validTransactionHistory.viewTransactionsInRange(startDate, endDate);
+        assertEquals(expected, inRange);
+        assertEquals(expected.stream().mapToLong(Transaction::getAmount).sum(),
+                validTransactionHistory.getSumInRange(startDate, endDate));
+        assertEquals(expected,
+                validTransactionHistory.getTransactionsInRange(startDate, endDate)
+                        .getTransactions());
+        assertEquals(added.stream().map(Transaction::getDate).max(LocalDate::compareTo).get(),
+                validTransactionHistory.getLatestDate());
+
+        stored.sort(Comparator.comparingLong(Transaction::getAmount));
+        assertThrows(ConcurrentModificationException.class, () -> inRange.get(0));
+        List<Transaction> sortedInRange =
+                validTransactionHistory.viewTransactionsInRange(startDate, endDate);
+        assertEquals(expected.size(), sortedInRange.size());
+        assertEquals(expected.stream().mapToLong(Transaction::getAmount).sum(),
+                validTransactionHistory.getSumInRange(startDate, endDate));
+
+        sortedInRange.get(0).setDate(LocalDate.of(2021, 1, 1));
+        assertThrows(ConcurrentModificationException.class, () -> sortedInRange.get(0));
+        assertThrows(UnsupportedOperationException.class,
+                () -> sortedInRange.add(validTransaction));
+    }
+
+    @Test
+    void testAddInDateOrder() {
+        Random random = new Random(69);
+        List<Transaction> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Transaction transaction = new Transaction("Name " + i, "Test category",
+                    random.nextInt(2000) - 1000, LocalDate.of(2022, 1, 1)
+                    .plusDays(random.nextInt(60)));
+            expected.add(transaction);
+            validTransactionHistory.addTransactionInDateOrder(transaction);
+        }
+        //A stable sort keeps transactions on the same date in the order they were added.
+        expected.sort(Comparator.comparing(Transaction::getDate));
+        assertEquals(expected, validTransactionHistory.getTransactions());
+        assertEquals(expected,
+                validTransactionHistory.viewTransactionsInRange(LocalDate.MIN, LocalDate.MAX));
+    }
+
+    @Test
+    void testEmptyRange() {
+        validTransactionHistory.addTransaction(validTransaction);
+        LocalDate date = validTransaction.getDate();
+        assertTrue(validTransactionHistory.viewTransactionsInRange(date, date).isEmpty());
+        assertTrue(validTransactionHistory
+                .viewTransactionsInRange(date.plusDays(1), date.minusDays(1)).isEmpty());
+        assertEquals(0, validTransactionHistory.getSumInRange(date.plusDays(1), date.plusDays(2)));
+    }
+
+    @Test
+    void testTotalsFollowChanges() {
+        validTransactionHistory.addTransaction(validTransaction);
+        validTransactionHistory.addTransaction(new Transaction("Expense", "Test category",
+                -200, LocalDate.of(2020, 5, 1)));
+        assertEquals(500, validTransactionHistory.getTotalIncome());
+        assertEquals(200, validTransactionHistory.getTotalExpenses());
+        assertEquals(300, validTransactionHistory.getSum());
+        assertEquals(2, validTransactionHistory.size());
+        assertEquals(LocalDate.of(2020, 5, 1), validTransactionHistory.getEarliestDate());
+
+        //An income that becomes an expense moves between the totals
+        Transaction view = validTransactionHistory.getTransactions().get(0);
+        view.setAmount(-50);
+        assertEquals(0, validTransactionHistory.getTotalIncome());
+        assertEquals(250, validTransactionHistory.getTotalExpenses());
+        assertEquals(-250, validTransactionHistory.getSum());
+
+        view.setDate(LocalDate.of(2019, 1, 1));
+        assertEquals(LocalDate.of(2019, 1, 1), validTransactionHistory.getEarliestDate());
+        assertEquals(LocalDate.of(2020, 5, 1), validTransactionHistory.getLatestDate());
+
+        validTransactionHistory.removeTransaction(view);
+        assertEquals(0, validTransactionHistory.getTotalIncome());
+        assertEquals(200, validTransactionHistory.getTotalExpenses());
+        assertEquals(1, validTransactionHistory.size());
+
+        TransactionHistory copy = validTransactionHistory.copy();
+        validTransactionHistory.getTransactions().clear();
+        assertEquals(0, validTransactionHistory.getSum());
+        assertNull(validTransactionHistory.getEarliestDate());
+        assertEquals(-200, copy.getSum());
+    }
 }
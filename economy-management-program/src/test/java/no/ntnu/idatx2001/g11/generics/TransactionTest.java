@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import no.ntnu.idatx2001.g11.enums.TimeType;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -21,7 +22,7 @@ class TransactionTest {
     // Arrange
     String name = "Bought groceries";
     String category = "Food";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
 
     // Act
@@ -30,7 +31,7 @@ class TransactionTest {
     // Assert
     assertEquals(name, transaction.getName());
     assertEquals(category, transaction.getCategory());
-    assertEquals(amount, transaction.getAmount(), 0.001);
+    assertEquals(amount, transaction.getAmount());
     assertEquals(date, transaction.getDate());
     assertFalse(transaction.isIncome());
     assertFalse(transaction.isRecurring());
@@ -44,7 +45,7 @@ class TransactionTest {
     // Arrange
     String name = "Monthly pay";
     String category = "Salary";
-    float amount = 5000.00f;
+    long amount = 5000_00;
     LocalDate date = LocalDate.now();
     Frequency frequency = new Frequency((short) 1, TimeType.MONTHS);
 
@@ -59,7 +60,7 @@ class TransactionTest {
 
     // Assert
     assertEquals(category, transaction.getCategory());
-    assertEquals(amount, transaction.getAmount(), 0.001);
+    assertEquals(amount, transaction.getAmount());
     assertEquals(date, transaction.getDate());
     assertTrue(transaction.isIncome());
     assertTrue(transaction.isRecurring());
@@ -74,7 +75,7 @@ class TransactionTest {
     // Arrange
     String name = "Test name";
     String category = "Test category";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
 
     // Assert
@@ -92,7 +93,7 @@ class TransactionTest {
   void testAsBytes() {
     String name = "Bought groceries";
     String category = "Food";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
     Frequency frequency = new Frequency((short) 1, TimeType.DAYS);
 
@@ -106,16 +107,16 @@ class TransactionTest {
     byte[] transactionBytes = transaction.asBytes();
 
     ByteBuffer buffer = ByteBuffer.allocate(transaction.byteLength());
-    buffer.putShort((short) date.getYear());
-    buffer.put((byte) date.getMonthValue());
-    buffer.put((byte) date.getDayOfMonth());
-    buffer.putFloat(amount);
+    Varint.writeSigned(buffer, date.toEpochDay());
+    Varint.writeSigned(buffer, amount);
 
     byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
-    buffer.put((byte) categoryBytes.length);
+    buffer.put((byte) 0); // Stored in full, not in a dictionary
+    buffer.put((byte) categoryBytes.length); // Short lengths are single-byte varints
     buffer.put(categoryBytes);
 
     byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    buffer.put((byte) 0);
     buffer.put((byte) nameBytes.length);
     buffer.put(nameBytes);
 
@@ -131,7 +132,7 @@ class TransactionTest {
   void testEqualsAndHashCode() {
     String name = "Bought groceries";
     String category = "Food";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
     Frequency frequency = new Frequency((short) 1, TimeType.DAYS);
 
@@ -173,13 +174,13 @@ class TransactionTest {
     String category = "Test Category";
     LocalDate date = LocalDate.now();
 
-    Transaction zeroAmount = new Transaction(name, category, 0.0f, date);
+    Transaction zeroAmount = new Transaction(name, category, 0, date);
     assertTrue(zeroAmount.isIncome());
 
     Transaction nearZeroPositive = new Transaction(
       name,
       category,
-      0.001f,
+      1,
       date
     );
     assertTrue(nearZeroPositive.isIncome());
@@ -187,15 +188,15 @@ class TransactionTest {
     Transaction nearZeroNegative = new Transaction(
       name,
       category,
-      -0.001f,
+      -1,
       date
     );
     assertFalse(nearZeroNegative.isIncome());
 
-    Transaction largePositive = new Transaction(name, category, 1e9f, date);
+    Transaction largePositive = new Transaction(name, category, 1_000_000_000_00L, date);
     assertTrue(largePositive.isIncome());
 
-    Transaction largeNegative = new Transaction(name, category, -1e9f, date);
+    Transaction largeNegative = new Transaction(name, category, -1_000_000_000_00L, date);
     assertFalse(largeNegative.isIncome());
   }
 
@@ -203,14 +204,14 @@ class TransactionTest {
   void testSettersAndGetAbsAmount() {
     String name = "Bought groceries";
     String category = "Food";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
 
     Transaction transaction = new Transaction(name, category, amount, date);
 
     String newName = "New groceries";
     String newCategory = "New Food";
-    float newAmount = -200.00f;
+    long newAmount = -200_00;
     LocalDate newDate = LocalDate.now().plusDays(1);
 
     transaction.setName(newName);
@@ -220,17 +221,17 @@ class TransactionTest {
 
     assertEquals(newName, transaction.getName());
     assertEquals(newCategory, transaction.getCategory());
-    assertEquals(newAmount, transaction.getAmount(), 0.001);
+    assertEquals(newAmount, transaction.getAmount());
     assertEquals(newDate, transaction.getDate());
 
-    assertEquals(200.00f, transaction.getAbsAmount(), 0.001);
+    assertEquals(200_00, transaction.getAbsAmount());
   }
 
   @Test
   void testChangeTransactionToRecurring() {
     String name = "Bought groceries";
     String category = "Food";
-    float amount = -100.00f;
+    long amount = -100_00;
     LocalDate date = LocalDate.now();
 
     Transaction transaction = new Transaction(name, category, amount, date);
@@ -246,7 +247,7 @@ class TransactionTest {
   void testChangeTransactionToNonRecurring() {
     String name = "Monthly pay";
     String category = "Salary";
-    float amount = 5000.00f;
+    long amount = 5000_00;
     LocalDate date = LocalDate.now();
     Frequency frequency = new Frequency((short) 1, TimeType.MONTHS);
 
@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
+import no.ntnu.idatx2001.g11.usersaves.Varint;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -62,7 +63,7 @@ class UserTest {
 
   @Test
   void testAsBytesAndByteLength() {
-    double startingFunds = 1500.0;
+    long startingFunds = 1500_00;
     String username = "TestUser";
     User user = new User(username, startingFunds);
 
@@ -70,7 +71,7 @@ class UserTest {
     Transaction transaction = new Transaction(
       "Groceries",
       "Food",
-      -50.0f,
+      -50_00,
       LocalDate.now()
     );
     user.getTransactionHistory().addTransaction(transaction);
@@ -79,7 +80,7 @@ class UserTest {
     assertEquals(user.byteLength(), userBytes.length);
 
     ByteBuffer buffer = ByteBuffer.wrap(userBytes);
-    assertEquals(startingFunds, buffer.getDouble(), 0.001);
+    assertEquals(startingFunds, Varint.unZigZag(Varint.read(buffer)));
 
     int usernameLength = buffer.get();
     byte[] usernameBytes = new byte[usernameLength];
@@ -99,11 +100,11 @@ class UserTest {
 
   @Test
   void testStartingAndCurrentFunds() {
-    double startingFunds = 2000.0;
+    long startingFunds = 2000_00;
     User user = new User("TestUser", startingFunds);
     assertEquals(startingFunds, user.getStartingFunds());
 
-    double currentFunds = startingFunds + 100 - 50;
+    long currentFunds = startingFunds + 100 - 50;
     user
       .getTransactionHistory()
       .addTransaction(
@@ -153,9 +154,9 @@ class UserTest {
 
   @Test
   void testHashCode() {
-    User user1 = new User("TestUser", 2000.0);
-    User user2 = new User("TestUser", 2000.0);
-    User user3 = new User("AnotherUser", 1500.0);
+    User user1 = new User("TestUser", 2000_00);
+    User user2 = new User("TestUser", 2000_00);
+    User user3 = new User("AnotherUser", 1500_00);
 
     assertEquals(user1.hashCode(), user2.hashCode());
     assertNotEquals(user1.hashCode(), user3.hashCode());
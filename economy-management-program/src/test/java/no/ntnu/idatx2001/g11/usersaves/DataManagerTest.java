@@ -2,8 +2,17 @@ package no.ntnu.idatx2001.g11.usersaves;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import no.ntnu.idatx2001.g11.DataManager;
 import no.ntnu.idatx2001.g11.generics.Transaction;
 import no.ntnu.idatx2001.g11.generics.User;
@@ -27,11 +36,11 @@ class DataManagerTest {
     @BeforeEach
     void setUp() {
         dataManager = DataManager.getInstance();
-        dataManager.createFromUsername(69, "TestUser", 69.99);
+        dataManager.createFromUsername(69, "TestUser", 69_99);
     }
 
     /**
-     * Positive test for the {@link DataManager#createFromUsername(int, String, double)} method.
+     * Positive test for the {@link DataManager#createFromUsername(int, String, long)} method.
      * It tests that the method successfully creates a new user with the given username.
      */
     @Test
@@ -41,7 +50,7 @@ class DataManagerTest {
     }
 
     /**
-     * Negative test for the {@link DataManager#createFromUsername(int, String, double)} method.
+     * Negative test for the {@link DataManager#createFromUsername(int, String, long)} method.
      * It tests that the method throws a {@link NullPointerException} if the username is null.
      */
     @Test
@@ -53,7 +62,7 @@ class DataManagerTest {
     }
 
     /**
-     * Negative test for the {@link DataManager#createFromUsername(int, String, double)} method.
+     * Negative test for the {@link DataManager#createFromUsername(int, String, long)} method.
      * It tests that the method throws an {@link IllegalArgumentException} if the username is an empty string.
      */
     @Test
@@ -109,6 +118,168 @@ class DataManagerTest {
         );
     }
 
+    /**
+     * Positive test for journaling in {@link DataManager#submitNewTransaction(Transaction)}.
+     * It tests that a submitted transaction is still there after reloading the user,
+     * without forcing a save.
+     */
+    @Test
+    void testSubmittedTransactionSurvivesReload() {
+        Transaction transaction = new Transaction(
+                "Journaled",
+                "TestCategory",
+                -100,
+                LocalDate.now()
+        );
+        dataManager.submitNewTransaction(transaction);
+        dataManager.loadUserFromSlot(69);
+        assertTrue(dataManager.getTransactionList().contains(transaction));
+    }
+
+    /**
+     * Positive test for loading indexed saves in {@link DataManager#loadUserFromSlot(int)}.
+     * It tests that the transactions of an indexed save are listed without loading them,
+     * and that transactions submitted later on are listed after them.
+     */
+    @Test
+    void testLoadIndexedUserFromSlot() {
+        Transaction saved = new Transaction("Saved", "TestCategory", -100, LocalDate.now());
+        dataManager.submitNewTransaction(saved);
+        SaveManager.setSaveFormat(SaveFormat.INDEXED);
+        try {
+            assertDoesNotThrow(() -> dataManager.forceSave().get(5, TimeUnit.SECONDS));
+            dataManager.loadUserFromSlot(69);
+            User user = dataManager.getCurrentUser();
+            assertTrue(user.getTransactionHistory().getLoadedTransactions().isEmpty());
+            assertEquals(List.of(saved), dataManager.getTransactionList());
+
+            Transaction submitted = new Transaction(
+                    "Submitted", "TestCategory", -50, LocalDate.now());
+            dataManager.submitNewTransaction(submitted);
+            assertEquals(List.of(saved, submitted), dataManager.getTransactionList());
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    /**
+     * Positive test for the {@link DataManager#renameCategory(String, String)} method.
+     * It tests that a renamed category is still renamed after reloading the user,
+     * since renaming is journaled.
+     */
+    @Test
+    void testRenamedCategorySurvivesReload() {
+        dataManager.submitNewTransaction(
+                new Transaction("Journaled", "TestCategory", -100, LocalDate.now()));
+        dataManager.renameCategory("TestCategory", "RenamedCategory");
+        dataManager.loadUserFromSlot(69);
+        assertTrue(dataManager.getTransactionList().stream()
+                .allMatch(transaction -> transaction.getCategory().equals("RenamedCategory")));
+        assertEquals(List.of("RenamedCategory"),
+                dataManager.getCurrentUser().getTransactionHistory().getCategories().getNames());
+        assertThrows(IllegalArgumentException.class,
+                () -> dataManager.renameCategory("TestCategory", "Other"));
+    }
+
+    /**
+     * Positive test for journaling in {@link DataManager#removeTransaction(Transaction)}.
+     * It tests that a removed transaction stays removed after reloading the user,
+     * without forcing a save.
+     */
+    @Test
+    void testRemovedTransactionStaysRemovedAfterReload() {
+        Transaction transaction = new Transaction(
+                "Journaled",
+                "TestCategory",
+                -100,
+                LocalDate.now()
+        );
+        dataManager.submitNewTransaction(transaction);
+        dataManager.forceSave();
+        dataManager.removeTransaction(transaction);
+        dataManager.loadUserFromSlot(69);
+        assertFalse(dataManager.getTransactionList().contains(transaction));
+    }
+
+    /**
+     * Positive test for the {@link DataManager#refreshUser(int)} method.
+     * It tests that a transaction appended to the journal by another program
+     * is loaded into the current user, and that nothing is loaded twice.
+     */
+    @Test
+    void testRefreshUserReplaysRecordsFromAnotherProgram() throws IOException {
+        dataManager.loadUserFromSlot(69);
+        Path journalPath = Paths.get(SaveManager.getJournalFilepath(69));
+        Transaction transaction = new Transaction(
+                "From another program",
+                "TestCategory",
+                -100,
+                LocalDate.now()
+        );
+        long journalLength = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+        dataManager.submitNewTransaction(transaction);
+        assertFalse(dataManager.refreshUser(69));
+
+        //Appending the same record again, like another program would.
+        byte[] journal = Files.readAllBytes(journalPath);
+        Files.write(journalPath,
+                Arrays.copyOfRange(journal, (int) journalLength, journal.length),
+                StandardOpenOption.APPEND);
+        assertFalse(dataManager.refreshUser(70));
+        assertTrue(dataManager.refreshUser(69));
+        assertEquals(2, dataManager.getTransactionList().stream()
+                .filter(transaction::equals).count());
+        assertFalse(dataManager.refreshUser(SaveWatcher.ANY_SLOT));
+    }
+
+    /**
+     * Positive test for the {@link DataManager#readUserChanges(int)} method.
+     * It tests that a transaction submitted after the user was loaded again in the background,
+     * but before the loaded user is set, is not lost when it's set.
+     */
+    @Test
+    void testTransactionSubmittedWhileReloadingIsKept() throws IOException {
+        dataManager.loadUserFromSlot(69);
+
+        //Saved by another program, so the user has to be loaded again.
+        Path savePath = Paths.get(SaveManager.getFilepath(69));
+        Files.setLastModifiedTime(savePath, FileTime.fromMillis(
+                Files.getLastModifiedTime(savePath).toMillis() + 1000));
+        BooleanSupplier refresh = dataManager.readUserChanges(69);
+
+        Transaction transaction = new Transaction(
+                "Submitted while reloading",
+                "TestCategory",
+                -100,
+                LocalDate.now()
+        );
+        dataManager.submitNewTransaction(transaction);
+        assertTrue(refresh.getAsBoolean());
+        assertTrue(dataManager.getTransactionList().contains(transaction));
+        assertFalse(dataManager.refreshUser(69));
+        assertEquals(1, dataManager.getTransactionList().stream()
+                .filter(transaction::equals).count());
+    }
+
+    /**
+     * Positive test for the {@link DataManager#forceSave()} method.
+     * It tests that the user is saved in the background,
+     * and that the saved user has the transactions it had when the save was forced.
+     */
+    @Test
+    void testForceSaveInBackground() {
+        Transaction transaction = new Transaction(
+                "Saved",
+                "TestCategory",
+                -100,
+                LocalDate.now()
+        );
+        dataManager.submitNewTransaction(transaction);
+        assertDoesNotThrow(() -> dataManager.forceSave().get(5, TimeUnit.SECONDS));
+        User savedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertTrue(savedUser.getTransactionHistory().getTransactions().contains(transaction));
+    }
+
     @Test
     void testGetOutgoingPurchases() {
         Transaction transaction1 = new Transaction(
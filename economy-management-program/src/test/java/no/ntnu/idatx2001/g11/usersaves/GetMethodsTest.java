@@ -0,0 +1,146 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import no.ntnu.idatx2001.g11.enums.TimeType;
+import no.ntnu.idatx2001.g11.exceptions.UnsupportedVersionException;
+import no.ntnu.idatx2001.g11.generics.Frequency;
+import no.ntnu.idatx2001.g11.generics.Money;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for GetMethods
+ */
+class GetMethodsTest {
+
+    private User validUser;
+
+    @BeforeEach
+    void before() {
+        validUser = new User("Test user", 15000);
+        validUser.getTransactionHistory().addTransaction(new Transaction(
+                "Test name",
+                "Test category",
+                999_90,
+                LocalDate.of(2021, 6, 17)
+        ));
+        validUser.getTransactionHistory().addTransaction(new Transaction(
+                "Recurring test transaction",
+                "Test category",
+                -420_69,
+                LocalDate.of(1963, 12, 31),
+                new Frequency((short) 1, TimeType.YEARS)
+        ));
+    }
+
+    private byte[] withSlotSummary(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(SlotSummary.LENGTH + user.byteLength());
+        SlotSummary.of(user, 0).writeTo(buffer);
+        user.writeTo(buffer);
+        return buffer.array();
+    }
+
+    @Test
+    void testGetUserOfCurrentVersion() {
+        assertEquals(validUser,
+                GetMethods.getUser(withSlotSummary(validUser), SaveManager.SAVE_VERSION));
+    }
+
+    @Test
+    void testGetUserFromDirectBuffer() {
+        byte[] userBytes = withSlotSummary(validUser);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(userBytes.length).put(userBytes).flip();
+        assertEquals(validUser, assertDoesNotThrow(
+                () -> GetMethods.getUser(directBuffer, SaveManager.SAVE_VERSION)));
+    }
+
+    private static void putLegacyString(ByteBuffer buffer, String string) {
+        byte[] stringBytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.put((byte) stringBytes.length);
+        buffer.put(stringBytes);
+    }
+
+    /**
+     * Encodes a user in the 1.0.x layout, with fixed-width lengths and counts,
+     * and amounts stored as floats & doubles of kroner.
+     */
+    private byte[] legacyUserBytes(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.putDouble(Money.toUnits(user.getStartingFunds()));
+        putLegacyString(buffer, user.getUsername());
+        buffer.putShort((short) user.getTransactionHistory().getTransactions().size());
+        for (Transaction transaction : user.getTransactionHistory().getTransactions()) {
+            buffer.putShort((short) transaction.getDate().getYear());
+            buffer.put((byte) transaction.getDate().getMonthValue());
+            buffer.put((byte) transaction.getDate().getDayOfMonth());
+            buffer.putFloat((float) Money.toUnits(transaction.getAmount()));
+            putLegacyString(buffer, transaction.getCategory());
+            putLegacyString(buffer, transaction.getName());
+            Frequency frequency = transaction.getFrequency();
+            buffer.put((byte) (frequency != null ? 1 : 0));
+            if (frequency != null) {
+                buffer.putShort(frequency.getAmount());
+                putLegacyString(buffer, frequency.getTimeType().toString());
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    @Test
+    void testGetUserOfAlternateVersion() {
+        assertEquals(validUser, GetMethods.getUser(legacyUserBytes(validUser), "1.0.1"));
+    }
+
+    @Test
+    void testGetUserOfLegacyVersionWithNamesAbove127Bytes() {
+        validUser.getTransactionHistory().addTransaction(new Transaction(
+                "A".repeat(200),
+                "Test category",
+                1_00,
+                LocalDate.of(2021, 6, 18)
+        ));
+        assertEquals(validUser, GetMethods.getUser(legacyUserBytes(validUser), "1.0.0"));
+    }
+
+    @Test
+    void testCurrentVersionIsSmallerThanLegacyVersion() {
+        assertTrue(validUser.byteLength() < legacyUserBytes(validUser).length);
+    }
+
+    @Test
+    void testGetUserOfUnsupportedVersion() {
+        byte[] userBytes = validUser.asBytes();
+        assertThrows(UnsupportedVersionException.class,
+                () -> GetMethods.getUser(userBytes, "0.0.1"));
+    }
+
+    @Test
+    void testRepeatedStringsAreStoredOnceAndShared() {
+        User user = new User("Test user", 0);
+        for (int i = 0; i < 100; i++) {
+            user.getTransactionHistory().addTransaction(new Transaction(
+                    new String("Groceries"),
+                    new String("Food"),
+                    -10_00,
+                    LocalDate.of(2021, 6, 17)
+            ));
+        }
+        byte[] userBytes = withSlotSummary(user);
+        assertTrue(userBytes.length < legacyUserBytes(user).length / 2);
+
+        User loadedUser = GetMethods.getUser(userBytes, SaveManager.SAVE_VERSION);
+        assertEquals(user, loadedUser);
+        Transaction first = loadedUser.getTransactionHistory().getTransactions().get(0);
+        for (Transaction transaction : loadedUser.getTransactionHistory().getTransactions()) {
+            assertSame(first.getCategory(), transaction.getCategory());
+            assertSame(first.getName(), transaction.getName());
+        }
+    }
+}
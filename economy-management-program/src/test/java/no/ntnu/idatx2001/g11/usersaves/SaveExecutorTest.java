@@ -0,0 +1,127 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for SaveExecutor
+ */
+class SaveExecutorTest {
+
+    private ExecutorService executor;
+    private CountDownLatch blocker;
+    private SaveExecutor saveExecutor;
+    private User user;
+
+    /**
+     * Makes a save executor whose thread is blocked until {@link #blocker} is counted down,
+     * so every save submitted in a test waits to start.
+     */
+    @BeforeEach
+    void before() {
+        executor = Executors.newSingleThreadExecutor();
+        blocker = new CountDownLatch(1);
+        executor.execute(() -> assertDoesNotThrow(() -> blocker.await()));
+        saveExecutor = new SaveExecutor(executor);
+        user = new User("Test user", 15000);
+        user.getTransactionHistory().addTransaction(
+                new Transaction("Test name", "Test category", 999_90, LocalDate.of(2021, 6, 17)));
+    }
+
+    @AfterEach
+    void after() {
+        blocker.countDown();
+        saveExecutor.shutdown(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testSubmitSavesCopy() {
+        CompletableFuture<Void> saved = saveExecutor.submit(user, 69);
+        user.getTransactionHistory().addTransaction(
+                new Transaction("Too late", "Test category", -1, LocalDate.of(2021, 6, 18)));
+        blocker.countDown();
+        assertDoesNotThrow(() -> saved.get(5, TimeUnit.SECONDS));
+
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(1, loadedUser.getTransactionHistory().getTransactions().size());
+    }
+
+    @Test
+    void testBurstIsCoalesced() {
+        CompletableFuture<Void> firstSave = saveExecutor.submit(user, 69);
+        user.getTransactionHistory().addTransaction(
+                new Transaction("Second", "Test category", -1, LocalDate.of(2021, 6, 18)));
+        CompletableFuture<Void> secondSave = saveExecutor.submit(user, 69);
+        assertSame(firstSave, secondSave);
+
+        blocker.countDown();
+        assertDoesNotThrow(() -> secondSave.get(5, TimeUnit.SECONDS));
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(user, loadedUser);
+    }
+
+    @Test
+    void testJournalRecordsAppendedWhileSavingAreKept() {
+        SaveManager.saveUser(user, 69);
+        CompletableFuture<Void> saved = saveExecutor.submit(user, 69);
+        Transaction transaction =
+                new Transaction("Journaled", "Test category", -1, LocalDate.of(2021, 6, 18));
+        user.getTransactionHistory().addTransaction(transaction);
+        TransactionJournal.appendAddition(transaction, 69);
+
+        blocker.countDown();
+        assertDoesNotThrow(() -> saved.get(5, TimeUnit.SECONDS));
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertFalse(loadedUser.getTransactionHistory().getTransactions().contains(transaction));
+        assertEquals(1, TransactionJournal.replay(loadedUser, 69));
+        assertEquals(user, loadedUser);
+    }
+
+    @Test
+    void testJournalIsAppendedWhileSlotIsHeld() {
+        SaveManager.saveUser(user, 69);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        //Holds the slot like a snapshot being written would.
+        Thread saver = new Thread(() -> assertDoesNotThrow(() -> {
+            try (SaveLock lock = SaveLock.exclusive(69)) {
+                held.countDown();
+                released.await();
+            }
+        }));
+        saver.start();
+        try {
+            assertDoesNotThrow(() -> held.await(5, TimeUnit.SECONDS));
+            Transaction transaction =
+                    new Transaction("Journaled", "Test category", -1, LocalDate.of(2021, 6, 18));
+            assertTimeoutPreemptively(Duration.ofSeconds(2),
+                    () -> TransactionJournal.appendAddition(transaction, 69));
+        } finally {
+            released.countDown();
+        }
+        assertDoesNotThrow(() -> saver.join(5000));
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(1, TransactionJournal.replay(loadedUser, 69));
+    }
+
+    @Test
+    void testFlushWaitsForSaves() {
+        CompletableFuture<Void> saved = saveExecutor.submit(user, 69);
+        assertFalse(saveExecutor.flush(Duration.ofMillis(50)));
+        blocker.countDown();
+        assertTrue(saveExecutor.flush(Duration.ofSeconds(5)));
+        assertTrue(saved.isDone());
+    }
+}
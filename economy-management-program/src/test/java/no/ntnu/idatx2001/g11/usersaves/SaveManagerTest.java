@@ -2,11 +2,25 @@ package no.ntnu.idatx2001.g11.usersaves;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 import no.ntnu.idatx2001.g11.enums.TimeType;
 import no.ntnu.idatx2001.g11.generics.Frequency;
 import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.TransactionHistory;
 import no.ntnu.idatx2001.g11.generics.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,7 +43,7 @@ class SaveManagerTest {
                         new Transaction(
                                 "Test name",
                                 "Test category",
-                                999.9f,
+                                999_90,
                                 LocalDate.of(2021, 6, 17)
                         )
                 );
@@ -39,7 +53,7 @@ class SaveManagerTest {
                         new Transaction(
                                 "Another test name",
                                 "Another test category",
-                                -13.37f,
+                                -13_37,
                                 LocalDate.of(2020, 2, 29)
                         )
                 );
@@ -49,7 +63,7 @@ class SaveManagerTest {
                         new Transaction(
                                 "Recurring test transaction",
                                 "Test category",
-                                -420.69f,
+                                -420_69,
                                 LocalDate.of(1963, 12, 31),
                                 new Frequency((short) 1, TimeType.YEARS)
                         )
@@ -66,4 +80,611 @@ class SaveManagerTest {
         loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
         assertEquals(validUser, loadedUser);
     }
+
+    @Test
+    void testSaveAndLoadHistoryLargerThanReadBuffer() {
+        User largeUser = new User("Large user", 500);
+        for (int i = 0; i < 2000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    i % 2 == 0 ? "Food" : "Fuel",
+                    (i - 1000) * 100L,
+                    LocalDate.of(2020, 1, 1).plusDays(i)
+            ));
+        }
+        assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(largeUser, loadedUser);
+    }
+
+    @Test
+    void testSaveAndLoadBeyondLegacyLimits() {
+        User largeUser = new User("\u00e6".repeat(100), 500);
+        for (int i = 0; i < 40000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    i % 1000 == 0 ? "Long name ".repeat(30) + i : "Transaction " + i,
+                    "Food",
+                    -1_00,
+                    LocalDate.of(2000, 1, 1).plusDays(i % 9000)
+            ));
+        }
+        assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+        User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(largeUser, loadedUser);
+    }
+
+    @Test
+    void testSaveAndLoadColumnar() {
+        User largeUser = new User("Columnar user", 500);
+        for (int i = 0; i < 3000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    i % 7 == 0 ? "Unique " + i : "Groceries",
+                    i % 3 == 0 ? "Food" : "Fuel",
+                    (i - 1500) * 100L - 50,
+                    LocalDate.of(2020, 1, 1).plusDays(i / 3),
+                    i % 5 == 0 ? new Frequency((short) (i % 4 + 1), TimeType.WEEKS) : null
+            ));
+        }
+        SaveManager.setSaveFormat(SaveFormat.COLUMNS);
+        try {
+            assertDoesNotThrow(() -> SaveManager.saveUser(validUser, 69));
+            User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            assertEquals(validUser, loadedUser);
+
+            assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+            loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            assertEquals(largeUser, loadedUser);
+
+            SlotSummary summary = assertDoesNotThrow(() -> SaveManager.loadSlotSummary(69));
+            assertEquals(3000, summary.getTransactionCount());
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testSaveAndLoadSegmented() throws IOException {
+        int currentYear = LocalDate.now().getYear();
+        User segmentedUser = new User("Segmented user", 500);
+        for (int i = 0; i < 900; i++) {
+            segmentedUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    i % 3 == 0 ? "Food" : "Fuel",
+                    i % 2 == 0 ? i : -i,
+                    LocalDate.of(currentYear - 2, 1, 1).plusDays(i)
+            ));
+        }
+        SaveManager.setSaveFormat(SaveFormat.SEGMENTS);
+        try {
+            assertDoesNotThrow(() -> SaveManager.saveUser(segmentedUser, 69));
+            User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            TransactionHistory loadedHistory = loadedUser.getTransactionHistory();
+            assertEquals(2, loadedHistory.getUnloadedSegments().size());
+            assertTrue(loadedHistory.getLoadedTransactions().stream()
+                    .allMatch(transaction -> transaction.getDate().getYear() == currentYear));
+            assertEquals(900, loadedHistory.size());
+            assertEquals(segmentedUser.getCurrentFunds(), loadedUser.getCurrentFunds());
+            assertEquals(900, SaveManager.loadSlotSummary(69).getTransactionCount());
+
+            TransactionHistory lastYear = loadedHistory.getTransactionsInRange(
+                    LocalDate.of(currentYear - 1, 6, 1), LocalDate.of(currentYear - 1, 7, 1));
+            assertEquals(30, lastYear.getTransactions().size());
+            assertEquals(1, loadedHistory.getUnloadedSegments().size());
+            assertEquals(segmentedUser, loadedUser);
+            assertTrue(SaveManager.verifySave(69));
+
+            List<HistorySegment> segments = loadedHistory.getSegments();
+            loadedHistory.addTransaction(new Transaction("Added", "Food", -10,
+                    LocalDate.of(currentYear - 1, 12, 31)));
+            loadedHistory.getLoadedTransactions()
+                    .sort(Comparator.comparing(Transaction::getDate));
+            assertDoesNotThrow(() -> SaveManager.saveUser(loadedUser, 69));
+            assertTrue(Files.exists(segments.get(0).getPath()));
+            assertTrue(Files.exists(segments.get(1).getPath()));
+            User reloadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            assertEquals(segments.get(0).getFileName(),
+                    reloadedUser.getTransactionHistory().getSegments().get(0).getFileName());
+            assertEquals(loadedUser, reloadedUser);
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testRenamedCategoryOfUnloadedSegments() {
+        int currentYear = LocalDate.now().getYear();
+        User segmentedUser = new User("Segmented user", 500);
+        segmentedUser.getTransactionHistory().addTransaction(new Transaction(
+                "Old", "Food", -10, LocalDate.of(currentYear - 2, 3, 1)));
+        segmentedUser.getTransactionHistory().addTransaction(new Transaction(
+                "Older", "Food", -20, LocalDate.of(currentYear - 1, 3, 1)));
+        segmentedUser.getTransactionHistory().addTransaction(new Transaction(
+                "New", "Fuel", -30, LocalDate.of(currentYear, 1, 1)));
+        SaveManager.setSaveFormat(SaveFormat.SEGMENTS);
+        try {
+            assertDoesNotThrow(() -> SaveManager.saveUser(segmentedUser, 69));
+            User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            TransactionHistory loadedHistory = loadedUser.getTransactionHistory();
+            List<String> fileNames = loadedHistory.getSegments().stream()
+                    .map(HistorySegment::getFileName).toList();
+
+            //Only in segments that aren't loaded, so nothing is loaded to rename it.
+            loadedHistory.renameCategory("Food", "Groceries");
+            loadedHistory.renameCategory("Groceries", "Meals");
+            assertThrows(IllegalArgumentException.class,
+                    () -> loadedHistory.renameCategory("Meals", "Fuel"));
+            assertEquals(2, loadedHistory.getUnloadedSegments().size());
+            assertEquals(Map.of("Food", "Meals", "Groceries", "Meals"),
+                    loadedHistory.getUnloadedRenames());
+
+            assertDoesNotThrow(() -> SaveManager.saveUser(loadedUser, 69));
+            User reloadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            TransactionHistory reloadedHistory = reloadedUser.getTransactionHistory();
+            assertEquals(fileNames, reloadedHistory.getSegments().stream()
+                    .map(HistorySegment::getFileName).toList());
+            assertEquals(2, reloadedHistory.getUnloadedSegments().size());
+            assertEquals(Map.of("Food", "Meals", "Groceries", "Meals"),
+                    reloadedHistory.getUnloadedRenames());
+
+            assertEquals("Meals", reloadedHistory.viewTransactionsInRange(
+                    LocalDate.of(currentYear - 2, 1, 1), LocalDate.of(currentYear - 1, 1, 1))
+                    .get(0).getCategory());
+            assertEquals(List.of("Fuel", "Meals"),
+                    reloadedHistory.getCategories().getNames());
+            assertEquals(2, reloadedHistory.getTransactionsByCategory().get("Meals").size());
+            assertTrue(reloadedHistory.getUnloadedRenames().isEmpty());
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testSaveAndLoadIndexed() {
+        User largeUser = new User("Indexed user", 500);
+        for (int i = 0; i < 20000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    i % 3 == 0 ? "Food" : "Fuel",
+                    i % 2 == 0 ? i : -i,
+                    LocalDate.of(2000, 1, 1).plusDays(i / 4),
+                    i % 5 == 0 ? new Frequency((short) 2, TimeType.WEEKS) : null
+            ));
+        }
+        SaveManager.setSaveFormat(SaveFormat.INDEXED);
+        try {
+            assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+            User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            assertEquals(largeUser, loadedUser);
+
+            User pagedUser = assertDoesNotThrow(() -> SaveManager.loadUserPaged(69));
+            TransactionHistory pagedHistory = pagedUser.getTransactionHistory();
+            assertEquals(20000, pagedHistory.size());
+            assertEquals(largeUser.getCurrentFunds(), pagedUser.getCurrentFunds());
+            assertEquals(LocalDate.of(2000, 1, 1).plusDays(4999), pagedHistory.getLatestDate());
+            for (int i = 0; i < 20000; i += 7) {
+                assertEquals(largeUser.getTransactionHistory().get(i), pagedHistory.get(i));
+            }
+            TransactionHistory march = pagedHistory.getTransactionsInRange(
+                    LocalDate.of(2005, 3, 1), LocalDate.of(2005, 4, 1));
+            assertEquals(largeUser.getTransactionHistory().getTransactionsInRange(
+                    LocalDate.of(2005, 3, 1), LocalDate.of(2005, 4, 1)), march);
+            assertTrue(pagedHistory.getLoadedTransactions().isEmpty());
+
+            assertEquals(largeUser, pagedUser);
+            assertEquals(20000, pagedHistory.getLoadedTransactions().size());
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testIndexedBlocksAreReadInOrder() {
+        int transactionCount = TransactionIndex.BLOCK_SIZE * 5 + 17;
+        User largeUser = new User("Block user", 0);
+        for (int i = 0; i < transactionCount; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    "Category " + (i % 7),
+                    i % 2 == 0 ? i : -i,
+                    LocalDate.of(2010, 1, 1).plusDays(i / 3)
+            ));
+        }
+        SaveManager.setSaveFormat(SaveFormat.INDEXED);
+        try {
+            assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+            User pagedUser = assertDoesNotThrow(() -> SaveManager.loadUserPaged(69));
+            assertTrue(pagedUser.getTransactionHistory().getLoadedTransactions().isEmpty());
+
+            //A full load decodes every block in parallel
+            User loadedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            List<Transaction> loadedTransactions =
+                    loadedUser.getTransactionHistory().getLoadedTransactions();
+            assertEquals(transactionCount, loadedTransactions.size());
+            for (int i = 0; i < transactionCount; i++) {
+                assertEquals("Transaction " + i, loadedTransactions.get(i).getName());
+                assertEquals(largeUser.getTransactionHistory().get(i),
+                        loadedTransactions.get(i));
+            }
+            assertEquals(largeUser.getCurrentFunds(), loadedUser.getCurrentFunds());
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testMigrateSave() throws IOException {
+        SaveManager.saveUser(validUser, 69);
+        Transaction journaled = new Transaction(
+                "Journaled before migrating",
+                "Test category",
+                -5_00,
+                LocalDate.of(2022, 1, 1)
+        );
+        TransactionJournal.appendAddition(journaled, 69);
+        validUser.getTransactionHistory().addTransaction(journaled);
+
+        SaveManager.setSaveFormat(SaveFormat.INDEXED);
+        try {
+            assertNotNull(SaveManager.migrateSave(69, SaveWriter.makeBuffers()));
+            byte[] saveBytes = Files.readAllBytes(Paths.get(SaveManager.getFilepath(69)));
+            assertEquals(SaveManager.INDEXED_SAVE_VERSION,
+                    SaveManager.getVersionString(ByteBuffer.wrap(saveBytes).getShort()));
+            User migratedUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+            assertEquals(0, TransactionJournal.replay(migratedUser, 69));
+            assertEquals(validUser, migratedUser);
+
+            assertNull(SaveManager.migrateSave(69, SaveWriter.makeBuffers()));
+            byte[] backup = SaveManager.rebuildBackup(69, 1);
+            assertEquals(SaveManager.SAVE_VERSION,
+                    SaveManager.getVersionString(ByteBuffer.wrap(backup).getShort()));
+        } finally {
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testOlderJournalIsUpgraded() throws IOException {
+        SaveManager.saveUser(validUser, 69);
+        Transaction journaled = new Transaction(
+                "Journaled by 1.2.0",
+                "Test category",
+                -5_25,
+                LocalDate.of(2022, 1, 1)
+        );
+        TransactionJournal.appendAddition(journaled, 69);
+        validUser.getTransactionHistory().addTransaction(journaled);
+
+        //Rewrites the journal the way 1.2.0 did, with the amount as a float of kroner.
+        Path journalPath = Paths.get(SaveManager.getJournalFilepath(69));
+        byte[] journal = Files.readAllBytes(journalPath);
+        ByteBuffer legacyTransaction = ByteBuffer.allocate(64);
+        Varint.writeSigned(legacyTransaction, journaled.getDate().toEpochDay());
+        legacyTransaction.putFloat(-5.25f);
+        StringDictionary.EMPTY.writeReference(legacyTransaction, journaled.getCategory());
+        StringDictionary.EMPTY.writeReference(legacyTransaction, journaled.getName());
+        legacyTransaction.put((byte) 0).flip();
+        ByteBuffer legacyJournal = ByteBuffer.allocate(18 + 5 + legacyTransaction.limit())
+                .putShort(SaveManager.getVersionBits("1.2.0"))
+                .put(journal, 2, 16)
+                .put(TransactionJournal.RECORD_ADD)
+                .putInt(legacyTransaction.limit())
+                .put(legacyTransaction);
+        Files.write(journalPath, legacyJournal.array());
+
+        User loadedUser = SaveManager.loadUserBytes(69).makeUser();
+        assertEquals(1, TransactionJournal.replay(loadedUser, 69));
+        assertEquals(validUser, loadedUser);
+        assertEquals(SaveManager.SAVE_VERSION, SaveManager.getVersionString(
+                ByteBuffer.wrap(Files.readAllBytes(journalPath)).getShort()));
+
+        Transaction appended = new Transaction(
+                "Journaled after upgrading",
+                "Test category",
+                12_34,
+                LocalDate.of(2022, 1, 2)
+        );
+        TransactionJournal.appendAddition(appended, 69);
+        validUser.getTransactionHistory().addTransaction(appended);
+        User reloadedUser = SaveManager.loadUserBytes(69).makeUser();
+        assertEquals(2, TransactionJournal.replay(reloadedUser, 69));
+        assertEquals(validUser, reloadedUser);
+    }
+
+    @Test
+    void testJournalIsNotReplayedOntoReplacedSnapshot() throws IOException {
+        SaveManager.saveUser(validUser, 69);
+        UserBytes userBytes = SaveManager.readUserBytes(69, true);
+        Transaction journaled = new Transaction(
+                "Journaled",
+                "Test category",
+                -5_25,
+                LocalDate.of(2022, 1, 1)
+        );
+        TransactionJournal.appendAddition(journaled, 69);
+
+        //Saved by another program between loading & replaying.
+        validUser.getTransactionHistory().addTransaction(journaled);
+        SaveManager.saveUser(validUser, 69);
+        assertEquals(-1, TransactionJournal.replayJournal(userBytes.makeUser(), 69, userBytes));
+
+        UserBytes reloadedBytes = SaveManager.readUserBytes(69, true);
+        User reloadedUser = reloadedBytes.makeUser();
+        assertEquals(0, TransactionJournal.replayJournal(reloadedUser, 69, reloadedBytes));
+        assertEquals(validUser, reloadedUser);
+    }
+
+    @Test
+    void testChangesReadBeforeReloadingAreNotAppliedTwice() throws IOException {
+        SaveManager.saveUser(validUser, 69);
+        User user = SaveManager.loadUserBytes(69).makeUser();
+        assertEquals(0, TransactionJournal.replay(user, 69));
+        Transaction own = new Transaction("Own", "Test category", -1_00, LocalDate.of(2022, 1, 1));
+        TransactionJournal.appendAddition(own, 69);
+        user.getTransactionHistory().addTransaction(own);
+
+        //Appended by another program.
+        Transaction other = new Transaction(
+                "From another program", "Test category", -2_00, LocalDate.of(2022, 1, 2));
+        ByteBuffer record = ByteBuffer.allocate(5 + other.byteLength())
+                .put(TransactionJournal.RECORD_ADD)
+                .putInt(other.byteLength());
+        other.writeTo(record);
+        Path journalPath = Paths.get(SaveManager.getJournalFilepath(69));
+        Files.write(journalPath, record.array(), StandardOpenOption.APPEND);
+
+        TransactionJournal.JournalChanges changes = TransactionJournal.readChanges(69);
+        assertFalse(changes.isReloadNeeded());
+        User reloadedUser = SaveManager.loadUserBytes(69).makeUser();
+        assertEquals(2, TransactionJournal.replay(reloadedUser, 69));
+        assertEquals(0, TransactionJournal.applyChanges(changes, reloadedUser));
+        assertTrue(reloadedUser.getTransactionHistory().getTransactions().contains(other));
+
+        Files.write(journalPath, record.array(), StandardOpenOption.APPEND);
+        changes = TransactionJournal.readChanges(69);
+        assertEquals(1, TransactionJournal.applyChanges(changes, reloadedUser));
+        assertEquals(0, TransactionJournal.applyChanges(TransactionJournal.readChanges(69),
+                reloadedUser));
+    }
+
+    @Test
+    void testDamagedRecordIsSkippedAndRecovered() throws IOException {
+        int backupRetention = SaveManager.getBackupRetention();
+        try {
+            //The newest backup stores the transactions without checksums.
+            SaveManager.writeUser(validUser, 69, 0);
+            SaveManager.setSaveFormat(SaveFormat.CHECKED);
+            SaveManager.writeUser(validUser, 69, 0);
+
+            //Damages the checksum of the second transaction.
+            Path path = Paths.get(SaveManager.getFilepath(69));
+            byte[] saveBytes = Files.readAllBytes(path);
+            int thirdRecord = -1;
+            for (int i = 0, records = 0; records < 3; i++) {
+                if (Arrays.equals(saveBytes, i, i + CheckedRecords.SYNC.length,
+                        CheckedRecords.SYNC, 0, CheckedRecords.SYNC.length)) {
+                    thirdRecord = i;
+                    records++;
+                }
+            }
+            saveBytes[thirdRecord - 1] ^= 1;
+            Files.write(path, saveBytes);
+            List<Transaction> transactions = validUser.getTransactionHistory().getTransactions();
+
+            SaveManager.setBackupRetention(0);
+            UserBytes userBytes = SaveManager.loadUserBytes(69);
+            assertEquals(1, userBytes.getDamage().getDamagedRecords());
+            assertEquals(1, userBytes.getDamage().getLostRecords());
+            assertEquals(List.of(transactions.get(0), transactions.get(2)),
+                    userBytes.makeUser().getTransactionHistory().getTransactions());
+            assertFalse(SaveManager.verifySave(69));
+
+            SaveManager.setBackupRetention(backupRetention);
+            userBytes = SaveManager.loadUserBytes(69);
+            assertEquals(1, userBytes.getDamage().getRecoveredRecords());
+            assertEquals(0, userBytes.getDamage().getLostRecords());
+            List<Transaction> loaded =
+                    userBytes.makeUser().getTransactionHistory().getTransactions();
+            assertEquals(transactions.size(), loaded.size());
+            assertTrue(loaded.containsAll(transactions));
+        } finally {
+            SaveManager.setBackupRetention(backupRetention);
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testSaveCatalog() throws IOException {
+        assertDoesNotThrow(() -> SaveManager.writeUser(validUser, 69, 0));
+        assertEquals("Test user", SaveCatalog.list().get(69).getUsername());
+        assertEquals(3, SaveCatalog.list().get(69).getTransactionCount());
+        assertTrue(SaveCatalog.search("test U").containsKey(69));
+        assertTrue(SaveCatalog.search("").containsKey(69));
+        assertFalse(SaveCatalog.search("test user, but longer").containsKey(69));
+        assertNotEquals(69, SaveCatalog.nextFreeSlot());
+
+        Files.delete(SaveCatalog.getPath());
+        SaveCatalog.rebuild();
+        assertTrue(Files.exists(SaveCatalog.getPath()));
+        assertEquals("Test user", SaveCatalog.list().get(69).getUsername());
+    }
+
+    @Test
+    void testSaveCatalogIsReadAgainWhenChanged() throws IOException {
+        assertDoesNotThrow(() -> SaveManager.writeUser(validUser, 69, 0));
+        byte[] catalog = Files.readAllBytes(SaveCatalog.getPath());
+        assertDoesNotThrow(() -> SaveManager.writeUser(new User("Other user"), 69, 0));
+        assertEquals("Other user", SaveCatalog.list().get(69).getUsername());
+
+        //Written by another program.
+        Files.write(SaveCatalog.getPath(), catalog);
+        Files.setLastModifiedTime(SaveCatalog.getPath(),
+                FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertEquals("Test user", SaveCatalog.list().get(69).getUsername());
+    }
+
+    @Test
+    void testSaveLoadAndVerifyCompressed() throws IOException {
+        User largeUser = new User("Compressed user", 500);
+        for (int i = 0; i < 20000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    i % 3 == 0 ? "Food" : "Fuel",
+                    (i - 10000) * 100L,
+                    LocalDate.of(2020, 1, 1).plusDays(i / 10)
+            ));
+        }
+        SaveManager.setCompressed(true);
+        try {
+            for (SaveFormat saveFormat : SaveFormat.values()) {
+                SaveManager.setSaveFormat(saveFormat);
+                assertDoesNotThrow(() -> SaveManager.saveUser(largeUser, 69));
+                User loadedUser =
+                        assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+                assertEquals(largeUser, loadedUser);
+                assertEquals(largeUser.getUsername(),
+                        assertDoesNotThrow(() -> SaveManager.loadSlotSummary(69)).getUsername());
+                assertTrue(SaveManager.verifySave(69));
+                assertTrue(SaveManager.verifyBackup(69, 1));
+            }
+
+            Path savePath = Paths.get(SaveManager.getFilepath(69));
+            try (FileChannel channel = FileChannel.open(savePath, StandardOpenOption.WRITE)) {
+                ByteBuffer corruptByte = ByteBuffer.allocate(1).put((byte) 0x55).flip();
+                channel.write(corruptByte, channel.size() - 20);
+            }
+            assertFalse(SaveManager.verifySave(69));
+        } finally {
+            SaveManager.setCompressed(false);
+            SaveManager.setSaveFormat(SaveFormat.ROWS);
+        }
+    }
+
+    @Test
+    void testSaveWithEveryFsyncPolicy() {
+        try {
+            for (FsyncPolicy fsyncPolicy : FsyncPolicy.values()) {
+                SaveManager.setFsyncPolicy(fsyncPolicy);
+                assertDoesNotThrow(() -> SaveManager.writeUser(emptyValidUser, 69,
+                        TransactionJournal.position(69)));
+                assertDoesNotThrow(() -> SaveManager.writeUser(validUser, 69,
+                        TransactionJournal.position(69)));
+                User loadedUser =
+                        assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+                assertEquals(validUser, loadedUser);
+                assertFalse(Files.exists(
+                        Paths.get(SaveManager.getFilepath(69) + SaveManager.TEMPORARY_EXTENSION)));
+            }
+        } finally {
+            SaveManager.setFsyncPolicy(FsyncPolicy.BATCHED);
+        }
+    }
+
+    @Test
+    void testSaveKeepsPreviousSavesAsBackups() throws IOException {
+        Path savePath = Paths.get(SaveManager.getFilepath(69));
+        SaveManager.saveUser(validUser, 69);
+        byte[] firstSave = Files.readAllBytes(savePath);
+        SaveManager.saveUser(emptyValidUser, 69);
+        byte[] secondSave = Files.readAllBytes(savePath);
+        SaveManager.saveUser(validUser, 69);
+
+        assertArrayEquals(secondSave, SaveManager.rebuildBackup(69, 1));
+        assertArrayEquals(firstSave, SaveManager.rebuildBackup(69, 2));
+    }
+
+    @Test
+    void testBackupsOnlyStoreChanges() throws IOException {
+        User largeUser = new User("Large user", 500);
+        for (int i = 0; i < 5000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i, "Food", i, LocalDate.of(2020, 1, 1).plusDays(i)));
+        }
+        SaveManager.saveUser(largeUser, 69);
+        byte[] firstSave = Files.readAllBytes(Paths.get(SaveManager.getFilepath(69)));
+        largeUser.getTransactionHistory().addTransaction(
+                new Transaction("New", "Fuel", -100, LocalDate.of(2021, 6, 17)));
+        SaveManager.saveUser(largeUser, 69);
+
+        Path backupPath = Paths.get(SaveManager.getFilepath(69) + SaveManager.BACKUP_EXTENSION + 1);
+        assertTrue(Files.size(backupPath) < firstSave.length / 10);
+        assertArrayEquals(firstSave, SaveManager.rebuildBackup(69, 1));
+    }
+
+    @Test
+    void testBackupsOfSavesLongerThanADeltaWindow() throws IOException {
+        User largeUser = new User("Large user", 500);
+        User otherUser = new User("Other user", 500);
+        for (int i = 0; i < 20000; i++) {
+            largeUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i, "Food", i, LocalDate.of(2000, 1, 1).plusDays(i)));
+            otherUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Other " + i, "Fuel", -i, LocalDate.of(2000, 1, 1).plusDays(i)));
+        }
+        Path savePath = Paths.get(SaveManager.getFilepath(69));
+        SaveManager.saveUser(largeUser, 69);
+        byte[] firstSave = Files.readAllBytes(savePath);
+        assertTrue(firstSave.length > 4 * 64 * 1024);
+        SaveManager.saveUser(otherUser, 69);
+        byte[] secondSave = Files.readAllBytes(savePath);
+        largeUser.getTransactionHistory().addTransaction(
+                new Transaction("New", "Fuel", -100, LocalDate.of(2021, 6, 17)));
+        SaveManager.saveUser(largeUser, 69);
+
+        assertArrayEquals(secondSave, SaveManager.rebuildBackup(69, 1));
+        assertArrayEquals(firstSave, SaveManager.rebuildBackup(69, 2));
+    }
+
+    @Test
+    void testBackupRetention() throws IOException {
+        SaveManager.setBackupRetention(10);
+        try {
+            for (int i = 0; i < 12; i++) {
+                SaveManager.saveUser(new User("Generation " + i, i), 69);
+            }
+            for (int i = 1; i <= 10; i++) {
+                assertTrue(SaveManager.verifyBackup(69, i));
+                byte[] backup = SaveManager.rebuildBackup(69, i);
+                User backupUser = new UserBytes(SaveManager.SAVE_VERSION,
+                        Arrays.copyOfRange(backup, 2, backup.length)).makeUser();
+                assertEquals("Generation " + (11 - i), backupUser.getUsername());
+            }
+            assertThrows(NoSuchFileException.class, () -> SaveManager.rebuildBackup(69, 11));
+
+            SaveManager.setBackupRetention(2);
+            SaveManager.saveUser(validUser, 69);
+            assertThrows(NoSuchFileException.class, () -> SaveManager.rebuildBackup(69, 3));
+        } finally {
+            SaveManager.setBackupRetention(SaveManager.BACKUP_COUNT);
+        }
+    }
+
+    @Test
+    void testRestoreBackup() throws IOException {
+        SaveManager.saveUser(validUser, 69);
+        SaveManager.saveUser(emptyValidUser, 69);
+        SaveManager.restoreBackup(69, 1);
+
+        User restoredUser = assertDoesNotThrow(() -> SaveManager.loadUserBytes(69).makeUser());
+        assertEquals(validUser, restoredUser);
+        assertTrue(SaveManager.verifyBackup(69, 1));
+        assertTrue(SaveManager.verifyBackup(69, 2));
+    }
+
+    @Test
+    void testLoadSlotSummary() {
+        assertDoesNotThrow(() -> SaveManager.saveUser(validUser, 69));
+        SlotSummary summary = assertDoesNotThrow(() -> SaveManager.loadSlotSummary(69));
+        assertEquals(validUser.getUsername(), summary.getUsername());
+        assertEquals(3, summary.getTransactionCount());
+        assertEquals(validUser.getCurrentFunds(), summary.getCurrentFunds());
+    }
+
+    @Test
+    void testSlotSummaryCutsLongUsernamesShort() {
+        String longUsername = "\u00e6".repeat(SlotSummary.MAX_USERNAME_LENGTH);
+        SlotSummary summary = SlotSummary.read(
+                ByteBuffer.wrap(new SlotSummary(longUsername, 0, 0, 0).asBytes()));
+        assertEquals(longUsername.substring(0, SlotSummary.MAX_USERNAME_LENGTH / 2),
+                summary.getUsername());
+    }
 }
@@ -0,0 +1,84 @@
+package no.ntnu.idatx2001.g11.usersaves;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import no.ntnu.idatx2001.g11.generics.Transaction;
+import no.ntnu.idatx2001.g11.generics.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for SaveWriter
+ */
+class SaveWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private User validUser;
+
+    @BeforeEach
+    void before() {
+        validUser = new User("Test user", 15000);
+        for (int i = 0; i < 50; i++) {
+            validUser.getTransactionHistory().addTransaction(new Transaction(
+                    "Transaction " + i,
+                    "Test category",
+                    i,
+                    LocalDate.of(2021, 6, 17).plusDays(i)
+            ));
+        }
+    }
+
+    private byte[] writeThroughBuffers(ByteBuffer[] buffers) throws IOException {
+        Path file = tempDir.resolve("user");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            SaveWriter writer = new SaveWriter(channel, buffers);
+            validUser.writeTo(writer);
+            writer.flush();
+        }
+        return Files.readAllBytes(file);
+    }
+
+    @Test
+    void testWriteThroughSmallBuffers() throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[] {
+            ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64), ByteBuffer.allocate(64)
+        };
+        assertArrayEquals(validUser.asBytes(), writeThroughBuffers(buffers));
+    }
+
+    @Test
+    void testWriteObjectLargerThanBuffers() throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[] {ByteBuffer.allocate(8)};
+        assertArrayEquals(validUser.asBytes(), writeThroughBuffers(buffers));
+    }
+
+    @Test
+    void testReuseOfBuffers() throws IOException {
+        ByteBuffer[] buffers = SaveWriter.makeBuffers();
+        byte[] firstSave = writeThroughBuffers(buffers);
+        assertArrayEquals(firstSave, writeThroughBuffers(buffers));
+    }
+
+    @Test
+    void testUtf8MatchesStringEncoding() {
+        for (String string : new String[] {"Food", "Blåbær", "€ 5", "💰", "\uD800x"}) {
+            byte[] expected = string.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, Utf8.length(string));
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            Utf8.write(buffer, string);
+            assertArrayEquals(expected, buffer.array());
+        }
+    }
+}